@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.policy;
+
+import android.content.Context;
+import android.location.LocationManager;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertNull;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Checks the location provider source registers for location updates when it is started from a thread without a
+ * Looper, as the MssoService workers are.  Lives in the policy package, as the source is package private.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LocationProviderSourceTest {
+
+    private LocationAssertion.ProviderSource source;
+    private LocationSampler sampler;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        source = new LocationAssertion.ProviderSource(context, LocationManager.NETWORK_PROVIDER,
+                LocationAssertion.DEFAULT_MIN_TIME, LocationAssertion.DEFAULT_MIN_DISTANCE);
+        sampler = new LocationSampler(source, LocationAssertion.DEFAULT_MIN_DISTANCE,
+                LocationAssertion.DEFAULT_MIN_TIME * LocationAssertion.STALE_AFTER_INTERVALS,
+                LocationSampler.DEFAULT_SETUP_INTERVAL);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        source.stop();
+    }
+
+    @Test
+    public void testStartWithoutLooper() throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (Looper.myLooper() != null) {
+                        throw new IllegalStateException("Worker thread has a Looper");
+                    }
+                    source.initLocation(sampler);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        });
+        worker.start();
+        worker.join(10000);
+
+        // The device may not grant the location permission, or have no network location provider
+        assumeFalse(error.get() instanceof SecurityException);
+        assumeFalse(error.get() instanceof IllegalArgumentException);
+        assertNull(error.get());
+    }
+}
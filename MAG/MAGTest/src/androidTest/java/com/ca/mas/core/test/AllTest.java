@@ -8,6 +8,7 @@
 
 package com.ca.mas.core.test;
 
+import com.ca.mas.core.policy.LocationProviderSourceTest;
 import com.ca.mas.core.test.datasource.AccountManagerStoreDataSourceTest;
 import com.ca.mas.core.test.datasource.KeystoreDataSourceTest;
 import com.ca.mas.core.test.datasource.SecureAccountManagerStoreDataSourceTest;
@@ -17,16 +18,29 @@ import com.ca.mas.core.test.error.JWTValidationTest;
 import com.ca.mas.core.test.error.MAGEndpointTest;
 import com.ca.mas.core.test.error.MSISDNTest;
 import com.ca.mas.core.test.error.OAuthEndpointTest;
+import com.ca.mas.core.test.error.ResponseClassificationTest;
+import com.ca.mas.core.test.http.ConnectionReuseTest;
 import com.ca.mas.core.test.http.HttpTest;
+import com.ca.mas.core.test.http.ResponseBodyMemoryTest;
+import com.ca.mas.core.test.http.SslContextCacheTest;
+import com.ca.mas.core.test.http.StreamedBodyReleaseTest;
+import com.ca.mas.core.test.http.VerifiedChainCacheTest;
 import com.ca.mas.core.test.oauth.AccessProtectedEndpointTest;
+import com.ca.mas.core.test.oauth.AccessTokenRefreshTest;
 import com.ca.mas.core.test.oauth.AuthorizationCodeFlowTest;
 import com.ca.mas.core.test.oauth.ClientCredentialsGrantTypeTest;
 import com.ca.mas.core.test.oauth.DeviceIdTest;
+import com.ca.mas.core.test.oauth.ScopedAccessTokenTest;
 import com.ca.mas.core.test.oauth.TokenTest;
 import com.ca.mas.core.test.otp.OtpTest;
+import com.ca.mas.core.test.registration.KeyAlgorithmBenchmarkTest;
+import com.ca.mas.core.test.registration.KeyPairProvisionerTest;
+import com.ca.mas.core.test.storage.AccountManagerStorageIndexTest;
 import com.ca.mas.core.test.storage.AccountManagerStorageTests;
+import com.ca.mas.core.test.storage.EncryptionProviderBenchmarkTest;
 import com.ca.mas.core.test.storage.KeyStoreStorageTests;
 import com.ca.mas.core.test.storage.StorageProviderTests;
+import com.ca.mas.core.test.token.IdTokenClaimsTest;
 
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
@@ -48,12 +62,26 @@ import org.junit.runners.Suite;
         MSISDNTest.class,
         DeviceIdTest.class,
         AccountManagerStorageTests.class,
+        AccountManagerStorageIndexTest.class,
         KeyStoreStorageTests.class,
         HttpTest.class,
+        ConnectionReuseTest.class,
+        ResponseBodyMemoryTest.class,
         InitSDKTest.class,
         StorageProviderTests.class,
+        EncryptionProviderBenchmarkTest.class,
         DynamicConfigTest.class,
-        OtpTest.class})
+        OtpTest.class,
+        KeyPairProvisionerTest.class,
+        KeyAlgorithmBenchmarkTest.class,
+        AccessTokenRefreshTest.class,
+        ScopedAccessTokenTest.class,
+        IdTokenClaimsTest.class,
+        ResponseClassificationTest.class,
+        VerifiedChainCacheTest.class,
+        SslContextCacheTest.class,
+        StreamedBodyReleaseTest.class,
+        LocationProviderSourceTest.class})
 
 public class AllTest {
 
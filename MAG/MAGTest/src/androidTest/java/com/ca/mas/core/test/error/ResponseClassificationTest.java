@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.error;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.client.ServerClient;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.http.MAGResponseBody;
+import com.ca.mas.core.policy.ResponseClassification;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the classification of responses shared by the policies, and measures it against the lower-casing of a
+ * large error body the policies did before.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResponseClassificationTest {
+
+    private static final String TAG = ResponseClassificationTest.class.getSimpleName();
+
+    @Test
+    public void testErrorCode() throws Exception {
+        ResponseClassification classification = ResponseClassification.classify(response(401, "1000990", "{}"));
+        assertEquals(1000990, classification.getErrorCode());
+        assertTrue(classification.isErrorCodeEndingWith("990"));
+        assertFalse(classification.isErrorCodeEndingWith("201"));
+        assertTrue(classification.isClientError());
+
+        classification = ResponseClassification.classify(response(500, "not a number", "{}"));
+        assertEquals(-1, classification.getErrorCode());
+        assertFalse(classification.isErrorCodeEndingWith("990"));
+        assertTrue(classification.isServerError());
+
+        classification = ResponseClassification.classify(response(200, null, "{}"));
+        assertEquals(-1, classification.getErrorCode());
+        assertTrue(classification.isSuccessful());
+    }
+
+    @Test
+    public void testPolicyKeywords() throws Exception {
+        ResponseClassification classification = ResponseClassification.classify(
+                response(449, null, "{\"error_description\":\"Missing LOCATION data\"}"));
+        assertTrue(classification.isLocationRelated());
+        assertFalse(classification.isMsisdnRelated());
+
+        classification = ResponseClassification.classify(response(448, null, "{\"error_description\":\"Invalid Msisdn\"}"));
+        assertTrue(classification.isMsisdnRelated());
+        assertFalse(classification.isLocationRelated());
+
+        // Only the policy statuses are searched
+        classification = ResponseClassification.classify(response(400, null, "{\"error_description\":\"location\"}"));
+        assertFalse(classification.isLocationRelated());
+        assertFalse(ResponseClassification.classify(response(449, null, "locatio")).isLocationRelated());
+        assertFalse(ResponseClassification.classify(response(449, null, null)).isLocationRelated());
+    }
+
+    @Test
+    public void testLargeBodyBenchmark() throws Exception {
+        char[] filler = new char[1024 * 1024];
+        Arrays.fill(filler, 'X');
+        String body = new String(filler) + "location";
+        MAGResponse response = response(449, "1000123", body);
+        int iterations = 10;
+
+        long start = System.nanoTime();
+        boolean found = false;
+        for (int i = 0; i < iterations; i++) {
+            found = new String(response.getBody().getRawContent()).toLowerCase().contains("location");
+        }
+        long lowerCased = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            found &= ResponseClassification.classify(response).isLocationRelated();
+        }
+        long classified = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("1 MB error body: lower-cased %d us, classified %d us",
+                lowerCased / iterations / 1000, classified / iterations / 1000));
+        assertTrue(found);
+    }
+
+    private static MAGResponse response(final int statusCode, String errorCode, final String content) {
+        final Map<String, List<String>> headers = new HashMap<>();
+        if (errorCode != null) {
+            headers.put(ServerClient.X_CA_ERR, Collections.singletonList(errorCode));
+        }
+        final MAGResponseBody<byte[]> body = new MAGResponseBody<byte[]>() {
+            {
+                buffer = content == null ? null : content.getBytes();
+            }
+        };
+        return new MAGResponse<byte[]>() {
+            @Override
+            public Map<String, List<String>> getHeaders() {
+                return headers;
+            }
+
+            @Override
+            public int getResponseCode() {
+                return statusCode;
+            }
+
+            @Override
+            public String getResponseMessage() {
+                return null;
+            }
+
+            @Override
+            public MAGResponseBody<byte[]> getBody() {
+                return body;
+            }
+        };
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.ca.mas.core.cert.CertUtils;
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.io.http.PooledHttpTransport;
+import com.ca.mas.core.util.KeyUtils;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class ConnectionReuseTest {
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private MockWebServer mockWebServer;
+    private PooledHttpTransport transport;
+    private MAGHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyPair keyPair = KeyUtils.generateRsaKeyPair(2048);
+        X509Certificate certificate = CertUtils.generateSelfSignedCertificate("cn=localhost",
+                keyPair.getPublic(), keyPair.getPrivate(), new SecureRandom());
+
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("server", keyPair.getPrivate(), PASSWORD, new Certificate[]{certificate});
+        keyStore.setCertificateEntry("trusted", certificate);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, tmf.getTrustManagers(), null);
+
+        mockWebServer = new MockWebServer();
+        mockWebServer.useHttps(serverContext.getSocketFactory(), false);
+        mockWebServer.start();
+
+        transport = new PooledHttpTransport();
+        client = new MAGHttpClient(clientContext.getSocketFactory(), transport) {
+            @Override
+            protected void onConnectionObtained(HttpURLConnection connection) {
+                ((HttpsURLConnection) connection).setHostnameVerifier(new HostnameVerifier() {
+                    @Override
+                    public boolean verify(String hostname, SSLSession session) {
+                        return true;
+                    }
+                });
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.evictConnections();
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception {
+        execute();
+        assertEquals(0, mockWebServer.takeRequest().getSequenceNumber());
+        assertEquals(1, transport.getConnectionMissCount());
+        assertEquals(0, transport.getConnectionHitCount());
+
+        execute();
+        assertEquals(1, mockWebServer.takeRequest().getSequenceNumber());
+        assertEquals(1, transport.getConnectionMissCount());
+        assertEquals(1, transport.getConnectionHitCount());
+    }
+
+    @Test
+    public void testEvictAllClosesConnections() throws Exception {
+        execute();
+        assertEquals(0, mockWebServer.takeRequest().getSequenceNumber());
+
+        client.evictConnections();
+
+        execute();
+        assertEquals(0, mockWebServer.takeRequest().getSequenceNumber());
+        assertEquals(2, transport.getConnectionMissCount());
+    }
+
+    private void execute() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK).setBody("reuse"));
+        URL url = mockWebServer.getUrl("/reuse");
+        MAGRequest request = new MAGRequest.MAGRequestBuilder(url).get().build();
+        MAGResponse response = client.execute(request);
+        assertEquals(HttpURLConnection.HTTP_OK, response.getResponseCode());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.http;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.http.MAGResponseBody;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the peak heap used to read a 5 MB response with the buffered and the streaming response bodies.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResponseBodyMemoryTest {
+
+    private static final String TAG = ResponseBodyMemoryTest.class.getSimpleName();
+    private static final int PAYLOAD_SIZE = 5 * 1024 * 1024;
+
+    private MockWebServer mockWebServer;
+    private MAGHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        client = new MAGHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testStreamingUsesLessHeapThanBuffering() throws Exception {
+        long buffered = measure(new Task() {
+            @Override
+            public long run() throws Exception {
+                MAGResponse<byte[]> response = client.execute(request(MAGResponseBody.byteArrayBody()));
+                return response.getBody().getContent().length;
+            }
+        });
+
+        long streamed = measure(new Task() {
+            @Override
+            public long run() throws Exception {
+                MAGResponse<InputStream> response = client.execute(request(MAGResponseBody.streamBody()));
+                InputStream in = response.getBody().getContent();
+                long total = 0;
+                try {
+                    byte[] buf = new byte[8192];
+                    int got;
+                    while ((got = in.read(buf)) > 0) {
+                        total += got;
+                    }
+                } finally {
+                    in.close();
+                }
+                return total;
+            }
+        });
+
+        final long[] chunkedTotal = new long[1];
+        long chunked = measure(new Task() {
+            @Override
+            public long run() throws Exception {
+                client.execute(request(MAGResponseBody.chunkedBody(new MAGResponseBody.ChunkListener() {
+                    @Override
+                    public void onChunk(byte[] buffer, int offset, int length) throws IOException {
+                        chunkedTotal[0] += length;
+                    }
+                })));
+                return chunkedTotal[0];
+            }
+        });
+
+        Log.i(TAG, "Peak heap growth for a " + PAYLOAD_SIZE + " byte response: buffered=" + buffered
+                + " streamed=" + streamed + " chunked=" + chunked);
+        assertTrue(buffered >= PAYLOAD_SIZE);
+        assertTrue(streamed < buffered);
+        assertTrue(chunked < buffered);
+    }
+
+    private void enqueuePayload() {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        Arrays.fill(payload, (byte) 'a');
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .setHeader("Content-Type", "application/octet-stream")
+                .setBody(new Buffer().write(payload)));
+    }
+
+    private MAGRequest request(MAGResponseBody<?> responseBody) throws Exception {
+        return new MAGRequest.MAGRequestBuilder(mockWebServer.getUrl("/payload"))
+                .responseBody(responseBody)
+                .get().build();
+    }
+
+    /**
+     * Run the task and return the peak heap growth observed while it was running.  The payload itself is
+     * enqueued on the server before sampling starts.
+     */
+    private long measure(final Task task) throws Exception {
+        enqueuePayload();
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+
+        final AtomicLong peak = new AtomicLong(baseline);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    if (used > peak.get()) {
+                        peak.set(used);
+                    }
+                    Thread.yield();
+                }
+            }
+        });
+        sampler.start();
+        long total;
+        try {
+            total = task.run();
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        assertEquals(PAYLOAD_SIZE, total);
+        return peak.get() - baseline;
+    }
+
+    private interface Task {
+        long run() throws Exception;
+    }
+}
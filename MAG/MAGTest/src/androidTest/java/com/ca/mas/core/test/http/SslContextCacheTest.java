@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.http;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Base64;
+
+import com.ca.mas.core.cert.CertUtils;
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.io.http.PooledHttpTransport;
+import com.ca.mas.core.io.ssl.MAGSocketFactory;
+import com.ca.mas.core.util.KeyUtils;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the SSL contexts built by {@link MAGSocketFactory} are reused until the cache is cleared, and that a
+ * reused context resumes the TLS session of its previous connection instead of performing a full handshake.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SslContextCacheTest {
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private Context context;
+    private MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        KeyPair keyPair = KeyUtils.generateRsaKeyPair(2048);
+        X509Certificate certificate = CertUtils.generateSelfSignedCertificate("cn=localhost",
+                keyPair.getPublic(), keyPair.getPrivate(), new SecureRandom());
+
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("server", keyPair.getPrivate(), PASSWORD, new Certificate[]{certificate});
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        mockWebServer = new MockWebServer();
+        mockWebServer.useHttps(serverContext.getSocketFactory(), false);
+        mockWebServer.start();
+
+        // Trust the mock server's certificate through the gateway configuration, as MAGSocketFactory does
+        ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+        configurationManager.init(context);
+        InputStream is = context.getAssets().open(configurationManager.getConfigurationFileName());
+        JSONObject config = configurationManager.getConfig(is);
+        config.getJSONObject("server").put("server_certs",
+                new JSONArray().put(Base64.encodeToString(certificate.getEncoded(), Base64.NO_WRAP)));
+        configurationManager.activate(config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+        ConfigurationManager.getInstance().activateDefault();
+    }
+
+    @Test
+    public void testContextReusedUntilCleared() throws Exception {
+        MAGSocketFactory.clearCache();
+        long hits = MAGSocketFactory.getContextCacheHitCount();
+        long misses = MAGSocketFactory.getContextCacheMissCount();
+
+        SSLSocketFactory first = new MAGSocketFactory(context).createSSLSocketFactory();
+        SSLSocketFactory second = new MAGSocketFactory(context).createSSLSocketFactory();
+        assertSame(first, second);
+        assertEquals(misses + 1, MAGSocketFactory.getContextCacheMissCount());
+        assertEquals(hits + 1, MAGSocketFactory.getContextCacheHitCount());
+
+        MAGSocketFactory.clearCache();
+        assertNotSame(first, new MAGSocketFactory(context).createSSLSocketFactory());
+        assertEquals(misses + 2, MAGSocketFactory.getContextCacheMissCount());
+    }
+
+    @Test
+    public void testSessionResumed() throws Exception {
+        MAGSocketFactory.clearCache();
+        long resumed = MAGSocketFactory.getResumedHandshakeCount();
+        long full = MAGSocketFactory.getFullHandshakeCount();
+
+        // A new client on a new connection, as when the HTTP client is replaced after device registration
+        execute(new MAGSocketFactory(context).createSSLSocketFactory());
+        awaitHandshakes(resumed + full + 1);
+        assertEquals(full + 1, MAGSocketFactory.getFullHandshakeCount());
+
+        execute(new MAGSocketFactory(context).createSSLSocketFactory());
+        awaitHandshakes(resumed + full + 2);
+        assertEquals(resumed + 1, MAGSocketFactory.getResumedHandshakeCount());
+
+        // Once cleared, the session of the discarded context is not resumed
+        MAGSocketFactory.clearCache();
+        execute(new MAGSocketFactory(context).createSSLSocketFactory());
+        awaitHandshakes(resumed + full + 3);
+        assertEquals(full + 2, MAGSocketFactory.getFullHandshakeCount());
+    }
+
+    private void execute(SSLSocketFactory socketFactory) throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport();
+        MAGHttpClient client = new MAGHttpClient(socketFactory, transport) {
+            @Override
+            protected void onConnectionObtained(HttpURLConnection connection) {
+                ((HttpsURLConnection) connection).setHostnameVerifier(new HostnameVerifier() {
+                    @Override
+                    public boolean verify(String hostname, SSLSession session) {
+                        return true;
+                    }
+                });
+            }
+        };
+        try {
+            mockWebServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK).setBody("tls"));
+            URL url = mockWebServer.getUrl("/tls");
+            MAGRequest request = new MAGRequest.MAGRequestBuilder(url).get().build();
+            MAGResponse response = client.execute(request);
+            assertEquals(HttpURLConnection.HTTP_OK, response.getResponseCode());
+        } finally {
+            client.evictConnections();
+        }
+    }
+
+    private static void awaitHandshakes(long handshakes) throws InterruptedException {
+        // Handshake listeners may be notified after the response was read
+        long deadline = System.currentTimeMillis() + 5000;
+        while (MAGSocketFactory.getResumedHandshakeCount() + MAGSocketFactory.getFullHandshakeCount() < handshakes) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
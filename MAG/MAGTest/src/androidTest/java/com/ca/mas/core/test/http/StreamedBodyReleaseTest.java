@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.MAGHttpTransport;
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.http.MAGResponseBody;
+import com.ca.mas.core.io.http.PooledHttpTransport;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks the connection of a streamed response is released when the response is discarded without its content
+ * being read, and that closing a buffered response has no effect.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StreamedBodyReleaseTest {
+
+    private MockWebServer mockWebServer;
+    private CountingTransport transport;
+    private MAGHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        transport = new CountingTransport();
+        client = new MAGHttpClient(null, transport);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.evictConnections();
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testDiscardedStreamReleasesConnection() throws Exception {
+        MAGResponse<InputStream> response = client.execute(request(MAGResponseBody.streamBody()));
+        assertEquals(HttpURLConnection.HTTP_OK, response.getResponseCode());
+        assertEquals(0, transport.released.get());
+
+        response.getBody().close();
+        assertEquals(1, transport.released.get());
+        assertEquals(0, transport.reused.get());
+
+        // Closing again, or closing the stream afterwards, does not release the connection twice
+        response.getBody().close();
+        response.getBody().getContent().close();
+        assertEquals(1, transport.released.get());
+    }
+
+    @Test
+    public void testBufferedBodyCloseIgnored() throws Exception {
+        MAGResponse<byte[]> response = client.execute(request(MAGResponseBody.byteArrayBody()));
+        assertEquals(1, transport.released.get());
+
+        response.getBody().close();
+        assertEquals(1, transport.released.get());
+        assertEquals("stream", new String(response.getBody().getContent(), "UTF-8"));
+    }
+
+    private MAGRequest request(MAGResponseBody<?> responseBody) throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK).setBody("stream"));
+        return new MAGRequest.MAGRequestBuilder(mockWebServer.getUrl("/stream"))
+                .responseBody(responseBody)
+                .get().build();
+    }
+
+    private static class CountingTransport implements MAGHttpTransport {
+
+        private final PooledHttpTransport delegate = new PooledHttpTransport();
+        private final AtomicInteger released = new AtomicInteger();
+        private final AtomicInteger reused = new AtomicInteger();
+
+        @Override
+        public HttpURLConnection open(URL url, SSLSocketFactory sslSocketFactory) throws IOException {
+            return delegate.open(url, sslSocketFactory);
+        }
+
+        @Override
+        public void release(HttpURLConnection connection, boolean reusable) {
+            released.incrementAndGet();
+            if (reusable) {
+                reused.incrementAndGet();
+            }
+            delegate.release(connection, reusable);
+        }
+
+        @Override
+        public void evictAll() {
+            delegate.evictAll();
+        }
+    }
+}
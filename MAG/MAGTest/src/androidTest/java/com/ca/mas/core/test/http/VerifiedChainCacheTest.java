@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.http;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.cert.CertUtils;
+import com.ca.mas.core.cert.PublicKeyHash;
+import com.ca.mas.core.cert.TrustedCertificateConfiguration;
+import com.ca.mas.core.io.http.TrustedCertificateConfigurationTrustManager;
+import com.ca.mas.core.util.KeyUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks the trust manager accepts a server chain it verified before without verifying it again, never remembers
+ * a rejected chain, and forgets the verified chains when they are invalidated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VerifiedChainCacheTest {
+
+    private static final String TAG = VerifiedChainCacheTest.class.getSimpleName();
+    private static final String AUTH_TYPE = "RSA";
+
+    private X509Certificate[] trusted;
+    private X509Certificate[] untrusted;
+    private TrustedCertificateConfigurationTrustManager trustManager;
+
+    @Before
+    public void setUp() throws Exception {
+        trusted = new X509Certificate[]{selfSigned()};
+        untrusted = new X509Certificate[]{selfSigned()};
+        trustManager = new TrustedCertificateConfigurationTrustManager(new TrustedCertificateConfiguration() {
+            @Override
+            public Collection<X509Certificate> getTrustedCertificateAnchors() {
+                return Collections.singletonList(trusted[0]);
+            }
+
+            @Override
+            public boolean isAlsoTrustPublicPki() {
+                return false;
+            }
+
+            @Override
+            public Collection<PublicKeyHash> getTrustedCertificatePinnedPublicKeyHashes() {
+                return Collections.singletonList(PublicKeyHash.fromPublicKey(trusted[0].getPublicKey()));
+            }
+        });
+    }
+
+    @Test
+    public void testVerifiedOnce() throws Exception {
+        long hits = TrustedCertificateConfigurationTrustManager.getVerifiedChainHitCount();
+        long misses = TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount();
+
+        for (int i = 0; i < 3; i++) {
+            trustManager.checkServerTrusted(trusted, AUTH_TYPE);
+        }
+        assertEquals(hits + 2, TrustedCertificateConfigurationTrustManager.getVerifiedChainHitCount());
+        assertEquals(misses + 1, TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount());
+
+        // A different auth type is verified on its own
+        trustManager.checkServerTrusted(trusted, "ECDHE_RSA");
+        assertEquals(misses + 2, TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount());
+    }
+
+    @Test
+    public void testRejectedNotRemembered() throws Exception {
+        long misses = TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount();
+        for (int i = 0; i < 2; i++) {
+            try {
+                trustManager.checkServerTrusted(untrusted, AUTH_TYPE);
+                fail("Untrusted chain accepted");
+            } catch (CertificateException e) {
+                // Expected
+            }
+        }
+        assertEquals(misses + 2, TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        trustManager.checkServerTrusted(trusted, AUTH_TYPE);
+        long hits = TrustedCertificateConfigurationTrustManager.getVerifiedChainHitCount();
+        long misses = TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount();
+
+        TrustedCertificateConfigurationTrustManager.invalidateVerifiedChains();
+        trustManager.checkServerTrusted(trusted, AUTH_TYPE);
+        assertEquals(hits, TrustedCertificateConfigurationTrustManager.getVerifiedChainHitCount());
+        assertEquals(misses + 1, TrustedCertificateConfigurationTrustManager.getVerifiedChainMissCount());
+
+        trustManager.checkServerTrusted(trusted, AUTH_TYPE);
+        assertEquals(hits + 1, TrustedCertificateConfigurationTrustManager.getVerifiedChainHitCount());
+    }
+
+    @Test
+    public void testHandshakeCheckBenchmark() throws Exception {
+        int iterations = 100;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            TrustedCertificateConfigurationTrustManager.invalidateVerifiedChains();
+            trustManager.checkServerTrusted(trusted, AUTH_TYPE);
+        }
+        long verified = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            trustManager.checkServerTrusted(trusted, AUTH_TYPE);
+        }
+        long remembered = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("Server chain check: verified %d us, remembered %d us",
+                verified / iterations / 1000, remembered / iterations / 1000));
+    }
+
+    private static X509Certificate selfSigned() throws Exception {
+        KeyPair keyPair = KeyUtils.generateRsaKeyPair(2048);
+        return CertUtils.generateSelfSignedCertificate("cn=localhost", keyPair.getPublic(), keyPair.getPrivate(),
+                new SecureRandom());
+    }
+}
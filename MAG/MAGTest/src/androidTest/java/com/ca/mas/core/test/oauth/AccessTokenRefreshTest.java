@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.oauth;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.MAGResultReceiver;
+import com.ca.mas.core.error.MAGError;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.policy.AccessTokenRefreshScheduler;
+import com.ca.mas.core.request.internal.OAuthTokenRequest;
+import com.ca.mas.core.test.BaseTest;
+import com.ca.mas.core.test.DefaultDispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Moves the clock of the {@link AccessTokenRefreshScheduler} to just before the expiry of the access token, and checks
+ * the token is refreshed in the background, once, and used by the following requests without waiting for the token
+ * endpoint.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AccessTokenRefreshTest extends BaseTest {
+
+    private static final String TAG = AccessTokenRefreshTest.class.getSimpleName();
+    private static final long EXPIRES_IN_SECONDS = 3600;
+    // Within the default refresh skew of 60 seconds
+    private static final long BEFORE_EXPIRY_MILLIS = (EXPIRES_IN_SECONDS - 30) * 1000;
+
+    private final AtomicLong offset = new AtomicLong();
+    private final AtomicInteger tokenGrants = new AtomicInteger();
+    private final List<String> refreshGrants = new CopyOnWriteArrayList<>();
+    private volatile long refreshDelayMillis;
+    private volatile long refreshedExpiresIn = EXPIRES_IN_SECONDS * 2;
+    private volatile boolean offline;
+    private AccessTokenRefreshScheduler scheduler;
+
+    @Before
+    public void setUpRefresh() throws Exception {
+        scheduler = AccessTokenRefreshScheduler.getInstance();
+        ssg.setDispatcher(new DefaultDispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (!request.getPath().contains(AUTH_OAUTH_V2_TOKEN)) {
+                    return super.dispatch(request);
+                }
+                String form = request.getBody().readUtf8();
+                if (!form.contains("grant_type=refresh_token")) {
+                    return token("token-" + tokenGrants.incrementAndGet(), "refresh-1", EXPIRES_IN_SECONDS);
+                }
+                if (offline) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+                }
+                refreshGrants.add(form);
+                Thread.sleep(refreshDelayMillis);
+                // Long enough to stay valid once the clock is moved past the first token's expiry
+                return token("refreshed-" + refreshGrants.size(), "refresh-2", refreshedExpiresIn);
+            }
+        });
+    }
+
+    @After
+    public void resetClock() throws Exception {
+        scheduler.setClock(null);
+    }
+
+    @Test
+    public void testRefreshAheadOfExpiry() throws Exception {
+        assertEquals("token-1", requestAccessToken());
+        long refreshes = scheduler.getRefreshCount();
+
+        useClock(BEFORE_EXPIRY_MILLIS);
+        // Still valid, and schedules the refresh against the new clock
+        assertEquals("token-1", requestAccessToken());
+        waitForRefresh(refreshes + 1);
+
+        long start = System.nanoTime();
+        assertEquals("refreshed-1", requestAccessToken());
+        Log.i(TAG, String.format("Request after the background refresh: %d ms", (System.nanoTime() - start) / 1000000));
+        assertEquals(1, refreshGrants.size());
+        assertTrue(refreshGrants.get(0).contains("refresh_token=refresh-1"));
+        assertEquals(1, tokenGrants.get());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareRefresh() throws Exception {
+        assertEquals("token-1", requestAccessToken());
+        refreshDelayMillis = 1000;
+
+        useClock(BEFORE_EXPIRY_MILLIS);
+        assertEquals("token-1", requestAccessToken());
+        // The first token expired for the requests while the background refresh is in progress
+        offset.set((EXPIRES_IN_SECONDS + 1) * 1000);
+
+        int requests = 4;
+        final CountDownLatch done = new CountDownLatch(requests);
+        final List<String> tokens = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            mobileSso.processRequest(new OAuthTokenRequest(), new MAGResultReceiver<JSONObject>() {
+                @Override
+                public void onSuccess(MAGResponse<JSONObject> response) {
+                    try {
+                        tokens.add(response.getBody().getContent().getString("accesstoken"));
+                    } catch (JSONException e) {
+                        tokens.add(e.toString());
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(MAGError error) {
+                    tokens.add(error.toString());
+                    done.countDown();
+                }
+
+                @Override
+                public void onRequestCancelled() {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        for (String token : tokens) {
+            assertEquals("refreshed-1", token);
+        }
+        assertEquals(1, refreshGrants.size());
+        assertEquals(1, tokenGrants.get());
+    }
+
+    @Test
+    public void testRefreshRetriedWhenOffline() throws Exception {
+        assertEquals("token-1", requestAccessToken());
+        long refreshes = scheduler.getRefreshCount();
+        long failures = scheduler.getFailureCount();
+        offline = true;
+
+        useClock(BEFORE_EXPIRY_MILLIS);
+        assertEquals("token-1", requestAccessToken());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.getFailureCount() == failures) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        // Back online before the retry
+        offline = false;
+        waitForRefresh(refreshes + 1);
+
+        assertEquals(failures + 1, scheduler.getFailureCount());
+        // The refresh token was kept when the gateway could not be reached
+        assertEquals(1, refreshGrants.size());
+        assertTrue(refreshGrants.get(0).contains("refresh_token=refresh-1"));
+        assertEquals("refreshed-1", requestAccessToken());
+    }
+
+    @Test
+    public void testShortLivedTokenNotRefreshedInLoop() throws Exception {
+        assertEquals("token-1", requestAccessToken());
+        long refreshes = scheduler.getRefreshCount();
+        // Shorter than the 60 seconds skew
+        refreshedExpiresIn = 20;
+
+        useClock(BEFORE_EXPIRY_MILLIS);
+        assertEquals("token-1", requestAccessToken());
+        waitForRefresh(refreshes + 1);
+
+        // The refreshed token is refreshed half way through its lifetime, not right away
+        Thread.sleep(2000);
+        assertEquals(refreshes + 1, scheduler.getRefreshCount());
+        assertEquals(1, refreshGrants.size());
+    }
+
+    @Test
+    public void testLogoutDuringRefresh() throws Exception {
+        assertEquals("token-1", requestAccessToken());
+        long refreshes = scheduler.getRefreshCount();
+        refreshDelayMillis = 1000;
+
+        useClock(BEFORE_EXPIRY_MILLIS);
+        assertEquals("token-1", requestAccessToken());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (refreshGrants.isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+
+        // Log out while the gateway is answering the refresh
+        mobileSso.logout(false);
+        Thread.sleep(refreshDelayMillis * 2);
+
+        // The refreshed token was discarded instead of restoring the session
+        assertFalse(mobileSso.isAppLogon());
+        assertEquals(refreshes, scheduler.getRefreshCount());
+    }
+
+    private void useClock(long offsetMillis) {
+        offset.set(offsetMillis);
+        scheduler.setClock(new AccessTokenRefreshScheduler.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis() + offset.get();
+            }
+        });
+    }
+
+    private void waitForRefresh(long refreshes) throws InterruptedException {
+        // A retry after a failure waits for the minimum backoff of 5 seconds
+        long deadline = System.currentTimeMillis() + 15000;
+        while (scheduler.getRefreshCount() < refreshes) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private String requestAccessToken() throws Exception {
+        response = null;
+        error = null;
+        processRequest(new OAuthTokenRequest());
+        return ((JSONObject) response.getBody().getContent()).getString("accesstoken");
+    }
+
+    private static MockResponse token(String accessToken, String refreshToken, long expiresIn) {
+        String token = "{\n" +
+                "  \"access_token\":\"" + accessToken + "\",\n" +
+                "  \"token_type\":\"Bearer\",\n" +
+                "  \"expires_in\":" + expiresIn + ",\n" +
+                "  \"refresh_token\":\"" + refreshToken + "\",\n" +
+                "  \"scope\":\"openid msso phone profile address email\"\n" +
+                "}";
+        return new MockResponse().setResponseCode(200).setBody(token);
+    }
+}
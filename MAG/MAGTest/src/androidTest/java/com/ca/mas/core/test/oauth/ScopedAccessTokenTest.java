@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.oauth;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.oauth.ScopeSet;
+import com.ca.mas.core.store.ScopedAccessTokenCache;
+import com.ca.mas.core.test.BaseTest;
+import com.ca.mas.core.test.DefaultDispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Alternates requests of different scopes and checks the token granted for each scope is obtained once, and that
+ * the cheapest covering token is selected and the least recently used evicted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScopedAccessTokenTest extends BaseTest {
+
+    private static final String TAG = ScopedAccessTokenTest.class.getSimpleName();
+    private static final ScopeSet RESERVED = ScopeSet.parse("openid msso");
+
+    @Test
+    public void testAlternatingScopes() throws Exception {
+        assumeMockServer();
+        final AtomicInteger tokenGrants = new AtomicInteger();
+        ssg.setDispatcher(new DefaultDispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (!request.getPath().contains(AUTH_OAUTH_V2_TOKEN)) {
+                    return super.dispatch(request);
+                }
+                // Grant the requested scope
+                String scope = "";
+                try {
+                    for (String param : request.getBody().readUtf8().split("&")) {
+                        if (param.startsWith("scope=")) {
+                            scope = URLDecoder.decode(param.substring("scope=".length()), "UTF-8");
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                String token = "{\n" +
+                        "  \"access_token\":\"token-" + tokenGrants.incrementAndGet() + "\",\n" +
+                        "  \"token_type\":\"Bearer\",\n" +
+                        "  \"expires_in\":3600,\n" +
+                        "  \"refresh_token\":\"19785fca-4b86-4f8e-a73c-7de1d420f88d\",\n" +
+                        "  \"scope\":\"" + scope + "\"\n" +
+                        "}";
+                return new MockResponse().setResponseCode(200).setBody(token);
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            for (String scope : new String[]{"read", "write"}) {
+                MAGRequest request = new MAGRequest.MAGRequestBuilder(getURI(DefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS))
+                        .scope(scope).build();
+                response = null;
+                error = null;
+                processRequest(request);
+                assertEquals(HttpURLConnection.HTTP_OK, response.getResponseCode());
+            }
+        }
+        assertEquals(2, tokenGrants.get());
+    }
+
+    @Test
+    public void testCheapestToken() throws Exception {
+        ScopedAccessTokenCache cache = new ScopedAccessTokenCache(4);
+        cache.put(token("wide", "read write admin", 0));
+        cache.put(token("narrow", "read", 0));
+        cache.put(token("client", "read write", 0, null));
+
+        assertEquals("narrow", cache.find(ScopeSet.parse("openid read"), RESERVED, true, 0).accessToken);
+        assertEquals("client", cache.find(ScopeSet.parse("write"), RESERVED, false, 0).accessToken);
+        // The client credential token is not used for the password grant
+        assertEquals("wide", cache.find(ScopeSet.parse("write"), RESERVED, true, 0).accessToken);
+        assertNull(cache.find(ScopeSet.parse("delete"), RESERVED, false, 0));
+    }
+
+    @Test
+    public void testExpiryAndEviction() throws Exception {
+        ScopedAccessTokenCache cache = new ScopedAccessTokenCache(2);
+        cache.put(token("expired", "read", 1000));
+        assertNull(cache.find(ScopeSet.parse("read"), RESERVED, true, 2000));
+        assertEquals(0, cache.size());
+
+        cache.put(token("read", "read", 0));
+        cache.put(token("write", "write", 0));
+        // Used last, so kept when a third token is added
+        cache.find(ScopeSet.parse("read"), RESERVED, true, 0);
+        cache.put(token("admin", "admin", 0));
+
+        assertEquals(2, cache.size());
+        assertEquals("read", cache.find(ScopeSet.parse("read"), RESERVED, true, 0).accessToken);
+        assertNull(cache.find(ScopeSet.parse("write"), RESERVED, true, 0));
+        assertTrue(cache.remove("admin"));
+        assertFalse(cache.remove("admin"));
+    }
+
+    @Test
+    public void testScopeSet() throws Exception {
+        assertTrue(ScopeSet.parse(" read  write ").covers(ScopeSet.parse("write read")));
+        assertTrue(ScopeSet.parse("read").covers(ScopeSet.parse("openid read msso"), RESERVED));
+        assertFalse(ScopeSet.parse("read").covers(ScopeSet.parse("read write")));
+        assertTrue(ScopeSet.parse("read") == ScopeSet.parse("read"));
+        assertTrue(ScopeSet.parse(null).isEmpty());
+
+        // More scope names than bits
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 80; i++) {
+            many.append("scope").append(i).append(' ');
+        }
+        ScopeSet granted = ScopeSet.parse(many.toString());
+        assertTrue(granted.covers(ScopeSet.parse("scope79 scope1")));
+        assertFalse(granted.covers(ScopeSet.parse("scope79 other")));
+    }
+
+    @Test
+    public void testScopeCheckBenchmark() throws Exception {
+        String granted = "openid msso phone profile address email read write";
+        String requested = "openid read write";
+        int iterations = 100000;
+
+        long start = System.nanoTime();
+        boolean covered = false;
+        for (int i = 0; i < iterations; i++) {
+            List<String> r = new ArrayList<>(Arrays.asList(requested.trim().split("\\s+")));
+            r.remove("openid");
+            covered = Arrays.asList(granted.split("\\s+")).containsAll(r);
+        }
+        long split = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            covered &= ScopeSet.parse(granted).covers(ScopeSet.parse(requested), RESERVED);
+        }
+        long parsed = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("Scope check: split %d ns, pre-parsed %d ns", split / iterations, parsed / iterations));
+        assertTrue(covered);
+        assertTrue(parsed < split);
+    }
+
+    private static ScopedAccessTokenCache.Token token(String accessToken, String scope, long expiry) {
+        return token(accessToken, scope, expiry, "refresh");
+    }
+
+    private static ScopedAccessTokenCache.Token token(String accessToken, String scope, long expiry, String refreshToken) {
+        return new ScopedAccessTokenCache.Token(accessToken, refreshToken, expiry, ScopeSet.parse(scope));
+    }
+}
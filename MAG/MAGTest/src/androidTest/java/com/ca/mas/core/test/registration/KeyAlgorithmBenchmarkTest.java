@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.registration;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.cert.CertUtils;
+import com.ca.mas.core.util.KeyUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the cost of the client key pairs on the device, RSA 2048 and EC P-256: generating the key pair, signing
+ * the certificate signing request of the registration, and signing the handshake of the mutual TLS connections.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyAlgorithmBenchmarkTest {
+
+    private static final String TAG = KeyAlgorithmBenchmarkTest.class.getSimpleName();
+    private static final int RSA_KEY_BITS = 2048;
+    private static final int KEY_PAIRS = 3;
+    private static final int SIGNATURES = 50;
+
+    @Test
+    public void testKeyPairGeneration() throws Exception {
+        long rsa = generate(KeyUtils.RSA);
+        long ec = generate(KeyUtils.EC);
+        Log.i(TAG, String.format("Key pair generation: RSA %d %d ms, EC P-256 %d ms",
+                RSA_KEY_BITS, rsa / 1000000, ec / 1000000));
+    }
+
+    @Test
+    public void testCertificateSigningRequest() throws Exception {
+        KeyPair rsaKeyPair = KeyUtils.generateKeyPair(KeyUtils.RSA, RSA_KEY_BITS);
+        KeyPair ecKeyPair = KeyUtils.generateKeyPair(KeyUtils.EC, RSA_KEY_BITS);
+
+        long start = System.nanoTime();
+        byte[] rsaCsr = CertUtils.generateCertificateSigningRequest("user", "device", "name", "org", rsaKeyPair);
+        long rsa = System.nanoTime() - start;
+        start = System.nanoTime();
+        byte[] ecCsr = CertUtils.generateCertificateSigningRequest("user", "device", "name", "org", ecKeyPair);
+        long ec = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("Certificate signing request: RSA %d us, %d bytes; EC P-256 %d us, %d bytes",
+                rsa / 1000, rsaCsr.length, ec / 1000, ecCsr.length));
+        assertTrue(ecCsr.length < rsaCsr.length);
+    }
+
+    @Test
+    public void testHandshakeSignature() throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest("handshake".getBytes());
+        long rsa = sign("SHA256withRSA", KeyUtils.generateKeyPair(KeyUtils.RSA, RSA_KEY_BITS), hash);
+        long ec = sign("SHA256withECDSA", KeyUtils.generateKeyPair(KeyUtils.EC, RSA_KEY_BITS), hash);
+        Log.i(TAG, String.format("Handshake signature: RSA %d us, EC P-256 %d us",
+                rsa / SIGNATURES / 1000, ec / SIGNATURES / 1000));
+    }
+
+    @Test
+    public void testStoredKeyPair() throws Exception {
+        for (String algorithm : new String[]{KeyUtils.RSA, KeyUtils.EC}) {
+            KeyPair keyPair = KeyUtils.generateKeyPair(algorithm, 1024);
+            PublicKey publicKey = KeyUtils.decodePublicKey(KeyUtils.encodePublicKey(keyPair.getPublic()));
+            PrivateKey privateKey = KeyUtils.decodePrivateKey(KeyUtils.encodePrivateKey(keyPair.getPrivate()),
+                    publicKey.getAlgorithm());
+            assertEquals(algorithm, publicKey.getAlgorithm());
+            assertTrue(Arrays.equals(keyPair.getPublic().getEncoded(), publicKey.getEncoded()));
+            assertTrue(Arrays.equals(keyPair.getPrivate().getEncoded(), privateKey.getEncoded()));
+        }
+    }
+
+    private static long generate(String algorithm) {
+        long start = System.nanoTime();
+        for (int i = 0; i < KEY_PAIRS; i++) {
+            KeyUtils.generateKeyPair(algorithm, RSA_KEY_BITS);
+        }
+        return (System.nanoTime() - start) / KEY_PAIRS;
+    }
+
+    private static long sign(String algorithm, KeyPair keyPair, byte[] hash) throws Exception {
+        Signature signature = Signature.getInstance(algorithm);
+        byte[] signed = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < SIGNATURES; i++) {
+            signature.initSign(keyPair.getPrivate());
+            signature.update(hash);
+            signed = signature.sign();
+        }
+        long elapsed = System.nanoTime() - start;
+        signature.initVerify(keyPair.getPublic());
+        signature.update(hash);
+        assertTrue(signature.verify(signed));
+        return elapsed;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.registration;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.MobileSsoFactory;
+import com.ca.mas.core.conf.ConfigurationProvider;
+import com.ca.mas.core.registration.KeyPairProvisioner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the time the registration spends getting its key pair when it was provisioned ahead with the time to
+ * generate it, and checks the hit and miss counts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyPairProvisionerTest {
+
+    private static final String TAG = KeyPairProvisionerTest.class.getSimpleName();
+
+    private ConfigurationProvider configurationProvider;
+    private KeyPairProvisioner provisioner;
+
+    @Before
+    public void setUp() throws Exception {
+        configurationProvider = MobileSsoFactory.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext())
+                .getConfigurationProvider();
+        provisioner = KeyPairProvisioner.getInstance();
+        // Take the key pair provisioned when the SDK started, if any
+        provisioner.take(configurationProvider);
+    }
+
+    @Test
+    public void testProvisionedKeyPair() throws Exception {
+        long hits = provisioner.getHitCount();
+        long misses = provisioner.getMissCount();
+
+        long start = System.nanoTime();
+        KeyPair generated = provisioner.take(configurationProvider);
+        long generateTime = System.nanoTime() - start;
+        assertEquals(misses + 1, provisioner.getMissCount());
+
+        provisioner.provision(configurationProvider);
+        // Leave the background thread the time to generate the key pair
+        Thread.sleep(generateTime / 1000000 * 4 + 200);
+        start = System.nanoTime();
+        KeyPair provisioned = provisioner.take(configurationProvider);
+        long takeTime = System.nanoTime() - start;
+        assertEquals(hits + 1, provisioner.getHitCount());
+
+        Integer keyBits = configurationProvider.getProperty(ConfigurationProvider.PROP_CLIENT_CERT_RSA_KEYBITS);
+        assertEquals(keyBits.intValue(), ((RSAPublicKey) provisioned.getPublic()).getModulus().bitLength());
+        assertFalse(generated.getPublic().equals(provisioned.getPublic()));
+
+        Log.i(TAG, String.format("Key pair for the registration: generated %d ms, provisioned %d us",
+                generateTime / 1000000, takeTime / 1000));
+        assertTrue(takeTime < generateTime);
+    }
+
+    @Test
+    public void testKeyPairTakenOnce() throws Exception {
+        provisioner.provision(configurationProvider);
+        // Provisioning again keeps the key pair being generated
+        provisioner.provision(configurationProvider);
+        long hits = provisioner.getHitCount();
+        long misses = provisioner.getMissCount();
+
+        KeyPair first = provisioner.take(configurationProvider);
+        KeyPair second = provisioner.take(configurationProvider);
+
+        assertEquals(hits + 1, provisioner.getHitCount());
+        assertEquals(misses + 1, provisioner.getMissCount());
+        assertFalse(first.getPublic().equals(second.getPublic()));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.storage;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Base64;
+import android.util.Log;
+
+import com.ca.mas.core.storage.Storage;
+import com.ca.mas.core.storage.StorageResult;
+import com.ca.mas.core.storage.implementation.AMSSManager;
+import com.ca.mas.core.storage.implementation.MASStorageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Exercises the key index of the account manager storage with 1,000 keys, and the single blob index of previous
+ * versions, kept for the apps sharing the account.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AccountManagerStorageIndexTest {
+
+    private static final String TAG = AccountManagerStorageIndexTest.class.getSimpleName();
+    private static final int KEYS = 1000;
+
+    private static final String LEGACY_INDEX = "lookup_index";
+
+    private Context context;
+    private AccountManager am;
+    private Account account;
+    private Storage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        am = AccountManager.get(context);
+        account = AMSSManager.getInstance(context).getAccount();
+        storage = newStorage();
+        storage.deleteAll();
+        am.setUserData(account, LEGACY_INDEX, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.deleteAll();
+        am.setUserData(account, LEGACY_INDEX, null);
+    }
+
+    @Test
+    public void testWriteAndDelete1000Keys() throws Exception {
+        byte[] value = "value".getBytes("UTF-8");
+
+        long firstTenth = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(StorageResult.StorageOperationStatus.SUCCESS, storage.writeData("key" + i, value).getStatus());
+            if (i == KEYS / 10 - 1) {
+                firstTenth = (System.nanoTime() - start) / (KEYS / 10);
+            }
+        }
+        long writeAll = System.nanoTime() - start;
+
+        List<String> keys = (List<String>) storage.getAllKeys().getData();
+        assertEquals(KEYS, keys.size());
+
+        start = System.nanoTime();
+        StorageResult result = storage.deleteAll();
+        long deleteAll = System.nanoTime() - start;
+        assertEquals(StorageResult.StorageOperationStatus.SUCCESS, result.getStatus());
+        assertEquals(KEYS, result.getData());
+        assertTrue(((List<String>) storage.getAllKeys().getData()).isEmpty());
+
+        long average = writeAll / KEYS;
+        Log.i(TAG, String.format("Writing %d keys: %d ms, %d us/key (first %d keys: %d us/key); deleteAll: %d ms",
+                KEYS, writeAll / 1000000, average / 1000, KEYS / 10, firstTenth / 1000, deleteAll / 1000000));
+        // With an index rewritten on each write, the later writes would be an order of magnitude slower
+        assertTrue(average < firstTenth * 4);
+    }
+
+    @Test
+    public void testLegacyIndexKept() throws Exception {
+        StringBuilder blob = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            String encodedKey = encode("legacy" + i);
+            am.setUserData(account, encodedKey, Base64.encodeToString(("value" + i).getBytes("UTF-8"), Base64.DEFAULT));
+            if (blob.length() > 0) {
+                blob.append(':');
+            }
+            blob.append(encodedKey);
+        }
+        am.setUserData(account, LEGACY_INDEX, blob.toString());
+
+        Storage shared = newStorage();
+        List<String> keys = (List<String>) shared.getAllKeys().getData();
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains("legacy0") && keys.contains("legacy1") && keys.contains("legacy2"));
+        assertEquals(blob.toString(), am.getUserData(account, LEGACY_INDEX));
+
+        // Keys added and removed here are visible to the apps of a previous version
+        assertEquals(StorageResult.StorageOperationStatus.SUCCESS, shared.deleteData("legacy1").getStatus());
+        assertEquals(StorageResult.StorageOperationStatus.SUCCESS,
+                shared.writeData("current", "value".getBytes("UTF-8")).getStatus());
+        List<String> legacy = Arrays.asList(am.getUserData(account, LEGACY_INDEX).split(":"));
+        assertEquals(3, legacy.size());
+        assertFalse(legacy.contains(encode("legacy1")));
+        assertTrue(legacy.contains(encode("current")));
+
+        // Keys added and removed by the apps of a previous version are visible here
+        am.setUserData(account, encode("legacy0"), null);
+        am.setUserData(account, encode("current"), null);
+        am.setUserData(account, LEGACY_INDEX, encode("legacy2") + ":" + encode("other"));
+        am.setUserData(account, encode("other"), Base64.encodeToString("value".getBytes("UTF-8"), Base64.DEFAULT));
+        keys = (List<String>) shared.getAllKeys().getData();
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains("legacy2") && keys.contains("other"));
+    }
+
+    @Test
+    public void testRemoveAbsentKey() throws Exception {
+        assertEquals(StorageResult.StorageOperationStatus.SUCCESS,
+                storage.writeData("present", "value".getBytes("UTF-8")).getStatus());
+        storage.deleteData("absent");
+        List<String> keys = (List<String>) storage.getAllKeys().getData();
+        assertEquals(1, keys.size());
+        assertTrue(keys.contains("present"));
+        assertNull(am.getUserData(account, LEGACY_INDEX));
+    }
+
+    private String encode(String key) throws Exception {
+        return Base64.encodeToString((context.getPackageName() + "_" + key).getBytes("UTF-8"), Base64.DEFAULT);
+    }
+
+    private Storage newStorage() throws Exception {
+        return new MASStorageManager().getStorage(MASStorageManager.MASStorageType.TYPE_AMS, new Object[]{context, false});
+    }
+}
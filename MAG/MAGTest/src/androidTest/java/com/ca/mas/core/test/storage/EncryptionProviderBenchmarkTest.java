@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.storage;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.core.security.DefaultEncryptionProvider;
+import com.ca.mas.core.security.KeyStorageProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures the per item cost of {@link DefaultEncryptionProvider#encrypt(byte[])}, in the style of a JMH
+ * average time benchmark: warm-up iterations, then measured iterations reported in microseconds per item.
+ * <p/>
+ * The key storage provider unwraps the secret key with an RSA key on every retrieval, as the key store backed
+ * providers do.  The uncached figure creates a provider per item, which retrieves the key and creates the Cipher
+ * and Mac for every item as each encrypt call used to do.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EncryptionProviderBenchmarkTest {
+
+    private static final String TAG = EncryptionProviderBenchmarkTest.class.getSimpleName();
+    private static final int ITEMS = 200;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+
+    private Context context;
+    private WrappingKeyStorageProvider keyStorageProvider;
+    private List<byte[]> items;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        keyStorageProvider = new WrappingKeyStorageProvider(keyPairGenerator.generateKeyPair());
+        items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(("item-" + i + "-0123456789abcdef0123456789abcdef").getBytes("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testPerItemCost() throws Exception {
+        double uncached = measure(new Task() {
+            @Override
+            public void run() {
+                for (byte[] item : items) {
+                    new DefaultEncryptionProvider(context, keyStorageProvider).encrypt(item);
+                }
+            }
+        });
+
+        final DefaultEncryptionProvider provider = new DefaultEncryptionProvider(context, keyStorageProvider);
+        keyStorageProvider.getKeyCount.set(0);
+        double cached = measure(new Task() {
+            @Override
+            public void run() {
+                for (byte[] item : items) {
+                    provider.encrypt(item);
+                }
+            }
+        });
+        assertEquals(1, keyStorageProvider.getKeyCount.get());
+
+        double bulk = measure(new Task() {
+            @Override
+            public void run() {
+                provider.encrypt(items);
+            }
+        });
+
+        Log.i(TAG, String.format("Encrypt, us/item: uncached=%.1f cached=%.1f bulk=%.1f", uncached, cached, bulk));
+        assertTrue(cached < uncached);
+    }
+
+    @Test
+    public void testBulkRoundTrip() throws Exception {
+        DefaultEncryptionProvider provider = new DefaultEncryptionProvider(context, keyStorageProvider);
+        List<byte[]> input = new ArrayList<>(items);
+        input.add(null);
+
+        List<byte[]> encrypted = provider.encrypt(input);
+        List<byte[]> decrypted = provider.decrypt(encrypted);
+
+        assertEquals(input.size(), decrypted.size());
+        for (int i = 0; i < input.size(); i++) {
+            assertTrue(Arrays.equals(input.get(i), decrypted.get(i)));
+        }
+        // Items encrypted in bulk can be decrypted one at a time, and by another provider
+        DefaultEncryptionProvider other = new DefaultEncryptionProvider(context, keyStorageProvider);
+        assertTrue(Arrays.equals(items.get(0), other.decrypt(encrypted.get(0))));
+    }
+
+    /**
+     * @return the average time of the measured iterations, in microseconds per item.
+     */
+    private double measure(Task task) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed / 1000.0 / ITERATIONS / ITEMS;
+    }
+
+    private interface Task {
+        void run();
+    }
+
+    /**
+     * Keeps the secret key wrapped with an RSA key pair and unwraps it on every retrieval.
+     */
+    private static class WrappingKeyStorageProvider implements KeyStorageProvider {
+
+        private static final String RSA_ECB_PKCS1_PADDING = "RSA/ECB/PKCS1PADDING";
+        private final KeyPair keyPair;
+        private final AtomicInteger getKeyCount = new AtomicInteger();
+        private byte[] wrappedKey;
+
+        WrappingKeyStorageProvider(KeyPair keyPair) {
+            this.keyPair = keyPair;
+        }
+
+        @Override
+        public synchronized void storeKey(String alias, SecretKey sk) {
+            try {
+                Cipher cipher = Cipher.getInstance(RSA_ECB_PKCS1_PADDING);
+                cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+                wrappedKey = cipher.doFinal(sk.getEncoded());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public synchronized SecretKey getKey(String alias) {
+            getKeyCount.incrementAndGet();
+            try {
+                Cipher cipher = Cipher.getInstance(RSA_ECB_PKCS1_PADDING);
+                cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+                return new SecretKeySpec(cipher.doFinal(wrappedKey), "AES");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public synchronized boolean containsKey(String alias) {
+            return wrappedKey != null;
+        }
+    }
+}
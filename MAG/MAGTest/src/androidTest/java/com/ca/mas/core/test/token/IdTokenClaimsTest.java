@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.test.token;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Base64;
+import android.util.Log;
+
+import com.ca.mas.core.token.IdToken;
+import com.ca.mas.core.token.IdTokenClaims;
+import com.ca.mas.core.token.JWTInvalidAUDException;
+import com.ca.mas.core.token.JWTInvalidSignatureException;
+import com.ca.mas.core.token.JWTValidation;
+import com.ca.mas.core.token.JWTValidationException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks the claims of an ID token are decoded once and reused, and measures the repeated validation of the same
+ * token against the validation of a new token each time.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IdTokenClaimsTest {
+
+    private static final String TAG = IdTokenClaimsTest.class.getSimpleName();
+    private static final String CLIENT_ID = "client";
+    private static final String CLIENT_SECRET = "secret";
+    private static final String DEVICE_ID = "device";
+    private static final int FLAGS = Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
+
+    @Test
+    public void testClaims() throws Exception {
+        long exp = System.currentTimeMillis() / 1000 + 600;
+        IdToken idToken = idToken(exp);
+        IdTokenClaims claims = IdTokenClaims.of(idToken);
+
+        assertSame(claims, IdTokenClaims.of(new IdToken(idToken.getValue(), IdToken.JWT_DEFAULT)));
+        assertEquals("HS256", claims.getAlgorithm());
+        assertEquals(Long.valueOf(exp), claims.getExpiration());
+        assertEquals(CLIENT_ID, claims.getAudience());
+        assertEquals(DEVICE_ID, claims.getAuthorizedParty());
+        assertFalse(claims.isExpired(System.currentTimeMillis()));
+        assertTrue(claims.isExpired((exp + 1) * 1000));
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+        IdToken idToken = idToken(System.currentTimeMillis() / 1000 + 600);
+        assertTrue(JWTValidation.validateIdToken(idToken, DEVICE_ID, CLIENT_ID, CLIENT_SECRET));
+        assertFalse(JWTValidation.isIdTokenExpired(idToken));
+        assertTrue(JWTValidation.isIdTokenExpired(idToken(System.currentTimeMillis() / 1000 - 1)));
+
+        try {
+            JWTValidation.validateIdToken(idToken, DEVICE_ID, "other", CLIENT_SECRET);
+            fail();
+        } catch (JWTInvalidAUDException e) {
+            // Expected
+        }
+        try {
+            JWTValidation.validateIdToken(idToken, DEVICE_ID, CLIENT_ID, "other");
+            fail();
+        } catch (JWTInvalidSignatureException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        for (String value : new String[]{"header", "a.b.c.d", "e30.bm90IGpzb24"}) {
+            IdToken idToken = new IdToken(value, IdToken.JWT_DEFAULT);
+            assertTrue(JWTValidation.isIdTokenExpired(idToken));
+            try {
+                IdTokenClaims.of(idToken);
+                fail();
+            } catch (JWTValidationException e) {
+                // Expected
+            }
+        }
+        // No header algorithm and no expiry
+        IdTokenClaims claims = IdTokenClaims.of(new IdToken("e30.e30", IdToken.JWT_DEFAULT));
+        assertNull(claims.getAlgorithm());
+        assertNull(claims.getExpiration());
+        assertTrue(claims.isExpired(0));
+    }
+
+    @Test
+    public void testValidationBenchmark() throws Exception {
+        long exp = System.currentTimeMillis() / 1000 + 600;
+        int iterations = 2000;
+
+        // More distinct tokens than cached, so each is decoded
+        IdToken[] tokens = new IdToken[16];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = idToken(exp + i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assertFalse(JWTValidation.isIdTokenExpired(tokens[i % tokens.length]));
+        }
+        long decoded = System.nanoTime() - start;
+
+        IdToken idToken = tokens[0];
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assertFalse(JWTValidation.isIdTokenExpired(idToken));
+        }
+        long cached = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JWTValidation.validateIdToken(idToken, DEVICE_ID, CLIENT_ID, CLIENT_SECRET);
+        }
+        long validated = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("ID token expiry check: decoded %d ns, cached %d ns; validation %d ns",
+                decoded / iterations, cached / iterations, validated / iterations));
+        assertTrue(cached < decoded);
+    }
+
+    private static IdToken idToken(long exp) throws Exception {
+        String header = encode("{\"typ\":\"JWT\",\"alg\":\"HS256\"}");
+        String payload = encode("{\"aud\":\"" + CLIENT_ID + "\",\"azp\":\"" + DEVICE_ID + "\",\"exp\":" + exp + "}");
+        Mac mac = Mac.getInstance("HMACSHA256");
+        mac.init(new SecretKeySpec(CLIENT_SECRET.getBytes(), "HMACSHA256"));
+        String signature = Base64.encodeToString(mac.doFinal((header + "." + payload).getBytes()), FLAGS);
+        return new IdToken(header + "." + payload + "." + signature, IdToken.JWT_DEFAULT);
+    }
+
+    private static String encode(String json) {
+        return Base64.encodeToString(json.getBytes(), FLAGS);
+    }
+}
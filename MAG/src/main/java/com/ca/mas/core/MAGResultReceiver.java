@@ -60,6 +60,10 @@ public abstract class MAGResultReceiver<T> extends ResultReceiver {
                         if (response != null) {
                             int responseCode = response.getResponseCode();
                             if (responseCode < HttpURLConnection.HTTP_OK || responseCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                                // The content is not handed over, release the connection of a streamed body
+                                if (response.getBody() != null) {
+                                    response.getBody().close();
+                                }
                                 onError(new MAGError(response.getResponseMessage(), new TargetApiException(response)));
                                 return;
                             }
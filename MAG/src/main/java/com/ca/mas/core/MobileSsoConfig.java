@@ -46,6 +46,12 @@ public interface MobileSsoConfig {
      */
     String PROP_CLIENT_CERT_RSA_KEYBITS = "msso.cert.rsa.keybits";
 
+    /**
+     * String.  The algorithm of the keypair to generate for the client cert, "RSA" or "EC" for a NIST P-256 keypair.
+     * Optional, defaults to "RSA".  The gateway must accept EC certificate signing requests and client certs.
+     */
+    String PROP_CLIENT_CERT_KEY_ALGORITHM = "msso.cert.key.algorithm";
+
     /**
      * String.  The OAuth scope string that should be requested when obtaining an access token that will be used
      * to consume service from an API endpoint.  If not provided, a default value will be used.
@@ -326,6 +332,20 @@ public interface MobileSsoConfig {
      */
     String PROP_STORAGE = "msso.storage";
 
+    /**
+     * Integer, default=4.  The number of worker threads the MssoService uses to process outbound requests
+     * concurrently.  Values are clamped to the range 1 to 16.  Device registration and token acquisition
+     * are still performed only once regardless of the number of workers.
+     */
+    String PROP_REQUEST_WORKER_THREADS = "msso.request.worker.threads";
+
+    /**
+     * Integer, default=60.  The number of seconds before the expiry of the access token at which it is refreshed
+     * in the background with the refresh token, so requests rarely find it expired.  0 disables the background
+     * refresh; the access token is then refreshed by the first request finding it expired.
+     */
+    String PROP_ACCESS_TOKEN_REFRESH_SKEW = "msso.token.refresh.skew";
+
     // If you add any properties to this file, you must update com.ca.mas.core.MobileSsoFactory.createConfig()
     // or they will be ignored.
 
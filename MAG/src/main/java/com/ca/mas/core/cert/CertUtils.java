@@ -10,6 +10,8 @@ package com.ca.mas.core.cert;
 
 import android.util.Base64;
 
+import com.ca.mas.core.util.KeyUtils;
+
 import org.spongycastle.asn1.ASN1EncodableVector;
 import org.spongycastle.asn1.ASN1Set;
 import org.spongycastle.asn1.DERSet;
@@ -139,7 +141,7 @@ public class CertUtils {
      * @param deviceId  the device ID.  Required.
      * @param deviceName  the device name.  Required.
      * @param organization  the organization.  Required.
-     * @param keyPair  the client's public and private key pair.  Required.
+     * @param keyPair  the client's public and private key pair, RSA or EC.  Required.
      * @return a signed PKCS#10 CertificationRequest structure in binary DER format.  Never null.
      * @throws CertificateException if a CSR cannot be created
      */
@@ -147,7 +149,7 @@ public class CertUtils {
         try {
             X500Principal subject = new X500Principal("cn=" + commonName + ", ou=" + deviceId + ", dc=" + deviceName + ", o=" + organization);
             ASN1Set attrs = new DERSet(new ASN1EncodableVector());
-            PKCS10CertificationRequest csr = new PKCS10CertificationRequest("SHA1withRSA", subject, keyPair.getPublic(), attrs, keyPair.getPrivate(), null);
+            PKCS10CertificationRequest csr = new PKCS10CertificationRequest(getSignatureAlgorithm(keyPair.getPrivate()), subject, keyPair.getPublic(), attrs, keyPair.getPrivate(), null);
             return csr.getEncoded();
         } catch (Exception e) {
             throw new CertificateException("Unable to generate certificate signing request: " + e.getMessage(), e);
@@ -155,6 +157,14 @@ public class CertUtils {
     }
 
 
+    /**
+     * @return the algorithm the client signs its certificate signing request with: SHA1withRSA for an RSA key, as
+     * the gateway has always expected, or SHA256withECDSA for an EC key.
+     */
+    static String getSignatureAlgorithm(PrivateKey privateKey) {
+        return KeyUtils.RSA.equals(privateKey.getAlgorithm()) ? "SHA1withRSA" : "SHA256withECDSA";
+    }
+
     /**
      * Convert the specified Certificate array into an X509Certificate array.
      *
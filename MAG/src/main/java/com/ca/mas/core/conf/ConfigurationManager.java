@@ -16,6 +16,7 @@ import com.ca.mas.core.datasource.DataSourceException;
 import com.ca.mas.core.error.MAGErrorCode;
 import com.ca.mas.core.error.MAGRuntimeException;
 import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.io.ssl.MAGSocketFactory;
 import com.ca.mas.core.oauth.GrantProvider;
 import com.ca.mas.core.store.ClientCredentialContainer;
 import com.ca.mas.core.store.OAuthTokenContainer;
@@ -54,6 +55,7 @@ public class ConfigurationManager {
 
     private ConfigurationManager() {
         configurationListeners.add(new ClientChangeListener());
+        configurationListeners.add(new TlsChangeListener());
     }
 
     public static ConfigurationManager getInstance() {
@@ -400,6 +402,17 @@ public class ConfigurationManager {
         }
     }
 
+    /**
+     * Discard the SSL contexts and the server certificate chains verified with the previous gateway configuration.
+     */
+    private static class TlsChangeListener implements ConfigurationListener {
+
+        @Override
+        public void onUpdated(Context context, ConfigurationProvider provider) {
+            MAGSocketFactory.clearCache();
+        }
+    }
+
     /**
      * Listener to listen for configuration update
      */
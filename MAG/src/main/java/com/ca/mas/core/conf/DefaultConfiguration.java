@@ -12,6 +12,7 @@ import com.ca.mas.core.cert.CertUtils;
 import com.ca.mas.core.cert.PublicKeyHash;
 import com.ca.mas.core.error.MAGErrorCode;
 import com.ca.mas.core.error.MAGRuntimeException;
+import com.ca.mas.core.util.KeyUtils;
 
 import org.json.JSONObject;
 
@@ -89,6 +90,7 @@ public class DefaultConfiguration implements ConfigurationProvider {
         putProperty(PROP_TOKEN_PORT_HTTP, 8080);
         putProperty(PROP_TOKEN_PORT_HTTPS, 8443);
         putProperty(PROP_CLIENT_CERT_RSA_KEYBITS, 1024);
+        putProperty(PROP_CLIENT_CERT_KEY_ALGORITHM, KeyUtils.RSA);
         putProperty(PROP_RESPONSE_BUFFERING_ENABLED, true);
         putProperty(PROP_RESPONSE_BUFFERING_MAX_SIZE, 10485760);
         this.server = new Server(getTokenHost(), getTokenPort(), getPrefix());
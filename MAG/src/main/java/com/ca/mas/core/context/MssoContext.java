@@ -22,15 +22,19 @@ import com.ca.mas.core.error.MAGStateException;
 import com.ca.mas.core.http.MAGHttpClient;
 import com.ca.mas.core.http.MAGRequest;
 import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.io.ssl.MAGSocketFactory;
 import com.ca.mas.core.oauth.OAuthClient;
+import com.ca.mas.core.oauth.ScopeSet;
 import com.ca.mas.core.policy.PolicyManager;
 import com.ca.mas.core.policy.RequestInfo;
 import com.ca.mas.core.policy.exceptions.RetryRequestException;
+import com.ca.mas.core.registration.KeyPairProvisioner;
 import com.ca.mas.core.registration.RegistrationClient;
 import com.ca.mas.core.request.MAGInternalRequest;
 import com.ca.mas.core.request.internal.LocalRequest;
 import com.ca.mas.core.store.ClientCredentialContainer;
 import com.ca.mas.core.store.OAuthTokenContainer;
+import com.ca.mas.core.store.ScopedAccessTokenCache;
 import com.ca.mas.core.store.StorageProvider;
 import com.ca.mas.core.store.TokenManager;
 import com.ca.mas.core.store.TokenStoreException;
@@ -63,6 +67,7 @@ public class MssoContext {
      * Maximum number of RetryRequestExceptions to honor before giving up.
      */
     private static final int MAX_REQUEST_ATTEMPTS = 4;
+    private static final int MAX_SCOPED_ACCESS_TOKENS = 4;
 
     private Context context;
 
@@ -71,6 +76,7 @@ public class MssoContext {
     private TokenManager tokenManager;
 
     private OAuthTokenContainer privateTokens;
+    private final ScopedAccessTokenCache scopedAccessTokens = new ScopedAccessTokenCache(MAX_SCOPED_ACCESS_TOKENS);
     private ClientCredentialContainer clientCredentialTokens;
 
     private String deviceId;
@@ -80,6 +86,11 @@ public class MssoContext {
 
     private volatile Credentials credentials;
 
+    // Tokens obtained in the background are only saved if the session was not ended meanwhile
+    private final Object sessionLock = new Object();
+    // Guarded by sessionLock
+    private long sessionGeneration;
+
     /**
      * Retain the container description.  If this app is not running in a container,
      * the value will be "".  If it is, then values include "-knox1", "-knox100", "-knox101"
@@ -163,6 +174,17 @@ public class MssoContext {
             policyManager = new PolicyManager(this);
         }
         policyManager.init(context);
+        provisionClientKeyPair();
+    }
+
+    /**
+     * Generates the client key pair of the next device registration in the background, if the device is not
+     * registered.
+     */
+    private void provisionClientKeyPair() {
+        if (configurationProvider != null && !isDeviceRegistered()) {
+            KeyPairProvisioner.getInstance().provision(configurationProvider);
+        }
     }
 
     /**
@@ -260,9 +282,12 @@ public class MssoContext {
     /**
      * Reset the HTTP client, causing a new one to be created.
      * Use this if the trusted certificate or client cert configuration changes.
+     * <p/>
+     * The cached SSL contexts are kept, so the new client resumes the TLS sessions of the previous one; a changed
+     * trust configuration or client certificate chain does not match the cached contexts.
      */
     public void resetHttpClient() {
-        magHttpClient = null;
+        evictHttpClient();
     }
 
     /**
@@ -320,7 +345,16 @@ public class MssoContext {
      * Notify that device registration has just completed.  May be called from any thread.
      */
     public void onDeviceRegistrationCompleted() {
+        evictHttpClient();
+    }
+
+    private void evictHttpClient() {
+        MAGHttpClient client = magHttpClient;
         magHttpClient = null;
+        if (client != null) {
+            // Kept-alive connections were established with the previous trust and client cert configuration
+            client.evictConnections();
+        }
     }
 
     /**
@@ -333,18 +367,79 @@ public class MssoContext {
      * @param expiresInSec number of seconds until the access token should be considered expired.  Required.
      */
     public void onAccessTokenAvailable(String accessToken, String refreshToken, long expiresInSec, String grantedScope) {
-        privateTokens.saveAccessToken(accessToken, refreshToken, expiresInSec, grantedScope);
+        synchronized (sessionLock) {
+            privateTokens.saveAccessToken(accessToken, refreshToken, expiresInSec, grantedScope);
+        }
+        if (accessToken != null)
+            clearCredentials();
+    }
+
+    /**
+     * Notify that an access token was obtained in the background, without a request waiting for it.  The tokens
+     * are discarded if the session was ended since the given generation, e.g. by a logout racing the refresh.
+     *
+     * @param sessionGeneration the generation of the session, as returned by {@link #getSessionGeneration()}
+     *                          before the token was requested.
+     * @return true if the tokens were saved, false if they were discarded.
+     * @see #onAccessTokenAvailable(String, String, long, String)
+     */
+    public boolean onAccessTokenAvailable(String accessToken, String refreshToken, long expiresInSec, String grantedScope,
+                                          long sessionGeneration) {
+        synchronized (sessionLock) {
+            if (sessionGeneration != this.sessionGeneration) {
+                return false;
+            }
+            privateTokens.saveAccessToken(accessToken, refreshToken, expiresInSec, grantedScope);
+        }
         if (accessToken != null)
             clearCredentials();
+        return true;
     }
 
     /**
-     * Clear the access token, forcing the next request to obtain a new one.
+     * @return the generation of the session, which changes each time the session is ended by a logout or the
+     * destruction of the persistent tokens.
+     */
+    public long getSessionGeneration() {
+        synchronized (sessionLock) {
+            return sessionGeneration;
+        }
+    }
+
+    private void endSession() {
+        synchronized (sessionLock) {
+            sessionGeneration++;
+        }
+    }
+
+    /**
+     * Clear the access token, and those set aside for other scopes, forcing the next request to obtain a new one.
      */
     public void clearAccessToken() {
+        scopedAccessTokens.clear();
         privateTokens.clear();
     }
 
+    /**
+     * Set the access token aside for the requests of its granted scopes, and clear it so a token can be obtained
+     * for other scopes.  The tokens set aside are kept in memory, see {@link #getScopedAccessTokens()}.
+     */
+    public void setAsideAccessToken() {
+        String accessToken = getAccessToken();
+        if (accessToken != null) {
+            scopedAccessTokens.put(new ScopedAccessTokenCache.Token(accessToken, getRefreshToken(),
+                    getAccessTokenExpiry(), ScopeSet.parse(getGrantedScope())));
+        }
+        privateTokens.clear();
+    }
+
+    /**
+     * @return the access tokens set aside for other scopes than the stored access token.
+     */
+    public ScopedAccessTokenCache getScopedAccessTokens() {
+        return scopedAccessTokens;
+    }
+
     /**
      * Get an access token, if one is presently available.
      *
@@ -418,7 +513,15 @@ public class MssoContext {
                 } else {
                     response = getMAGHttpClient().execute(internalRequest);
                 }
-                policyManager.processResponse(requestInfo, response);
+                try {
+                    policyManager.processResponse(requestInfo, response);
+                } catch (Exception e) {
+                    // The response is replaced by a retry or an error, release what it holds
+                    if (response.getBody() != null) {
+                        response.getBody().close();
+                    }
+                    throw e;
+                }
                 return response;
             } catch (RetryRequestException e) {
                 lastError = e;
@@ -467,6 +570,7 @@ public class MssoContext {
             throw new IllegalStateException("MssoContext not initialized, no configuration provider");
         if (tokenManager == null)
             throw new IllegalStateException("MssoContext not initialized, no token manager");
+        endSession();
         final IdToken idToken = getIdToken();
 
         Exception exception = null;
@@ -518,6 +622,7 @@ public class MssoContext {
             }
 
         } finally {
+            scopedAccessTokens.clear();
             setCredentials(null);
             resetHttpClient();
         }
@@ -549,6 +654,8 @@ public class MssoContext {
             Log.w(TAG, "Error in removing Device registration details from the server " + e);
         } finally {
             resetHttpClient();
+            // The SSL contexts hold the client private key of the removed registration
+            MAGSocketFactory.clearCache();
         }
     }
 
@@ -566,7 +673,9 @@ public class MssoContext {
     public void destroyAllPersistentTokens() throws MssoException {
         if (tokenManager == null)
             throw new IllegalStateException("MssoContext not initialized, no token manager");
+        endSession();
         setCredentials(null);
+        scopedAccessTokens.clear();
         try {
             privateTokens.clearAll();
             clientCredentialTokens.clearAll();
@@ -575,7 +684,9 @@ public class MssoContext {
             throw new MssoException(e);
         } finally {
             resetHttpClient();
+            MAGSocketFactory.clearCache();
         }
+        provisionClientKeyPair();
     }
 
     /**
@@ -592,7 +703,9 @@ public class MssoContext {
     public void destroyPersistentTokens() throws MssoException {
         if (tokenManager == null)
             throw new IllegalStateException("MssoContext not initialized, no token manager");
+        endSession();
         setCredentials(null);
+        scopedAccessTokens.clear();
         try {
             privateTokens.clear();
             clientCredentialTokens.clear();
@@ -601,7 +714,9 @@ public class MssoContext {
             throw new MssoException(e);
         } finally {
             resetHttpClient();
+            MAGSocketFactory.clearCache();
         }
+        provisionClientKeyPair();
     }
 
     /**
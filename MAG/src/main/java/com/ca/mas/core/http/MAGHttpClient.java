@@ -13,7 +13,9 @@ import android.os.Build;
 import android.util.Log;
 
 import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.io.http.PooledHttpTransport;
 import com.ca.mas.core.io.ssl.MAGSocketFactory;
+import com.ca.mas.core.util.Functions;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -29,13 +31,45 @@ public class MAGHttpClient {
     private static final String TAG = MAGHttpClient.class.getCanonicalName();
 
     private SSLSocketFactory sslSocketFactory;
+    private final MAGHttpTransport transport;
 
     public MAGHttpClient(Context context) {
-        sslSocketFactory = new MAGSocketFactory(context).createSSLSocketFactory();
+        this(context, new PooledHttpTransport());
     }
 
+    /**
+     * @param context   Android context.  Required.
+     * @param transport the transport used to obtain and release connections.  Required.
+     */
+    public MAGHttpClient(Context context, MAGHttpTransport transport) {
+        this(new MAGSocketFactory(context).createSSLSocketFactory(), transport);
+    }
+
+    /**
+     * @param sslSocketFactory the factory used for HTTPS connections, or null to use the platform default.
+     * @param transport        the transport used to obtain and release connections.  Required.
+     */
+    public MAGHttpClient(SSLSocketFactory sslSocketFactory, MAGHttpTransport transport) {
+        this.sslSocketFactory = sslSocketFactory;
+        this.transport = transport;
+    }
 
     public MAGHttpClient() {
+        this(null, new PooledHttpTransport());
+    }
+
+    /**
+     * @return the transport used by this client to obtain and release connections.
+     */
+    public MAGHttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Close all connections kept alive by this client.
+     */
+    public void evictConnections() {
+        transport.evictAll();
     }
 
     /**
@@ -47,7 +81,9 @@ public class MAGHttpClient {
      * @throws IOException if any error occur or the connection was aborted.
      */
     public <T> MAGResponse<T> execute(MAGRequest request) throws IOException {
-        final HttpURLConnection urlConnection = (HttpURLConnection) request.getURL().openConnection();
+        final HttpURLConnection urlConnection = transport.open(request.getURL(), sslSocketFactory);
+        boolean reusable = false;
+        boolean releaseDeferred = false;
         try {
             onConnectionObtained(urlConnection);
             if (request.getConnectionListener() != null) {
@@ -57,9 +93,6 @@ public class MAGHttpClient {
                 ConfigurationManager.getInstance().getConnectionListener().onObtained(urlConnection);
             }
 
-            if (urlConnection instanceof HttpsURLConnection && sslSocketFactory != null) {
-                ((HttpsURLConnection) urlConnection).setSSLSocketFactory(sslSocketFactory);
-            }
             urlConnection.setRequestMethod(request.getMethod());
             urlConnection.setDoInput(true);
             for (String key : request.getHeaders().keySet()) {
@@ -107,6 +140,7 @@ public class MAGHttpClient {
                 responseCode = urlConnection.getResponseCode();
                 responseMessage = urlConnection.getResponseMessage();
                 responseBody.read(urlConnection);
+                reusable = true;
             } catch (SSLHandshakeException e) {
                 //Related to MCT-104 & MCT-323
                 if(Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP){
@@ -120,6 +154,13 @@ public class MAGHttpClient {
 
             final Map<String, List<String>> headers = urlConnection.getHeaderFields();
 
+            releaseDeferred = reusable && responseBody.deferRelease(new Functions.UnaryVoid<Boolean>() {
+                @Override
+                public void call(Boolean canReuse) {
+                    transport.release(urlConnection, canReuse);
+                }
+            });
+
             final int finalResponseCode = responseCode;
             final String finalResponseMessage = responseMessage;
             return new MAGResponse<T>() {
@@ -148,7 +189,9 @@ public class MAGHttpClient {
             };
 
         } finally {
-            urlConnection.disconnect();
+            if (!releaseDeferred) {
+                transport.release(urlConnection, reusable);
+            }
         }
     }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Supplies and recycles the connections used by {@link MAGHttpClient}.
+ * <p/>
+ * The client opens a connection with {@link #open(URL, SSLSocketFactory)} for every request and hands it back with
+ * {@link #release(HttpURLConnection, boolean)} once the response has been read, so an implementation is free to keep
+ * the underlying socket alive for the next request.
+ */
+public interface MAGHttpTransport {
+
+    /**
+     * Open a connection to the target URL.  The connection is not yet connected.
+     *
+     * @param url              the target URL.  Required.
+     * @param sslSocketFactory the factory to use for HTTPS connections, or null to use the platform default.
+     * @return the new connection.  Never null.
+     * @throws IOException if the connection cannot be opened.
+     */
+    HttpURLConnection open(URL url, SSLSocketFactory sslSocketFactory) throws IOException;
+
+    /**
+     * Release a connection previously obtained from {@link #open(URL, SSLSocketFactory)}.
+     *
+     * @param connection the connection to release.  Required.
+     * @param reusable   true if the response was fully read and the socket may be kept alive for another request,
+     *                   false if the connection must be closed.
+     */
+    void release(HttpURLConnection connection, boolean reusable);
+
+    /**
+     * Close all persistent connections held by this transport.  Connections in use are closed once released.
+     * Use this when the trusted certificate or client certificate configuration changes.
+     */
+    void evictAll();
+}
@@ -9,6 +9,7 @@
 package com.ca.mas.core.http;
 
 import com.ca.mas.core.io.IoUtils;
+import com.ca.mas.core.util.Functions;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -121,9 +122,51 @@ public class MAGResponseBody<T> {
         if (inputStream == null) {
             inputStream = httpURLConnection.getInputStream();
         }
-        buffer = IoUtils.slurpStream(inputStream, DEFAULT_MAX_RESPONSE_SIZE);
+        try {
+            buffer = IoUtils.slurpStream(inputStream, contentLength, DEFAULT_MAX_RESPONSE_SIZE);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+
+    /**
+     * Take over the release of the connection once the response has been read.  Response bodies which keep
+     * reading from the connection after {@link MAGHttpClient#execute(MAGRequest)} returns use this to release it
+     * when the caller is done with the content.
+     *
+     * @param release releases the connection, the argument indicates whether the connection may be reused.
+     * @return true if this body will invoke release, false to have the connection released immediately.
+     */
+    boolean deferRelease(Functions.UnaryVoid<Boolean> release) {
+        return false;
     }
 
+    /**
+     * Release the connection held by a body which reads its content from the connection after
+     * {@link MAGHttpClient#execute(MAGRequest)} returns, for a response which is discarded without its content
+     * being consumed.  Bodies read in full by {@link MAGHttpClient} hold no connection, closing them has no effect.
+     * Closing a body more than once has no further effect.
+     */
+    public void close() {
+    }
+
+    /**
+     * Receives the response content as it is read from the connection.
+     */
+    public interface ChunkListener {
+
+        /**
+         * Called for each chunk of content read.  The buffer is reused and is only valid for the
+         * duration of the call.
+         *
+         * @param buffer the buffer containing the chunk.
+         * @param offset the offset of the chunk in the buffer.
+         * @param length the length of the chunk.
+         * @throws IOException to abort reading the response.
+         */
+        void onChunk(byte[] buffer, int offset, int length) throws IOException;
+    }
 
     /**
      * @return Return a new ResponseBody with byte[] content.
@@ -177,4 +220,55 @@ public class MAGResponseBody<T> {
         };
     }
 
+    /**
+     * Return a new ResponseBody which delivers successful content to the listener as it is read instead of buffering
+     * it. The listener is called on the thread executing the request.  Error responses are buffered as usual.
+     *
+     * @param listener receives the content.  Required.
+     * @return Return a new ResponseBody with no content.
+     */
+    public static MAGResponseBody<Void> chunkedBody(final ChunkListener listener) {
+
+        return new MAGResponseBody<Void>() {
+
+            @Override
+            protected void read(HttpURLConnection httpURLConnection) throws IOException {
+                if (httpURLConnection.getErrorStream() != null) {
+                    super.read(httpURLConnection);
+                    return;
+                }
+                this.httpURLConnection = httpURLConnection;
+                this.contentType = httpURLConnection.getContentType();
+                this.contentLength = httpURLConnection.getContentLength();
+
+                InputStream inputStream = httpURLConnection.getInputStream();
+                try {
+                    final byte[] buf = new byte[8192];
+                    int got;
+                    while ((got = inputStream.read(buf)) > 0) {
+                        listener.onChunk(buf, 0, got);
+                    }
+                } finally {
+                    inputStream.close();
+                }
+            }
+
+            @Override
+            public Void getContent() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Return a new ResponseBody which exposes successful content as an {@link InputStream} reading directly
+     * from the connection.  The connection remains open until the stream is closed, so the caller must always
+     * close it.  Error responses are buffered as usual.
+     *
+     * @return Return a new ResponseBody with {@link InputStream} content.
+     */
+    public static MAGResponseBody<InputStream> streamBody() {
+        return new MAGStreamingResponseBody();
+    }
+
 }
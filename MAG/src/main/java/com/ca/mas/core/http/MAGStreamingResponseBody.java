@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import com.ca.mas.core.util.Functions;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * A response body which reads successful content directly from the connection.
+ * <p/>
+ * The connection is released when the stream returned by {@link #getContent()} is closed, or when the body itself
+ * is closed because the response is discarded.  It is kept alive for reuse only if the stream was read to the end.  Error responses are buffered, so that policies and error handling
+ * can inspect them through {@link #getRawContent()} as usual.
+ */
+class MAGStreamingResponseBody extends MAGResponseBody<InputStream> {
+
+    private InputStream stream;
+
+    @Override
+    protected void read(HttpURLConnection httpURLConnection) throws IOException {
+        if (httpURLConnection.getErrorStream() != null) {
+            super.read(httpURLConnection);
+            return;
+        }
+        this.httpURLConnection = httpURLConnection;
+        this.contentType = httpURLConnection.getContentType();
+        this.contentLength = httpURLConnection.getContentLength();
+        this.stream = httpURLConnection.getInputStream();
+    }
+
+    @Override
+    boolean deferRelease(Functions.UnaryVoid<Boolean> release) {
+        if (stream == null) {
+            return false;
+        }
+        stream = new ReleasingInputStream(stream, release);
+        return true;
+    }
+
+    @Override
+    public InputStream getContent() {
+        if (stream != null) {
+            return stream;
+        }
+        return new ByteArrayInputStream(buffer == null ? new byte[0] : buffer);
+    }
+
+    @Override
+    public void close() {
+        if (stream instanceof ReleasingInputStream) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // The connection has been released anyway, and will not be reused
+            }
+        }
+    }
+
+    private static class ReleasingInputStream extends FilterInputStream {
+
+        private final Functions.UnaryVoid<Boolean> release;
+        private boolean eof;
+        private boolean closed;
+
+        ReleasingInputStream(InputStream in, Functions.UnaryVoid<Boolean> release) {
+            super(in);
+            this.release = release;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                eof = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int got = super.read(buffer, offset, count);
+            if (got < 0) {
+                eof = true;
+            }
+            return got;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean reusable = eof;
+            try {
+                super.close();
+            } catch (IOException e) {
+                reusable = false;
+                throw e;
+            } finally {
+                release.call(reusable);
+            }
+        }
+    }
+}
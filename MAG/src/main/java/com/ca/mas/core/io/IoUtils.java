@@ -16,6 +16,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Utility methods for doing I/O.
@@ -48,6 +49,48 @@ public class IoUtils {
         return out.toByteArray();
     }
 
+    /**
+     * Read an entire InputStream into a byte array, allocating the buffer up front from a size hint such as
+     * the Content-Length of an HTTP response.  This avoids growing and then copying an intermediate buffer
+     * when the hint is accurate, and falls back to {@link #slurpStream(InputStream, int)} when it is not.
+     *
+     * @param stream   the stream to read.  Required.
+     * @param sizeHint the expected number of bytes, or a negative value if unknown.
+     * @param limit    maximum number of bytes to read.
+     * @return the content of the stream.  Never null.
+     * @throws IOException if the stream cannot be read or exceeds the limit.
+     */
+    public static byte[] slurpStream(InputStream stream, int sizeHint, int limit) throws IOException {
+        if (sizeHint < 0 || sizeHint >= limit)
+            return slurpStream(stream, limit);
+
+        final byte[] sized = new byte[sizeHint];
+        int got, total = 0;
+        while (total < sizeHint && (got = stream.read(sized, total, sizeHint - total)) > 0) {
+            total += got;
+        }
+        if (total < sizeHint)
+            return Arrays.copyOf(sized, total);
+
+        int next = stream.read();
+        if (next < 0)
+            return sized;
+
+        // The hint understated the content; continue with a growing buffer
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint + 4096);
+        out.write(sized, 0, total);
+        out.write(next);
+        total++;
+        final byte[] buf = new byte[4096];
+        while ((got = stream.read(buf)) > 0) {
+            out.write(buf, 0, got);
+            total += got;
+            if (total >= limit)
+                throw new IOException("Stream length limit exceeded; limit=" + limit);
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Convert the specified binary data into a string containing hexadecimal digits.
      * Example:  hexDump(new byte[] { (byte)0xAB, (byte)0xCD }).equals("abcd")
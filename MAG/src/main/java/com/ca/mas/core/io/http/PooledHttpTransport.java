@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.io.http;
+
+import com.ca.mas.core.http.MAGHttpTransport;
+import com.ca.mas.core.util.Functions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Default {@link MAGHttpTransport} which keeps connections alive between requests.
+ * <p/>
+ * Connections are pooled by the platform HttpURLConnection implementation, which reuses a socket only for
+ * connections that share the same SSLSocketFactory and were released without being disconnected.  This transport
+ * wraps the SSLSocketFactory once per generation so that all connections from the same client share a pool key,
+ * and tracks the sockets created through it.  This allows it to count reused and new connections, to bound the
+ * number of idle connections kept alive, and to close every connection on {@link #evictAll()}.
+ */
+public class PooledHttpTransport implements MAGHttpTransport {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final int maxIdleConnections;
+    private final long keepAliveMillis;
+
+    private final Object lock = new Object();
+    // All fields below are guarded by lock
+    private TrackingSSLSocketFactory trackingFactory;
+    private final LinkedList<Socket> sockets = new LinkedList<Socket>();
+    private final List<Socket> retired = new ArrayList<Socket>();
+    private int activeConnections;
+    private long idleSince = System.currentTimeMillis();
+    private long requestCount;
+    private long missCount;
+
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * @param maxIdleConnections the maximum number of connections kept alive when no request is in progress.
+     * @param keepAliveMillis    how long idle connections are kept alive, in milliseconds.
+     */
+    public PooledHttpTransport(int maxIdleConnections, long keepAliveMillis) {
+        if (maxIdleConnections < 0)
+            throw new IllegalArgumentException("maxIdleConnections < 0");
+        if (keepAliveMillis <= 0)
+            throw new IllegalArgumentException("keepAliveMillis <= 0");
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    @Override
+    public HttpURLConnection open(URL url, SSLSocketFactory sslSocketFactory) throws IOException {
+        SSLSocketFactory factory = null;
+        synchronized (lock) {
+            expireIdleConnections();
+            if ("https".equalsIgnoreCase(url.getProtocol())) {
+                factory = getTrackingFactory(sslSocketFactory != null ? sslSocketFactory : HttpsURLConnection.getDefaultSSLSocketFactory());
+            }
+            activeConnections++;
+        }
+
+        boolean opened = false;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            if (connection instanceof HttpsURLConnection && factory != null) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(factory);
+            }
+            opened = true;
+            return connection;
+        } finally {
+            if (!opened) {
+                synchronized (lock) {
+                    onReleased();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, boolean reusable) {
+        if (reusable) {
+            // Closing a fully read stream returns the socket to the platform pool
+            closeResponseStream(connection);
+        } else {
+            connection.disconnect();
+        }
+        synchronized (lock) {
+            if (connection instanceof HttpsURLConnection) {
+                requestCount++;
+            }
+            onReleased();
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        synchronized (lock) {
+            retired.addAll(sockets);
+            sockets.clear();
+            trackingFactory = null;
+            if (activeConnections == 0) {
+                closeRetired();
+            }
+        }
+    }
+
+    /**
+     * @return the number of HTTPS requests which were sent over a connection kept alive from a previous request.
+     */
+    public long getConnectionHitCount() {
+        synchronized (lock) {
+            return Math.max(0, requestCount - missCount);
+        }
+    }
+
+    /**
+     * @return the number of new HTTPS connections established by this transport.
+     */
+    public long getConnectionMissCount() {
+        synchronized (lock) {
+            return missCount;
+        }
+    }
+
+    private SSLSocketFactory getTrackingFactory(SSLSocketFactory delegate) {
+        TrackingSSLSocketFactory current = trackingFactory;
+        if (current != null && current.getDelegate() == delegate)
+            return current;
+
+        if (current != null) {
+            // The caller switched factories; connections of the previous generation can no longer be reused.
+            retired.addAll(sockets);
+            sockets.clear();
+        }
+        final TrackingSSLSocketFactory[] created = new TrackingSSLSocketFactory[1];
+        created[0] = new TrackingSSLSocketFactory(delegate, new Functions.UnaryVoid<Socket>() {
+            @Override
+            public void call(Socket socket) {
+                synchronized (lock) {
+                    missCount++;
+                    if (created[0] == trackingFactory) {
+                        sockets.addLast(socket);
+                    } else {
+                        retired.add(socket);
+                    }
+                }
+            }
+        });
+        trackingFactory = created[0];
+        return trackingFactory;
+    }
+
+    private void onReleased() {
+        activeConnections--;
+        if (activeConnections == 0) {
+            idleSince = System.currentTimeMillis();
+            closeRetired();
+            pruneClosed();
+            while (sockets.size() > maxIdleConnections) {
+                closeQuietly(sockets.removeFirst());
+            }
+        }
+    }
+
+    private void expireIdleConnections() {
+        if (activeConnections == 0 && !sockets.isEmpty()
+                && System.currentTimeMillis() - idleSince > keepAliveMillis) {
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+            sockets.clear();
+        }
+    }
+
+    private void pruneClosed() {
+        Iterator<Socket> iterator = sockets.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isClosed()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void closeRetired() {
+        for (Socket socket : retired) {
+            closeQuietly(socket);
+        }
+        retired.clear();
+    }
+
+    private static void closeResponseStream(HttpURLConnection connection) {
+        try {
+            InputStream inputStream = connection.getErrorStream();
+            if (inputStream == null) {
+                inputStream = connection.getInputStream();
+            }
+            inputStream.close();
+        } catch (IOException ignore) {
+            // The platform discards connections whose stream cannot be closed cleanly
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
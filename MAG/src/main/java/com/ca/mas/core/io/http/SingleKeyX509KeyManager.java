@@ -17,12 +17,13 @@ import javax.net.ssl.SSLEngine;
 import javax.net.ssl.X509ExtendedKeyManager;
 
 /**
- * An SSL X509KeyManager that holds a single pre-configured client cert and private key, and always uses
- * it to respond to challenges.
+ * An SSL X509KeyManager that holds a single pre-configured client cert and private key, and uses
+ * it to respond to the challenges accepting its key type, RSA or EC.
  */
 public class SingleKeyX509KeyManager extends X509ExtendedKeyManager {
     private final X509Certificate[] certChain;
     private final PrivateKey privateKey;
+    private final String keyAlgorithm;
     private final String alias;
 
     /**
@@ -41,15 +42,20 @@ public class SingleKeyX509KeyManager extends X509ExtendedKeyManager {
 
         this.certChain = certChain;
         this.privateKey = privateKey;
+        this.keyAlgorithm = keyAlgorithm(privateKey);
         this.alias = "clientCert";
     }
 
     public String[] getClientAliases(String s, Principal[] principals) {
-        return new String[] { alias };
+        return acceptsKeyType(s)
+            ? new String[] { alias }
+            : null;
     }
 
     public String chooseClientAlias(String[] strings, Principal[] principals, Socket socket) {
-        return alias;
+        return acceptsKeyTypes(strings)
+            ? alias
+            : null;
     }
 
     public String[] getServerAliases(String s, Principal[] principals) {
@@ -73,10 +79,39 @@ public class SingleKeyX509KeyManager extends X509ExtendedKeyManager {
     }
 
     public String chooseEngineClientAlias(String[] strings, Principal[] principals, SSLEngine sslEngine) {
-        return alias;
+        return acceptsKeyTypes(strings)
+            ? alias
+            : null;
     }
 
     public String chooseEngineServerAlias(String string, Principal[] principals, SSLEngine sslEngine) {
         return alias;
     }
+
+    private boolean acceptsKeyTypes(String[] keyTypes) {
+        if (keyTypes == null)
+            return true;
+        for (String keyType : keyTypes) {
+            if (acceptsKeyType(keyType))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the key type requested by the server, such as "RSA", "EC" or "EC_EC", names the
+     * algorithm of the private key, or if the server did not request any.
+     */
+    private boolean acceptsKeyType(String keyType) {
+        return keyType == null || keyType.equals(keyAlgorithm) || keyType.startsWith(keyAlgorithm + "_");
+    }
+
+    /**
+     * @return the algorithm of the private key as named by the TLS key types.  SpongyCastle names the EC keys
+     * it generates "ECDSA", while the servers request "EC".
+     */
+    private static String keyAlgorithm(PrivateKey privateKey) {
+        String algorithm = privateKey.getAlgorithm();
+        return "ECDSA".equals(algorithm) ? "EC" : algorithm;
+    }
 }
@@ -10,17 +10,23 @@ package com.ca.mas.core.io.http;
 
 import com.ca.mas.core.cert.PublicKeyHash;
 import com.ca.mas.core.cert.TrustedCertificateConfiguration;
+import com.ca.mas.core.io.IoUtils;
 
 import java.io.IOException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -28,11 +34,34 @@ import javax.net.ssl.X509TrustManager;
 
 /**
  * Trust manager that works with a {@link com.ca.mas.core.cert.TrustedCertificateConfiguration}.
+ * <p/>
+ * Server chains which passed the pinning and trust store checks are remembered, by the SHA-256 fingerprint of
+ * their leaf certificate and the key exchange algorithm, until the earliest expiry of their certificates or an
+ * hour at most.  A handshake presenting the same server certificate again is then accepted without hashing the
+ * public keys of the chain and validating it again.  Only successful checks are remembered, and all remembered
+ * chains are forgotten when the trust configuration changes, see {@link #invalidateVerifiedChains()}.
  */
 public class TrustedCertificateConfigurationTrustManager implements X509TrustManager {
+
+    private static final int MAX_VERIFIED_CHAINS = 16;
+    private static final long VERIFIED_CHAIN_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final AtomicLong trustGeneration = new AtomicLong();
+    private static final AtomicLong verifiedChainHits = new AtomicLong();
+    private static final AtomicLong verifiedChainMisses = new AtomicLong();
+
     private final Collection<X509TrustManager> publicPkiDelegates;
     private final Collection<X509TrustManager> privateTrustStoreDelegates;
     private final Set<PublicKeyHash> pinnedPublicKeys;
+    // Expiry of each verified chain, by leaf fingerprint and auth type.  Guarded by itself.
+    private final Map<String, Long> verifiedChains = new LinkedHashMap<String, Long>(MAX_VERIFIED_CHAINS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_VERIFIED_CHAINS;
+        }
+    };
+    // The trust generation the verified chains were checked in.  Guarded by verifiedChains.
+    private long verifiedGeneration = trustGeneration.get();
 
     /**
      * Create a trust manager that uses the specified trust configuration.
@@ -46,6 +75,27 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
         this.pinnedPublicKeys = pins == null ? null : new HashSet<PublicKeyHash>(pins);
     }
 
+    /**
+     * Forget the server chains verified by all trust managers, e.g. because the trust configuration changed.
+     */
+    public static void invalidateVerifiedChains() {
+        trustGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return the number of server chains accepted because they were verified before.
+     */
+    public static long getVerifiedChainHitCount() {
+        return verifiedChainHits.get();
+    }
+
+    /**
+     * @return the number of server chains which had to be verified.
+     */
+    public static long getVerifiedChainMissCount() {
+        return verifiedChainMisses.get();
+    }
+
     private static Collection<X509TrustManager> getPrivateX509TrustManagers(Collection<X509Certificate> certs) {
         return getX509TrustManagers(createTrustStoreWithCerts(certs));
     }
@@ -113,6 +163,21 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
 
     @Override
     public void checkServerTrusted(X509Certificate[] chain, String s) throws CertificateException {
+        String key = chain == null || chain.length == 0 ? null : verifiedChainKey(chain[0], s);
+        long now = System.currentTimeMillis();
+        if (key != null && isVerified(key, now)) {
+            verifiedChainHits.incrementAndGet();
+            return;
+        }
+        verifiedChainMisses.incrementAndGet();
+        long generation = trustGeneration.get();
+        verifyServerChain(chain, s);
+        if (key != null) {
+            addVerified(key, expiry(chain, now), generation);
+        }
+    }
+
+    private void verifyServerChain(X509Certificate[] chain, String s) throws CertificateException {
         // Check pins first, if certificate public key pinning is in use
         if (pinnedPublicKeys != null && pinnedPublicKeys.size() > 0) {
             boolean sawPin = false;
@@ -143,6 +208,58 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
         }
     }
 
+    private boolean isVerified(String key, long now) {
+        synchronized (verifiedChains) {
+            if (verifiedGeneration != trustGeneration.get()) {
+                verifiedChains.clear();
+                verifiedGeneration = trustGeneration.get();
+                return false;
+            }
+            Long expiry = verifiedChains.get(key);
+            if (expiry == null) {
+                return false;
+            }
+            if (now >= expiry) {
+                verifiedChains.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private void addVerified(String key, long expiry, long generation) {
+        synchronized (verifiedChains) {
+            // Not remembered if the trust configuration changed while the chain was verified
+            if (generation == trustGeneration.get() && generation == verifiedGeneration) {
+                verifiedChains.put(key, expiry);
+            }
+        }
+    }
+
+    /**
+     * @return the earliest of the expiry of the certificates of the chain and the time to live of a verified chain.
+     */
+    private static long expiry(X509Certificate[] chain, long now) {
+        long expiry = now + VERIFIED_CHAIN_TTL_MILLIS;
+        for (X509Certificate cert : chain) {
+            expiry = Math.min(expiry, cert.getNotAfter().getTime());
+        }
+        return expiry;
+    }
+
+    /**
+     * @return the SHA-256 fingerprint of the leaf certificate and the auth type, or null if the certificate
+     * cannot be encoded, in which case the chain is not remembered.
+     */
+    private static String verifiedChainKey(X509Certificate leaf, String authType) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return IoUtils.hexDump(md.digest(leaf.getEncoded())) + ':' + authType;
+        } catch (NoSuchAlgorithmException | CertificateException e) {
+            return null;
+        }
+    }
+
     @Override
     public X509Certificate[] getAcceptedIssuers() {
         return new X509Certificate[0];
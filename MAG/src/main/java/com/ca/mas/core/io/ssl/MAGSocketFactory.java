@@ -10,29 +10,77 @@ package com.ca.mas.core.io.ssl;
 
 import android.content.Context;
 
+import com.ca.mas.core.cert.PublicKeyHash;
 import com.ca.mas.core.cert.TrustedCertificateConfiguration;
 import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.io.Charsets;
+import com.ca.mas.core.io.IoUtils;
 import com.ca.mas.core.io.http.SingleKeyX509KeyManager;
+import com.ca.mas.core.io.http.TrackingSSLSocketFactory;
 import com.ca.mas.core.io.http.TrustedCertificateConfigurationTrustManager;
 import com.ca.mas.core.store.StorageProvider;
 import com.ca.mas.core.store.TokenManager;
+import com.ca.mas.core.util.Functions;
 
+import java.net.Socket;
 import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 
+/**
+ * Creates SSLSocketFactory instances that trust the server certs of the connected gateway and present the
+ * registered client cert for mutual authentication.
+ * <p/>
+ * SSL contexts are cached by a hash of the trust configuration and client certificate chain, so a client created
+ * again with unchanged credentials, such as the MQTT client or a replaced HTTP client, reuses the existing context,
+ * its socket factory and its TLS session cache.  Handshakes to the same gateway can then resume the previous
+ * session instead of performing a full handshake.
+ * <p/>
+ * The cache survives logout and the replacement of the HTTP client.  It is cleared on device deregistration and
+ * the destruction of the persistent tokens, which discard the client private key, and when a gateway
+ * configuration is activated.
+ */
 public class MAGSocketFactory {
 
     private static final String SSL_TLS_PROTOCOL = "TLS";
     private static final SecureRandom secureRandom = new SecureRandom();
+
+    private static final int MAX_CACHED_CONTEXTS = 4;
+    private static final int SESSION_CACHE_SIZE = 16;
+    private static final int SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    private static final Map<String, SSLSocketFactory> socketFactories = new LinkedHashMap<String, SSLSocketFactory>(MAX_CACHED_CONTEXTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SSLSocketFactory> eldest) {
+            return size() > MAX_CACHED_CONTEXTS;
+        }
+    };
+
+    private static final AtomicLong contextCacheHits = new AtomicLong();
+    private static final AtomicLong contextCacheMisses = new AtomicLong();
+    private static final AtomicLong resumedHandshakes = new AtomicLong();
+    private static final AtomicLong fullHandshakes = new AtomicLong();
+
     private TrustedCertificateConfiguration trustConfig;
-    private PrivateKey clientCertPrivateKey = null;
+    private TokenManager tokenManager;
     private X509Certificate[] clientCertChain = null;
 
     /**
@@ -46,20 +94,82 @@ public class MAGSocketFactory {
     public MAGSocketFactory(Context context) {
         this.trustConfig = ConfigurationManager.getInstance().getConnectedGatewayConfigurationProvider();
         StorageProvider storageProvider = new StorageProvider(context);
-        TokenManager tokenManager = storageProvider.createTokenManager();
-        KeyPair keyPair = tokenManager.getClientKeyPair();
-        if (keyPair != null) {
-            clientCertPrivateKey = keyPair.getPrivate();
-        }
+        tokenManager = storageProvider.createTokenManager();
         clientCertChain = tokenManager.getClientCertificateChain();
     }
 
     public SSLSocketFactory createSSLSocketFactory() {
-        return createSslContext().getSocketFactory();
+        String key = cacheKey();
+        synchronized (socketFactories) {
+            SSLSocketFactory cached = socketFactories.get(key);
+            if (cached != null) {
+                contextCacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        // The client private key is only decoded when a new context has to be built
+        SSLSocketFactory socketFactory = trackHandshakes(createSslContext().getSocketFactory());
+        synchronized (socketFactories) {
+            SSLSocketFactory cached = socketFactories.get(key);
+            if (cached != null) {
+                contextCacheHits.incrementAndGet();
+                return cached;
+            }
+            contextCacheMisses.incrementAndGet();
+            socketFactories.put(key, socketFactory);
+            return socketFactory;
+        }
+    }
+
+    /**
+     * Discard all cached SSL contexts and verified server chains, forcing full TLS handshakes and server chain
+     * validation for subsequent connections.
+     */
+    public static void clearCache() {
+        synchronized (socketFactories) {
+            socketFactories.clear();
+        }
+        TrustedCertificateConfigurationTrustManager.invalidateVerifiedChains();
+    }
+
+    /**
+     * @return the number of socket factories served from a cached SSL context.
+     */
+    public static long getContextCacheHitCount() {
+        return contextCacheHits.get();
+    }
+
+    /**
+     * @return the number of SSL contexts built because no cached context matched.
+     */
+    public static long getContextCacheMissCount() {
+        return contextCacheMisses.get();
+    }
+
+    /**
+     * @return the number of TLS handshakes which resumed a cached session.
+     */
+    public static long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * @return the number of TLS handshakes which negotiated a new session.
+     */
+    public static long getFullHandshakeCount() {
+        return fullHandshakes.get();
     }
 
     private SSLContext createSslContext() {
         try {
+            PrivateKey clientCertPrivateKey = null;
+            if (clientCertChain != null) {
+                KeyPair keyPair = tokenManager.getClientKeyPair();
+                if (keyPair != null) {
+                    clientCertPrivateKey = keyPair.getPrivate();
+                }
+            }
             SSLContext sslContext = SSLContext.getInstance(SSL_TLS_PROTOCOL);
             TrustManager[] trustManagers = {new TrustedCertificateConfigurationTrustManager(
                     trustConfig)};
@@ -67,9 +177,68 @@ public class MAGSocketFactory {
                     ? new KeyManager[0]
                     : new KeyManager[]{new SingleKeyX509KeyManager(clientCertPrivateKey, clientCertChain)};
             sslContext.init(keyManagers, trustManagers, secureRandom);
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            }
             return sslContext;
         } catch (Exception e) {
             throw new RuntimeException("Unable to create SSL Context: " + e.getMessage(), e);
         }
     }
+
+    private static SSLSocketFactory trackHandshakes(SSLSocketFactory socketFactory) {
+        return new TrackingSSLSocketFactory(socketFactory, new Functions.UnaryVoid<Socket>() {
+            @Override
+            public void call(Socket socket) {
+                if (socket instanceof SSLSocket) {
+                    final long createdAt = System.currentTimeMillis();
+                    ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                        @Override
+                        public void handshakeCompleted(HandshakeCompletedEvent event) {
+                            // A resumed session was negotiated before this socket existed
+                            if (event.getSession().getCreationTime() < createdAt) {
+                                resumedHandshakes.incrementAndGet();
+                            } else {
+                                fullHandshakes.incrementAndGet();
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Hash everything that affects the SSL context: the trusted anchors, public PKI trust, pinned keys
+     * and the client certificate chain.
+     */
+    private String cacheKey() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            Collection<X509Certificate> anchors = trustConfig.getTrustedCertificateAnchors();
+            if (anchors != null) {
+                for (X509Certificate anchor : anchors) {
+                    md.update(anchor.getEncoded());
+                }
+            }
+            md.update((byte) (trustConfig.isAlsoTrustPublicPki() ? 1 : 0));
+            Collection<PublicKeyHash> pins = trustConfig.getTrustedCertificatePinnedPublicKeyHashes();
+            if (pins != null) {
+                for (PublicKeyHash pin : pins) {
+                    md.update(pin.getHash().getBytes(Charsets.UTF8));
+                }
+            }
+            md.update((byte) 0);
+            if (clientCertChain != null) {
+                for (X509Certificate cert : clientCertChain) {
+                    md.update(cert.getEncoded());
+                }
+            }
+            return IoUtils.hexDump(md.digest());
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new RuntimeException("Unable to create SSL Context: " + e.getMessage(), e);
+        }
+    }
 }
@@ -14,6 +14,7 @@ import android.util.Pair;
 import com.ca.mas.core.MobileSsoConfig;
 import com.ca.mas.core.auth.AuthenticationException;
 import com.ca.mas.core.client.ServerClient;
+import com.ca.mas.core.client.ServerResponse;
 import com.ca.mas.core.context.MssoContext;
 import com.ca.mas.core.creds.Credentials;
 import com.ca.mas.core.error.MAGErrorCode;
@@ -28,6 +29,7 @@ import com.ca.mas.core.token.IdToken;
 
 import org.json.JSONException;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
@@ -201,13 +203,20 @@ public class OAuthTokenClient extends ServerClient {
         OAuthTokenResponse tokenResponse;
 
         //Remove refresh token once we get a proper response from the server, no matter success or not.
-        mssoContext.takeRefreshToken();
-
+        //It is kept if the server could not be reached, to be used again once the device is back online.
         try {
-            tokenResponse = new OAuthTokenResponse(obtainServerResponseToPostedForm(tokenRequest));
-        } catch (JSONException | MAGException e) {
+            ServerResponse serverResponse = obtainServerResponseToPostedForm(tokenRequest);
+            mssoContext.takeRefreshToken();
+            tokenResponse = new OAuthTokenResponse(serverResponse);
+        } catch (JSONException e) {
+            throw new OAuthException(MAGErrorCode.ACCESS_TOKEN_INVALID, e);
+        } catch (MAGException e) {
+            if (!(e.getCause() instanceof IOException)) {
+                mssoContext.takeRefreshToken();
+            }
             throw new OAuthException(MAGErrorCode.ACCESS_TOKEN_INVALID, e);
         } catch (MAGServerException e) {
+            mssoContext.takeRefreshToken();
             if (e.getErrorCode() == INVALID_CLIENT_CREDENTIALS) {
                 mssoContext.clearClientCredentials();
                 throw new RetryRequestException(new OAuthServerException(e));
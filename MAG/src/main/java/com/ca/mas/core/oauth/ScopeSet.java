@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.oauth;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable set of OAuth scopes, parsed once from its space delimited form.
+ * <p/>
+ * Each scope name is given a bit when first seen, so comparing two sets is a couple of bit operations.  Only the
+ * first 64 names get a bit; sets holding later names also keep their names and are compared by name.  Parsed sets
+ * are interned by their string, so the scopes of a request or a token are not split again.
+ * <p/>
+ * The bits and the interned sets form a numbering, which is replaced by a new one once {@link #MAX_INTERNED} sets
+ * are interned, so neither grows with generated scopes.  Sets of different numberings are compared by name.
+ */
+public final class ScopeSet {
+
+    private static final int MAX_INTERNED = 256;
+    private static final int MAX_BITS = 64;
+
+    /**
+     * The bits given to the scope names, and the sets parsed with them.
+     */
+    private static final class Numbering {
+        // Guarded by itself for writes; at most MAX_BITS names
+        private final ConcurrentMap<String, Integer> bits = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, ScopeSet> interned = new ConcurrentHashMap<>();
+    }
+
+    private static volatile Numbering numbering = new Numbering();
+
+    public static final ScopeSet EMPTY = new ScopeSet(null, 0, Collections.<String>emptySet(), false);
+
+    // Null for the empty set, whose mask is valid in every numbering
+    private final Numbering numberedBy;
+    private final long mask;
+    private final Set<String> names;
+    private final boolean overflow;
+
+    private ScopeSet(Numbering numberedBy, long mask, Set<String> names, boolean overflow) {
+        this.numberedBy = numberedBy;
+        this.mask = mask;
+        this.names = names;
+        this.overflow = overflow;
+    }
+
+    /**
+     * @param scope the scopes, delimited by spaces, may be null.
+     * @return the set of scopes, {@link #EMPTY} if none.
+     */
+    public static ScopeSet parse(String scope) {
+        if (scope == null) {
+            return EMPTY;
+        }
+        Numbering current = numbering;
+        ScopeSet set = current.interned.get(scope);
+        if (set != null) {
+            return set;
+        }
+        if (current.interned.size() >= MAX_INTERNED) {
+            // Scopes are few, a growing map means they are generated; start over rather than grow
+            current = restart(current);
+        }
+        set = split(scope, current);
+        current.interned.put(scope, set);
+        return set;
+    }
+
+    private static synchronized Numbering restart(Numbering full) {
+        if (numbering == full) {
+            numbering = new Numbering();
+        }
+        return numbering;
+    }
+
+    private static ScopeSet split(String scope, Numbering numbering) {
+        Set<String> names = new HashSet<>();
+        long mask = 0;
+        boolean overflow = false;
+        int length = scope.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(scope.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(scope.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                String name = scope.substring(start, i);
+                names.add(name);
+                int bit = bitOf(name, numbering);
+                if (bit < MAX_BITS) {
+                    mask |= 1L << bit;
+                } else {
+                    overflow = true;
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            return EMPTY;
+        }
+        return new ScopeSet(numbering, mask, Collections.unmodifiableSet(names), overflow);
+    }
+
+    /**
+     * @return the bit of the name, or {@link #MAX_BITS} if all bits are taken.
+     */
+    private static int bitOf(String name, Numbering numbering) {
+        ConcurrentMap<String, Integer> bits = numbering.bits;
+        Integer bit = bits.get(name);
+        if (bit == null) {
+            synchronized (bits) {
+                bit = bits.get(name);
+                if (bit == null) {
+                    if (bits.size() >= MAX_BITS) {
+                        return MAX_BITS;
+                    }
+                    bit = bits.size();
+                    bits.put(name, bit);
+                }
+            }
+        }
+        return bit;
+    }
+
+    /**
+     * @return the number of scope names given a bit in the current numbering.
+     */
+    static int getBitCount() {
+        return numbering.bits.size();
+    }
+
+    /**
+     * @return the number of sets interned in the current numbering.
+     */
+    static int getInternedCount() {
+        return numbering.interned.size();
+    }
+
+    /**
+     * @return true if this set holds every scope of the other set, except those of the ignored set.
+     */
+    public boolean covers(ScopeSet other, ScopeSet ignored) {
+        if (sameNumbering(other) && sameNumbering(ignored) && other.sameNumbering(ignored)) {
+            if ((other.mask & ~ignored.mask & ~mask) != 0) {
+                return false;
+            }
+            if (!other.overflow) {
+                return true;
+            }
+        }
+        for (String name : other.names) {
+            if (!names.contains(name) && !ignored.names.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameNumbering(ScopeSet other) {
+        return numberedBy == null || other.numberedBy == null || numberedBy == other.numberedBy;
+    }
+
+    /**
+     * @return true if this set holds every scope of the other set.
+     */
+    public boolean covers(ScopeSet other) {
+        return covers(other, EMPTY);
+    }
+
+    /**
+     * @return the number of scopes.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof ScopeSet && names.equals(((ScopeSet) o).names);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return names.toString();
+    }
+}
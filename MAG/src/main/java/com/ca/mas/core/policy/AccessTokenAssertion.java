@@ -27,31 +27,59 @@ import com.ca.mas.core.oauth.OAuthException;
 import com.ca.mas.core.oauth.OAuthServerException;
 import com.ca.mas.core.oauth.OAuthTokenClient;
 import com.ca.mas.core.oauth.OAuthTokenResponse;
+import com.ca.mas.core.oauth.ScopeSet;
 import com.ca.mas.core.policy.exceptions.CredentialRequiredException;
 import com.ca.mas.core.policy.exceptions.RetryRequestException;
 import com.ca.mas.core.request.MAGInternalRequest;
+import com.ca.mas.core.store.ScopedAccessTokenCache;
 import com.ca.mas.core.token.IdToken;
 import com.ca.mas.core.token.JWTValidationException;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * A policy that includes an access token with each outbound request.
  * This policy must run after the DeviceRegistrationPolicy has succeeded.
+ * <p/>
+ * The access token is refreshed in the background ahead of its expiry, see {@link AccessTokenRefreshScheduler}.
  */
 class AccessTokenAssertion implements MssoAssertion {
     private static final String TAG = AccessTokenAssertion.class.getName();
     public static final String TOKEN_EXPIRED_ERROR_CODE_SUFFIX = "990";
 
+    private static final Object BACKGROUND_REFRESH = new Object();
+    // Requested with the access token, but not granted to it
+    private static final ScopeSet RESERVED_SCOPES = ScopeSet.parse(ServerClient.OPENID + " " + ServerClient.MSSO
+            + " " + ServerClient.MSSO_REGISTER + " " + ServerClient.MSSO_CLIENT_REGISTER);
+
     private OAuthTokenClient oAuthTokenClient;
+    private final SingleFlight<String> tokenAcquisition = new SingleFlight<String>();
+    private final AccessTokenRefreshScheduler refreshScheduler = AccessTokenRefreshScheduler.getInstance();
+    private AccessTokenRefreshScheduler.Refresh backgroundRefresh;
 
     @Override
-    public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) {
+    public void init(@NonNull final MssoContext mssoContext, @NonNull Context sysContext) {
         oAuthTokenClient = new OAuthTokenClient(mssoContext);
+        backgroundRefresh = new AccessTokenRefreshScheduler.Refresh() {
+            @Override
+            public boolean refresh(final long expiry) throws MAGException, MAGServerException {
+                // Requests needing a token meanwhile wait for the refresh, then find the refreshed token
+                String accessToken = tokenAcquisition.execute(BACKGROUND_REFRESH, new SingleFlight.Work<String>() {
+                    @Override
+                    public String call() throws MAGException, MAGServerException {
+                        long sessionGeneration = mssoContext.getSessionGeneration();
+                        String refreshToken = mssoContext.getRefreshToken();
+                        if (mssoContext.getAccessTokenExpiry() != expiry || refreshToken == null) {
+                            return null;
+                        }
+                        return refreshAccessToken(mssoContext, refreshToken, sessionGeneration);
+                    }
+                });
+                return accessToken != null;
+            }
+        };
+        refreshScheduler.schedule(mssoContext, backgroundRefresh);
     }
 
     @Override
@@ -78,22 +106,83 @@ class AccessTokenAssertion implements MssoAssertion {
 
     @Override
     public void processResponse(MssoContext mssoContext, RequestInfo request, MAGResponse response) throws MAGException {
-        int errorCode = ServerClient.findErrorCode(response);
-            if (errorCode == -1) {
-                return;
+        if (ResponseClassification.of(request, response).isErrorCodeEndingWith(TOKEN_EXPIRED_ERROR_CODE_SUFFIX)) {
+            // Another request may already have replaced the rejected token, or it was granted for other scopes
+            if (!removeScopedAccessToken(mssoContext, request) && isSentAccessToken(mssoContext, request)) {
+                mssoContext.clearAccessToken();
             }
-        String s = Integer.toString(errorCode);
-        if (s.endsWith(TOKEN_EXPIRED_ERROR_CODE_SUFFIX)) {
-            mssoContext.clearAccessToken();
             throw new RetryRequestException("Access token rejected by server");
         }
     }
 
+    private boolean removeScopedAccessToken(MssoContext mssoContext, RequestInfo request) {
+        List<String> authorization = request.getRequest().getHeaders().get("Authorization");
+        if (authorization == null || authorization.isEmpty()) {
+            return false;
+        }
+        String sent = authorization.get(authorization.size() - 1);
+        return sent.startsWith("Bearer ")
+                && mssoContext.getScopedAccessTokens().remove(sent.substring("Bearer ".length()));
+    }
+
+    private boolean isSentAccessToken(MssoContext mssoContext, RequestInfo request) {
+        List<String> authorization = request.getRequest().getHeaders().get("Authorization");
+        if (authorization == null || authorization.isEmpty()) {
+            return true;
+        }
+        String current = mssoContext.getAccessToken();
+        return current == null || authorization.get(authorization.size() - 1).equals("Bearer " + current);
+    }
+
     @Override
     public void close() {
+        refreshScheduler.cancel();
+    }
+
+    private String findAccessToken(final MssoContext mssoContext, final MAGInternalRequest request) throws MAGException, MAGServerException {
+        String accessToken = findCachedAccessToken(mssoContext, request);
+        if (accessToken == null) {
+            accessToken = acquireAccessToken(mssoContext, request);
+        }
+        refreshScheduler.schedule(mssoContext, backgroundRefresh);
+        return accessToken;
+    }
+
+    private String acquireAccessToken(final MssoContext mssoContext, final MAGInternalRequest request) throws MAGException, MAGServerException {
+        // Only one token acquisition runs at a time. Concurrent requests for the same scope and grant
+        // share its result, others wait for it to finish before trying again.
+        return tokenAcquisition.execute(new TokenRequirement(request), new SingleFlight.Work<String>() {
+            @Override
+            public String call() throws MAGException, MAGServerException {
+                String accessToken = findCachedAccessToken(mssoContext, request);
+                if (accessToken != null) {
+                    return accessToken;
+                }
+                return obtainAccessToken(mssoContext, request);
+            }
+        });
+    }
+
+    /**
+     * Look up a stored access token that can be used for the request as is, without altering the token store.
+     * The access tokens set aside for other scopes are looked up if the stored one does not cover the request.
+     *
+     * @return the access token, or null if a token has to be obtained.
+     */
+    private String findCachedAccessToken(MssoContext mssoContext, MAGInternalRequest request) {
+        //The access token is granted by Client Credential if refresh token is null
+        boolean requireRefreshToken = request.getGrantProvider() == GrantProvider.PASSWORD;
+        String accessToken = mssoContext.getAccessToken();
+        if (accessToken != null && isAccessTokenStillValid(mssoContext) && isSufficientScope(mssoContext, request)
+                && !(requireRefreshToken && mssoContext.getRefreshToken() == null)) {
+            return accessToken;
+        }
+        ScopedAccessTokenCache.Token token = mssoContext.getScopedAccessTokens().find(ScopeSet.parse(request.getScope()),
+                RESERVED_SCOPES, requireRefreshToken, refreshScheduler.currentTimeMillis());
+        return token != null ? token.accessToken : null;
     }
 
-    private String findAccessToken(MssoContext mssoContext, MAGInternalRequest request) throws CredentialRequiredException, OAuthException, OAuthServerException, AuthenticationException, JWTValidationException, RetryRequestException {
+    private String obtainAccessToken(MssoContext mssoContext, MAGInternalRequest request) throws CredentialRequiredException, OAuthException, OAuthServerException, AuthenticationException, JWTValidationException, RetryRequestException {
         String accessToken = mssoContext.getAccessToken();
         if (accessToken != null) {
             if (isAccessTokenStillValid(mssoContext)) {
@@ -112,7 +201,8 @@ class AccessTokenAssertion implements MssoAssertion {
                         return accessToken;
                     }
                 } else {
-                    mssoContext.clearAccessToken();
+                    // Keep it for the requests of its scopes
+                    mssoContext.setAsideAccessToken();
                     accessToken = null;
                 }
             } else {
@@ -152,31 +242,16 @@ class AccessTokenAssertion implements MssoAssertion {
 
     private boolean isAccessTokenStillValid(MssoContext mssoContext) {
         long expiry = mssoContext.getAccessTokenExpiry();
-        return expiry <= 0 || System.currentTimeMillis() <= expiry;
+        return expiry <= 0 || refreshScheduler.currentTimeMillis() <= expiry;
     }
 
     private boolean isSufficientScope(MssoContext mssoContext, MAGRequest request) {
-        String rScope = request.getScope();
-        String gScope = mssoContext.getGrantedScope();
-        if (rScope == null || rScope.trim().length() == 0) {
+        ScopeSet requested = ScopeSet.parse(request.getScope());
+        if (requested.isEmpty()) {
             return true;
         }
-        if (gScope == null || gScope.trim().length() == 0) {
-            return false;
-        }
-        String[] requestScopes = rScope.trim().split("\\s+");
-        List<String> rScopeList = new ArrayList<>();
-        Collections.addAll(rScopeList, requestScopes);
-        rScopeList.remove(ServerClient.OPENID);
-        rScopeList.remove(ServerClient.MSSO);
-        rScopeList.remove(ServerClient.MSSO_REGISTER);
-        rScopeList.remove(ServerClient.MSSO_CLIENT_REGISTER);
-
-        String[] grantedScopes = gScope.split("\\s+");
-        List<String> gScopeList = Arrays.asList(grantedScopes);
-
-        return gScopeList.containsAll(rScopeList);
-
+        ScopeSet granted = ScopeSet.parse(mssoContext.getGrantedScope());
+        return !granted.isEmpty() && granted.covers(requested, RESERVED_SCOPES);
     }
 
 
@@ -238,6 +313,54 @@ class AccessTokenAssertion implements MssoAssertion {
         }
     }
 
+    /**
+     * Identifies the kind of access token a request needs, concurrent requests with an equal requirement
+     * can share the same token acquisition.
+     */
+    private static class TokenRequirement {
+        private final String scope;
+        private final GrantProvider grantProvider;
+
+        TokenRequirement(MAGInternalRequest request) {
+            this.scope = request.getScope();
+            this.grantProvider = request.getGrantProvider();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TokenRequirement)) return false;
+            TokenRequirement that = (TokenRequirement) o;
+            return (scope == null ? that.scope == null : scope.equals(that.scope))
+                    && grantProvider == that.grantProvider;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = scope != null ? scope.hashCode() : 0;
+            return 31 * result + (grantProvider != null ? grantProvider.hashCode() : 0);
+        }
+    }
+
+    /**
+     * Obtain an access token with the refresh token in the background, discarding it if the session was ended
+     * meanwhile, so a logout racing the refresh is never undone.
+     *
+     * @return the access token, or null if it was discarded.
+     */
+    private String refreshAccessToken(MssoContext mssoContext, String refreshToken, long sessionGeneration) throws OAuthException, OAuthServerException, AuthenticationException, RetryRequestException {
+        String clientId = mssoContext.getClientId();
+        String clientSecret = mssoContext.getClientSecret();
+        OAuthTokenResponse response = oAuthTokenClient.obtainTokenUsingRefreshToken(refreshToken, clientId, clientSecret);
+        String accessToken = response.getAccessToken();
+        if (!mssoContext.onAccessTokenAvailable(accessToken, response.getRefreshToken(), response.getExpiresIn(),
+                response.getGrantedScope(), sessionGeneration)) {
+            Log.d(TAG, "Session ended during the access token refresh, discarding the refreshed token");
+            return null;
+        }
+        return accessToken;
+    }
+
     private String obtainAccessTokenUsingRefreshToken(MssoContext mssoContext, String refreshToken) throws OAuthException, OAuthServerException, AuthenticationException, RetryRequestException {
         String clientId = mssoContext.getClientId();
         String clientSecret = mssoContext.getClientSecret();
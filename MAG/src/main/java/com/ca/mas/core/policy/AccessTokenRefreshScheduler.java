@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.policy;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.ca.mas.core.MobileSsoConfig;
+import com.ca.mas.core.conf.ConfigurationProvider;
+import com.ca.mas.core.context.MssoContext;
+import com.ca.mas.core.error.MAGException;
+import com.ca.mas.core.error.MAGServerException;
+import com.ca.mas.core.policy.exceptions.RetryRequestException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refreshes the access token in the background, with the refresh token, a configurable number of seconds before it
+ * expires, so the requests rarely find it expired and wait for the refresh themselves.
+ * <p/>
+ * The refresh is scheduled from the expiry of the stored access token, and shares the single-flight of the
+ * {@link AccessTokenAssertion}: a request needing a token while the refresh is in progress waits for it and uses the
+ * refreshed token.  A refresh failing because the gateway cannot be reached, such as when the device is offline, is
+ * tried again with an exponential backoff until the token expires; a refresh token rejected by the gateway is left
+ * to the next request to handle.
+ * <p/>
+ * A token issued for no longer than the skew is refreshed half way through its lifetime instead, and background
+ * refreshes are always spaced by a minimum interval, so short lived tokens never cause a refresh loop.
+ *
+ * @see MobileSsoConfig#PROP_ACCESS_TOKEN_REFRESH_SKEW
+ */
+public class AccessTokenRefreshScheduler {
+
+    private static final String TAG = AccessTokenRefreshScheduler.class.getSimpleName();
+    private static final int DEFAULT_SKEW_SECONDS = 60;
+    private static final long MIN_RETRY_DELAY_MILLIS = 5000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000;
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = 10000;
+    private static final AccessTokenRefreshScheduler instance = new AccessTokenRefreshScheduler();
+
+    /**
+     * The source of the current time the expiry of the access token is compared with.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * Refreshes the access token which expires at the given time, unless it was replaced already.
+     */
+    interface Refresh {
+        /**
+         * @return true if the access token was refreshed, false if it was replaced or removed meanwhile.
+         */
+        boolean refresh(long expiry) throws MAGException, MAGServerException;
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "AccessTokenRefresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile Clock clock = SYSTEM_CLOCK;
+    private ScheduledFuture<?> pending;
+    private long scheduledExpiry;
+    private int attempts;
+    // When the last background refresh completed, and the expiry of the token it obtained
+    private long refreshedAt;
+    private long refreshedExpiry;
+
+    private AccessTokenRefreshScheduler() {
+    }
+
+    public static AccessTokenRefreshScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replaces the clock, for testing.
+     *
+     * @param clock the clock, or null for the system clock.
+     */
+    public synchronized void setClock(Clock clock) {
+        this.clock = clock != null ? clock : SYSTEM_CLOCK;
+        // Schedule again against the new clock on the next request
+        cancel();
+        refreshedAt = 0;
+        refreshedExpiry = 0;
+    }
+
+    /**
+     * @return the current time of the clock, in milliseconds since the epoch.
+     */
+    public long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * @return the number of access tokens refreshed in the background.
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return the number of background refreshes which failed, including those tried again.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Schedules the refresh of the stored access token, unless it is scheduled already.  Cheap enough to be called
+     * for each request.
+     */
+    synchronized void schedule(MssoContext mssoContext, Refresh refresh) {
+        long expiry = mssoContext.getAccessTokenExpiry();
+        if (expiry == scheduledExpiry) {
+            // Scheduled, or given up on until the access token is replaced
+            return;
+        }
+        cancel();
+        long skew = getSkewMillis(mssoContext.getConfigurationProvider());
+        if (expiry <= 0 || skew <= 0 || mssoContext.getRefreshToken() == null) {
+            return;
+        }
+        scheduledExpiry = expiry;
+        long now = clock.currentTimeMillis();
+        long lead = skew;
+        if (expiry == refreshedExpiry) {
+            // The lifetime of a token refreshed in the background is known
+            lead = Math.min(skew, Math.max(0, expiry - refreshedAt) / 2);
+        }
+        long delay = Math.max(expiry - lead - now, refreshedAt + MIN_REFRESH_INTERVAL_MILLIS - now);
+        submit(mssoContext, refresh, expiry, delay);
+    }
+
+    /**
+     * Cancels the scheduled refresh.
+     */
+    synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        scheduledExpiry = 0;
+        attempts = 0;
+    }
+
+    private void submit(final MssoContext mssoContext, final Refresh refresh, final long expiry, long delayMillis) {
+        pending = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                AccessTokenRefreshScheduler.this.run(mssoContext, refresh, expiry);
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void run(MssoContext mssoContext, Refresh refresh, long expiry) {
+        synchronized (this) {
+            if (scheduledExpiry != expiry) {
+                return;
+            }
+        }
+        try {
+            if (refresh.refresh(expiry)) {
+                refreshes.incrementAndGet();
+                long now = clock.currentTimeMillis();
+                long refreshed = mssoContext.getAccessTokenExpiry();
+                synchronized (this) {
+                    refreshedAt = now;
+                    refreshedExpiry = refreshed;
+                }
+            }
+        } catch (RetryRequestException | MAGServerException e) {
+            // The refresh token or the client credentials were rejected, leave it to the next request
+            failures.incrementAndGet();
+            Log.w(TAG, "Access token refresh rejected: " + e.getMessage());
+        } catch (MAGException | RuntimeException e) {
+            failures.incrementAndGet();
+            retry(mssoContext, refresh, expiry, e);
+            return;
+        }
+        synchronized (this) {
+            if (scheduledExpiry == expiry) {
+                pending = null;
+            }
+        }
+        // Schedule the refresh of the new access token
+        schedule(mssoContext, refresh);
+    }
+
+    private synchronized void retry(MssoContext mssoContext, Refresh refresh, long expiry, Exception cause) {
+        if (scheduledExpiry != expiry) {
+            return;
+        }
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, MIN_RETRY_DELAY_MILLIS << Math.min(attempts++, 16));
+        if (clock.currentTimeMillis() + delay >= expiry) {
+            Log.w(TAG, "Access token refresh failed, leaving it to the next request: " + cause.getMessage());
+            pending = null;
+            return;
+        }
+        Log.w(TAG, "Access token refresh failed, trying again in " + delay + " ms: " + cause.getMessage());
+        submit(mssoContext, refresh, expiry, delay);
+    }
+
+    private static long getSkewMillis(ConfigurationProvider configurationProvider) {
+        Integer skew = configurationProvider.getProperty(MobileSsoConfig.PROP_ACCESS_TOKEN_REFRESH_SKEW);
+        return (skew != null ? skew : DEFAULT_SKEW_SECONDS) * 1000L;
+    }
+}
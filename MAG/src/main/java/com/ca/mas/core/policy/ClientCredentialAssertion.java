@@ -11,7 +11,6 @@ package com.ca.mas.core.policy;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import com.ca.mas.core.client.ServerClient;
 import com.ca.mas.core.clientcredentials.ClientCredentialsClient;
 import com.ca.mas.core.context.MssoContext;
 import com.ca.mas.core.error.MAGException;
@@ -29,6 +28,7 @@ public class ClientCredentialAssertion implements MssoAssertion {
 
     public static final String INVALID_CLIENT_CREDENTIALS_ERROR_CODE_SUFFIX = "201";
     private TokenManager tokenManager;
+    private final SingleFlight<Void> initialization = new SingleFlight<Void>();
 
     @Override
     public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) {
@@ -38,10 +38,10 @@ public class ClientCredentialAssertion implements MssoAssertion {
     }
 
     @Override
-    public void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
+    public void processRequest(final MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
 
-       String configuredClientSecret = mssoContext.getConfigurationProvider().getClientSecret();
-        String configuredClientId = mssoContext.getConfigurationProvider().getClientId();
+        String configuredClientSecret = mssoContext.getConfigurationProvider().getClientSecret();
+        final String configuredClientId = mssoContext.getConfigurationProvider().getClientId();
 
         if (configuredClientSecret != null && configuredClientSecret.trim().length() > 0) {
             //Configured Client ID cannot be null, it is mandatory in the configuration.
@@ -51,29 +51,42 @@ public class ClientCredentialAssertion implements MssoAssertion {
             }
         }
 
+        if (!isClientCredentialRequired(mssoContext)) {
+            return;
+        }
+
+        // Only one request initializes the client credentials, concurrent requests wait for the result.
+        initialization.execute(new SingleFlight.Work<Void>() {
+            @Override
+            public Void call() throws MAGException, MAGServerException {
+                if (isClientCredentialRequired(mssoContext)) {
+                    try {
+                        String uuid = UUID.randomUUID().toString();
+                        ClientCredentials result = new ClientCredentialsClient(mssoContext).
+                                getClientCredentials(configuredClientId, uuid, mssoContext.getDeviceId());
+                        mssoContext.setClientCredentials(result);
+                    } catch (NullPointerException e) {
+                        throw new IllegalArgumentException("Please check your configurations. One or more configuration is wrong or incomplete");
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return true if the client ID does not exist or has expired.
+     */
+    private boolean isClientCredentialRequired(MssoContext mssoContext) {
         //OR the client ID does not exist. Due to unset the the device pin, the key to decrypt the clientID may be empty.
         //May not necessary to check the client id, the client expiration check may be good enough
-        if (mssoContext.isClientCredentialExpired(mssoContext.getClientExpiration()) ||
-                mssoContext.getStoredClientId() == null) {
-            try {
-                String uuid = UUID.randomUUID().toString();
-                ClientCredentials result = new ClientCredentialsClient(mssoContext).
-                        getClientCredentials(configuredClientId, uuid, mssoContext.getDeviceId());
-                mssoContext.setClientCredentials(result);
-            } catch (NullPointerException e) {
-                throw new IllegalArgumentException("Please check your configurations. One or more configuration is wrong or incomplete");
-            }
-        }
+        return mssoContext.isClientCredentialExpired(mssoContext.getClientExpiration()) ||
+                mssoContext.getStoredClientId() == null;
     }
 
     @Override
     public void processResponse(MssoContext mssoContext, RequestInfo request, MAGResponse response) throws MAGStateException {
-        int errorCode = ServerClient.findErrorCode(response);
-        if (errorCode == -1) {
-            return;
-        }
-        String s = Integer.toString(errorCode);
-        if (s.endsWith(INVALID_CLIENT_CREDENTIALS_ERROR_CODE_SUFFIX)) {
+        if (ResponseClassification.of(request, response).isErrorCodeEndingWith(INVALID_CLIENT_CREDENTIALS_ERROR_CODE_SUFFIX)) {
             mssoContext.clearAccessToken();
             mssoContext.clearClientCredentials();
             throw new RetryRequestException("Client is rejected by server");
@@ -21,10 +21,10 @@ import com.ca.mas.core.error.MAGException;
 import com.ca.mas.core.error.MAGServerException;
 import com.ca.mas.core.error.MAGStateException;
 import com.ca.mas.core.http.MAGResponse;
-import com.ca.mas.core.util.KeyUtils;
 import com.ca.mas.core.policy.exceptions.CredentialRequiredException;
 import com.ca.mas.core.policy.exceptions.TokenStoreUnavailableException;
 import com.ca.mas.core.registration.DeviceRegistrationAwaitingActivationException;
+import com.ca.mas.core.registration.KeyPairProvisioner;
 import com.ca.mas.core.registration.RegistrationClient;
 import com.ca.mas.core.registration.RegistrationException;
 import com.ca.mas.core.store.TokenManager;
@@ -39,12 +39,14 @@ import java.security.cert.CertificateException;
  * <p/>
  * This policy does nothing if the device is already registered.
  * <p/>
- * If device registration is required, this policy will generate a keypair and register the device.
+ * If device registration is required, this policy will take the keypair provisioned ahead by the
+ * {@link KeyPairProvisioner}, or generate one, and register the device.
  * CredentialRequiredException will be thrown if the user needs to be prompted for credentials.
  * TokenStoreUnavailableException will be thrown if the device needs to be unlocked.
  */
 public class DeviceRegistrationAssertion implements MssoAssertion {
     private TokenManager tokenManager;
+    private final SingleFlight<Void> registration = new SingleFlight<Void>();
 
     @Override
     public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) throws MssoException {
@@ -56,21 +58,31 @@ public class DeviceRegistrationAssertion implements MssoAssertion {
     }
 
     @Override
-    public void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
+    public void processRequest(final MssoContext mssoContext, final RequestInfo request) throws MAGException, MAGServerException {
         if (mssoContext.isDeviceRegistered()) {
             return;
         }
 
-        boolean success = false;
-        try {
-            registerDevice(mssoContext, request);
-            success = true;
-        } finally {
-            // If registration fails, clear any cached credentials so the user will be prompted again.
-            if (!success || (mssoContext.getCredentials() != null && !mssoContext.getCredentials().isReuseable())) {
-                mssoContext.setCredentials(null);
+        // Only one request registers the device, concurrent requests wait for the outcome.
+        registration.execute(new SingleFlight.Work<Void>() {
+            @Override
+            public Void call() throws MAGException, MAGServerException {
+                if (mssoContext.isDeviceRegistered()) {
+                    return null;
+                }
+                boolean success = false;
+                try {
+                    registerDevice(mssoContext, request);
+                    success = true;
+                } finally {
+                    // If registration fails, clear any cached credentials so the user will be prompted again.
+                    if (!success || (mssoContext.getCredentials() != null && !mssoContext.getCredentials().isReuseable())) {
+                        mssoContext.setCredentials(null);
+                    }
+                }
+                return null;
             }
-        }
+        });
     }
 
     @Override
@@ -90,10 +102,7 @@ public class DeviceRegistrationAssertion implements MssoAssertion {
         // Perform device registration
         KeyPair keyPair = tokenManager.getClientKeyPair();
         if (keyPair == null) {
-            Integer keyBits = mssoContext.getConfigurationProvider().getProperty(ConfigurationProvider.PROP_CLIENT_CERT_RSA_KEYBITS);
-            if (keyBits == null)
-                keyBits = 1024;
-            keyPair = KeyUtils.generateRsaKeyPair(keyBits);
+            keyPair = KeyPairProvisioner.getInstance().take(mssoContext.getConfigurationProvider());
             try {
                 tokenManager.saveClientKeyPair(keyPair);
             } catch (TokenStoreException e) {
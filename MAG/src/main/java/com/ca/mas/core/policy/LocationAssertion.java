@@ -13,6 +13,7 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
@@ -23,12 +24,14 @@ import com.ca.mas.core.http.MAGResponse;
 import com.ca.mas.core.policy.exceptions.LocationInvalidException;
 import com.ca.mas.core.policy.exceptions.LocationRequiredException;
 
-import java.net.HttpURLConnection;
 import java.util.Timer;
 import java.util.TimerTask;
 
 /**
  * A policy that adds location information to outbound requests.
+ * <p/>
+ * The location provider reports its fixes to a {@link LocationSampler}, which keeps the geo-location header
+ * of the last meaningful fix, so requests add the header without formatting it.
  */
 class LocationAssertion implements MssoAssertion {
     private static final String TAG = LocationAssertion.class.getName();
@@ -36,10 +39,12 @@ class LocationAssertion implements MssoAssertion {
     static final String DEFAULT_PROVIDER = LocationManager.NETWORK_PROVIDER;
     static final long DEFAULT_MIN_TIME = 120000L;
     static final float DEFAULT_MIN_DISTANCE = 100.0f;
+    /**
+     * A fix older than this many update intervals is replaced by the next one, even if it did not move.
+     */
+    static final int STALE_AFTER_INTERVALS = 5;
 
-    private volatile Location lastLocation;
-    private LocationManager locationManager;
-    private LocationListener locationListener;
+    private volatile LocationSampler sampler;
     private Context context;
     private MssoContext mssoContext;
 
@@ -73,118 +78,154 @@ class LocationAssertion implements MssoAssertion {
         if (minDistance == null)
             minDistance = DEFAULT_MIN_DISTANCE;
 
-        try {
-            initLocation(locationProvider, minTime, minDistance);
-        } catch (Exception e) {
-            Log.i(TAG, "Unable to access location " + e.getMessage());
+        LocationSampler locationSampler = new LocationSampler(new ProviderSource(context, locationProvider, minTime, minDistance),
+                minDistance, minTime * STALE_AFTER_INTERVALS, LocationSampler.DEFAULT_SETUP_INTERVAL);
+        locationSampler.setup(System.currentTimeMillis());
+        sampler = locationSampler;
+    }
+
+    /**
+     * Reports the fixes of an Android location provider.
+     * <p/>
+     * The source is started on the thread of the request which found no fix, an MssoService worker without a
+     * Looper, so the location updates are delivered on the main thread.
+     */
+    static class ProviderSource implements LocationSampler.Source {
+        private final Context context;
+        private final String locationProvider;
+        private final long minTime;
+        private final float minDistance;
+        private LocationManager locationManager;
+        private LocationListener locationListener;
+
+        ProviderSource(Context context, String locationProvider, long minTime, float minDistance) {
+            this.context = context;
+            this.locationProvider = locationProvider;
+            this.minTime = minTime;
+            this.minDistance = minDistance;
         }
 
-    }
+        @Override
+        public synchronized void start(final LocationSampler sampler) {
+            try {
+                initLocation(sampler);
+            } catch (Exception e) {
+                Log.i(TAG, "Unable to access location " + e.getMessage());
+            }
+        }
 
-    private void initLocation(String locationProvider, final long minTime, final float minDistance) throws SecurityException {
-        locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
-        lastLocation = getLastKnownLocation(locationProvider);
-        if (locationManager != null) {
+        void initLocation(final LocationSampler sampler) throws SecurityException {
+            locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+            report(sampler, getLastKnownLocation(locationProvider));
+            if (locationManager != null) {
 
-            locationListener = new LocationListener() {
-                @Override
-                public void onLocationChanged(Location location) {
-                    lastLocation = location;
-                }
+                locationListener = new LocationListener() {
+                    @Override
+                    public void onLocationChanged(Location location) {
+                        report(sampler, location);
+                    }
 
-                @Override
-                public void onStatusChanged(String provider, int status, Bundle extras) {
-                }
+                    @Override
+                    public void onStatusChanged(String provider, int status, Bundle extras) {
+                    }
 
-                @Override
-                public void onProviderEnabled(final String provider) {
-
-                    lastLocation = getLastKnownLocation(provider);
-                    //The OS may delay the location update, and the last knox location may return null.
-                    //Delay 5 sec to retrieve the location again.
-                    if (lastLocation == null) {
-                        final Timer timer = new Timer();
-                        timer.schedule(new TimerTask() {
-                            private int count = 0;
-
-                            @Override
-                            public void run() {
-                                lastLocation = getLastKnownLocation(provider);
-                                count++;
-                                if (lastLocation != null || count >= 5) {
-                                    timer.cancel();
+                    @Override
+                    public void onProviderEnabled(final String provider) {
+
+                        Location lastLocation = getLastKnownLocation(provider);
+                        report(sampler, lastLocation);
+                        //The OS may delay the location update, and the last knox location may return null.
+                        //Delay 5 sec to retrieve the location again.
+                        if (lastLocation == null) {
+                            final Timer timer = new Timer();
+                            timer.schedule(new TimerTask() {
+                                private int count = 0;
+
+                                @Override
+                                public void run() {
+                                    Location lastLocation = getLastKnownLocation(provider);
+                                    report(sampler, lastLocation);
+                                    count++;
+                                    if (lastLocation != null || count >= 5) {
+                                        timer.cancel();
+                                    }
                                 }
-                            }
-                        }, 3000, 1000);
+                            }, 3000, 1000);
+                        }
                     }
-                }
 
-                @Override
-                public void onProviderDisabled(String provider) {
-                    lastLocation = null;
-                }
-            };
+                    @Override
+                    public void onProviderDisabled(String provider) {
+                        sampler.onLocationLost();
+                    }
+                };
 
-            locationManager.requestLocationUpdates(locationProvider, minTime, minDistance, locationListener);
+                locationManager.requestLocationUpdates(locationProvider, minTime, minDistance, locationListener,
+                        Looper.getMainLooper());
 
+            }
         }
-    }
 
+        private void report(LocationSampler sampler, Location location) {
+            if (location != null) {
+                sampler.onLocation(location.getLatitude(), location.getLongitude(), location.getTime());
+            }
+        }
 
-    private Location getLastKnownLocation(String locationProvider) {
-        if (locationManager != null) {
-            try {
-                return locationManager.getLastKnownLocation(locationProvider);
-            } catch (SecurityException e) {
-                Log.i(TAG, "Unable to access location " + e.getMessage());
+        private Location getLastKnownLocation(String locationProvider) {
+            if (locationManager != null) {
+                try {
+                    return locationManager.getLastKnownLocation(locationProvider);
+                } catch (SecurityException e) {
+                    Log.i(TAG, "Unable to access location " + e.getMessage());
+                }
             }
+            return null;
         }
-        return null;
-    }
 
-    @Override
-    public void processResponse(MssoContext mssoContext, RequestInfo request, MAGResponse response) throws MAGException {
-        int statusCode = response.getResponseCode();
-        if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST && statusCode < HttpURLConnection.HTTP_INTERNAL_ERROR) {
-            String responseContent = new String(response.getBody().getRawContent());
-            if (responseContent.toLowerCase().contains("location")) {
-                if (statusCode == 449) {
-                    throw new LocationRequiredException("This application requires your location information. Please enable location services to continue.");
-                } else if (statusCode == 448) {
-                    throw new LocationInvalidException("This location is unauthorized.");
+        @Override
+        public synchronized void stop() {
+            if (locationListener != null && locationManager != null) {
+                try {
+                    locationManager.removeUpdates(locationListener);
+                } catch (SecurityException e) {
+                    Log.i(TAG, "Unable to access location " + e.getMessage());
                 }
             }
+            locationManager = null;
+            locationListener = null;
         }
     }
 
     @Override
-    public void close() {
-        if (locationListener != null && locationManager != null) {
-            try {
-                locationManager.removeUpdates(locationListener);
-            } catch (SecurityException e) {
-                Log.i(TAG, "Unable to access location " + e.getMessage());
+    public void processResponse(MssoContext mssoContext, RequestInfo request, MAGResponse response) throws MAGException {
+        ResponseClassification classification = ResponseClassification.of(request, response);
+        if (classification.isLocationRelated()) {
+            if (classification.getStatusCode() == ResponseClassification.HTTP_POLICY_REQUIRED) {
+                throw new LocationRequiredException("This application requires your location information. Please enable location services to continue.");
+            } else if (classification.getStatusCode() == ResponseClassification.HTTP_POLICY_INVALID) {
+                throw new LocationInvalidException("This location is unauthorized.");
             }
-            locationManager = null;
-            locationListener = null;
-            lastLocation = null;
         }
     }
 
-    private Location getLastLocation() {
-        if (lastLocation != null) {
-            return lastLocation;
-        } else {
-            setupLocation();
-            return lastLocation;
+    @Override
+    public void close() {
+        LocationSampler locationSampler = sampler;
+        sampler = null;
+        if (locationSampler != null) {
+            locationSampler.stop();
         }
     }
 
     @Override
     public void processRequest(MssoContext mssoContext, RequestInfo request) {
-        if (getLastLocation() != null) {
-            String loc = String.format("%f,%f", getLastLocation().getLatitude(), getLastLocation().getLongitude());
-            request.getRequest().addHeader("geo-location", loc);
+        LocationSampler locationSampler = sampler;
+        if (locationSampler != null) {
+            String loc = locationSampler.getHeader(System.currentTimeMillis());
+            if (loc != null) {
+                request.getRequest().addHeader("geo-location", loc);
+            }
         }
     }
 }
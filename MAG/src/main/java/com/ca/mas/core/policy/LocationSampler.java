@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.policy;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the location fixes reported by a {@link Source} and keeps the geo-location header of the last one.
+ * <p/>
+ * The header is formatted when a fix moved at least the minimum distance from the previous one, or the previous
+ * one is older than the staleness bound; other fixes are ignored.  Requests read the formatted header as is.
+ * When no fix is known, the source is set up again, at most once per setup interval, so requests never wait on
+ * the location provider.
+ */
+class LocationSampler {
+
+    /**
+     * A source of location fixes, such as the Android location provider.
+     */
+    interface Source {
+
+        /**
+         * Start reporting fixes to the sampler.  Failures, such as a missing permission, are handled by the source,
+         * the sampler then tries again after the setup interval.
+         */
+        void start(LocationSampler sampler);
+
+        /**
+         * Stop reporting fixes.
+         */
+        void stop();
+    }
+
+    static final long DEFAULT_SETUP_INTERVAL = 30000L;
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    private static final class Fix {
+        final double latitude;
+        final double longitude;
+        final long time;
+        final String header;
+
+        Fix(double latitude, double longitude, long time) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.time = time;
+            this.header = String.format(Locale.US, "%f,%f", latitude, longitude);
+        }
+    }
+
+    private final Source source;
+    private final float minDistance;
+    private final long maxAge;
+    private final long setupInterval;
+    private volatile Fix fix;
+    private final AtomicLong nextSetup = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong setupCount = new AtomicLong();
+    private final AtomicLong formatCount = new AtomicLong();
+
+    /**
+     * @param source        the source of the fixes.
+     * @param minDistance   the distance, in meters, a fix has to move to replace the header.
+     * @param maxAge        the age, in milliseconds, after which any fix replaces the header.
+     * @param setupInterval the time, in milliseconds, between two setups of the source while no fix is known.
+     */
+    LocationSampler(Source source, float minDistance, long maxAge, long setupInterval) {
+        this.source = source;
+        this.minDistance = minDistance;
+        this.maxAge = maxAge;
+        this.setupInterval = setupInterval;
+    }
+
+    /**
+     * Report a location fix.  May be called from any thread.
+     *
+     * @param time the time of the fix, in milliseconds since the epoch.
+     */
+    void onLocation(double latitude, double longitude, long time) {
+        Fix current = fix;
+        if (current == null
+                || time - current.time >= maxAge
+                || distance(current.latitude, current.longitude, latitude, longitude) >= minDistance) {
+            fix = new Fix(latitude, longitude, time);
+            formatCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Report that the location is no longer known, e.g. the provider was disabled.
+     */
+    void onLocationLost() {
+        fix = null;
+    }
+
+    /**
+     * Get the geo-location header of the last sampled fix.  If no fix is known, the source is set up again unless
+     * it was set up less than the setup interval ago.
+     *
+     * @param now the current time, in milliseconds since the epoch.
+     * @return the header value, "latitude,longitude", or null if no fix is known.
+     */
+    String getHeader(long now) {
+        Fix current = fix;
+        if (current != null) {
+            return current.header;
+        }
+        setup(now);
+        current = fix;
+        return current == null ? null : current.header;
+    }
+
+    /**
+     * Set up the source, unless it was set up less than the setup interval ago.
+     */
+    void setup(long now) {
+        long next = nextSetup.get();
+        if (now < next || !nextSetup.compareAndSet(next, now + setupInterval)) {
+            return;
+        }
+        setupCount.incrementAndGet();
+        source.stop();
+        source.start(this);
+    }
+
+    /**
+     * Stop the source and forget the last fix.
+     */
+    void stop() {
+        source.stop();
+        fix = null;
+    }
+
+    /**
+     * @return the number of times the source was set up.
+     */
+    long getSetupCount() {
+        return setupCount.get();
+    }
+
+    /**
+     * @return the number of times a header was formatted.
+     */
+    long getFormatCount() {
+        return formatCount.get();
+    }
+
+    /**
+     * Equirectangular approximation of the distance between two points, accurate for the short distances
+     * compared here.
+     *
+     * @return the distance in meters.
+     */
+    static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double meanLatitude = Math.toRadians((latitude1 + latitude2) / 2);
+        double x = Math.toRadians(longitude2 - longitude1) * Math.cos(meanLatitude);
+        double y = Math.toRadians(latitude2 - latitude1);
+        return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+    }
+}
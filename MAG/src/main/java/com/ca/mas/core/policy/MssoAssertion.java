@@ -22,6 +22,10 @@ import com.ca.mas.core.http.MAGResponse;
  * Represents a policy that applies to outbound requests from the MSSO SDK.  Examples can include ensuring
  * that the device is registered, that TLS client auth is available, that location information is included,
  * that an access token is included.
+ * <p/>
+ * Policies are applied to concurrent requests from several threads at once.  A policy that performs
+ * expensive work that must only happen once, such as device registration, is responsible for coordinating
+ * the concurrent requests, and should not block requests for which no work is needed.
  */
 public interface MssoAssertion {
 
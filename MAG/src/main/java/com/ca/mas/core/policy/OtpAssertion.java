@@ -16,7 +16,6 @@ import com.ca.mas.core.auth.otp.OtpConstants;
 import com.ca.mas.core.auth.otp.OtpUtil;
 import com.ca.mas.core.auth.otp.model.OtpResponseBody;
 import com.ca.mas.core.auth.otp.model.OtpResponseHeaders;
-import com.ca.mas.core.client.ServerClient;
 import com.ca.mas.core.context.MssoContext;
 import com.ca.mas.core.error.MAGException;
 import com.ca.mas.core.error.MAGServerException;
@@ -65,7 +64,7 @@ class OtpAssertion implements MssoAssertion {
 
             if (OtpResponseHeaders.X_OTP_VALUE.REQUIRED == otpResponseHeaders.getxOtpValue()
                     || OtpResponseHeaders.X_CA_ERROR.OTP_INVALID == otpResponseHeaders.getErrorCode()) {
-                int errorCode = ServerClient.findErrorCode(response);
+                int errorCode = ResponseClassification.of(request, response).getErrorCode();
                 OtpResponseBody body = OtpUtil.parseOtpResponseBody(response.getBody().getContent().toString());
                 throw new OtpException(errorCode, statusCode, response.getBody().getContentType(), body.getErrorDescription(),
                         otpResponseHeaders);
@@ -27,7 +27,6 @@ public class PolicyManager {
 
     private final MssoContext mssoContext;
     private final List<MssoAssertion> policies = new ArrayList<MssoAssertion>();
-    private final Object policySync = new Object();
 
     public PolicyManager(MssoContext mssoContext) {
         this.mssoContext = mssoContext;
@@ -76,12 +75,11 @@ public class PolicyManager {
      * @throws MAGException Exception occur in MAG Engine
      */
     public void processRequest(RequestInfo request) throws MAGStateException, MAGException, MAGServerException{
-        // For now, we will serialize all policies to prevent things like device registration and token acquisition
-        // from being attempted in parallel.
-        synchronized (policySync) {
-            for (MssoAssertion policy : policies) {
-                policy.processRequest(mssoContext, request);
-            }
+        // Policies are applied without a global lock. Policies that perform device registration or token
+        // acquisition coordinate concurrent requests themselves, so that work is done only once and a request
+        // whose state is already cached never waits behind it.
+        for (MssoAssertion policy : policies) {
+            policy.processRequest(mssoContext, request);
         }
     }
 
@@ -96,11 +94,10 @@ public class PolicyManager {
      * @throws MAGException Exception occur in MAG Engine
      */
     public void processResponse(RequestInfo request, MAGResponse response) throws MAGException , MAGStateException, MAGServerException{
-        // For now, we will serialize all policies
-        synchronized (policySync) {
-            for (MssoAssertion policy : policies) {
-                policy.processResponse(mssoContext, request, response);
-            }
+        // Classified once, the policies read the classification instead of inspecting the response again
+        request.setResponseClassification(ResponseClassification.classify(response));
+        for (MssoAssertion policy : policies) {
+            policy.processResponse(mssoContext, request, response);
         }
     }
 
@@ -21,6 +21,7 @@ public class RequestInfo {
     private final MAGInternalRequest request;
     private int numAttempts = 0;
     private final Bundle extra;
+    private volatile ResponseClassification responseClassification;
 
     public RequestInfo(MssoContext context, MAGRequest request, Bundle extra) {
         if (request == null)
@@ -54,4 +55,16 @@ public class RequestInfo {
         numAttempts++;
     }
 
+    /**
+     * @return the classification of the last response to this request processed by the policies, or null.
+     * @see ResponseClassification#of(RequestInfo, com.ca.mas.core.http.MAGResponse)
+     */
+    public ResponseClassification getResponseClassification() {
+        return responseClassification;
+    }
+
+    void setResponseClassification(ResponseClassification responseClassification) {
+        this.responseClassification = responseClassification;
+    }
+
 }
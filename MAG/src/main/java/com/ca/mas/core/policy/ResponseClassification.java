@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.policy;
+
+import com.ca.mas.core.client.ServerClient;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.core.http.MAGResponseBody;
+
+import java.net.HttpURLConnection;
+
+/**
+ * What the policies need to know about a response, worked out once per response by the {@link PolicyManager}
+ * before the policies process it.
+ * <p/>
+ * The x-ca-err error code is parsed once.  The body is only searched for the location and MSISDN keywords when
+ * the status is one the location and telephone policies act on, and is searched in place, without being copied
+ * or lower-cased.
+ */
+public final class ResponseClassification {
+
+    /**
+     * Status of a response requiring a policy, e.g. location or MSISDN, to be fulfilled.
+     */
+    public static final int HTTP_POLICY_REQUIRED = 449;
+
+    /**
+     * Status of a response rejecting the value provided for a policy, e.g. location or MSISDN.
+     */
+    public static final int HTTP_POLICY_INVALID = 448;
+
+    private static final byte[] LOCATION = {'l', 'o', 'c', 'a', 't', 'i', 'o', 'n'};
+    private static final byte[] MSISDN = {'m', 's', 'i', 's', 'd', 'n'};
+
+    private final MAGResponse response;
+    private final int statusCode;
+    private final int errorCode;
+    private final String errorCodeString;
+    private final boolean locationRelated;
+    private final boolean msisdnRelated;
+
+    private ResponseClassification(MAGResponse response) {
+        this.response = response;
+        this.statusCode = response.getResponseCode();
+        this.errorCode = parseErrorCode(response);
+        this.errorCodeString = errorCode == -1 ? null : Integer.toString(errorCode);
+        if (statusCode == HTTP_POLICY_REQUIRED || statusCode == HTTP_POLICY_INVALID) {
+            byte[] content = rawContent(response);
+            this.locationRelated = containsIgnoreCase(content, LOCATION);
+            this.msisdnRelated = containsIgnoreCase(content, MSISDN);
+        } else {
+            this.locationRelated = false;
+            this.msisdnRelated = false;
+        }
+    }
+
+    /**
+     * Classify a response.
+     *
+     * @param response the response.  Required.
+     * @return the classification of the response.
+     */
+    public static ResponseClassification classify(MAGResponse response) {
+        return new ResponseClassification(response);
+    }
+
+    /**
+     * Get the classification of a response, as worked out by the {@link PolicyManager} for the request, or
+     * worked out now if the response was not processed by the policy manager.
+     *
+     * @param request  the request.  Required.
+     * @param response the response to the request.  Required.
+     * @return the classification of the response.
+     */
+    public static ResponseClassification of(RequestInfo request, MAGResponse response) {
+        ResponseClassification classification = request.getResponseClassification();
+        if (classification != null && classification.response == response) {
+            return classification;
+        }
+        return classify(response);
+    }
+
+    private static int parseErrorCode(MAGResponse response) {
+        try {
+            return ServerClient.findErrorCode(response);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] rawContent(MAGResponse response) {
+        MAGResponseBody body = response.getBody();
+        return body == null ? null : body.getRawContent();
+    }
+
+    /**
+     * ASCII case insensitive search of a lower case keyword.
+     */
+    static boolean containsIgnoreCase(byte[] content, byte[] keyword) {
+        if (content == null) {
+            return false;
+        }
+        int last = content.length - keyword.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < keyword.length && toLowerCase(content[i + j]) == keyword[j]) {
+                j++;
+            }
+            if (j == keyword.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the x-ca-err error code, or -1 if the response has none.
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return true if the response has an x-ca-err error code ending with the suffix, such as "990" for a
+     * rejected access token.
+     */
+    public boolean isErrorCodeEndingWith(String suffix) {
+        return errorCodeString != null && errorCodeString.endsWith(suffix);
+    }
+
+    public boolean isSuccessful() {
+        return statusCode >= HttpURLConnection.HTTP_OK && statusCode < HttpURLConnection.HTTP_MULT_CHOICE;
+    }
+
+    public boolean isClientError() {
+        return statusCode >= HttpURLConnection.HTTP_BAD_REQUEST && statusCode < HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    public boolean isServerError() {
+        return statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /**
+     * @return true if the response requires or rejects the location of the device.
+     */
+    public boolean isLocationRelated() {
+        return locationRelated;
+    }
+
+    /**
+     * @return true if the response requires or rejects the MSISDN of the device.
+     */
+    public boolean isMsisdnRelated() {
+        return msisdnRelated;
+    }
+}
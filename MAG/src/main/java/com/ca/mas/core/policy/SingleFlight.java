@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.policy;
+
+import com.ca.mas.core.error.MAGException;
+import com.ca.mas.core.error.MAGServerException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Coalesces concurrent executions of the same piece of work into a single in-flight execution.
+ * <p/>
+ * The first thread to call {@link #execute(Object, Work)} becomes the leader and performs the work.
+ * Threads arriving with an equal key while the work is in progress wait for it and receive the leader's
+ * result, or the leader's exception.  Threads arriving with a different key wait for the in-flight
+ * execution to finish and then compete to lead their own execution, so work for different keys
+ * never overlaps.
+ * <p/>
+ * No lock is taken when no execution is in progress.
+ *
+ * @param <T> the result type of the work.
+ */
+class SingleFlight<T> {
+
+    /**
+     * The work to perform while holding the flight.
+     *
+     * @param <T> the result type.
+     */
+    interface Work<T> {
+        T call() throws MAGException, MAGServerException;
+    }
+
+    private final AtomicReference<Flight<T>> inFlight = new AtomicReference<Flight<T>>();
+
+    /**
+     * Perform the work, or join an execution already in progress.
+     *
+     * @param work the work to perform if this thread leads the flight.  Required.
+     * @return the result of the work, as computed by this thread or by the leader of the joined flight.
+     */
+    T execute(Work<T> work) throws MAGException, MAGServerException {
+        return execute(null, work);
+    }
+
+    /**
+     * Perform the work, or join an execution with an equal key already in progress.
+     *
+     * @param key  identifies what the work produces, may be null.
+     * @param work the work to perform if this thread leads the flight.  Required.
+     * @return the result of the work, as computed by this thread or by the leader of the joined flight.
+     */
+    T execute(Object key, Work<T> work) throws MAGException, MAGServerException {
+        for (; ; ) {
+            Flight<T> flight = new Flight<T>(key);
+            if (inFlight.compareAndSet(null, flight)) {
+                return lead(flight, work);
+            }
+            Flight<T> current = inFlight.get();
+            if (current == null) {
+                continue;
+            }
+            current.await();
+            if (current.isSameKey(key)) {
+                return current.get();
+            }
+        }
+    }
+
+    private T lead(Flight<T> flight, Work<T> work) throws MAGException, MAGServerException {
+        try {
+            flight.result = work.call();
+            return flight.result;
+        } catch (MAGException | MAGServerException | RuntimeException | Error e) {
+            flight.error = e;
+            throw e;
+        } finally {
+            inFlight.set(null);
+            flight.done.countDown();
+        }
+    }
+
+    private static class Flight<T> {
+        private final Object key;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // Published to the waiting threads by the latch
+        private T result;
+        private Throwable error;
+
+        Flight(Object key) {
+            this.key = key;
+        }
+
+        boolean isSameKey(Object other) {
+            return key == null ? other == null : key.equals(other);
+        }
+
+        void await() {
+            boolean interrupted = false;
+            try {
+                for (; ; ) {
+                    try {
+                        done.await();
+                        return;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        T get() throws MAGException, MAGServerException {
+            if (error == null) {
+                return result;
+            }
+            if (error instanceof MAGException) {
+                throw (MAGException) error;
+            }
+            if (error instanceof MAGServerException) {
+                throw (MAGServerException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            throw (Error) error;
+        }
+    }
+}
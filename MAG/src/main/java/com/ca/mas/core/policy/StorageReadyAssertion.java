@@ -4,21 +4,32 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 
 import com.ca.mas.core.context.MssoContext;
+import com.ca.mas.core.error.MAGException;
+import com.ca.mas.core.error.MAGServerException;
 import com.ca.mas.core.http.MAGResponse;
 import com.ca.mas.core.policy.exceptions.TokenStoreUnavailableException;
 
 public class StorageReadyAssertion implements MssoAssertion {
 
+    // Concurrent requests share a single probe of the token store
+    private final SingleFlight<Boolean> readinessCheck = new SingleFlight<Boolean>();
+
     @Override
     public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) {
 
     }
 
     @Override
-    public void processRequest(MssoContext mssoContext, RequestInfo request) throws TokenStoreUnavailableException {
+    public void processRequest(final MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
 
         // Ensure token store is available
-        if (!mssoContext.getTokenManager().isTokenStoreReady())
+        Boolean ready = readinessCheck.execute(new SingleFlight.Work<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mssoContext.getTokenManager().isTokenStoreReady();
+            }
+        });
+        if (!ready)
             throw new TokenStoreUnavailableException();
 
     }
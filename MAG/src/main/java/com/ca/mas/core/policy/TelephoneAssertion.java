@@ -53,15 +53,12 @@ public class TelephoneAssertion implements MssoAssertion {
 
     @Override
     public void processResponse(MssoContext mssoContext, RequestInfo request, MAGResponse response) throws MAGException {
-        int statusCode = response.getResponseCode();
-        if (statusCode >= 400 && statusCode < 500) {
-            String responseContent = new String(response.getBody().getRawContent());
-            if (responseContent.toLowerCase().contains("msisdn")) {
-                if (statusCode == 449) {
-                    throw new MobileNumberRequiredException("MSISDN is required by the application to function properly. Enable MSISDN permission.");
-                } else if (statusCode == 448) {
-                    throw new MobileNumberInvalidException("MSISDN is not authorized to access protected resource.");
-                }
+        ResponseClassification classification = ResponseClassification.of(request, response);
+        if (classification.isMsisdnRelated()) {
+            if (classification.getStatusCode() == ResponseClassification.HTTP_POLICY_REQUIRED) {
+                throw new MobileNumberRequiredException("MSISDN is required by the application to function properly. Enable MSISDN permission.");
+            } else if (classification.getStatusCode() == ResponseClassification.HTTP_POLICY_INVALID) {
+                throw new MobileNumberInvalidException("MSISDN is not authorized to access protected resource.");
             }
         }
     }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.registration;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.ca.mas.core.conf.ConfigurationProvider;
+import com.ca.mas.core.util.KeyUtils;
+
+import java.security.KeyPair;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the client key pair of the device registration ahead of time, on a background thread, so the
+ * registration does not generate it while every other request waits for the policies.
+ * <p/>
+ * The provisioned key pair is held in memory until the registration takes it; it is only saved to the token
+ * store, with the client certificate, by the registration.  A registration which finds no key pair of the
+ * configured algorithm and size provisioned generates one on its own thread, as before.
+ */
+public class KeyPairProvisioner {
+
+    private static final String TAG = KeyPairProvisioner.class.getSimpleName();
+    private static final int DEFAULT_KEY_BITS = 1024;
+    private static final KeyPairProvisioner instance = new KeyPairProvisioner();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "KeyPairProvisioner");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private Future<KeyPair> provisioned;
+    private String provisionedKeySpec;
+
+    private KeyPairProvisioner() {
+    }
+
+    public static KeyPairProvisioner getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts generating a key pair of the algorithm and size configured for the client certificate, unless one is
+     * provisioned or being generated already.
+     *
+     * @param configurationProvider the configuration of the gateway the device registers with.
+     */
+    public synchronized void provision(@NonNull ConfigurationProvider configurationProvider) {
+        final String algorithm = getKeyAlgorithm(configurationProvider);
+        final int keyBits = getKeyBits(configurationProvider);
+        String keySpec = algorithm + "/" + keyBits;
+        if (provisioned != null && keySpec.equals(provisionedKeySpec)) {
+            return;
+        }
+        provisionedKeySpec = keySpec;
+        provisioned = executor.submit(new Callable<KeyPair>() {
+            @Override
+            public KeyPair call() throws Exception {
+                return KeyUtils.generateKeyPair(algorithm, keyBits);
+            }
+        });
+    }
+
+    /**
+     * Takes the provisioned key pair, waiting for its generation to complete if in progress, or generates a key
+     * pair on the calling thread if none of the configured algorithm and size was provisioned.
+     *
+     * @param configurationProvider the configuration of the gateway the device registers with.
+     * @return a new key pair, never handed out twice.
+     */
+    public KeyPair take(@NonNull ConfigurationProvider configurationProvider) {
+        String algorithm = getKeyAlgorithm(configurationProvider);
+        int keyBits = getKeyBits(configurationProvider);
+        String keySpec = algorithm + "/" + keyBits;
+        Future<KeyPair> future;
+        synchronized (this) {
+            future = keySpec.equals(provisionedKeySpec) ? provisioned : null;
+            provisioned = null;
+        }
+        if (future != null) {
+            try {
+                KeyPair keyPair = future.get();
+                hits.incrementAndGet();
+                return keyPair;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Unable to provision the key pair: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        misses.incrementAndGet();
+        return KeyUtils.generateKeyPair(algorithm, keyBits);
+    }
+
+    /**
+     * @return the number of key pairs taken which were provisioned ahead.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of key pairs taken which were generated on the registration's thread.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static String getKeyAlgorithm(ConfigurationProvider configurationProvider) {
+        String algorithm = configurationProvider.getProperty(ConfigurationProvider.PROP_CLIENT_CERT_KEY_ALGORITHM);
+        return algorithm != null ? algorithm : KeyUtils.RSA;
+    }
+
+    private static int getKeyBits(ConfigurationProvider configurationProvider) {
+        Integer keyBits = configurationProvider.getProperty(ConfigurationProvider.PROP_CLIENT_CERT_RSA_KEYBITS);
+        return keyBits != null ? keyBits : DEFAULT_KEY_BITS;
+    }
+}
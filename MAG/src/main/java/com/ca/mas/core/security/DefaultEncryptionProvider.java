@@ -18,7 +18,9 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.crypto.Cipher;
 import javax.crypto.Mac;
@@ -27,9 +29,19 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import javax.security.auth.DestroyFailedException;
-import javax.security.auth.Destroyable;
 
+/**
+ * Encrypts data with AES/GCM using a secret key held by a {@link KeyStorageProvider}, and authenticates the
+ * cipher text with HMAC-SHA256.
+ * <p/>
+ * The secret key is retrieved from the {@link KeyStorageProvider} once and kept for the lifetime of the provider,
+ * as retrieving it may involve loading the Android KeyStore or unwrapping it with an asymmetric key.  The cached
+ * key and the Cipher instances initialized with it are dropped whenever a key is stored or removed through a
+ * {@link KeyStoreKeyStorageProvider} or a {@link LockableKeyStorageProvider}, or the latter is locked.  The key of
+ * any other {@link KeyStorageProvider} is not cached, as its changes can't be observed.  A key removed from the
+ * storage is generated again when it is next used.  Cipher and Mac instances are kept per thread and reused across
+ * calls.
+ */
 public class DefaultEncryptionProvider implements EncryptionProvider {
     private KeyStorageProvider ksp;
     private static final String KEY_ALIAS = "secret";
@@ -39,6 +51,30 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
     private static final String AES_GCM_NO_PADDING = "AES/GCM/NoPadding";
     private static final String HMAC_SHA256 = "HmacSHA256";
     private static final int IV_LENGTH = 12;
+    private static final SecureRandom secureRandom = new SecureRandom();
+    // Serializes the generation of missing keys, so that concurrent callers don't store different keys
+    private static final Object generateLock = new Object();
+
+    private final boolean cacheKey;
+    private final Object keyLock = new Object();
+    // Guarded by keyLock
+    private SecretKey cachedKey;
+    private int keyEpoch;
+    private volatile ThreadLocal<Cipher> cipher = newCipherCache();
+
+    private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac hm = Mac.getInstance(HMAC_SHA256);
+                hm.init(new SecretKeySpec(getKeyAlias().getBytes("UTF-8"), HMAC_SHA256));
+                return hm;
+            } catch (NoSuchAlgorithmException | InvalidKeyException | UnsupportedEncodingException e) {
+                Log.e(TAG, "Error while instantiating MAC", e);
+                throw new RuntimeException("Error while instantiating MAC", e);
+            }
+        }
+    };
 
     public DefaultEncryptionProvider(@NonNull Context ctx) {
         this(ctx, new SharedPreferencesKeyStorageProvider(ctx));
@@ -46,12 +82,16 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
 
     public DefaultEncryptionProvider(Context ctx, KeyStorageProvider keyStorageProvider) {
         ksp = keyStorageProvider;
-        boolean hasSecureKey = ksp.containsKey(getKeyAlias());
-
-        if (!hasSecureKey) {
-            SecretKey sk = generateKey();
-            ksp.storeKey(getKeyAlias(), sk);
+        if (ksp instanceof LockableKeyStorageProvider) {
+            ((LockableKeyStorageProvider) ksp).addKeyCache(this);
+            cacheKey = true;
+        } else if (ksp instanceof KeyStoreKeyStorageProvider) {
+            KeyStoreKeyStorageProvider.addKeyCache(this);
+            cacheKey = true;
+        } else {
+            cacheKey = false;
         }
+        loadKey();
     }
 
     protected String getKeyAlias() {
@@ -74,18 +114,76 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
      * @param data : the data to encrypt
      * @return encrypted data as byte[]
      */
-    @TargetApi(Build.VERSION_CODES.KITKAT)
     @Override
     public byte[] encrypt(byte[] data) {
         if (data == null) {
             return null;
         }
+        // The Cipher is obtained before the key, so a Cipher initialized with a cleared key is never reused
+        Cipher c = cipher.get();
+        return encrypt(data, getSecretKey(), c, mac.get());
+    }
 
-        byte[] encryptedData;
-        try {
-            SecretKey secretKey = ksp.getKey(getKeyAlias());
-            Cipher cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
+    /**
+     * Encrypts each of the given items, retrieving the key and the Cipher and Mac instances only once.
+     *
+     * @param data : the items to encrypt
+     * @return the encrypted items, in the same order.  A null item is returned as null.
+     */
+    public List<byte[]> encrypt(@NonNull List<byte[]> data) {
+        List<byte[]> result = new ArrayList<>(data.size());
+        if (data.isEmpty()) {
+            return result;
+        }
+        Cipher c = cipher.get();
+        Mac hm = mac.get();
+        SecretKey secretKey = getSecretKey();
+        for (byte[] item : data) {
+            result.add(item == null ? null : encrypt(item, secretKey, c, hm));
+        }
+        return result;
+    }
 
+    /**
+     * @param encryptedData : data to be decrypted
+     * @return byte[] of decrypted data
+     */
+    @Override
+    public byte[] decrypt(byte[] encryptedData) {
+        Cipher c = cipher.get();
+        Mac hm = mac.get();
+        verifyMac(encryptedData, hm);
+        return decrypt(encryptedData, getSecretKey(), c, hm);
+    }
+
+    /**
+     * Decrypts each of the given items, retrieving the key and the Cipher and Mac instances only once.
+     *
+     * @param encryptedData : the items to decrypt
+     * @return the decrypted items, in the same order.  A null item is returned as null.
+     */
+    public List<byte[]> decrypt(@NonNull List<byte[]> encryptedData) {
+        List<byte[]> result = new ArrayList<>(encryptedData.size());
+        if (encryptedData.isEmpty()) {
+            return result;
+        }
+        Cipher c = cipher.get();
+        Mac hm = mac.get();
+        for (byte[] item : encryptedData) {
+            if (item != null) {
+                verifyMac(item, hm);
+            }
+        }
+        SecretKey secretKey = getSecretKey();
+        for (byte[] item : encryptedData) {
+            result.add(item == null ? null : decrypt(item, secretKey, c, hm));
+        }
+        return result;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private byte[] encrypt(byte[] data, SecretKey secretKey, Cipher cipher, Mac hm) {
+        try {
             byte[] iv;
             AlgorithmParameterSpec ivParams;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -93,7 +191,6 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
                 iv = cipher.getIV();
             } else {
                 iv = new byte[IV_LENGTH];
-                SecureRandom secureRandom = new SecureRandom();
                 secureRandom.nextBytes(iv);
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                     ivParams = new GCMParameterSpec(128, iv);
@@ -107,62 +204,49 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
                 cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParams);
             }
 
-            encryptedData = cipher.doFinal(data);
-            byte[] mac = computeMac(getKeyAlias(), encryptedData);
-            encryptedData = concatArrays(mac, iv, encryptedData);
+            byte[] encryptedData = cipher.doFinal(data);
+            byte[] mac = hm.doFinal(encryptedData);
+            return concatArrays(mac, iv, encryptedData);
         } catch (Exception e) {
             Log.e(TAG, "inside exception of encrypt function: ", e);
             throw new RuntimeException(e.getMessage(), e);
         }
-        return encryptedData;
     }
 
     /**
-     * @param encryptedData : data to be decrypted
-     * @return byte[] of decrypted data
+     * Verifies the mac signature of the encrypted data, before the key is retrieved.
      */
-    @TargetApi(Build.VERSION_CODES.KITKAT)
-    @Override
-    public byte[] decrypt(byte[] encryptedData) {
-        Cipher cipher;
-        try {
-            cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            Log.e(TAG, "Error while getting an cipher instance", e);
-            throw new RuntimeException("Error while getting an cipher instance", e);
-        }
-
-        int ivlength = IV_LENGTH;
-        int macLength;
-        try {
-            macLength = Mac.getInstance(HMAC_SHA256).getMacLength();
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(TAG, "Error while instantiating MAC", e);
-            throw new RuntimeException("Error while instantiating MAC", e);
+    private void verifyMac(byte[] encryptedData, Mac hm) {
+        int macLength = hm.getMacLength();
+        if (encryptedData.length < macLength + IV_LENGTH) {
+            Log.e(TAG, "MAC signature could not be verified");
+            throw new RuntimeException("MAC signature could not be verified");
         }
-        int encryptedDataLength = encryptedData.length - ivlength - macLength;
+        hm.update(encryptedData, macLength + IV_LENGTH, encryptedData.length - macLength - IV_LENGTH);
+        byte[] mac = hm.doFinal();
         byte[] macFromMessage = getArraySubset(encryptedData, 0, macLength);
 
-        byte[] iv = getArraySubset(encryptedData, macLength, ivlength);
-        encryptedData = getArraySubset(encryptedData, macLength + ivlength, encryptedDataLength);
-        byte[] mac = computeMac(getKeyAlias(), encryptedData);
-
         if (!Arrays.equals(mac, macFromMessage)) {
             Log.e(TAG, "MAC signature could not be verified");
             throw new RuntimeException("MAC signature could not be verified");
         }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private byte[] decrypt(byte[] encryptedData, SecretKey secretKey, Cipher cipher, Mac hm) {
+        int macLength = hm.getMacLength();
+        int offset = macLength + IV_LENGTH;
 
         AlgorithmParameterSpec ivParams;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            ivParams = new GCMParameterSpec(128, iv);
+            ivParams = new GCMParameterSpec(128, encryptedData, macLength, IV_LENGTH);
         } else {
-            ivParams = new IvParameterSpec(iv);
+            ivParams = new IvParameterSpec(encryptedData, macLength, IV_LENGTH);
         }
 
         try {
-            SecretKey secretKey = ksp.getKey(getKeyAlias());
             cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParams);
-            return cipher.doFinal(encryptedData);
+            return cipher.doFinal(encryptedData, offset, encryptedData.length - offset);
         } catch (Exception e) {
             Log.e(TAG, "Error while decrypting an cipher instance", e);
             throw new RuntimeException(e.getMessage(), e);
@@ -170,26 +254,69 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
     }
 
     /**
-     * Computes the mac signature for the encrypted array
-     *
-     * @param key         : Key to use to generate a secret key for MAC operation
-     * @param cipherText: the data for which the signature has to be calculated
-     * @return
+     * Retrieves the secret key from the key storage provider on first use only.  A key retrieved while the
+     * cache was being cleared is not cached.
      */
-    private byte[] computeMac(String key, byte[] cipherText) {
-        Mac hm;
-        SecretKey secretKey = null;
-        try {
-            hm = Mac.getInstance(HMAC_SHA256);
-            secretKey = new SecretKeySpec(key.getBytes("UTF-8"), HMAC_SHA256);
-            hm.init(secretKey);
-            return hm.doFinal(cipherText);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | UnsupportedEncodingException e) {
-            Log.e(TAG, "Error while calculating signature", e);
-            throw new RuntimeException("Error while calculating signature", e);
-        } finally {
-            destroyKey(secretKey);
+    private SecretKey getSecretKey() {
+        if (!cacheKey) {
+            return loadKey();
+        }
+        int epoch;
+        synchronized (keyLock) {
+            if (cachedKey != null) {
+                return cachedKey;
+            }
+            epoch = keyEpoch;
+        }
+        SecretKey key = loadKey();
+        synchronized (keyLock) {
+            if (epoch == keyEpoch) {
+                cachedKey = key;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the key held by the storage, generating and storing it if the storage doesn't hold it.
+     */
+    private SecretKey loadKey() {
+        String alias = getKeyAlias();
+        if (!ksp.containsKey(alias)) {
+            synchronized (generateLock) {
+                if (!ksp.containsKey(alias)) {
+                    SecretKey sk = generateKey();
+                    ksp.storeKey(alias, sk);
+                    return sk;
+                }
+            }
         }
+        return ksp.getKey(alias);
+    }
+
+    /**
+     * Drops the cached key and the Cipher instances which may have been initialized with it.
+     */
+    void clearKeyCache() {
+        synchronized (keyLock) {
+            cachedKey = null;
+            keyEpoch++;
+            cipher = newCipherCache();
+        }
+    }
+
+    private static ThreadLocal<Cipher> newCipherCache() {
+        return new ThreadLocal<Cipher>() {
+            @Override
+            protected Cipher initialValue() {
+                try {
+                    return Cipher.getInstance(AES_GCM_NO_PADDING);
+                } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                    Log.e(TAG, "Error while getting an cipher instance", e);
+                    throw new RuntimeException("Error while getting an cipher instance", e);
+                }
+            }
+        };
     }
 
     /**
@@ -217,20 +344,4 @@ public class DefaultEncryptionProvider implements EncryptionProvider {
         System.arraycopy(array, start, result, 0, length);
         return result;
     }
-
-    /**
-     * Destroys the ephemeral key, in this case the Secret key generated for MAC, if the key implements Destroyable
-     *
-     * @param key
-     */
-    private void destroyKey(SecretKey key) {
-        if (key instanceof Destroyable) {
-            Destroyable destroyable = (Destroyable) key;
-            try {
-                destroyable.destroy();
-            } catch (DestroyFailedException e) {
-                Log.e(TAG, "Could not destroy key");
-            }
-        }
-    }
 }
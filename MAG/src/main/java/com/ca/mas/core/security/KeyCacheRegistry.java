@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The encryption providers caching a key of a key storage, whose cached key must be cleared when a key of the
+ * storage is stored, removed or locked.  The encryption providers are only weakly referenced.
+ */
+class KeyCacheRegistry {
+
+    private final Set<DefaultEncryptionProvider> encryptionProviders =
+            Collections.newSetFromMap(new WeakHashMap<DefaultEncryptionProvider, Boolean>());
+
+    void add(DefaultEncryptionProvider encryptionProvider) {
+        synchronized (encryptionProviders) {
+            encryptionProviders.add(encryptionProvider);
+        }
+    }
+
+    void clear() {
+        List<DefaultEncryptionProvider> providers;
+        synchronized (encryptionProviders) {
+            providers = new ArrayList<>(encryptionProviders);
+        }
+        for (DefaultEncryptionProvider provider : providers) {
+            provider.clearKeyCache();
+        }
+    }
+}
@@ -46,12 +46,29 @@ public abstract class KeyStoreKeyStorageProvider implements KeyStorageProvider {
     public static final String RSA_ECB_PKCS1_PADDING = "RSA/ECB/PKCS1PADDING";
     private static final String AES = "AES";
 
+    /**
+     * The encryption providers caching a key of any provider of this kind.  The keys of all instances are kept in
+     * the same storage, so a key stored or removed through one instance is dropped from all caches.
+     */
+    private static final KeyCacheRegistry keyCaches = new KeyCacheRegistry();
+
     private Context context;
 
     public KeyStoreKeyStorageProvider(@NonNull Context ctx) {
         context = ctx.getApplicationContext();
     }
 
+    /**
+     * Registers an encryption provider whose cached key must be cleared when a key is stored or removed.
+     */
+    static void addKeyCache(DefaultEncryptionProvider encryptionProvider) {
+        keyCaches.add(encryptionProvider);
+    }
+
+    private static void clearKeyCaches() {
+        keyCaches.clear();
+    }
+
     abstract boolean storeSecretKeyLocally(String alias, byte[] encryptedSecretKey);
 
     abstract boolean containsSecretKeyLocally(String alias);
@@ -71,6 +88,32 @@ public abstract class KeyStoreKeyStorageProvider implements KeyStorageProvider {
      */
     @Override
     public void storeKey(String alias, SecretKey key) {
+        try {
+            store(alias, key);
+        } finally {
+            clearKeyCaches();
+        }
+    }
+
+    /**
+     * Removes the SecretKey stored against the alias, from the local storage and the Android KeyStore.
+     *
+     * @param alias: the alias of the key to remove
+     */
+    public void removeKey(String alias) {
+        try {
+            if (containsSecretKeyLocally(alias)) {
+                deleteSecretKeyLocally(alias);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                deleteKeyFromKeystore(alias);
+            }
+        } finally {
+            clearKeyCaches();
+        }
+    }
+
+    private void store(String alias, SecretKey key) {
         /**
          * Since this is Android M or higher, we can directly store a symmetric Key into the Android KeyStore
          */
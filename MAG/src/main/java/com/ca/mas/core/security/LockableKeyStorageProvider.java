@@ -29,6 +29,7 @@ public class LockableKeyStorageProvider implements KeyStorageProvider {
     private static final String TAG = LockableKeyStorageProvider.class.getCanonicalName();
     private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
     private SecretKey secretKey;
+    private final KeyCacheRegistry keyCaches = new KeyCacheRegistry();
 
     @Override
     public void storeKey(String alias, SecretKey sk) {
@@ -50,6 +51,7 @@ public class LockableKeyStorageProvider implements KeyStorageProvider {
 
         try {
             this.secretKey = sk;
+            clearKeyCaches();
             ks.setEntry(alias, new KeyStore.SecretKeyEntry(sk), kp);
         } catch (KeyStoreException e) {
             Log.e(TAG, "Error setting entry into Android KeyStore.", e);
@@ -96,15 +98,31 @@ public class LockableKeyStorageProvider implements KeyStorageProvider {
             }
         }
         secretKey = null;
+        clearKeyCaches();
+    }
+
+    /**
+     * Registers an encryption provider whose cached key must be cleared when this provider is locked,
+     * or when a key is stored or removed.
+     */
+    void addKeyCache(DefaultEncryptionProvider encryptionProvider) {
+        keyCaches.add(encryptionProvider);
+    }
+
+    private void clearKeyCaches() {
+        keyCaches.clear();
     }
 
     public void removeKey(String alias) {
+        secretKey = null;
         try {
             KeyStore ks = KeyStore.getInstance(ANDROID_KEY_STORE);
             ks.load(null);
             ks.deleteEntry(alias);
         } catch (Exception e) {
             Log.e(TAG, "Error while delete SecretKey", e);
+        } finally {
+            clearKeyCaches();
         }
     }
 }
@@ -10,22 +10,30 @@ package com.ca.mas.core.service;
 
 import com.ca.mas.core.util.Functions;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents pending active requests.
+ * <p/>
+ * The queue may be accessed by several MssoService worker threads at once.  A worker must
+ * {@link #claim(long)} a request before processing it, so that the same request is never processed
+ * by two workers at the same time, nor processed again once finished.
  */
 class MssoActiveQueue {
 
     private static final MssoActiveQueue INSTANCE = new MssoActiveQueue();
 
     // Input queue
-    private final Map<Long, MssoRequest> activeRequests = Collections.synchronizedMap(new LinkedHashMap<Long, MssoRequest>());
+    private final Map<Long, MssoRequest> activeRequests = new LinkedHashMap<Long, MssoRequest>();
+
+    // Requests currently being processed by a worker thread
+    private final Set<Long> claimedRequests = new HashSet<Long>();
 
     private MssoActiveQueue() {
     }
@@ -34,22 +42,60 @@ class MssoActiveQueue {
         return INSTANCE;
     }
 
-    Collection<MssoRequest> getAllRequest() {
-        return activeRequests.values();
+    /**
+     * @return a snapshot of the pending active requests, in processing order.
+     */
+    synchronized Collection<MssoRequest> getAllRequest() {
+        return new ArrayList<MssoRequest>(activeRequests.values());
     }
 
-    void addRequest(MssoRequest request) {
+    synchronized void addRequest(MssoRequest request) {
         activeRequests.put(request.getId(), request);
     }
 
-    MssoRequest getRequest(long requestId) {
+    synchronized MssoRequest getRequest(long requestId) {
         return activeRequests.get(requestId);
     }
 
-    MssoRequest takeRequest(long requestId) {
+    synchronized MssoRequest takeRequest(long requestId) {
         return activeRequests.remove(requestId);
     }
 
+    /**
+     * Atomically move the specified request to the head of the queue.
+     *
+     * @param request the request to move.  Required.
+     */
+    synchronized void moveToFirst(MssoRequest request) {
+        activeRequests.remove(request.getId());
+        Map<Long, MssoRequest> remaining = new LinkedHashMap<Long, MssoRequest>(activeRequests);
+        activeRequests.clear();
+        activeRequests.put(request.getId(), request);
+        activeRequests.putAll(remaining);
+    }
+
+    /**
+     * Mark the specified request as being processed by the calling worker.  A request can only be claimed
+     * while it is pending: once taken from the queue, because it finished or was canceled, a worker holding an
+     * older snapshot of the queue can no longer claim it.
+     *
+     * @param requestId the request ID to claim.
+     * @return true if the request was claimed, false if another worker is already processing it, or it is no
+     * longer pending.
+     */
+    synchronized boolean claim(long requestId) {
+        return activeRequests.containsKey(requestId) && claimedRequests.add(requestId);
+    }
+
+    /**
+     * Release a request previously claimed with {@link #claim(long)}.
+     *
+     * @param requestId the request ID to release.
+     */
+    synchronized void release(long requestId) {
+        claimedRequests.remove(requestId);
+    }
+
     /**
      * Atomically remove all pending requests that match the specified predicate.
      *
@@ -139,10 +139,17 @@ public class MssoClient {
      */
     public void cancelRequest(long requestId) {
         MssoRequest request = null;
-        MssoResponseQueue.getInstance().takeResponse(requestId);
-        request = MssoRequestQueue.getInstance().takeRequest(requestId);
-        if (request == null) {
-            request = MssoActiveQueue.getInstance().takeRequest(requestId);
+        MssoResponse response = MssoResponseQueue.getInstance().takeResponse(requestId);
+        if (response != null) {
+            response.discard();
+        }
+        MssoActiveQueue activeQueue = MssoActiveQueue.getInstance();
+        // A service worker may be moving the request to the active queue
+        synchronized (activeQueue) {
+            request = MssoRequestQueue.getInstance().takeRequest(requestId);
+            if (request == null) {
+                request = activeQueue.takeRequest(requestId);
+            }
         }
         if (request != null) {
             if (request.getResultReceiver() != null) {
@@ -164,7 +171,11 @@ public class MssoClient {
         MssoResponseQueue.getInstance().removeMatching(new Functions.Unary<Boolean, MssoResponse>() {
             @Override
             public Boolean call(MssoResponse mssoResponse) {
-                return mssoResponse.getRequest().getCreator() == MssoClient.this;
+                if (mssoResponse.getRequest().getCreator() != MssoClient.this) {
+                    return false;
+                }
+                mssoResponse.discard();
+                return true;
             }
         });
 
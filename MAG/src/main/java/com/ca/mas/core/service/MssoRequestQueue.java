@@ -16,6 +16,8 @@ import java.util.Map;
 
 /**
  * Represents pending outbound requests.
+ * <p/>
+ * All methods are safe to call from the MssoService worker threads concurrently.
  */
 class MssoRequestQueue {
 
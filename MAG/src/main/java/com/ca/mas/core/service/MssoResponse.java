@@ -38,4 +38,23 @@ class MssoResponse {
     public long getCreationTime() {
         return creationTime;
     }
+
+    /**
+     * Release the resources of a response which will never be picked up.
+     */
+    void discard() {
+        discard(response);
+    }
+
+    /**
+     * Release the resources of a response which will never be handed to the caller, such as the connection
+     * held by a streamed response body.
+     *
+     * @param response the discarded response, may be null.
+     */
+    static void discard(MAGResponse response) {
+        if (response != null && response.getBody() != null) {
+            response.getBody().close();
+        }
+    }
 }
@@ -16,6 +16,8 @@ import java.util.Map;
 
 /**
  * Represents completed responses awaiting pickup.
+ * <p/>
+ * All methods are safe to call from the MssoService worker threads concurrently.
  */
 class MssoResponseQueue {
     private static final MssoResponseQueue INSTANCE = new MssoResponseQueue();
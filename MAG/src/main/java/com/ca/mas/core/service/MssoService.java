@@ -8,13 +8,17 @@
 
 package com.ca.mas.core.service;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.ActivityNotFoundException;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Process;
 import android.os.ResultReceiver;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
+import com.ca.mas.core.MobileSsoConfig;
 import com.ca.mas.core.MobileSsoListener;
 import com.ca.mas.core.auth.AuthenticationException;
 import com.ca.mas.core.auth.otp.OtpAuthenticationHandler;
@@ -23,6 +27,7 @@ import com.ca.mas.core.auth.otp.model.OtpResponseHeaders;
 import com.ca.mas.core.clientcredentials.ClientCredentialsException;
 import com.ca.mas.core.clientcredentials.ClientCredentialsServerException;
 import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.conf.ConfigurationProvider;
 import com.ca.mas.core.context.MssoContext;
 import com.ca.mas.core.creds.Credentials;
 import com.ca.mas.core.error.MAGError;
@@ -49,26 +54,101 @@ import com.ca.mas.core.token.JWTValidationException;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * An IntentService that receives outbound HTTP requests encoded into Intents and returns the eventual responses
+ * A Service that receives outbound HTTP requests encoded into Intents and returns the eventual responses
  * via a ResultReceiver.
+ * <p/>
+ * Intents are handled by a bounded pool of worker threads, so independent requests are processed concurrently.
+ * The pool size is configured with {@link com.ca.mas.core.MobileSsoConfig#PROP_REQUEST_WORKER_THREADS}.
+ * Device registration and token acquisition are still performed only once, the policies applied by the
+ * {@link com.ca.mas.core.policy.PolicyManager} coordinate the workers for those.
  */
-public class MssoService extends IntentService {
+public class MssoService extends Service {
     private static final String TAG = MssoService.class.getName();
 
+    private static final int DEFAULT_WORKER_THREADS = 4;
+    private static final int MAX_WORKER_THREADS = 16;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
 
-    public MssoService() {
-        super("MssoService");
+    private ThreadPoolExecutor executor;
+    // Guarded by this
+    private int pendingIntents;
+    private int lastStartId;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        int workers = getWorkerThreads();
+        executor = new ThreadPoolExecutor(workers, workers, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
     }
 
     @Override
+    public int onStartCommand(final Intent intent, int flags, int startId) {
+        synchronized (this) {
+            lastStartId = startId;
+            pendingIntents++;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    onHandleIntent(intent);
+                } finally {
+                    onIntentHandled();
+                }
+            }
+        });
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Stop the service once every delivered intent has been handled. Stopping with the last start ID
+     * is ignored by the system if a newer intent has been delivered in the meantime.
+     */
+    private synchronized void onIntentHandled() {
+        if (--pendingIntents == 0) {
+            stopSelf(lastStartId);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdown();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private int getWorkerThreads() {
+        Integer workers = null;
+        try {
+            ConfigurationProvider provider = ConfigurationManager.getInstance().getConnectedGatewayConfigurationProvider();
+            workers = provider.getProperty(MobileSsoConfig.PROP_REQUEST_WORKER_THREADS);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to read the worker thread configuration, using default: " + e.getMessage());
+        }
+        if (workers == null) {
+            return DEFAULT_WORKER_THREADS;
+        }
+        return Math.max(1, Math.min(MAX_WORKER_THREADS, workers));
+    }
+
     protected void onHandleIntent(Intent intent) {
+        if (intent == null) {
+            return;
+        }
         String action = intent.getAction();
         if (action == null) {
             Log.e(TAG, "Intent did not contain an action");
@@ -130,7 +210,7 @@ public class MssoService extends IntentService {
             moveToFirst(request);
         }
 
-        final ArrayList<MssoRequest> requests = new ArrayList<MssoRequest>(MssoActiveQueue.getInstance().getAllRequest());
+        final Collection<MssoRequest> requests = MssoActiveQueue.getInstance().getAllRequest();
         for (MssoRequest mssoRequest : requests) {
             if (request == mssoRequest)
                 originalRequestProcessed = true;
@@ -147,17 +227,11 @@ public class MssoService extends IntentService {
 
 
     private void moveToFirst(MssoRequest request) {
-        MssoActiveQueue.getInstance().takeRequest(request.getId());
-        ArrayList<MssoRequest> requests = new ArrayList<>(MssoActiveQueue.getInstance().getAllRequest());
-        MssoActiveQueue.getInstance().addRequest(request);
-        for (MssoRequest r : requests) {
-            MssoActiveQueue.getInstance().takeRequest(r.getId());
-            MssoActiveQueue.getInstance().addRequest(r);
-        }
+        MssoActiveQueue.getInstance().moveToFirst(request);
     }
 
     private void onProcessAllPendingRequests() {
-        final Collection<MssoRequest> requests = new ArrayList<>(MssoActiveQueue.getInstance().getAllRequest());
+        final Collection<MssoRequest> requests = MssoActiveQueue.getInstance().getAllRequest();
         for (MssoRequest mssoRequest : requests) {
             if (!onProcessRequest(mssoRequest)) {
                 // Stop servicing queue now
@@ -168,10 +242,23 @@ public class MssoService extends IntentService {
 
     /**
      * @param request request to process. Required.
-     * @return true if the request was handled to completion (requestFinished() was called)
+     * @return true if the request was handled to completion (requestFinished() was called), is being
+     * handled by another worker thread, or was already finished or canceled.
      * false if an activity was started (requestFinished() not called, request still pending)
      */
     private boolean onProcessRequest(final MssoRequest request) {
+        if (!MssoActiveQueue.getInstance().claim(request.getId())) {
+            Log.d(TAG, "Request " + request.getId() + " is already being processed by another worker, or no longer pending");
+            return true;
+        }
+        try {
+            return doProcessRequest(request);
+        } finally {
+            MssoActiveQueue.getInstance().release(request.getId());
+        }
+    }
+
+    private boolean doProcessRequest(final MssoRequest request) {
         ResultReceiver receiver = request.getResultReceiver();
         boolean expectingUnlock = false;
 
@@ -180,12 +267,20 @@ public class MssoService extends IntentService {
             MAGResponse magResponse = mssoContext.executeRequest(request.getExtra(), request.getRequest());
 
             // Success. Move to response queue and send success notification.
-            if (requestFinished(request)) {
-                MssoResponse response = createMssoResponse(request, magResponse);
-                MssoResponseQueue.getInstance().addResponse(response);
-                respondSuccess(receiver, response.getId(), "OK");
-            } else {
-                // Request was canceled, don't bother enqueuing a response
+            boolean enqueued = false;
+            try {
+                if (requestFinished(request)) {
+                    MssoResponse response = createMssoResponse(request, magResponse);
+                    MssoResponseQueue.getInstance().addResponse(response);
+                    enqueued = true;
+                    respondSuccess(receiver, response.getId(), "OK");
+                } else {
+                    // Request was canceled, don't bother enqueuing a response
+                }
+            } finally {
+                if (!enqueued) {
+                    MssoResponse.discard(magResponse);
+                }
             }
             MssoState.setExpectingUnlock(false);
             return true;
@@ -250,7 +345,11 @@ public class MssoService extends IntentService {
             respondError(receiver, getErrorCode(t), new MAGError(t));
             return true;
         } finally {
-            MssoState.setExpectingUnlock(expectingUnlock);
+            // Only raise the flag here, another worker may have completed a request in the meantime
+            // and a lowered flag would lose the wakeup after unlock.
+            if (expectingUnlock) {
+                MssoState.setExpectingUnlock(true);
+            }
         }
     }
 
@@ -309,15 +408,17 @@ public class MssoService extends IntentService {
      * @return located request or null.
      */
     private MssoRequest takeActiveRequest(long requestId) {
-        MssoRequest request = MssoRequestQueue.getInstance().takeRequest(requestId);
-        if (request != null) {
-            MssoActiveQueue.getInstance().addRequest(request);
-            return request;
+        MssoActiveQueue activeQueue = MssoActiveQueue.getInstance();
+        // Move between queues atomically, so a concurrent cancel always finds the request in one of them.
+        // Workers claim the request before processing it, see onProcessRequest().
+        synchronized (activeQueue) {
+            MssoRequest request = MssoRequestQueue.getInstance().takeRequest(requestId);
+            if (request != null) {
+                activeQueue.addRequest(request);
+                return request;
+            }
+            return activeQueue.getRequest(requestId);
         }
-
-        request = MssoActiveQueue.getInstance().getRequest(requestId);
-        // TODO check if another service thread is already processing this request, if we later give the service more than one thread
-        return request;
     }
 
     private boolean requestFinished(MssoRequest request) {
@@ -356,4 +457,19 @@ public class MssoService extends IntentService {
         receiver.send(MssoIntents.RESULT_CODE_SUCCESS, resultData);
     }
 
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "MssoService-worker-" + threadNumber.getAndIncrement());
+        }
+    }
+
 }
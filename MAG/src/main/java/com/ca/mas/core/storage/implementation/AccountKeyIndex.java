@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.storage.implementation;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index of the keys stored in the user data of an account, as the {@link AccountManager} cannot enumerate them.
+ * <p/>
+ * The keys are kept in a dense array of slots, each slot being a user data entry of its own, together with the
+ * number of slots in use and, for each key, the position of its slot.  Adding or removing a key therefore reads
+ * and writes a constant number of entries, whatever the number of keys: a removed key's slot is filled with the
+ * key of the last slot.
+ * <p/>
+ * A position is only trusted if the slot it points to is in use and holds the key, so an update interrupted
+ * half way never makes a removed key visible again, and a key is listed once even if it is left in two slots.
+ * <p/>
+ * The account may be shared with apps built with a previous version, which only know the single blob index.  When
+ * that index exists it is kept: keys added or removed here are added to or removed from it, and the keys added or
+ * removed by the other apps are taken from it when listing the keys.
+ */
+class AccountKeyIndex {
+
+    /**
+     * Column of the index format used by previous versions, a single blob listing all keys.
+     */
+    static final String LEGACY_INDEX = "lookup_index";
+    private static final String LEGACY_SEPARATOR = ":";
+
+    private static final String COUNT = "lookup_index_count";
+    private static final String SLOT = "lookup_index_slot_";
+    private static final String POSITION = "lookup_index_position_";
+
+    /**
+     * Guards the index of all accounts of the process.
+     */
+    private static final Object lock = new Object();
+
+    private final AccountManager am;
+    private final Account account;
+
+    AccountKeyIndex(AccountManager am, Account account) {
+        this.am = am;
+        this.account = account;
+    }
+
+    /**
+     * Adds the key to the index, if not already indexed.
+     */
+    void add(String key) {
+        synchronized (lock) {
+            int count = count();
+            if (position(key, count) < 0) {
+                am.setUserData(account, SLOT + count, key);
+                am.setUserData(account, POSITION + key, Integer.toString(count));
+                am.setUserData(account, COUNT, Integer.toString(count + 1));
+            }
+            List<String> legacy = legacyKeys();
+            if (legacy != null && !legacy.contains(key)) {
+                legacy.add(key);
+                setLegacyKeys(legacy);
+            }
+        }
+    }
+
+    /**
+     * Removes the key from the index, if indexed.
+     */
+    void remove(String key) {
+        synchronized (lock) {
+            int count = count();
+            int position = position(key, count);
+            if (position >= 0) {
+                int last = count - 1;
+                if (position != last) {
+                    String moved = am.getUserData(account, SLOT + last);
+                    am.setUserData(account, SLOT + position, moved);
+                    if (moved != null) {
+                        am.setUserData(account, POSITION + moved, Integer.toString(position));
+                    }
+                }
+                am.setUserData(account, COUNT, Integer.toString(last));
+                am.setUserData(account, SLOT + last, null);
+                am.setUserData(account, POSITION + key, null);
+            }
+            List<String> legacy = legacyKeys();
+            if (legacy != null && legacy.remove(key)) {
+                setLegacyKeys(legacy);
+            }
+        }
+    }
+
+    /**
+     * @return the indexed keys, in no particular order.
+     */
+    List<String> keys() {
+        synchronized (lock) {
+            int count = count();
+            Set<String> keys = new LinkedHashSet<>(count);
+            for (int i = 0; i < count; i++) {
+                String key = am.getUserData(account, SLOT + i);
+                if (key != null) {
+                    keys.add(key);
+                }
+            }
+            List<String> legacy = legacyKeys();
+            if (legacy == null) {
+                return new ArrayList<>(keys);
+            }
+            // Keys indexed here are also in the legacy index, unless an app of a previous version removed them
+            Set<String> merged = new LinkedHashSet<>(legacy);
+            for (String key : keys) {
+                if (!merged.contains(key) && am.getUserData(account, key) != null) {
+                    merged.add(key);
+                }
+            }
+            return new ArrayList<>(merged);
+        }
+    }
+
+    /**
+     * @return the keys of the legacy index, or null if the account has no legacy index.
+     */
+    private List<String> legacyKeys() {
+        String blob = am.getUserData(account, LEGACY_INDEX);
+        if (blob == null) {
+            return null;
+        }
+        List<String> keys = new ArrayList<>();
+        for (String key : blob.split(LEGACY_SEPARATOR)) {
+            if (key.length() > 0) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private void setLegacyKeys(List<String> keys) {
+        StringBuilder blob = new StringBuilder();
+        for (String key : keys) {
+            if (blob.length() > 0) {
+                blob.append(LEGACY_SEPARATOR);
+            }
+            blob.append(key);
+        }
+        am.setUserData(account, LEGACY_INDEX, blob.toString());
+    }
+
+    private int count() {
+        return Math.max(0, parse(am.getUserData(account, COUNT)));
+    }
+
+    /**
+     * @return the slot of the key, or -1 if the key is not indexed.
+     */
+    private int position(String key, int count) {
+        int position = parse(am.getUserData(account, POSITION + key));
+        if (position < 0 || position >= count) {
+            return -1;
+        }
+        return key.equals(am.getUserData(account, SLOT + position)) ? position : -1;
+    }
+
+    private static int parse(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -21,7 +21,7 @@ import com.ca.mas.core.storage.StorageResultReceiver;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 
 
 /***
@@ -45,11 +45,6 @@ public class AccountManagerStorage extends Storage {
     private static final int MAX_KEY_SIZE = SQLITE_MAX_LENGTH;
 
 
-    /**
-     * Column name for the key-index
-     */
-    private static final String KEYINDEX_COLUMN_NAME = "lookup_index";
-
     /**
      * Key Prefix. The value will be the package name for private mode and
      * "SHARED_" for shared mode
@@ -63,7 +58,7 @@ public class AccountManagerStorage extends Storage {
 
 
     /**
-     * Handle to the class responsible to marshaling and unmarshaling the key index.
+     * Handle to the class responsible to decoding the keys.
      */
     private AccountIndexFormatter mFormatter;
 
@@ -532,8 +527,7 @@ public class AccountManagerStorage extends Storage {
         StorageException returnError = null;
         ArrayList<String> keys = new ArrayList<>();
         try {
-            String keyBlob = readAccountData(mContext, "lookup_index");
-            keys = mFormatter.unmarshel(keyBlob, true);
+            keys = mFormatter.decode(getKeyIndex(mContext).keys());
         } catch (Exception e) {
             returnError = new StorageException(StorageException.OPERATION_FAILED);
         }
@@ -564,37 +558,23 @@ public class AccountManagerStorage extends Storage {
 
     //Utility methods
 
-    private void updateAccountKeyIndex(Context ctx, String key, String value) throws Exception {
-
-        AccountManager am = AccountManager.get(ctx);
-        Account account = accountManager.getAccount();
-        String keyBlob = readAccountData(ctx, KEYINDEX_COLUMN_NAME);
-        //ArrayList<String> keyList = keyBlob==null?new ArrayList<String>():new ArrayList<String>(Arrays.asList(keyBlob.split(ACCOUNT_KEY_SEPERATOR)));
-        ArrayList<String> keyList = mFormatter.unmarshel(keyBlob, false);
-        if (value == null) {
-            //DELETE
-            if (keyList.contains(key)) {
-                keyList.remove(key);
-            }
-        } else {
-            //WRITE
-            if (!keyList.contains(key)) {
-                keyList.add(key);
-            }
-        }
-        keyBlob = mFormatter.marshal(keyList, false);
-        am.setUserData(account, KEYINDEX_COLUMN_NAME, keyBlob);
+    /**
+     * @return the key index of the account.
+     */
+    private AccountKeyIndex getKeyIndex(Context ctx) throws Exception {
+        return new AccountKeyIndex(AccountManager.get(ctx), accountManager.getAccount());
     }
 
     private void writeAccountData(Context ctx, String encodedKey, String value) throws Exception {
         AccountManager am = AccountManager.get(ctx);
         Account account = accountManager.getAccount();
+        AccountKeyIndex index = getKeyIndex(ctx);
         if (value == null) {//DELETE
-            updateAccountKeyIndex(ctx, encodedKey, value);
+            index.remove(encodedKey);
             am.setUserData(account, encodedKey, value);
         } else {//WRITE or UPDATE
             am.setUserData(account, encodedKey, value);
-            updateAccountKeyIndex(ctx, encodedKey, value);
+            index.add(encodedKey);
         }
 
 
@@ -666,83 +646,35 @@ public class AccountManagerStorage extends Storage {
     }
 
     /**
-     * Class responsible to marshaling and unmarshaling the key index
+     * Class responsible to decoding the indexed keys
      */
     private class AccountIndexFormatter {
 
-
-        private static final String ACCOUNT_KEY_SEPERATOR = ":";
-
         /**
-         * String representation of the ArrayList<String>.
-         * @param items
-         * @param encode
-         * @return
+         * Decodes the indexed keys, keeping only the keys of this storage's prefix.
+         * @param encodedKeys the Base64 encoded keys, with prefix
+         * @return the keys without prefix
          */
-        private String marshal(ArrayList<String> items, boolean encode) {
-
-            if (items == null || items.size() == 0) {
-                return "";
-            }
+        private ArrayList<String> decode(List<String> encodedKeys) {
+            ArrayList<String> keys = new ArrayList<>(encodedKeys.size());
             try {
-                StringBuffer buff = new StringBuffer();
-                for (String keyElement : items) {
-                    String modifiedKey = keyElement;
-                    if (encode) {
-                        modifiedKey = Base64.encodeToString((mPrefix + keyElement).getBytes("UTF-8"), Base64.DEFAULT);
-                    }
-                    buff.append(modifiedKey);
-                    buff.append(ACCOUNT_KEY_SEPERATOR);
-                }
-                String keyBlob = buff.toString();
-                keyBlob = keyBlob.endsWith(ACCOUNT_KEY_SEPERATOR) ? keyBlob.substring(0, keyBlob.length() - 1) : keyBlob;
-                return keyBlob;
-            } catch (Exception e) {
-                Log.e(TAG, "Error in marshal " + e);
-                return "";
-            }
-        }
-
-        /**
-         * Creates ArrayList<String> out of the String blob.
-         * @param blob
-         * @param decode if you want to just Base64 decoded the items
-         * @return
-         */
-        private ArrayList<String> unmarshel(String blob, boolean decode) {
-
-            ArrayList<String> keys = new ArrayList<>();
-            if (blob == null || blob.length() == 0) {
-                return keys;
-            }
-
-            try {
-                ArrayList<String> temp = new ArrayList<String>(Arrays.asList(blob.split(ACCOUNT_KEY_SEPERATOR)));
-                if(decode) {
-                    for (String key : temp) {
-                        byte[] decodedData = Base64.decode(key.getBytes("UTF-8"), Base64.DEFAULT);
-                        if (decodedData != null) {
-                            String sanitizedKey = new String((byte[]) decodedData, "UTF-8");
-                            if (sanitizedKey.startsWith(mPrefix)) {
-                                keys.add(sanitizedKey.substring(mPrefix.length()));
-                            }
-                        } else {
-                            Log.w(TAG, "Unable to process key retrieved from store");
+                for (String key : encodedKeys) {
+                    byte[] decodedData = Base64.decode(key.getBytes("UTF-8"), Base64.DEFAULT);
+                    if (decodedData != null) {
+                        String sanitizedKey = new String((byte[]) decodedData, "UTF-8");
+                        if (sanitizedKey.startsWith(mPrefix)) {
+                            keys.add(sanitizedKey.substring(mPrefix.length()));
                         }
-                    }
-                }else {
-                    if (temp != null) {
-                        keys = temp;
+                    } else {
+                        Log.w(TAG, "Unable to process key retrieved from store");
                     }
                 }
             } catch (UnsupportedEncodingException e) {
                 Log.e(TAG, "Error in unmarshal " + e);
             }
             return keys;
-
         }
 
     }
 
 }
-
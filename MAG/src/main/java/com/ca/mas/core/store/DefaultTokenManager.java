@@ -61,8 +61,8 @@ public class DefaultTokenManager implements TokenManager {
 
     @Override
     public void saveClientKeyPair(KeyPair keyPair) throws TokenStoreException {
-        storeSecureItem(MSSO_CLIENT_CERT_PRIVATE_KEY, KeyUtils.encodeRsaPrivateKey(keyPair.getPrivate()));
-        storeSecureItem(MSSO_CLIENT_CERT_PUBLIC_KEY, KeyUtils.encodeRsaPublicKey(keyPair.getPublic()));
+        storeSecureItem(MSSO_CLIENT_CERT_PRIVATE_KEY, KeyUtils.encodePrivateKey(keyPair.getPrivate()));
+        storeSecureItem(MSSO_CLIENT_CERT_PUBLIC_KEY, KeyUtils.encodePublicKey(keyPair.getPublic()));
     }
 
     @Override
@@ -157,8 +157,9 @@ public class DefaultTokenManager implements TokenManager {
             if (privateBytes == null)
                 return null;
 
-            PublicKey publicKey = KeyUtils.decodeRsaPublicKey(publicBytes);
-            PrivateKey privateKey = KeyUtils.decodeRsaPrivateKey(privateBytes);
+            // The private key has the algorithm of the public key, RSA or EC
+            PublicKey publicKey = KeyUtils.decodePublicKey(publicBytes);
+            PrivateKey privateKey = KeyUtils.decodePrivateKey(privateBytes, publicKey.getAlgorithm());
             return new KeyPair(publicKey, privateKey);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Unable to decode client cert key pair: " + e.getMessage(), e);
@@ -242,6 +243,10 @@ public class DefaultTokenManager implements TokenManager {
         }
     }
 
+    /**
+     * Retrieve an item.  The store is shared with the other SSO apps, which may change any item at any time, so
+     * items are always read from storage rather than cached.
+     */
     byte[] retrieveSecureItem(String name) throws TokenStoreException {
         try {
             return storage.get(getKey(name));
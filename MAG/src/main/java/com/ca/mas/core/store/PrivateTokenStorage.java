@@ -25,10 +25,28 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
         PREF_ID_TOKEN_TYPE
     }
 
+    /**
+     * Tokens of a private storage are cached across all instances, as the token storage is created in several
+     * places of the SDK but all instances share the same underlying storage.
+     */
+    private static final TokenCache<String> privateCache = new TokenCache<>();
+
     private DataSource<String, String> storage;
+    // Null when the storage is shared with other apps, whose writes would not be seen through the cache
+    private final TokenCache<String> cache;
 
     public PrivateTokenStorage(@NonNull DataSource storage){
+        this(storage, false);
+    }
+
+    /**
+     * @param storage the storage of the tokens.
+     * @param shared  true if the storage is shared with other apps, in which case tokens are always read from
+     *                storage.
+     */
+    public PrivateTokenStorage(@NonNull DataSource storage, boolean shared) {
         this.storage = storage;
+        this.cache = shared ? null : privateCache;
     }
 
     @Override
@@ -37,16 +55,16 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
         long expiresInMillis = expiresInSec * 1000L;
         long expiry = now + expiresInMillis;
 
-        storage.put(getKey(KEY.PREF_ACCESS_TOKEN.name()), accessToken);
-        storage.put(getKey(KEY.PREF_REFRESH_TOKEN.name()), refreshToken);
-        storage.put(getKey(KEY.PREF_EXPIRY_UNIXTIME.name()), Long.toString(expiry));
-        storage.put(getKey(KEY.PREF_GRANTED_SCOPE.name()), grantedScope);
+        put(KEY.PREF_ACCESS_TOKEN, accessToken);
+        put(KEY.PREF_REFRESH_TOKEN, refreshToken);
+        put(KEY.PREF_EXPIRY_UNIXTIME, Long.toString(expiry));
+        put(KEY.PREF_GRANTED_SCOPE, grantedScope);
     }
 
     @Override
     public String getAccessToken() {
         try {
-            return storage.get(getKey(KEY.PREF_ACCESS_TOKEN.name()));
+            return get(KEY.PREF_ACCESS_TOKEN);
         } catch (DataSourceException e) {
             return null;
         }
@@ -55,7 +73,7 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
     @Override
     public String getRefreshToken() {
         try {
-            return storage.get(getKey(KEY.PREF_REFRESH_TOKEN.name()));
+            return get(KEY.PREF_REFRESH_TOKEN);
         } catch (DataSourceException e) {
             return null;
         }
@@ -65,7 +83,7 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
     public synchronized String takeRefreshToken() {
         String refreshToken = getRefreshToken();
         if (refreshToken != null) {
-            storage.remove(getKey(KEY.PREF_REFRESH_TOKEN.name()));
+            remove(KEY.PREF_REFRESH_TOKEN);
         }
         return refreshToken;
     }
@@ -73,7 +91,7 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
     @Override
     public String getGrantedScope() {
         try {
-            return storage.get(getKey(KEY.PREF_GRANTED_SCOPE.name()));
+            return get(KEY.PREF_GRANTED_SCOPE);
         } catch (DataSourceException e) {
             return null;
         }
@@ -85,7 +103,7 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
     @Override
     public long getExpiry() {
         try {
-            String r = storage.get(getKey(KEY.PREF_EXPIRY_UNIXTIME.name()));
+            String r = get(KEY.PREF_EXPIRY_UNIXTIME);
             if (r != null) {
                 return Long.parseLong(r);
             } else {
@@ -99,16 +117,67 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
     @Override
     public void clear() {
         for (KEY k : KEY.values()) {
-            storage.remove(getKey(k.name()));
+            remove(k);
         }
     }
 
     @Override
     public void clearAll() {
-        storage.removeAll(null);
+        try {
+            storage.removeAll(null);
+        } finally {
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    private String get(KEY key) {
+        if (cache == null) {
+            return storage.get(getKey(key.name()));
+        }
+        TokenCache.Slot slot = cache.slot(key.name());
+        TokenCache.Entry<String> cached = cache.get(slot);
+        if (cached != null) {
+            return cached.value;
+        }
+        long generation = cache.generation();
+        String value = storage.get(slot.storageKey());
+        cache.fill(slot, value, generation);
+        return value;
+    }
+
+    private void put(KEY key, String value) {
+        TokenCache.Slot slot = cache == null ? null : cache.slot(key.name());
+        try {
+            storage.put(slot == null ? getKey(key.name()) : slot.storageKey(), value);
+        } catch (RuntimeException e) {
+            if (slot != null) {
+                cache.invalidate(slot);
+            }
+            throw e;
+        }
+        if (slot != null) {
+            cache.put(slot, value);
+        }
+    }
+
+    private void remove(KEY key) {
+        TokenCache.Slot slot = cache == null ? null : cache.slot(key.name());
+        try {
+            storage.remove(slot == null ? getKey(key.name()) : slot.storageKey());
+        } catch (RuntimeException e) {
+            if (slot != null) {
+                cache.invalidate(slot);
+            }
+            throw e;
+        }
+        if (slot != null) {
+            cache.put(slot, null);
+        }
     }
 
-    private String getKey(String name) {
+    private static String getKey(String name) {
         return ConfigurationManager.getInstance().getConnectedGateway().toString() + name;
     }
 
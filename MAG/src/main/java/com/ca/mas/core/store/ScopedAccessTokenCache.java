@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.store;
+
+import com.ca.mas.core.oauth.ScopeSet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Holds the access tokens granted for other scopes than the stored access token, so requests alternating between
+ * APIs of different scopes use the token granted for their scope instead of obtaining a new one each time.
+ * <p/>
+ * The tokens are kept in memory, keyed by their granted scopes, and the least recently used is evicted once more
+ * than the configured number are held.  Expired tokens are dropped when found.
+ */
+public class ScopedAccessTokenCache {
+
+    /**
+     * An access token, with its refresh token, expiry and granted scopes.
+     */
+    public static final class Token {
+        public final String accessToken;
+        public final String refreshToken;
+        public final long expiry;
+        public final ScopeSet scopes;
+
+        public Token(String accessToken, String refreshToken, long expiry, ScopeSet scopes) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expiry = expiry;
+            this.scopes = scopes;
+        }
+
+        boolean isExpired(long now) {
+            return expiry > 0 && now > expiry;
+        }
+    }
+
+    private final int maxTokens;
+    private final LinkedHashMap<ScopeSet, Token> tokens = new LinkedHashMap<>(8, 0.75f, true);
+
+    /**
+     * @param maxTokens the number of tokens held at most.
+     */
+    public ScopedAccessTokenCache(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Holds a token, replacing the one granted for the same scopes.
+     */
+    public synchronized void put(Token token) {
+        if (token.accessToken == null || maxTokens <= 0) {
+            return;
+        }
+        tokens.put(token.scopes, token);
+        Iterator<Token> eldest = tokens.values().iterator();
+        while (tokens.size() > maxTokens) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Finds the token granted for the fewest scopes which cover the required scopes.
+     *
+     * @param required            the scopes the token must be granted for.
+     * @param ignored             the scopes which are not granted to access tokens, such as openid.
+     * @param requireRefreshToken true to skip the tokens without a refresh token, granted to the client.
+     * @param now                 the current time, to skip the expired tokens.
+     * @return the token, or null if none covers the scopes.
+     */
+    public synchronized Token find(ScopeSet required, ScopeSet ignored, boolean requireRefreshToken, long now) {
+        Token cheapest = null;
+        Iterator<Token> it = tokens.values().iterator();
+        while (it.hasNext()) {
+            Token token = it.next();
+            if (token.isExpired(now)) {
+                it.remove();
+                continue;
+            }
+            if ((requireRefreshToken && token.refreshToken == null)
+                    || (token.scopes.isEmpty() && !required.isEmpty()) || !token.scopes.covers(required, ignored)) {
+                continue;
+            }
+            if (cheapest == null || token.scopes.size() < cheapest.scopes.size()
+                    || (token.scopes.size() == cheapest.scopes.size() && token.expiry > cheapest.expiry)) {
+                cheapest = token;
+            }
+        }
+        if (cheapest != null) {
+            // Mark it as used
+            tokens.get(cheapest.scopes);
+        }
+        return cheapest;
+    }
+
+    /**
+     * Removes a token, such as one rejected by the server.
+     *
+     * @return true if the token was held.
+     */
+    public synchronized boolean remove(String accessToken) {
+        Iterator<Token> it = tokens.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().accessToken.equals(accessToken)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return tokens.size();
+    }
+
+    public synchronized void clear() {
+        tokens.clear();
+    }
+}
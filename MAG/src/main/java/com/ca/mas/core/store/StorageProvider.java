@@ -75,8 +75,9 @@ public class StorageProvider {
     public OAuthTokenContainer createOAuthTokenContainer() {
         String pt = configurationProvider.getProperty(MobileSsoConfig.PROP_PRIVATE_TOKEN_MANAGER);
         if (pt == null) {
-            DataSource storage = DataSourceFactory.getStorage(context, mStorageConfig.getStorageClass(), mStorageConfig.getStorageConfig(), new StringDataConverter());
-            return new PrivateTokenStorage(storage);
+            JSONObject storageConfig = mStorageConfig.getStorageConfig();
+            DataSource storage = DataSourceFactory.getStorage(context, mStorageConfig.getStorageClass(), storageConfig, new StringDataConverter());
+            return new PrivateTokenStorage(storage, storageConfig.optBoolean(StorageConfig.PROP_SHARE_STATUS, false));
         } else {
             return (OAuthTokenContainer) create(pt);
         }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.store;
+
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.conf.Server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide, write-through cache of the items of a token store.
+ * <p/>
+ * Only stores private to the app may be cached: an item written to a shared store by another app would never be
+ * observed.  Items are cached for the connected gateway only; when another gateway configuration is activated,
+ * every cached item is forgotten.  All token store instances of the same kind share one cache, so an item written
+ * or removed through one instance is immediately visible through the others.
+ * <p/>
+ * Reads are lock free.  A value loaded from storage is only cached if no write happened while it was loaded,
+ * so a slow load can never overwrite a newer value.
+ *
+ * @param <V> the type of the cached items.
+ */
+class TokenCache<V> {
+
+    /**
+     * Identifies an item of the gateway which was connected when the slot was obtained.
+     */
+    static final class Slot {
+        private final Items<?> items;
+        private final String name;
+
+        private Slot(Items<?> items, String name) {
+            this.items = items;
+            this.name = name;
+        }
+
+        /**
+         * @return the key of the item in the underlying storage.
+         */
+        String storageKey() {
+            return items.prefix + name;
+        }
+    }
+
+    /**
+     * A cached item.  The value is null if the item is known to be absent from storage.
+     */
+    static final class Entry<V> {
+        final V value;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * The items cached for one gateway configuration.
+     */
+    private static final class Items<V> {
+        private final Server server;
+        private final String prefix;
+        private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+        Items(Server server) {
+            this.server = server;
+            this.prefix = server.toString();
+        }
+    }
+
+    private volatile Items<V> current;
+    // Guarded by this
+    private long generation;
+
+    /**
+     * @param name the item name, without the gateway prefix.
+     * @return the slot of the item for the connected gateway.
+     */
+    Slot slot(String name) {
+        return new Slot(items(), name);
+    }
+
+    /**
+     * @return the cached item, or null if the item is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    Entry<V> get(Slot slot) {
+        return ((Items<V>) slot.items).entries.get(slot.name);
+    }
+
+    /**
+     * @return the current write generation, to be passed to {@link #fill(Slot, Object, long)}.
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Cache a value loaded from storage, unless a write happened since the generation was obtained.
+     */
+    synchronized void fill(Slot slot, V value, long loadedAt) {
+        if (loadedAt == generation && slot.items == current) {
+            current.entries.put(slot.name, new Entry<>(value));
+        }
+    }
+
+    /**
+     * Record a value successfully written to storage, or null for an item successfully removed.
+     */
+    synchronized void put(Slot slot, V value) {
+        generation++;
+        if (slot.items == current) {
+            current.entries.put(slot.name, new Entry<>(value));
+        }
+    }
+
+    /**
+     * Forget an item, e.g. when writing it to storage failed and its state is unknown.
+     */
+    synchronized void invalidate(Slot slot) {
+        generation++;
+        slot.items.entries.remove(slot.name);
+    }
+
+    /**
+     * Forget all items.
+     */
+    synchronized void clear() {
+        generation++;
+        Items<V> items = current;
+        if (items != null) {
+            current = new Items<>(items.server);
+        }
+    }
+
+    /**
+     * @return the items of the connected gateway, replacing the items of the previously connected one.
+     */
+    private Items<V> items() {
+        Server server = ConfigurationManager.getInstance().getConnectedGateway();
+        Items<V> items = current;
+        if (items != null && items.server == server) {
+            return items;
+        }
+        synchronized (this) {
+            if (current == null || current.server != server) {
+                generation++;
+                current = new Items<>(server);
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.token;
+
+import android.support.annotation.NonNull;
+import android.util.Base64;
+
+import com.ca.mas.core.error.MAGErrorCode;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The claims of a JWT ID token, decoded once.
+ * <p/>
+ * The compact token is split in one pass over its bytes, and its header and payload decoded and parsed when the
+ * claims are created.  The claims are cached against the value of the token, so checking the same token again,
+ * such as when the device is unlocked, does not decode it again.
+ */
+public final class IdTokenClaims {
+
+    private static final int MAX_CACHED = 4;
+    private static final byte SEPARATOR = '.';
+
+    private static final Map<String, IdTokenClaims> cache = new LinkedHashMap<String, IdTokenClaims>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IdTokenClaims> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final byte[] header;
+    private final byte[] payload;
+    private final byte[] signature;
+    private final String algorithm;
+    private final Long expiration;
+    private final String audience;
+    private final String authorizedParty;
+
+    private IdTokenClaims(byte[] header, byte[] payload, byte[] signature, JSONObject headerJson, JSONObject payloadJson) {
+        this.header = header;
+        this.payload = payload;
+        this.signature = signature;
+        this.algorithm = headerJson != null ? headerJson.optString(JWTValidation.ALG, null) : null;
+        this.expiration = getLong(payloadJson, JWTValidation.EXP);
+        this.audience = payloadJson.optString(JWTValidation.AUD, null);
+        this.authorizedParty = payloadJson.optString(JWTValidation.AZP, null);
+    }
+
+    /**
+     * Get the claims of the ID token, decoded at the first call for the token value.
+     *
+     * @param idToken the JWT ID token.  Required.
+     * @return the claims.  Never null.
+     * @throws JWTValidationException if the token is not made of two or three parts, or its payload is not a JSON object.
+     */
+    public static IdTokenClaims of(@NonNull IdToken idToken) throws JWTValidationException {
+        String value = idToken.getValue();
+        if (value == null) {
+            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, "JWT is missing");
+        }
+        synchronized (cache) {
+            IdTokenClaims claims = cache.get(value);
+            if (claims != null) {
+                return claims;
+            }
+        }
+        IdTokenClaims claims = parse(value);
+        synchronized (cache) {
+            cache.put(value, claims);
+        }
+        return claims;
+    }
+
+    private static IdTokenClaims parse(String value) throws JWTValidationException {
+        byte[] token = value.getBytes();
+        int first = -1;
+        int second = -1;
+        for (int i = 0; i < token.length; i++) {
+            if (token[i] == SEPARATOR) {
+                if (first < 0) {
+                    first = i;
+                } else if (second < 0) {
+                    second = i;
+                } else {
+                    throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, "JWT has more than three parts");
+                }
+            }
+        }
+        if (first < 0) {
+            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, "JWT has less than two parts");
+        }
+        int payloadEnd = second < 0 ? token.length : second;
+        byte[] header = Arrays.copyOfRange(token, 0, first);
+        byte[] payload = Arrays.copyOfRange(token, first + 1, payloadEnd);
+        byte[] signature = second < 0 || second == token.length - 1 ? null : Arrays.copyOfRange(token, second + 1, token.length);
+
+        JSONObject payloadJson;
+        try {
+            payloadJson = new JSONObject(new String(Base64.decode(payload, Base64.URL_SAFE)));
+        } catch (JSONException | IllegalArgumentException e) {
+            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, e.getMessage(), e);
+        }
+        JSONObject headerJson;
+        try {
+            headerJson = new JSONObject(new String(Base64.decode(header, Base64.URL_SAFE)));
+        } catch (JSONException | IllegalArgumentException e) {
+            // Only needed to validate the signature, reported then
+            headerJson = null;
+        }
+        return new IdTokenClaims(header, payload, signature, headerJson, payloadJson);
+    }
+
+    private static Long getLong(JSONObject json, String name) {
+        try {
+            return json.has(name) ? json.getLong(name) : null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the "alg" of the header, or null if absent or the header is not a JSON object.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the "exp" claim, in seconds since the epoch, or null if absent or not a number.
+     */
+    public Long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * @return the "aud" claim, the client ID the token was issued to, or null if absent.
+     */
+    public String getAudience() {
+        return audience;
+    }
+
+    /**
+     * @return the "azp" claim, the device identifier the token was issued to, or null if absent.
+     */
+    public String getAuthorizedParty() {
+        return authorizedParty;
+    }
+
+    /**
+     * @param nowMillis the current time, in milliseconds since the epoch.
+     * @return true if the token has expired, or has no expiration.
+     */
+    public boolean isExpired(long nowMillis) {
+        return expiration == null || expiration < nowMillis / 1000;
+    }
+
+    /**
+     * @return the encoded header, as in the token.
+     */
+    byte[] getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the encoded payload, as in the token.
+     */
+    byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return the encoded signature, as in the token, or null if the token is not signed.
+     */
+    byte[] getSignature() {
+        return signature;
+    }
+}
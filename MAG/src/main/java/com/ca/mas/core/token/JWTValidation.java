@@ -9,16 +9,10 @@
 package com.ca.mas.core.token;
 
 import android.support.annotation.NonNull;
-import android.util.Base64;
 import android.util.Log;
 
 import com.ca.mas.core.error.MAGErrorCode;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Date;
-
 public class JWTValidation {
 
     private static final String TAG = JWTValidation.class.getName();
@@ -38,15 +32,9 @@ public class JWTValidation {
 
     public static boolean isIdTokenExpired(@NonNull IdToken idToken) {
         if (idToken.getType().equals(IdToken.JWT_DEFAULT)) {
-            IdTokenDef tokenDef = new IdTokenDef(idToken);
             try {
-                JSONObject jsonObject = tokenDef.getPayloadAsJSONObject();
-                String expireDateString = jsonObject.getString(EXP);
-                if (Long.valueOf(expireDateString) < new Date().getTime() / 1000) {
-                    return true;
-                }
-                return false;
-            } catch (JSONException e) {
+                return IdTokenClaims.of(idToken).isExpired(System.currentTimeMillis());
+            } catch (JWTValidationException e) {
                 //Assume the token is expired.
                 return true;
             }
@@ -58,19 +46,24 @@ public class JWTValidation {
 
         boolean isValid = false;
 
-        IdTokenDef idTokenDef = new IdTokenDef(idToken);
+        IdTokenClaims claims = IdTokenClaims.of(idToken);
 
-        boolean payloadValid = validateJwtPayload(idTokenDef, deviceIdentifier, clientId);
+        boolean payloadValid = validateJwtPayload(claims, deviceIdentifier, clientId);
 
-        String algorithm = getAlgorithm(new String(Base64.decode(idTokenDef.getHeader(), Base64.URL_SAFE)));
+        String algorithm = claims.getAlgorithm();
+        if (algorithm == null) {
+            Log.w(TAG, "JWT header is not JSON Object");
+            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, "JWT header has no alg");
+        }
         boolean signatureValid = false;
-        if (algorithm != null) {
-            if (algorithm.equals(Algorithm.HS256.toString())) {
-                signatureValid = JWTHmac.validateHMacSignature(idTokenDef.getHeader(),
-                        idTokenDef.getPayload(),
-                        clientSecret.getBytes(),
-                        idTokenDef.getSignature());
+        if (algorithm.equals(Algorithm.HS256.toString())) {
+            if (claims.getSignature() == null) {
+                throw new JWTInvalidSignatureException("Failed to validate JWT Token: token is not signed!");
             }
+            signatureValid = JWTHmac.validateHMacSignature(claims.getHeader(),
+                    claims.getPayload(),
+                    clientSecret.getBytes(),
+                    claims.getSignature());
         }
 
         isValid = payloadValid & signatureValid;
@@ -78,110 +71,31 @@ public class JWTValidation {
         return isValid;
     }
 
+    private static boolean validateJwtPayload(IdTokenClaims claims, String deviceIdentifier, String clientId) throws JWTValidationException {
 
-    private static String getAlgorithm(String header) throws JWTValidationException {
-        try {
-            JSONObject jsonObject = new JSONObject(header);
-            return jsonObject.getString(ALG);
-        } catch (JSONException e) {
-            Log.w(TAG, "JWT header is not JSON Object");
-            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, e.getMessage(), e);
-        }
-    }
-
-    private static boolean validateJwtPayload(IdTokenDef idTokenDef, String deviceIdentifier, String clientId) throws JWTValidationException {
-
-        try {
-            JSONObject jsonObject = idTokenDef.getPayloadAsJSONObject();
-            String expireDateString = jsonObject.getString(EXP);
-            String audString = jsonObject.getString(AUD);
-            String azpString = jsonObject.getString(AZP);
-
-            if (!audString.equals(clientId)) {
-                Log.w(TAG, "JWT aud is invalid");
-                throw new JWTInvalidAUDException("Failed to validate JWT Token: \"aud\" doesn't match client_id!");
-            }
-
-            if (!azpString.equals(deviceIdentifier)) {
-                Log.w(TAG, "JWT azp is invalid");
-                throw new JWTInvalidAZPException("Failed to validate JWT Token: \"azp\" doesn't match device identifier!");
-            }
-
-            if (Long.valueOf(expireDateString) < new Date().getTime() / 1000) {
-                Log.w(TAG, "JWT expired");
-                throw new JWTExpiredException("Failed to validate JWT Token: token expired!");
-            }
-
-        } catch (JSONException e) {
+        String audString = claims.getAudience();
+        String azpString = claims.getAuthorizedParty();
+        if (claims.getExpiration() == null || audString == null || azpString == null) {
             Log.w(TAG, "JWT payload is not valid JSON object");
-            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, e.getMessage(), e);
+            throw new JWTValidationException(MAGErrorCode.TOKEN_INVALID_ID_TOKEN, "JWT payload is missing exp, aud or azp");
         }
 
-        return true;
-    }
-
-    private static class IdTokenDef {
-        byte[] header;
-        byte[] payload;
-        byte[] signature;
-
-        public IdTokenDef(@NonNull IdToken idToken) {
-            byte[] token = idToken.getValue().getBytes();
-            byte[][] splitToken = split(token);
-
-            header = splitToken[0];
-            payload = splitToken[1];
-            signature = null;
-            if (splitToken.length == 3) {
-                signature = splitToken[2];
-            }
-        }
-
-        public byte[] getHeader() {
-            return header;
-        }
-
-        public byte[] getSignature() {
-            return signature;
+        if (!audString.equals(clientId)) {
+            Log.w(TAG, "JWT aud is invalid");
+            throw new JWTInvalidAUDException("Failed to validate JWT Token: \"aud\" doesn't match client_id!");
         }
 
-        public byte[] getPayload() {
-            return payload;
+        if (!azpString.equals(deviceIdentifier)) {
+            Log.w(TAG, "JWT azp is invalid");
+            throw new JWTInvalidAZPException("Failed to validate JWT Token: \"azp\" doesn't match device identifier!");
         }
 
-        public JSONObject getPayloadAsJSONObject() throws JSONException {
-            byte[] decodedPayload = Base64.decode(payload, Base64.URL_SAFE);
-            String payloadData = new String(decodedPayload);
-            return new JSONObject(payloadData);
+        if (claims.isExpired(System.currentTimeMillis())) {
+            Log.w(TAG, "JWT expired");
+            throw new JWTExpiredException("Failed to validate JWT Token: token expired!");
         }
 
-        private byte[][] split(byte[] token) {
-            // We can "cheat".  We know the token is base64 URL encoded.
-            // Instead of going through a crapload of bytes, we can convert the token into a string
-            // and use a regex split on it.
-            String tokenString = new String(token);
-            String[] tokenParts = tokenString.split("[.]");
-
-            if ((tokenParts.length < 2) || (tokenParts.length > 3)) {
-                // The token is invalid, there's less than two parts or more than three parts of it.
-                return null;
-            }
-
-            // We use .getBytes().length on the strings to handle any UTF8 chars that are more than a single byte
-            // representation, otherwise we overflow or truncate.
-            byte[][] splitBytes = new byte[tokenParts.length][];
-            splitBytes[0] = new byte[tokenParts[0].getBytes().length];
-            splitBytes[1] = new byte[tokenParts[1].getBytes().length];
-            System.arraycopy(tokenParts[0].getBytes(), 0, splitBytes[0], 0, tokenParts[0].getBytes().length);
-            System.arraycopy(tokenParts[1].getBytes(), 0, splitBytes[1], 0, tokenParts[1].getBytes().length);
-
-            if (splitBytes.length == 3) {
-                splitBytes[2] = new byte[tokenParts[2].getBytes().length];
-                System.arraycopy(tokenParts[2].getBytes(), 0, splitBytes[2], 0, tokenParts[2].getBytes().length);
-            }
-
-            return splitBytes;
-        }
+        return true;
     }
 
 }
@@ -10,12 +10,14 @@ package com.ca.mas.core.util;
 
 import org.spongycastle.jce.provider.BouncyCastleProvider;
 
+import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
@@ -25,6 +27,52 @@ import java.security.spec.X509EncodedKeySpec;
  */
 public class KeyUtils {
 
+    /**
+     * The algorithm of RSA keys.
+     */
+    public static final String RSA = "RSA";
+
+    /**
+     * The algorithm of elliptic curve keys, generated on the NIST P-256 curve.
+     */
+    public static final String EC = "EC";
+
+    private static final String EC_CURVE = "secp256r1";
+    private static final String[] KEY_ALGORITHMS = {RSA, EC};
+
+    /**
+     * Generate a new keypair of the specified algorithm.
+     *
+     * @param algorithm {@link #RSA} or {@link #EC}, null for RSA.
+     * @param rsaKeysize the key size in bits of an RSA keypair, eg 1024.  Ignored for an EC keypair.
+     * @return a new keypair.  Never null.
+     * @throws IllegalArgumentException if the algorithm is not supported
+     * @throws RuntimeException if a key pair cannot be generated
+     */
+    public static KeyPair generateKeyPair(String algorithm, int rsaKeysize) {
+        if (algorithm == null || RSA.equalsIgnoreCase(algorithm))
+            return generateRsaKeyPair(rsaKeysize);
+        if (EC.equalsIgnoreCase(algorithm))
+            return generateEcKeyPair();
+        throw new IllegalArgumentException("Unsupported key algorithm: " + algorithm);
+    }
+
+    /**
+     * Generate a new EC keypair on the NIST P-256 curve.
+     *
+     * @return a new EC keypair.  Never null.
+     * @throws RuntimeException if an EC key pair cannot be generated
+     */
+    public static KeyPair generateEcKeyPair() {
+        try {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance(EC);
+            kpg.initialize(new ECGenParameterSpec(EC_CURVE));
+            return kpg.generateKeyPair();
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Generate a new RSA keypair with the specified number of key bits.
      *
@@ -119,6 +167,92 @@ public class KeyUtils {
         }
     }
 
+    /**
+     * Convert the specified RSA or EC private key into encoded key bytes in PKCS#8 format.
+     *
+     * @param privateKey the private key to encode.  Required.
+     * @return the encoded form of this key.  Never null.
+     * @throws IllegalArgumentException if the key is neither RSA nor EC, or cannot be encoded
+     */
+    public static byte[] encodePrivateKey(PrivateKey privateKey) {
+        if (!isSupported(privateKey.getAlgorithm()))
+            throw new IllegalArgumentException("Private key is neither an RSA nor an EC private key: " + privateKey.getAlgorithm());
+
+        if (!"PKCS#8".equals(privateKey.getFormat()))
+            throw new IllegalArgumentException("Private key encoding format is not PKCS#8: " + privateKey.getFormat());
+
+        byte[] bytes = privateKey.getEncoded();
+        if (bytes == null || bytes.length < 1)
+            throw new IllegalArgumentException("Private key encoded form is null or empty");
+
+        return bytes;
+    }
+
+    /**
+     * Decode the specified PKCS#8 encoded private key bytes of the specified algorithm.
+     *
+     * @param pkcs8EncodedKeyBytes the PKCS#8 encoded private key bytes.  Required.
+     * @param algorithm the algorithm of the key, as returned by {@link PublicKey#getAlgorithm()} for its public key.
+     * @return the decoded PrivateKey instance.  Never null.
+     * @throws IllegalArgumentException if the key cannot be decoded
+     */
+    public static PrivateKey decodePrivateKey(byte[] pkcs8EncodedKeyBytes, String algorithm) {
+        try {
+            return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(pkcs8EncodedKeyBytes));
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalArgumentException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the specified RSA or EC public key into an X.509 SubjectPublicKeyInfo structure.
+     *
+     * @param publicKey the public key to encode.  Required.
+     * @return the X.509 encoded bytes of the public key.  Never null.
+     * @throws IllegalArgumentException if the key is neither RSA nor EC, or cannot be encoded.
+     */
+    public static byte[] encodePublicKey(PublicKey publicKey) {
+        if (!isSupported(publicKey.getAlgorithm()))
+            throw new IllegalArgumentException("Public key is neither an RSA nor an EC public key: " + publicKey.getAlgorithm());
+
+        final String format = publicKey.getFormat();
+        if (!"X.509".equals(format) && !"X509".equals(format))
+            throw new IllegalArgumentException("Public key encoding format is not X.509: " + format);
+
+        byte[] bytes = publicKey.getEncoded();
+        if (bytes == null || bytes.length < 1)
+            throw new IllegalArgumentException("Public key encoded form is null or empty");
+
+        return bytes;
+    }
+
+    /**
+     * Decode the specified X.509 encoded SubjectPublicKeyInfo bytes into an RSA or EC PublicKey instance.
+     *
+     * @param x509EncodedKeyBytes the X.509 encoded bytes of the public key.  Required.
+     * @return the decoded PublicKey instance.  Never null.
+     * @throws IllegalArgumentException if the key cannot be decoded
+     */
+    public static PublicKey decodePublicKey(byte[] x509EncodedKeyBytes) {
+        InvalidKeySpecException failure = null;
+        for (String algorithm : KEY_ALGORITHMS) {
+            try {
+                return KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(x509EncodedKeyBytes));
+            } catch (InvalidKeySpecException e) {
+                failure = e;
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        throw new IllegalArgumentException(failure);
+    }
+
+    private static boolean isSupported(String algorithm) {
+        return RSA.equals(algorithm) || EC.equals(algorithm) || "ECDSA".equals(algorithm);
+    }
+
     private KeyUtils() {
     }
 }
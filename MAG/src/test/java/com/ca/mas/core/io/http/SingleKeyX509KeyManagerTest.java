@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.io.http;
+
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the {@link SingleKeyX509KeyManager} offers its client certificate only to the challenges accepting the
+ * type of its key.
+ */
+public class SingleKeyX509KeyManagerTest {
+
+    private static final X509Certificate[] CHAIN = new X509Certificate[1];
+
+    @Test
+    public void testRsaKey() throws Exception {
+        SingleKeyX509KeyManager keyManager = new SingleKeyX509KeyManager(generate("RSA"), CHAIN);
+        assertEquals("clientCert", keyManager.chooseClientAlias(new String[]{"RSA"}, null, null));
+        assertEquals("clientCert", keyManager.chooseClientAlias(new String[]{"EC", "RSA"}, null, null));
+        assertNull(keyManager.chooseClientAlias(new String[]{"EC", "EC_EC"}, null, null));
+        assertNull(keyManager.chooseEngineClientAlias(new String[]{"EC"}, null, null));
+        assertArrayEquals(new String[]{"clientCert"}, keyManager.getClientAliases("RSA", null));
+        assertNull(keyManager.getClientAliases("EC", null));
+    }
+
+    @Test
+    public void testEcKey() throws Exception {
+        SingleKeyX509KeyManager keyManager = new SingleKeyX509KeyManager(generate("EC"), CHAIN);
+        assertEquals("clientCert", keyManager.chooseClientAlias(new String[]{"EC"}, null, null));
+        assertEquals("clientCert", keyManager.chooseEngineClientAlias(new String[]{"RSA", "EC_EC"}, null, null));
+        assertNull(keyManager.chooseClientAlias(new String[]{"RSA"}, null, null));
+        assertNull(keyManager.getClientAliases("RSA", null));
+    }
+
+    @Test
+    public void testEcdsaKey() throws Exception {
+        // EC keys generated by SpongyCastle are named ECDSA
+        SingleKeyX509KeyManager keyManager = new SingleKeyX509KeyManager(new EcdsaKey(generate("EC")), CHAIN);
+        assertEquals("clientCert", keyManager.chooseClientAlias(new String[]{"EC"}, null, null));
+        assertEquals("clientCert", keyManager.chooseClientAlias(new String[]{"EC_EC"}, null, null));
+        assertArrayEquals(new String[]{"clientCert"}, keyManager.getClientAliases("EC", null));
+        assertNull(keyManager.chooseClientAlias(new String[]{"RSA"}, null, null));
+    }
+
+    @Test
+    public void testNoKeyTypeRequested() throws Exception {
+        SingleKeyX509KeyManager keyManager = new SingleKeyX509KeyManager(generate("EC"), CHAIN);
+        assertEquals("clientCert", keyManager.chooseClientAlias(null, null, null));
+        assertArrayEquals(new String[]{"clientCert"}, keyManager.getClientAliases(null, null));
+    }
+
+    private static PrivateKey generate(String algorithm) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize("RSA".equals(algorithm) ? 1024 : 256);
+        return generator.generateKeyPair().getPrivate();
+    }
+
+    private static class EcdsaKey implements PrivateKey {
+        private final PrivateKey key;
+
+        EcdsaKey(PrivateKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "ECDSA";
+        }
+
+        @Override
+        public String getFormat() {
+            return key.getFormat();
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return key.getEncoded();
+        }
+    }
+}
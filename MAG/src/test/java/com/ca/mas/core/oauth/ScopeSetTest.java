@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.oauth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks scope sets compare by their scopes across bit overflow and numbering restarts, and that generated
+ * scopes do not grow the bits or the interned sets without bound.
+ */
+public class ScopeSetTest {
+
+    @Test
+    public void testCovers() throws Exception {
+        ScopeSet wide = ScopeSet.parse("openid msso read write");
+        assertTrue(wide.covers(ScopeSet.parse("read")));
+        assertTrue(wide.covers(ScopeSet.parse("write  read")));
+        assertFalse(wide.covers(ScopeSet.parse("read delete")));
+        assertTrue(wide.covers(ScopeSet.parse("read delete"), ScopeSet.parse("delete")));
+        assertTrue(wide.covers(ScopeSet.EMPTY));
+        assertSame(ScopeSet.EMPTY, ScopeSet.parse(" "));
+        assertSame(wide, ScopeSet.parse("openid msso read write"));
+    }
+
+    @Test
+    public void testGeneratedScopesBounded() throws Exception {
+        ScopeSet before = ScopeSet.parse("openid read");
+        ScopeSet ignored = ScopeSet.parse("openid");
+        for (int i = 0; i < 1000; i++) {
+            ScopeSet generated = ScopeSet.parse("read generated" + i);
+            assertTrue(generated.covers(ScopeSet.parse("generated" + i)));
+            assertFalse(generated.covers(ScopeSet.parse("generated" + (i + 1))));
+            assertTrue(ScopeSet.getBitCount() <= 64);
+            assertTrue(ScopeSet.getInternedCount() <= 256);
+        }
+
+        // Sets parsed before the numbering restarted still compare by their scopes
+        ScopeSet after = ScopeSet.parse("openid read");
+        assertTrue(after.covers(before));
+        assertTrue(before.covers(after));
+        assertTrue(ScopeSet.parse("read").covers(before, ignored));
+        assertFalse(ScopeSet.parse("write").covers(before, ignored));
+        assertTrue(before.equals(after));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.policy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the {@link LocationSampler} with a fake location source and clock.
+ */
+public class LocationSamplerTest {
+
+    private static final float MIN_DISTANCE = 100.0f;
+    private static final long MAX_AGE = 600000L;
+    private static final long SETUP_INTERVAL = 30000L;
+
+    private FakeSource source;
+    private LocationSampler sampler;
+
+    @Before
+    public void setUp() throws Exception {
+        source = new FakeSource();
+        sampler = new LocationSampler(source, MIN_DISTANCE, MAX_AGE, SETUP_INTERVAL);
+    }
+
+    @Test
+    public void testHeaderFormattedOnce() throws Exception {
+        sampler.onLocation(49.2827, -123.1207, 0);
+        String header = sampler.getHeader(0);
+        assertEquals("49.282700,-123.120700", header);
+
+        for (int i = 0; i < 1000; i++) {
+            assertSame(header, sampler.getHeader(i));
+        }
+        assertEquals(1, sampler.getFormatCount());
+    }
+
+    @Test
+    public void testSmallMovementIgnored() throws Exception {
+        sampler.onLocation(49.2827, -123.1207, 0);
+        String header = sampler.getHeader(0);
+
+        // About 11 meters north
+        sampler.onLocation(49.2828, -123.1207, 1000);
+        assertSame(header, sampler.getHeader(1000));
+
+        // About 1.1 km north
+        sampler.onLocation(49.2927, -123.1207, 2000);
+        assertEquals("49.292700,-123.120700", sampler.getHeader(2000));
+        assertEquals(2, sampler.getFormatCount());
+    }
+
+    @Test
+    public void testStaleFixReplaced() throws Exception {
+        sampler.onLocation(49.2827, -123.1207, 0);
+        sampler.onLocation(49.2828, -123.1207, MAX_AGE);
+        assertEquals("49.282800,-123.120700", sampler.getHeader(MAX_AGE));
+        assertEquals(2, sampler.getFormatCount());
+    }
+
+    @Test
+    public void testSetupRateLimited() throws Exception {
+        // No fix: the first request sets the source up, the following ones within the interval do not
+        assertNull(sampler.getHeader(0));
+        for (long now = 1; now < SETUP_INTERVAL; now += 1000) {
+            assertNull(sampler.getHeader(now));
+        }
+        assertEquals(1, source.starts);
+        assertEquals(1, sampler.getSetupCount());
+
+        source.fix = new double[]{49.2827, -123.1207};
+        assertEquals("49.282700,-123.120700", sampler.getHeader(SETUP_INTERVAL));
+        assertEquals(2, source.starts);
+        assertEquals(2, source.stops);
+
+        // A known fix never sets the source up
+        sampler.getHeader(SETUP_INTERVAL * 10);
+        assertEquals(2, source.starts);
+    }
+
+    @Test
+    public void testLocationLost() throws Exception {
+        sampler.onLocation(49.2827, -123.1207, 0);
+        sampler.onLocationLost();
+        assertNull(sampler.getHeader(0));
+        assertEquals(1, source.starts);
+
+        sampler.stop();
+        assertTrue(source.stops > 0);
+    }
+
+    @Test
+    public void testDistance() throws Exception {
+        // One degree of latitude is about 111 km
+        double distance = LocationSampler.distance(49.0, -123.0, 50.0, -123.0);
+        assertTrue(Math.abs(distance - 111195) < 100);
+        assertEquals(0.0, LocationSampler.distance(49.0, -123.0, 49.0, -123.0), 0.0);
+    }
+
+    private static class FakeSource implements LocationSampler.Source {
+        int starts;
+        int stops;
+        double[] fix;
+
+        @Override
+        public void start(LocationSampler sampler) {
+            starts++;
+            if (fix != null) {
+                sampler.onLocation(fix[0], fix[1], 0);
+            }
+        }
+
+        @Override
+        public void stop() {
+            stops++;
+        }
+    }
+}
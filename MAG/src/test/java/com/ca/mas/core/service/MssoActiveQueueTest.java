@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the {@link MssoActiveQueue} the way the MssoService workers do, each one walking its own snapshot of
+ * the queue, and checks every request is processed exactly once.
+ */
+public class MssoActiveQueueTest {
+
+    private static final int REQUESTS = 200;
+    private static final int WORKERS = 8;
+
+    private final MssoActiveQueue queue = MssoActiveQueue.getInstance();
+    private final List<MssoRequest> added = new ArrayList<MssoRequest>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (MssoRequest request : added) {
+            queue.takeRequest(request.getId());
+            queue.release(request.getId());
+        }
+    }
+
+    @Test
+    public void testClaimOnce() throws Exception {
+        MssoRequest request = add();
+        assertTrue(queue.claim(request.getId()));
+        assertFalse(queue.claim(request.getId()));
+        queue.release(request.getId());
+        assertTrue(queue.claim(request.getId()));
+        queue.release(request.getId());
+    }
+
+    @Test
+    public void testFinishedRequestNotClaimedAgain() throws Exception {
+        MssoRequest request = add();
+        Collection<MssoRequest> staleSnapshot = queue.getAllRequest();
+
+        // A worker finishes the request
+        assertTrue(queue.claim(request.getId()));
+        assertEquals(request, queue.takeRequest(request.getId()));
+        queue.release(request.getId());
+
+        // Another worker walking an older snapshot must not process it again
+        for (MssoRequest stale : staleSnapshot) {
+            assertFalse(queue.claim(stale.getId()));
+        }
+    }
+
+    @Test
+    public void testUnknownRequestNotClaimed() throws Exception {
+        assertFalse(queue.claim(-42));
+    }
+
+    @Test
+    public void testConcurrentWorkers() throws Exception {
+        final Map<Long, AtomicInteger> executions = new HashMap<Long, AtomicInteger>();
+        for (int i = 0; i < REQUESTS; i++) {
+            executions.put(add().getId(), new AtomicInteger());
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        for (int w = 0; w < WORKERS; w++) {
+            final Collection<MssoRequest> snapshot = queue.getAllRequest();
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (MssoRequest request : snapshot) {
+                        if (!queue.claim(request.getId())) {
+                            continue;
+                        }
+                        try {
+                            executions.get(request.getId()).incrementAndGet();
+                            Thread.yield();
+                            queue.takeRequest(request.getId());
+                        } finally {
+                            queue.release(request.getId());
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (Map.Entry<Long, AtomicInteger> execution : executions.entrySet()) {
+            assertEquals("Request " + execution.getKey(), 1, execution.getValue().get());
+        }
+        assertTrue(queue.getAllRequest().isEmpty());
+    }
+
+    private MssoRequest add() {
+        MssoRequest request = new MssoRequest(this, null, null, null);
+        queue.addRequest(request);
+        added.add(request);
+        return request;
+    }
+}
@@ -9,6 +9,9 @@
 package com.ca.mas.sample.testapp.suite;
 
 import com.ca.mas.sample.testapp.tests.instrumentation.Identity.MASUserTests;
+import com.ca.mas.sample.testapp.tests.instrumentation.connecta.MASConnectaDispatchTests;
+import com.ca.mas.sample.testapp.tests.instrumentation.connecta.MASConnectaPersistenceTests;
+import com.ca.mas.sample.testapp.tests.instrumentation.connecta.MASConnectaPipelineTests;
 import com.ca.mas.sample.testapp.tests.instrumentation.connecta.MASConnectaPublicBrokerTests;
 import com.ca.mas.sample.testapp.tests.instrumentation.connecta.MASConnectaTests;
 import com.ca.mas.sample.testapp.tests.instrumentation.foundation.MASApplicationTest;
@@ -34,6 +37,9 @@ import org.junit.runners.Suite;
                 MASDeviceTests.class,
                 MASConnectaTests.class,
                 MASConnectaPublicBrokerTests.class,
+                MASConnectaPersistenceTests.class,
+                MASConnectaPipelineTests.class,
+                MASConnectaDispatchTests.class,
 
                 MASSecureStorageTests.class,
                 MASSecureStorageForUserApplication.class,
@@ -8,6 +8,10 @@
 
 package com.ca.mas.sample.testapp.suite;
 
+import com.ca.mas.sample.testapp.tests.instrumentation.Identity.ScimPagerTest;
+import com.ca.mas.sample.testapp.tests.instrumentation.Identity.ScimResourcesResponseBodyTest;
+import com.ca.mas.sample.testapp.tests.instrumentation.connecta.MASMessageFormatTest;
+import com.ca.mas.sample.testapp.tests.instrumentation.connecta.TopicTrieTest;
 import com.ca.mas.sample.testapp.tests.instrumentation.storage.EncryptionProviderTest;
 
 import org.junit.runner.RunWith;
@@ -17,5 +21,6 @@ import org.junit.runners.Suite;
  * Runs all unit tests.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({EncryptionProviderTest.class})
+@Suite.SuiteClasses({EncryptionProviderTest.class, MASMessageFormatTest.class, TopicTrieTest.class,
+        ScimResourcesResponseBodyTest.class, ScimPagerTest.class})
 public class UnitTestSuite {}
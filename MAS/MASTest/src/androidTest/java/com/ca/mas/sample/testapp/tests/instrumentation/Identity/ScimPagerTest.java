@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.Identity;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+import com.ca.mas.foundation.MASResponseBody;
+import com.ca.mas.foundation.MASRuntimeException;
+import com.ca.mas.identity.common.MASFilteredRequest;
+import com.ca.mas.identity.common.MASPartialResultListener;
+import com.ca.mas.identity.common.ScimPager;
+import com.ca.mas.identity.common.ScimResourcesResponseBody;
+import com.ca.mas.identity.util.IdentityConsts;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Pages through a SCIM query served by a mock server, where the later pages are answered first, and checks the
+ * results are delivered in page order, no more pages than the fan-out are requested at once or ahead of the
+ * consumer, and a page failing in the middle of the query fails it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScimPagerTest {
+
+    private static final int TOTAL_RESULTS = 10;
+    private static final int COUNT = 2;
+    private static final int PAGES = TOTAL_RESULTS / COUNT;
+    private static final int FAN_OUT = 3;
+
+    private static final ScimResourcesResponseBody.ResourceConverter<String> CONVERTER =
+            new ScimResourcesResponseBody.ResourceConverter<String>() {
+                @Override
+                public String convert(JSONObject resource) throws JSONException {
+                    return resource.getString("id");
+                }
+            };
+
+    private Context context;
+    private MockWebServer mockWebServer;
+    private PageDispatcher dispatcher;
+    private MAGHttpClient client;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ConfigurationManager.getInstance().init(context);
+        dispatcher = new PageDispatcher();
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(dispatcher);
+        mockWebServer.start();
+        client = new MAGHttpClient();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        client.evictConnections();
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testFetchAllInOrder() throws Exception {
+        dispatcher.reverseOrder = true;
+        final List<String> partial = Collections.synchronizedList(new ArrayList<String>());
+        ResultCallback callback = new ResultCallback(partial);
+        newPager(FAN_OUT).fetchAll(callback);
+
+        assertTrue(callback.done.await(30, TimeUnit.SECONDS));
+        assertNull(callback.error);
+        assertEquals(expected(TOTAL_RESULTS), callback.result);
+        assertEquals(expected(TOTAL_RESULTS), partial);
+        assertEquals(PAGES, mockWebServer.getRequestCount());
+        assertTrue(dispatcher.maxConcurrent.get() > 1);
+        assertTrue(dispatcher.maxConcurrent.get() <= FAN_OUT);
+    }
+
+    @Test
+    public void testIteratorInOrder() throws Exception {
+        dispatcher.reverseOrder = true;
+        List<String> results = new ArrayList<>();
+        Iterator<String> iterator = newPager(FAN_OUT).iterator();
+        while (iterator.hasNext()) {
+            results.add(iterator.next());
+        }
+        assertEquals(expected(TOTAL_RESULTS), results);
+        assertTrue(dispatcher.maxConcurrent.get() <= FAN_OUT);
+    }
+
+    @Test
+    public void testIteratorBackpressure() throws Exception {
+        Iterator<String> iterator = newPager(FAN_OUT).iterator();
+        assertEquals("0", iterator.next());
+
+        // Only the fan-out pages following the page being consumed are requested
+        Thread.sleep(1000);
+        assertEquals(1 + FAN_OUT, mockWebServer.getRequestCount());
+
+        List<String> results = new ArrayList<>(Collections.singletonList("0"));
+        while (iterator.hasNext()) {
+            results.add(iterator.next());
+        }
+        assertEquals(expected(TOTAL_RESULTS), results);
+    }
+
+    @Test
+    public void testFetchAllErrorMidPage() throws Exception {
+        dispatcher.malformedPage = 2;
+        final List<String> partial = Collections.synchronizedList(new ArrayList<String>());
+        ResultCallback callback = new ResultCallback(partial);
+        newPager(FAN_OUT).fetchAll(callback);
+
+        assertTrue(callback.done.await(30, TimeUnit.SECONDS));
+        assertTrue(callback.error != null);
+        assertNull(callback.result);
+        // Pages received before the failure are delivered in order, none after it
+        assertEquals(expected(partial.size()), partial);
+        assertTrue(partial.size() <= 2 * COUNT);
+    }
+
+    @Test
+    public void testIteratorErrorMidPage() throws Exception {
+        dispatcher.malformedPage = 2;
+        List<String> results = new ArrayList<>();
+        Iterator<String> iterator = newPager(FAN_OUT).iterator();
+        try {
+            while (iterator.hasNext()) {
+                results.add(iterator.next());
+            }
+            fail("Malformed page accepted");
+        } catch (MASRuntimeException e) {
+            // Expected
+        }
+        assertEquals(expected(results.size()), results);
+        assertTrue(results.size() <= 2 * COUNT);
+    }
+
+    private ScimPager<String> newPager(int fanOut) throws Exception {
+        MASFilteredRequest filteredRequest = new MASFilteredRequest(Collections.<String>emptyList(),
+                IdentityConsts.KEY_USER_ATTRIBUTES);
+        filteredRequest.setPagination(1, COUNT);
+        filteredRequest.setFanOut(fanOut);
+        return new MockServerPager(context, filteredRequest);
+    }
+
+    private static List<String> expected(int count) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            expected.add(Integer.toString(i));
+        }
+        return expected;
+    }
+
+    /**
+     * Sends the page requests to the mock server, concurrently, instead of the gateway.
+     */
+    private class MockServerPager extends ScimPager<String> {
+
+        MockServerPager(Context context, MASFilteredRequest filteredRequest) {
+            super(context, filteredRequest, CONVERTER);
+        }
+
+        @Override
+        protected void invoke(final MASRequest request,
+                              final MASCallback<MASResponse<ScimResourcesResponseBody.Resources<String>>> callback) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        MAGRequest mockRequest = new MAGRequest.MAGRequestBuilder(mockWebServer.getUrl(request.getURL().getFile()))
+                                .responseBody(request.getResponseBody())
+                                .get().build();
+                        final MAGResponse<ScimResourcesResponseBody.Resources<String>> response = client.execute(mockRequest);
+                        callback.onSuccess(new MASResponse<ScimResourcesResponseBody.Resources<String>>() {
+                            @Override
+                            public MASResponseBody<ScimResourcesResponseBody.Resources<String>> getBody() {
+                                return new MASResponseBody<ScimResourcesResponseBody.Resources<String>>() {
+                                    @Override
+                                    public ScimResourcesResponseBody.Resources<String> getContent() {
+                                        return response.getBody().getContent();
+                                    }
+                                };
+                            }
+
+                            @Override
+                            public Map<String, List<String>> getHeaders() {
+                                return response.getHeaders();
+                            }
+
+                            @Override
+                            public int getResponseCode() {
+                                return response.getResponseCode();
+                            }
+
+                            @Override
+                            public String getResponseMessage() {
+                                return response.getResponseMessage();
+                            }
+                        });
+                    } catch (Exception e) {
+                        callback.onError(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Serves the pages of {@link #TOTAL_RESULTS} users, the result ids being their position in the query.
+     */
+    private static class PageDispatcher extends Dispatcher {
+
+        private volatile boolean reverseOrder;
+        private volatile int malformedPage = -1;
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private synchronized void recordConcurrent(int current) {
+            if (current > maxConcurrent.get()) {
+                maxConcurrent.set(current);
+            }
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            recordConcurrent(concurrent.incrementAndGet());
+            try {
+                Uri uri = Uri.parse(request.getPath());
+                int startIndex = Integer.parseInt(uri.getQueryParameter("startIndex"));
+                int count = Integer.parseInt(uri.getQueryParameter("count"));
+                int page = (startIndex - 1) / count;
+                // Answer the later pages first
+                Thread.sleep(reverseOrder ? (PAGES - page) * 100 : 10);
+
+                StringBuilder body = new StringBuilder("{\"totalResults\":" + TOTAL_RESULTS + ",\"Resources\":[");
+                for (int i = startIndex - 1; i < Math.min(startIndex - 1 + count, TOTAL_RESULTS); i++) {
+                    if (i > startIndex - 1) {
+                        body.append(',');
+                    }
+                    body.append("{\"id\":\"").append(i).append("\"}");
+                }
+                if (page == malformedPage) {
+                    body.append(",{\"id\":");
+                } else {
+                    body.append("]}");
+                }
+                return new MockResponse()
+                        .setResponseCode(HttpURLConnection.HTTP_OK)
+                        .setHeader("Content-Type", "application/scim+json")
+                        .setBody(body.toString());
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private static class ResultCallback extends MASCallback<List<String>> implements MASPartialResultListener<String> {
+
+        private final List<String> partial;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile List<String> result;
+        private volatile Throwable error;
+
+        ResultCallback(List<String> partial) {
+            this.partial = partial;
+        }
+
+        @Override
+        public void onPartialResult(List<String> results) {
+            partial.addAll(results);
+        }
+
+        @Override
+        public void onSuccess(List<String> result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            this.error = e;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.Identity;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.MAGRequest;
+import com.ca.mas.core.http.MAGResponse;
+import com.ca.mas.identity.common.ScimResourcesResponseBody;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the streaming parser of SCIM list responses against a mock server: resources are delivered in batches, in
+ * response order, while the response is still being read, and a malformed response fails as a whole with an
+ * {@link IOException} after delivering the resources read before the error.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScimResourcesResponseBodyTest {
+
+    private static final ScimResourcesResponseBody.ResourceConverter<String> CONVERTER =
+            new ScimResourcesResponseBody.ResourceConverter<String>() {
+                @Override
+                public String convert(JSONObject resource) throws JSONException {
+                    return resource.getString("id");
+                }
+            };
+
+    private MockWebServer mockWebServer;
+    private MAGHttpClient client;
+    private final List<List<String>> batches = new ArrayList<>();
+    private final ScimResourcesResponseBody.BatchListener<String> listener =
+            new ScimResourcesResponseBody.BatchListener<String>() {
+                @Override
+                public void onBatch(List<String> batch) {
+                    // Called on the test thread, while the response is read
+                    if (batches.isEmpty()) {
+                        firstBatchAt = System.nanoTime();
+                    }
+                    batches.add(batch);
+                }
+            };
+    private long firstBatchAt;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        client = new MAGHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.evictConnections();
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testBatchesInOrder() throws Exception {
+        enqueue("{\"totalResults\":5,\"Resources\":" + resources(5) + "}");
+        ScimResourcesResponseBody.Resources<String> content = execute(2);
+
+        assertTrue(content.isPresent());
+        assertEquals(5, content.getTotalResults());
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"), content.getResources());
+        assertEquals(Arrays.asList(Arrays.asList("0", "1"), Arrays.asList("2", "3"), Arrays.asList("4")), batches);
+    }
+
+    @Test
+    public void testPartialDelivery() throws Exception {
+        // About 2 seconds to send the body, the first batch must not wait for the end of it
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .setHeader("Content-Type", "application/scim+json")
+                .setBody("{\"Resources\":" + resources(40) + ",\"totalResults\":40}")
+                .throttleBody(50, 100, TimeUnit.MILLISECONDS));
+        ScimResourcesResponseBody.Resources<String> content = execute(5);
+        long readAt = System.nanoTime();
+
+        assertEquals(40, content.getResources().size());
+        assertEquals(8, batches.size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(readAt - firstBatchAt) > 500);
+    }
+
+    @Test
+    public void testErrorMidPage() throws Exception {
+        String body = "{\"totalResults\":5,\"Resources\":[{\"id\":\"0\"},{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":";
+        enqueue(body);
+        try {
+            execute(1);
+            fail("Truncated response accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(Arrays.asList(Arrays.asList("0"), Arrays.asList("1"), Arrays.asList("2")), batches);
+    }
+
+    @Test
+    public void testConverterErrorMidPage() throws Exception {
+        enqueue("{\"totalResults\":3,\"Resources\":[{\"id\":\"0\"},{\"name\":\"no id\"},{\"id\":\"2\"}]}");
+        try {
+            execute(1);
+            fail("Unconvertible resource accepted");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof JSONException);
+        }
+        assertEquals(Arrays.asList(Arrays.asList("0")), batches);
+    }
+
+    @Test
+    public void testTotalResultsNotAnInt() throws Exception {
+        for (String totalResults : new String[]{"3000000000", "1.5"}) {
+            enqueue("{\"totalResults\":" + totalResults + ",\"Resources\":" + resources(1) + "}");
+            try {
+                execute(1);
+                fail("totalResults " + totalResults + " accepted");
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof NumberFormatException);
+            }
+        }
+
+        // A value which is not a number is ignored, as any unexpected attribute
+        enqueue("{\"totalResults\":\"1\",\"Resources\":" + resources(1) + "}");
+        assertEquals(0, execute(1).getTotalResults());
+    }
+
+    private ScimResourcesResponseBody.Resources<String> execute(int batchSize) throws Exception {
+        MAGRequest request = new MAGRequest.MAGRequestBuilder(mockWebServer.getUrl("/SCIM/MAS/v2/Users"))
+                .responseBody(new ScimResourcesResponseBody<>(CONVERTER, listener, batchSize))
+                .get().build();
+        MAGResponse<ScimResourcesResponseBody.Resources<String>> response = client.execute(request);
+        assertEquals(HttpURLConnection.HTTP_OK, response.getResponseCode());
+        return response.getBody().getContent();
+    }
+
+    private void enqueue(String body) {
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .setHeader("Content-Type", "application/scim+json")
+                .setBody(body));
+    }
+
+    private static String resources(int count) {
+        StringBuilder resources = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                resources.append(',');
+            }
+            resources.append("{\"id\":\"").append(i).append("\",\"userName\":\"user").append(i).append("\"}");
+        }
+        return resources.append(']').toString();
+    }
+}
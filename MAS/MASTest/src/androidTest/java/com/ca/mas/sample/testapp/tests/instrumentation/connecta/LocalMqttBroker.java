@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for an MQTT broker, serving one connection at a time: it accepts the connection, acknowledges
+ * publishes, subscriptions and unsubscriptions, answers pings, and drops everything else.  The publishes on a
+ * topic the connection subscribed to, matched exactly, are sent back to it with QoS 0.
+ * <p/>
+ * The acknowledgements can be delayed to emulate the round trip to a remote broker; the packets keep being
+ * read meanwhile, so a client pipelining its publishes only waits for the latency once.
+ * <p/>
+ * The broker can be made unavailable, which drops the connection and closes the next ones at once, to emulate a
+ * broker going down and coming back on the same address.
+ */
+class LocalMqttBroker extends Thread {
+
+    private final ServerSocket serverSocket;
+    private final long latencyMillis;
+    private final ScheduledExecutorService acknowledger = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger subscribeRequests = new AtomicInteger();
+    private volatile boolean available = true;
+    private volatile Socket connection;
+    private volatile int lastSubscribeTopics;
+
+    LocalMqttBroker() throws IOException {
+        this(0);
+    }
+
+    LocalMqttBroker(long latencyMillis) throws IOException {
+        super("Local MQTT broker");
+        setDaemon(true);
+        this.latencyMillis = latencyMillis;
+        serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    }
+
+    String getUri() {
+        return "tcp://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Makes the broker unavailable, dropping the current connection, or available again.
+     */
+    void setAvailable(boolean available) throws IOException {
+        this.available = available;
+        Socket socket = connection;
+        if (!available && socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * @return the number of SUBSCRIBE packets received.
+     */
+    int getSubscribeRequests() {
+        return subscribeRequests.get();
+    }
+
+    /**
+     * @return the number of topics of the last SUBSCRIBE packet received.
+     */
+    int getLastSubscribeTopics() {
+        return lastSubscribeTopics;
+    }
+
+    void shutdown() throws IOException {
+        acknowledger.shutdownNow();
+        serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    if (available) {
+                        connection = socket;
+                        serve(socket);
+                    }
+                } finally {
+                    connection = null;
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // Closed, or the client disconnected
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        Set<String> subscriptions = new HashSet<>();
+        for (; ; ) {
+            int header = in.read();
+            if (header == -1) {
+                return;
+            }
+            byte[] body = new byte[readRemainingLength(in)];
+            in.readFully(body);
+            switch (header >> 4) {
+                case 1: // CONNECT
+                    send(out, new byte[]{0x20, 0x02, 0x00, 0x00}, 0);
+                    break;
+                case 3: // PUBLISH
+                    int qos = (header >> 1) & 0x03;
+                    int topicLength = ((body[0] & 0xff) << 8) | (body[1] & 0xff);
+                    if (qos > 0) {
+                        send(out, new byte[]{(byte) (qos == 1 ? 0x40 : 0x50), 0x02,
+                                body[2 + topicLength], body[3 + topicLength]}, latencyMillis);
+                    }
+                    if (subscriptions.contains(new String(body, 2, topicLength, "UTF-8"))) {
+                        send(out, deliver(body, topicLength, qos > 0 ? 2 : 0), latencyMillis);
+                    }
+                    break;
+                case 6: // PUBREL
+                    send(out, new byte[]{0x70, 0x02, body[0], body[1]}, latencyMillis);
+                    break;
+                case 8: // SUBSCRIBE
+                    byte[] subAck = subAck(body, subscriptions);
+                    // One granted QoS per topic follows the packet id
+                    lastSubscribeTopics = subAck.length - 4;
+                    subscribeRequests.incrementAndGet();
+                    send(out, subAck, latencyMillis);
+                    break;
+                case 10: // UNSUBSCRIBE
+                    send(out, new byte[]{(byte) 0xb0, 0x02, body[0], body[1]}, latencyMillis);
+                    break;
+                case 12: // PINGREQ
+                    send(out, new byte[]{(byte) 0xd0, 0x00}, 0);
+                    break;
+                case 14: // DISCONNECT
+                    return;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the acknowledgement of a subscription, granting the requested QoS of each topic.
+     */
+    private static byte[] subAck(byte[] body, Set<String> subscriptions) throws IOException {
+        ByteArrayOutputStream granted = new ByteArrayOutputStream();
+        int i = 2;
+        while (i < body.length) {
+            int topicLength = ((body[i] & 0xff) << 8) | (body[i + 1] & 0xff);
+            subscriptions.add(new String(body, i + 2, topicLength, "UTF-8"));
+            i += 2 + topicLength;
+            granted.write(body[i++]);
+        }
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        packet.write(0x90);
+        packet.write(2 + granted.size());
+        packet.write(body[0]);
+        packet.write(body[1]);
+        packet.write(granted.toByteArray(), 0, granted.size());
+        return packet.toByteArray();
+    }
+
+    /**
+     * @return a QoS 0 publish of the topic and payload of a received publish.
+     */
+    private static byte[] deliver(byte[] body, int topicLength, int packetIdLength) {
+        int payloadOffset = 2 + topicLength + packetIdLength;
+        int remainingLength = body.length - packetIdLength;
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(remainingLength + 5);
+        packet.write(0x30);
+        do {
+            int digit = remainingLength % 128;
+            remainingLength /= 128;
+            packet.write(remainingLength > 0 ? digit | 0x80 : digit);
+        } while (remainingLength > 0);
+        packet.write(body, 0, 2 + topicLength);
+        packet.write(body, payloadOffset, body.length - payloadOffset);
+        return packet.toByteArray();
+    }
+
+    private void send(final OutputStream out, final byte[] packet, long delayMillis) throws IOException {
+        if (delayMillis <= 0) {
+            write(out, packet);
+            return;
+        }
+        acknowledger.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(out, packet);
+                } catch (IOException e) {
+                    // The client disconnected
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void write(OutputStream out, byte[] packet) throws IOException {
+        synchronized (out) {
+            out.write(packet);
+            out.flush();
+        }
+    }
+
+    private static int readRemainingLength(InputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit == -1) {
+                throw new IOException("Connection closed");
+            }
+            length += (digit & 0x7f) * multiplier;
+            multiplier *= 128;
+        } while ((digit & 0x80) != 0);
+        return length;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import com.ca.mas.connecta.client.MASConnectOptions;
+import com.ca.mas.connecta.client.MASConnectaManager;
+import com.ca.mas.connecta.client.MASMessageListener;
+import com.ca.mas.connecta.util.ConnectaConsts;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASException;
+import com.ca.mas.messaging.MASMessage;
+import com.ca.mas.messaging.topic.MASTopic;
+import com.ca.mas.messaging.topic.MASTopicBuilder;
+
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the delivery of the arriving messages to a {@link MASMessageListener} with their broadcast as an
+ * Intent, through a local broker stand-in which sends the publishes back: the latency from publish to arrival, and
+ * the memory allocated per message.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MASConnectaDispatchTests {
+
+    private static final String TAG = MASConnectaDispatchTests.class.getSimpleName();
+    private static final int MESSAGES = 200;
+    private static final int PAYLOAD_SIZE = 1024;
+
+    private Context context;
+    private LocalMqttBroker broker;
+    private MASTopic topic;
+    private final SynchronousQueue<MASMessage> arrived = new SynchronousQueue<>();
+
+    private final MASMessageListener listener = new MASMessageListener() {
+        @Override
+        public void onMessageArrived(MASMessage message) {
+            hand(message);
+        }
+    };
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            try {
+                hand(MASMessage.newInstance(intent));
+            } catch (MASException e) {
+                Log.w(TAG, "Unable to read the broadcast message: " + e);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        MAS.start(context, true);
+        broker = new LocalMqttBroker();
+        broker.start();
+
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        manager.start(context);
+        disconnect();
+        MASConnectOptions connectOptions = new MASConnectOptions();
+        connectOptions.setServerURIs(new String[]{broker.getUri()});
+        connectOptions.setPersistence(new MemoryPersistence());
+        manager.setConnectOptions(connectOptions);
+        manager.setClientId("dispatch");
+
+        topic = new MASTopicBuilder().setCustomTopic("dispatch").enforceTopicStructure(false).setQos(0).build();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        manager.subscribe(topic, new MASCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error.set(e);
+                subscribed.countDown();
+            }
+        });
+        assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        manager.removeMessageListener(listener);
+        manager.setBroadcastMessages(false);
+        LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
+        disconnect();
+        // Let the other tests connect to the gateway again
+        manager.setConnectOptions(null);
+        manager.setClientId(null);
+        broker.shutdown();
+    }
+
+    @Test
+    public void testListenerReceivesMessage() throws Exception {
+        MASConnectaManager.getInstance().addMessageListener(listener);
+        MASMessage sent = newMessage();
+
+        MASMessage received = roundTrip(sent);
+
+        assertEquals(topic.toString(), received.getTopic());
+        assertEquals(sent.getContentType(), received.getContentType());
+        assertTrue(Arrays.equals(sent.getPayload(), received.getPayload()));
+    }
+
+    @Test
+    public void testListenerVersusBroadcast() throws Exception {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        manager.addMessageListener(listener);
+        long[] direct = measure();
+
+        manager.removeMessageListener(listener);
+        manager.setBroadcastMessages(true);
+        LocalBroadcastManager.getInstance(context).registerReceiver(receiver,
+                new IntentFilter(ConnectaConsts.MAS_CONNECTA_BROADCAST_MESSAGE_ARRIVED));
+        long[] broadcast = measure();
+
+        Log.i(TAG, String.format("Per message, listener: %d us, %d bytes allocated; broadcast: %d us, %d bytes allocated",
+                direct[0] / 1000, direct[1], broadcast[0] / 1000, broadcast[1]));
+        assertTrue(direct[1] < broadcast[1]);
+    }
+
+    /**
+     * @return the average time from publish to arrival, in nanoseconds, and the average number of bytes allocated
+     * by the process, per message.
+     */
+    @SuppressWarnings("deprecation")
+    private long[] measure() throws Exception {
+        MASMessage message = newMessage();
+        // Warm up
+        for (int i = 0; i < MESSAGES / 10; i++) {
+            roundTrip(message);
+        }
+        Debug.resetGlobalAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < MESSAGES; i++) {
+                roundTrip(message);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new long[]{elapsed / MESSAGES, Debug.getGlobalAllocSize() / MESSAGES};
+    }
+
+    private MASMessage roundTrip(MASMessage message) throws InterruptedException {
+        MASConnectaManager.getInstance().publish(topic, message, null);
+        MASMessage received = arrived.poll(10, TimeUnit.SECONDS);
+        assertNotNull(received);
+        return received;
+    }
+
+    private void hand(MASMessage message) {
+        try {
+            arrived.offer(message, 10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MASMessage newMessage() {
+        MASMessage message = MASMessage.newInstance();
+        message.setContentType("application/octet-stream");
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        message.setPayload(payload);
+        message.setQos(0);
+        return message;
+    }
+
+    private void disconnect() throws InterruptedException {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        if (!manager.isConnected()) {
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        manager.disconnect(new MASCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                latch.countDown();
+            }
+        });
+        latch.await(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.connecta.serviceprovider.SegmentLogPersistence;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the durable MQTT persistence, and benchmarks the throughput of QoS 1 publishes with it against a local
+ * broker stand-in which acknowledges every publish.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MASConnectaPersistenceTests {
+
+    private static final String TAG = MASConnectaPersistenceTests.class.getSimpleName();
+    private static final int MESSAGES = 2000;
+    private static final int PAYLOAD_SIZE = 256;
+
+    private File directory;
+    private LocalMqttBroker broker;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "mqtt-test");
+        delete(directory);
+        broker = new LocalMqttBroker();
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        broker.shutdown();
+        delete(directory);
+    }
+
+    @Test
+    public void testEntriesSurviveReopen() throws Exception {
+        SegmentLogPersistence persistence = new SegmentLogPersistence(directory);
+        persistence.open("client", "tcp://localhost:1883");
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        Arrays.fill(payload, (byte) 'a');
+        persistence.put("s-1", persistable(new byte[]{0x32, 0x0a}, payload));
+        persistence.put("s-2", persistable(new byte[]{0x32, 0x0b}, payload));
+        persistence.remove("s-1");
+        persistence.close();
+
+        SegmentLogPersistence reopened = new SegmentLogPersistence(directory);
+        reopened.open("client", "tcp://localhost:1883");
+        assertFalse(reopened.containsKey("s-1"));
+        assertTrue(reopened.containsKey("s-2"));
+        MqttPersistable restored = reopened.get("s-2");
+        assertEquals(0x0b, restored.getHeaderBytes()[restored.getHeaderOffset() + 1]);
+        assertTrue(Arrays.equals(payload, Arrays.copyOfRange(restored.getPayloadBytes(),
+                restored.getPayloadOffset(), restored.getPayloadOffset() + restored.getPayloadLength())));
+        reopened.close();
+    }
+
+    @Test
+    public void testQos1PublishThroughput() throws Exception {
+        double memory = publish(new MemoryPersistence());
+        double durable = publish(new SegmentLogPersistence(directory));
+        double syncEach = publish(new SegmentLogPersistence(directory,
+                SegmentLogPersistence.DEFAULT_MAX_BYTES, SegmentLogPersistence.DEFAULT_SEGMENT_BYTES, 0));
+
+        Log.i(TAG, String.format("QoS 1 publishes/s: memory=%.0f segment log=%.0f segment log, sync each=%.0f",
+                memory, durable, syncEach));
+    }
+
+    /**
+     * @return the number of QoS 1 messages published per second.
+     */
+    private double publish(MqttClientPersistence persistence) throws Exception {
+        MqttClient client = new MqttClient(broker.getUri(), "benchmark", persistence);
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(false);
+        client.connect(options);
+
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            MqttMessage message = new MqttMessage(payload);
+            message.setQos(1);
+            client.publish("benchmark/topic", message);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Every publish has been acknowledged, so nothing is left in flight
+        assertFalse(persistence.keys().hasMoreElements());
+        client.disconnect();
+        client.close();
+        return MESSAGES / (elapsed / 1e9);
+    }
+
+    private static MqttPersistable persistable(final byte[] header, final byte[] payload) {
+        return new MqttPersistable() {
+            @Override
+            public byte[] getHeaderBytes() {
+                return header;
+            }
+
+            @Override
+            public int getHeaderLength() {
+                return header.length;
+            }
+
+            @Override
+            public int getHeaderOffset() {
+                return 0;
+            }
+
+            @Override
+            public byte[] getPayloadBytes() {
+                return payload;
+            }
+
+            @Override
+            public int getPayloadLength() {
+                return payload.length;
+            }
+
+            @Override
+            public int getPayloadOffset() {
+                return 0;
+            }
+        };
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.connecta.client.MASConnectOptions;
+import com.ca.mas.connecta.client.MASConnectaManager;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.messaging.topic.MASTopic;
+import com.ca.mas.messaging.topic.MASTopicBuilder;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the throughput of QoS 1 publishes made one acknowledgement at a time, as the messaging layer used to
+ * publish, with the pipelined publishes of {@link MASConnectaManager}, against a local broker stand-in which
+ * acknowledges after a short latency.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MASConnectaPipelineTests {
+
+    private static final String TAG = MASConnectaPipelineTests.class.getSimpleName();
+    private static final int MESSAGES = 1000;
+    private static final int PAYLOAD_SIZE = 256;
+    private static final long LATENCY_MILLIS = 2;
+    private static final int MAX_INFLIGHT = 50;
+
+    private Context context;
+    private LocalMqttBroker broker;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        MAS.start(context, true);
+        MASConnectaManager.getInstance().start(context);
+        disconnect();
+        broker = new LocalMqttBroker(LATENCY_MILLIS);
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        disconnect();
+        // Let the other tests connect to the gateway again
+        MASConnectaManager.getInstance().setConnectOptions(null);
+        MASConnectaManager.getInstance().setClientId(null);
+        broker.shutdown();
+    }
+
+    @Test
+    public void testQos1PublishThroughput() throws Exception {
+        double blocking = publishBlocking();
+        double pipelined = publishPipelined();
+
+        Log.i(TAG, String.format("%d QoS 1 publishes/s: one at a time=%.0f pipelined=%.0f",
+                MESSAGES, blocking, pipelined));
+        assertTrue(pipelined > blocking);
+    }
+
+    /**
+     * @return the number of messages published per second, waiting for each acknowledgement in turn.
+     */
+    private double publishBlocking() throws Exception {
+        MqttClient client = new MqttClient(broker.getUri(), "blocking", new MemoryPersistence());
+        client.connect();
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            MqttMessage message = new MqttMessage(payload);
+            message.setQos(1);
+            client.publish("benchmark", message);
+        }
+        long elapsed = System.nanoTime() - start;
+        client.disconnect();
+        client.close();
+        return MESSAGES / (elapsed / 1e9);
+    }
+
+    /**
+     * @return the number of messages published per second through the {@link MASConnectaManager}.
+     */
+    private double publishPipelined() throws Exception {
+        MASConnectOptions connectOptions = new MASConnectOptions();
+        connectOptions.setServerURIs(new String[]{broker.getUri()});
+        connectOptions.setMaxInflight(MAX_INFLIGHT);
+        connectOptions.setPersistence(new MemoryPersistence());
+        final MASConnectaManager manager = MASConnectaManager.getInstance();
+        manager.setConnectOptions(connectOptions);
+        manager.setClientId("pipelined");
+
+        final CountDownLatch connected = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        manager.connect(new MASCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                connected.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error.set(e);
+                connected.countDown();
+            }
+        });
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        MASTopic topic = new MASTopicBuilder().setCustomTopic("benchmark").enforceTopicStructure(false).setQos(1).build();
+        final CountDownLatch delivered = new CountDownLatch(MESSAGES);
+        MASCallback<Void> callback = new MASCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error.compareAndSet(null, e);
+                delivered.countDown();
+            }
+        };
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            manager.publish(topic, payload, callback);
+        }
+        long submitted = System.nanoTime() - start;
+        assertTrue(delivered.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        assertNull(error.get());
+
+        Log.i(TAG, String.format("Submitting %d publishes took %d ms of the %d ms to deliver them",
+                MESSAGES, submitted / 1000000, elapsed / 1000000));
+        // The calls only queue the publishes, so they return long before the acknowledgements
+        assertTrue(submitted < elapsed);
+        return MESSAGES / (elapsed / 1e9);
+    }
+
+    private void disconnect() throws InterruptedException {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        if (!manager.isConnected()) {
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        manager.disconnect(new MASCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                latch.countDown();
+            }
+        });
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(false, manager.isConnected());
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.connecta.client.MASConnectOptions;
+import com.ca.mas.connecta.client.MASConnectaManager;
+import com.ca.mas.connecta.client.MASMessageListener;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.messaging.MASMessage;
+import com.ca.mas.messaging.topic.MASTopic;
+import com.ca.mas.messaging.topic.MASTopicBuilder;
+
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Takes a local broker stand-in down and brings it back while publishing, and checks the connection is
+ * established again, the subscriptions replayed in one request, and the publishes requested meanwhile queued.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MASConnectaReconnectTests {
+
+    private static final String TAG = MASConnectaReconnectTests.class.getSimpleName();
+    private static final int MESSAGES = 500;
+    private static final int MAX_INFLIGHT = 50;
+    private static final long OUTAGE_MILLIS = 500;
+
+    private Context context;
+    private LocalMqttBroker broker;
+    private MASConnectOptions connectOptions;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        MAS.start(context, true);
+        broker = new LocalMqttBroker();
+        broker.start();
+
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        manager.start(context);
+        disconnect();
+        connectOptions = new MASConnectOptions();
+        connectOptions.setServerURIs(new String[]{broker.getUri()});
+        connectOptions.setPersistence(new MemoryPersistence());
+        connectOptions.setMaxInflight(MAX_INFLIGHT);
+        connectOptions.setReconnectDelay(50, 400);
+        connectOptions.setMaxQueuedOperations(MESSAGES);
+        manager.setConnectOptions(connectOptions);
+        manager.setClientId("reconnect");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        broker.setAvailable(true);
+        disconnect();
+        // Let the other tests connect to the gateway again
+        MASConnectaManager.getInstance().setConnectOptions(null);
+        MASConnectaManager.getInstance().setClientId(null);
+        broker.shutdown();
+    }
+
+    @Test
+    public void testReconnectUnderLoad() throws Exception {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        MASTopic echo = topic("reconnect/echo");
+        await(subscribe(echo));
+        await(subscribe(topic("reconnect/a")));
+        await(subscribe(topic("reconnect/b")));
+        assertEquals(1, broker.getLastSubscribeTopics());
+
+        MASTopic load = topic("reconnect/load");
+        byte[] payload = new byte[256];
+        Tally before = new Tally(MESSAGES / 2);
+        for (int i = 0; i < MESSAGES / 2; i++) {
+            manager.publish(load, payload, before);
+        }
+        long start = System.nanoTime();
+        broker.setAvailable(false);
+        waitUntil(true);
+
+        Tally queued = new Tally(MESSAGES / 2);
+        for (int i = 0; i < MESSAGES / 2; i++) {
+            manager.publish(load, payload, queued);
+        }
+        Thread.sleep(OUTAGE_MILLIS);
+        broker.setAvailable(true);
+
+        assertTrue(before.done.await(30, TimeUnit.SECONDS));
+        assertTrue(queued.done.await(30, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        Log.i(TAG, String.format("Back after %d ms; before the outage %d published, %d in flight reported failed; "
+                        + "during the outage %d queued and published", elapsed / 1000000,
+                before.succeeded.get(), before.failed.get(), queued.succeeded.get()));
+
+        // Only the publishes in flight when the connection was lost may be reported failed
+        assertTrue(before.failed.get() <= MAX_INFLIGHT);
+        assertEquals(0, queued.failed.get());
+        assertTrue(manager.isConnected());
+        assertEquals(3, broker.getLastSubscribeTopics());
+
+        // The new connection of the broker only knows the replayed subscriptions
+        final LinkedBlockingQueue<MASMessage> arrived = new LinkedBlockingQueue<>();
+        MASMessageListener listener = new MASMessageListener() {
+            @Override
+            public void onMessageArrived(MASMessage message) {
+                arrived.offer(message);
+            }
+        };
+        manager.addMessageListener(echo, listener);
+        try {
+            manager.publish(echo, "echo", null);
+            assertNotNull(arrived.poll(10, TimeUnit.SECONDS));
+        } finally {
+            manager.removeMessageListener(echo, listener);
+        }
+    }
+
+    @Test
+    public void testQueueBound() throws Exception {
+        connectOptions.setMaxQueuedOperations(5);
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        MASTopic topic = topic("reconnect/bound");
+        await(subscribe(topic));
+        broker.setAvailable(false);
+        waitUntil(true);
+
+        Tally queued = new Tally(5);
+        for (int i = 0; i < 5; i++) {
+            manager.publish(topic, "queued", queued);
+        }
+        Tally rejected = new Tally(1);
+        manager.publish(topic, "rejected", rejected);
+        assertTrue(rejected.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, rejected.failed.get());
+
+        broker.setAvailable(true);
+        assertTrue(queued.done.await(10, TimeUnit.SECONDS));
+        assertEquals(5, queued.succeeded.get());
+    }
+
+    @Test
+    public void testNoAutoReconnect() throws Exception {
+        connectOptions.setAutoReconnect(false);
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        await(subscribe(topic("reconnect/none")));
+        broker.setAvailable(false);
+        waitUntil(false);
+
+        assertFalse(manager.isReconnecting());
+    }
+
+    private static MASTopic topic(String name) {
+        return new MASTopicBuilder().setCustomTopic(name).enforceTopicStructure(false).setQos(1).build();
+    }
+
+    private Tally subscribe(MASTopic topic) {
+        Tally tally = new Tally(1);
+        MASConnectaManager.getInstance().subscribe(topic, tally);
+        return tally;
+    }
+
+    private static void await(Tally tally) throws InterruptedException {
+        assertTrue(tally.done.await(10, TimeUnit.SECONDS));
+        assertNull(tally.error.get());
+    }
+
+    /**
+     * Waits for the connection to be lost, and the manager to be reconnecting or not.
+     */
+    private static void waitUntil(boolean reconnecting) throws InterruptedException {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (manager.isConnected() || manager.isReconnecting() != reconnecting) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void disconnect() throws InterruptedException {
+        MASConnectaManager manager = MASConnectaManager.getInstance();
+        if (!manager.isConnected() && !manager.isReconnecting()) {
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        manager.disconnect(new MASCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                latch.countDown();
+            }
+        });
+        latch.await(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Counts the outcomes of a number of operations.
+     */
+    private static class Tally extends MASCallback<Void> {
+
+        final CountDownLatch done;
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Tally(int operations) {
+            done = new CountDownLatch(operations);
+        }
+
+        @Override
+        public void onSuccess(Void result) {
+            succeeded.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error.compareAndSet(null, e);
+            failed.incrementAndGet();
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.connecta.util.BinaryMessageEnvelope;
+import com.ca.mas.connecta.util.ConnectaUtil;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASException;
+import com.ca.mas.messaging.MASMessage;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the binary envelope of the messages, its detection next to the JSON document, and compares their size and
+ * the time to decode them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MASMessageFormatTest {
+
+    private static final String TAG = MASMessageFormatTest.class.getSimpleName();
+    private static final String TOPIC = "/2.0/client/telemetry";
+    private static final int ITERATIONS = 1000;
+
+    private Context context;
+    private MASMessage message;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // The sender id of both formats is the id of the current user
+        MAS.start(context, true);
+        message = MASMessage.newInstance();
+        message.setContentType("application/octet-stream");
+        message.setSenderType("device");
+        message.setSentTime(1457383162000L);
+        byte[] payload = new byte[512];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        message.setPayload(payload);
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        byte[] envelope = message.createBinaryFromMASMessage(TOPIC);
+        assertTrue(BinaryMessageEnvelope.isEnvelope(envelope));
+
+        MASMessage received = ConnectaUtil.createMASMessageFromMqtt(new MqttMessage(envelope));
+
+        assertEquals(message.getVersion(), received.getVersion());
+        assertEquals("DEVICE", received.getSenderType());
+        assertEquals(message.getContentType(), received.getContentType());
+        assertEquals(message.getContentEncoding(), received.getContentEncoding());
+        assertEquals(message.getSentTime(), received.getSentTime());
+        assertEquals(TOPIC, received.getTopic());
+        assertTrue(Arrays.equals(message.getPayload(), received.getPayload()));
+    }
+
+    @Test
+    public void testJsonStillDetected() throws Exception {
+        String json = message.createJSONStringFromMASMessage(context);
+        assertFalse(BinaryMessageEnvelope.isEnvelope(json.getBytes()));
+
+        MASMessage received = ConnectaUtil.createMASMessageFromMqtt(new MqttMessage(json.getBytes()));
+
+        assertEquals(message.getContentType(), received.getContentType());
+        assertTrue(Arrays.equals(message.getPayload(), received.getPayload()));
+    }
+
+    @Test
+    public void testBarePayloadStillDetected() throws Exception {
+        byte[] bare = "bare payload".getBytes("UTF-8");
+
+        MASMessage received = ConnectaUtil.createMASMessageFromMqtt(new MqttMessage(bare));
+
+        assertTrue(Arrays.equals(bare, received.getPayload()));
+    }
+
+    @Test
+    public void testTruncatedEnvelope() throws Exception {
+        byte[] envelope = message.createBinaryFromMASMessage(TOPIC);
+        try {
+            MASMessage.newInstance().createMASMessageFromBinary(Arrays.copyOf(envelope, 12));
+            fail("Truncated envelope accepted");
+        } catch (MASException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSizeAndDecodeTime() throws Exception {
+        byte[] json = message.createJSONStringFromMASMessage(context).getBytes();
+        byte[] binary = message.createBinaryFromMASMessage(TOPIC);
+
+        long jsonTime = decode(json);
+        long binaryTime = decode(binary);
+
+        Log.i(TAG, String.format("%d byte payload, JSON: %d bytes, %d us to decode; binary: %d bytes, %d us to decode",
+                message.getPayload().length, json.length, jsonTime / 1000, binary.length, binaryTime / 1000));
+        assertTrue(binary.length < json.length);
+    }
+
+    /**
+     * @return the average time to decode the message, in nanoseconds.
+     */
+    private static long decode(byte[] bytes) throws MASException {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            ConnectaUtil.createMASMessageFromMqtt(new MqttMessage(bytes));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ConnectaUtil.createMASMessageFromMqtt(new MqttMessage(bytes));
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+}
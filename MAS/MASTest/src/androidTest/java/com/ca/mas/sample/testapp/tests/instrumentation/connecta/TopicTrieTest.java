@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.sample.testapp.tests.instrumentation.connecta;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.ca.mas.connecta.util.TopicTrie;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the wildcard matching of the {@link TopicTrie}, and compares its cost with testing every filter in turn
+ * for 1,000 filters.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TopicTrieTest {
+
+    private static final String TAG = TopicTrieTest.class.getSimpleName();
+    private static final int FILTERS = 1000;
+    private static final int ITERATIONS = 10000;
+
+    private TopicTrie<String> trie;
+
+    @Before
+    public void setUp() throws Exception {
+        trie = new TopicTrie<>();
+    }
+
+    @Test
+    public void testWildcards() throws Exception {
+        for (String filter : new String[]{"a/b/c", "a/+/c", "a/#", "#", "+/+", "/x", "+/x"}) {
+            trie.add(filter, filter);
+        }
+
+        assertEquals(set("a/b/c", "a/+/c", "a/#", "#"), trie.match("a/b/c"));
+        assertEquals(set("a/#", "#"), trie.match("a"));
+        assertEquals(set("a/#", "#", "+/+"), trie.match("a/b"));
+        assertEquals(set("/x", "+/x", "+/+", "#"), trie.match("/x"));
+        assertEquals(set("#"), trie.match("b/c/d"));
+        // Wildcards do not match the topics starting with $
+        assertTrue(trie.match("$SYS/x").isEmpty());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        trie.add("a/+", "first");
+        trie.add("a/+", "second");
+        assertFalse(trie.add("a/+", "second"));
+
+        assertTrue(trie.remove("a/+", "first"));
+        assertFalse(trie.remove("a/+", "first"));
+        assertEquals(set("second"), trie.match("a/b"));
+        assertTrue(trie.remove("a/+", "second"));
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    public void testValueMatchedOnce() throws Exception {
+        trie.add("a/+", "listener");
+        trie.add("a/#", "listener");
+
+        assertEquals(set("listener"), trie.match("a/b"));
+    }
+
+    @Test
+    public void testInvalidFilters() throws Exception {
+        for (String filter : new String[]{"a/#/b", "a/b#", "a/+b"}) {
+            try {
+                trie.add(filter, filter);
+                fail(filter + " accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testMatchCost() throws Exception {
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < FILTERS; i++) {
+            String filter = i % 10 == 0
+                    ? "/2.0/client/" + i + "/users/+/custom/#"
+                    : "/2.0/client/" + i + "/users/user" + i + "/custom/telemetry";
+            filters.add(filter);
+            trie.add(filter, filter);
+        }
+        String topic = "/2.0/client/500/users/user500/custom/telemetry";
+
+        long start = System.nanoTime();
+        int matched = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            matched += trie.match(topic).size();
+        }
+        long trieTime = (System.nanoTime() - start) / ITERATIONS;
+        assertEquals(ITERATIONS * 2, matched);
+
+        start = System.nanoTime();
+        matched = 0;
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            for (String filter : filters) {
+                if (matches(filter, topic)) {
+                    matched++;
+                }
+            }
+        }
+        long scanTime = (System.nanoTime() - start) / (ITERATIONS / 10);
+        assertEquals(ITERATIONS / 10 * 2, matched);
+
+        Log.i(TAG, String.format("Matching a topic against %d filters: trie %d ns, each filter in turn %d ns",
+                FILTERS, trieTime, scanTime));
+        assertTrue(trieTime < scanTime);
+    }
+
+    /**
+     * The filtering each listener used to do on its own.
+     */
+    private static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length
+                    || !(filterLevels[i].equals("+") || filterLevels[i].equals(topicLevels[i]))) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
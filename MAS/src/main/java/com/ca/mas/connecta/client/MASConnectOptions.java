@@ -17,16 +17,20 @@ import com.ca.mas.core.http.MAGResponse;
 import com.ca.mas.core.io.ssl.MAGSocketFactory;
 import com.ca.mas.core.request.internal.StateRequest;
 import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASConstants;
 import com.ca.mas.foundation.MASResultReceiver;
 import com.ca.mas.foundation.MASUser;
 import com.ca.mas.foundation.notify.Callback;
+import com.ca.mas.messaging.MASMessageFormat;
 
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.json.JSONObject;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLSocketFactory;
 
@@ -38,6 +42,134 @@ public class MASConnectOptions extends MqttConnectOptions {
 
     private static String TAG = MASConnectOptions.class.getSimpleName();
 
+    public static final long DEFAULT_MIN_RECONNECT_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_RECONNECT_DELAY_MILLIS = 60000;
+    public static final int DEFAULT_MAX_QUEUED_OPERATIONS = 100;
+
+    private MqttClientPersistence persistence;
+    private boolean autoReconnect = true;
+    private long minReconnectDelayMillis = DEFAULT_MIN_RECONNECT_DELAY_MILLIS;
+    private long maxReconnectDelayMillis = DEFAULT_MAX_RECONNECT_DELAY_MILLIS;
+    private int maxQueuedOperations = DEFAULT_MAX_QUEUED_OPERATIONS;
+    private int messageFormat = MASConstants.MAS_MESSAGE_FORMAT_JSON;
+    private final Map<String, Integer> topicMessageFormats = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the options of a session the broker keeps across connections: {@link #setCleanSession(boolean) clean
+     * session} is disabled, so the subscriptions and the in-flight messages are resumed when reconnecting.
+     */
+    public MASConnectOptions() {
+        setCleanSession(false);
+    }
+
+    /**
+     * Sets whether the connection is established again when it is lost, until {@link MASConnectaClient#disconnect(com.ca.mas.foundation.MASCallback)}
+     * is called.  The attempts are spaced by an exponential backoff with jitter, between the delays set with
+     * {@link #setReconnectDelay(long, long)}.  Once connected again, the subscriptions are replayed in one request,
+     * then the operations queued meanwhile are performed, in order.
+     *
+     * @param autoReconnect true to reconnect, the default.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    /**
+     * Sets the bounds of the delay before an attempt to reconnect.  The bound doubles after each failed attempt,
+     * from the minimum up to the maximum, and the delay is drawn between half the bound and the bound, so that
+     * the clients which lost the same broker do not all come back at once.
+     *
+     * @param minMillis the bound of the first attempt, {@link #DEFAULT_MIN_RECONNECT_DELAY_MILLIS} by default.
+     * @param maxMillis the largest bound, {@link #DEFAULT_MAX_RECONNECT_DELAY_MILLIS} by default.
+     */
+    public void setReconnectDelay(long minMillis, long maxMillis) {
+        if (minMillis <= 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid reconnect delay: " + minMillis + ", " + maxMillis);
+        }
+        this.minReconnectDelayMillis = minMillis;
+        this.maxReconnectDelayMillis = maxMillis;
+    }
+
+    public long getMinReconnectDelayMillis() {
+        return minReconnectDelayMillis;
+    }
+
+    public long getMaxReconnectDelayMillis() {
+        return maxReconnectDelayMillis;
+    }
+
+    /**
+     * Sets the number of publishes, subscriptions and unsubscriptions queued while reconnecting.  Once the queue
+     * is full, the next operations fail at once.
+     *
+     * @param maxQueuedOperations the size of the queue, {@link #DEFAULT_MAX_QUEUED_OPERATIONS} by default.
+     */
+    public void setMaxQueuedOperations(int maxQueuedOperations) {
+        if (maxQueuedOperations < 0) {
+            throw new IllegalArgumentException("Invalid queue size: " + maxQueuedOperations);
+        }
+        this.maxQueuedOperations = maxQueuedOperations;
+    }
+
+    public int getMaxQueuedOperations() {
+        return maxQueuedOperations;
+    }
+
+    /**
+     * Sets the store of the in-flight QoS 1 and 2 messages.  By default the messages are stored durably under
+     * the application's files directory with a {@link com.ca.mas.connecta.serviceprovider.SegmentLogPersistence},
+     * so they survive a restart of the application.  The stored messages are resumed by a connection with
+     * {@link #setCleanSession(boolean) clean session} disabled; a clean session discards them.
+     *
+     * @param persistence the persistence to use, e.g. a
+     *                    {@link org.eclipse.paho.client.mqttv3.persist.MemoryPersistence} to keep nothing on disk.
+     */
+    public void setPersistence(MqttClientPersistence persistence) {
+        this.persistence = persistence;
+    }
+
+    /**
+     * @return the persistence set with {@link #setPersistence(MqttClientPersistence)}, or null for the default.
+     */
+    public MqttClientPersistence getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Sets the format the {@link com.ca.mas.messaging.MASMessage}s are published in, unless set for their topic with
+     * {@link #setMessageFormat(String, int)}.  The format of the received messages is detected, so subscribers
+     * read both formats; publish in {@link MASConstants#MAS_MESSAGE_FORMAT_BINARY} only once all the subscribers of
+     * the topics can read it.
+     *
+     * @param messageFormat the format, {@link MASConstants#MAS_MESSAGE_FORMAT_JSON} by default.
+     */
+    public void setMessageFormat(@MASMessageFormat int messageFormat) {
+        this.messageFormat = messageFormat;
+    }
+
+    /**
+     * Sets the format the {@link com.ca.mas.messaging.MASMessage}s published on the topic are published in.
+     *
+     * @param topic         the topic, as returned by {@link com.ca.mas.messaging.topic.MASTopic#toString()}.
+     * @param messageFormat the format of the messages of the topic.
+     */
+    public void setMessageFormat(String topic, @MASMessageFormat int messageFormat) {
+        topicMessageFormats.put(topic, messageFormat);
+    }
+
+    /**
+     * @return the format the {@link com.ca.mas.messaging.MASMessage}s published on the topic are published in.
+     */
+    @MASMessageFormat
+    public int getMessageFormat(String topic) {
+        Integer topicMessageFormat = topicMessageFormats.get(topic);
+        return topicMessageFormat != null ? topicMessageFormat : messageFormat;
+    }
+
     public void initConnectOptions(final Context context, final long timeOutInMillis, final MASCallback<Map<String, Object>> callback) {
 
         final MASResultReceiver<JSONObject> receiver = new MASResultReceiver<JSONObject>(Callback.getHandler(callback)) {
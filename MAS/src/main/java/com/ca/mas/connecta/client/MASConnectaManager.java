@@ -15,17 +15,31 @@ import android.content.ServiceConnection;
 import android.os.Handler;
 import android.os.IBinder;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import com.ca.mas.connecta.serviceprovider.ConnectaService;
+import com.ca.mas.connecta.util.TopicTrie;
 import com.ca.mas.core.util.Functions;
 import com.ca.mas.foundation.MASCallback;
 import com.ca.mas.foundation.notify.Callback;
 import com.ca.mas.messaging.MASMessage;
 import com.ca.mas.messaging.topic.MASTopic;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * <p>The <b>MASConnectaManager</b> is the implementation of the {@link com.ca.mas.connecta.client.MASConnectaClient}.
  * The MASConnectaManager implementation used to interface between the messaging transport and the proprietary Android service that leverages the Mqtt library.</p>
+ * <p>Subscribing, unsubscribing and publishing do not block the calling thread, and many publishes may be in flight at
+ * once, up to the {@link MASConnectOptions#setMaxInflight(int) max inflight} window. Return a handler from
+ * {@link MASCallback#getHandler()} to choose the thread the completion is delivered on. A lost connection is
+ * established again, and the operations requested meanwhile are queued, see {@link MASConnectOptions#setAutoReconnect(boolean)}.</p>
+ * <p>The messages arriving on the subscribed topics are handed to the {@link MASMessageListener}s registered with
+ * {@link #addMessageListener(MASMessageListener)}, and to those registered with
+ * {@link #addMessageListener(MASTopic, MASMessageListener)} for a topic filter matching the topic of the message. They are only broadcast as an {@link android.content.Intent}
+ * to the {@link android.support.v4.content.LocalBroadcastManager} if enabled with
+ * {@link #setBroadcastMessages(boolean)}.</p>
  */
 public class MASConnectaManager implements MASConnectaClient {
 
@@ -40,6 +54,35 @@ public class MASConnectaManager implements MASConnectaClient {
     private MASConnectaListener connectaListener;
     private MASCallback<Void> connectCallback;
     private String clientId;
+    private final List<MASMessageListener> messageListeners = new CopyOnWriteArrayList<>();
+    private final TopicTrie<MASMessageListener> topicListeners = new TopicTrie<>();
+    private boolean broadcastMessages;
+
+    /*
+    Hands the arriving messages to the registered listeners, so one failing listener does not keep the others
+    from the message.
+     */
+    private final MASMessageListener messageDispatcher = new MASMessageListener() {
+        @Override
+        public void onMessageArrived(MASMessage message) {
+            for (MASMessageListener listener : messageListeners) {
+                dispatch(listener, message);
+            }
+            if (message.getTopic() != null) {
+                for (MASMessageListener listener : topicListeners.match(message.getTopic())) {
+                    dispatch(listener, message);
+                }
+            }
+        }
+
+        private void dispatch(MASMessageListener listener, MASMessage message) {
+            try {
+                listener.onMessageArrived(message);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Message listener failed: " + e.getMessage(), e);
+            }
+        }
+    };
 
     /*
     This service connection uses IPC Binder to load the MQTT library specific service to perform Mqtt operations.
@@ -55,6 +98,8 @@ public class MASConnectaManager implements MASConnectaClient {
                 mMASTransportService.setClientId(clientId);
                 mMASTransportService.setTimeOutInMillis(getTimeOutInMillis());
                 mMASTransportService.setConnectOptions(mConnectOptions);
+                mMASTransportService.setMessageListener(messageDispatcher);
+                mMASTransportService.setBroadcastMessages(broadcastMessages);
                 mMASTransportService.connect(new MASCallback<Void>() {
 
                     @Override
@@ -109,6 +154,67 @@ public class MASConnectaManager implements MASConnectaClient {
         }
     }
 
+    /**
+     * Registers a listener for the messages arriving on the subscribed topics.  The listener receives the message
+     * itself, without it being serialized to an {@link android.content.Intent} first.
+     *
+     * @param listener the listener, registered once even if added again.
+     */
+    public void addMessageListener(@NonNull MASMessageListener listener) {
+        if (!messageListeners.contains(listener)) {
+            messageListeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addMessageListener(MASMessageListener)}.
+     */
+    public void removeMessageListener(MASMessageListener listener) {
+        messageListeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener for the messages arriving on the topics matching a topic filter.  The filter may contain
+     * the Mqtt wildcards, <code>+</code> for exactly one level and <code>#</code>, as the last level, for any number
+     * of levels.  A listener registered with several matching filters receives a message once.
+     * <p/>
+     * The listener does not subscribe to the topic, see {@link #subscribe(MASTopic, MASCallback)}.
+     *
+     * @param topic    the topic filter, as built with {@link com.ca.mas.messaging.topic.MASTopicBuilder}.
+     * @param listener the listener.
+     * @throws IllegalArgumentException if a wildcard does not make a whole level, or <code>#</code> is not last.
+     */
+    public void addMessageListener(@NonNull MASTopic topic, @NonNull MASMessageListener listener) {
+        topicListeners.add(topic.toString(), listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addMessageListener(MASTopic, MASMessageListener)} for the topic
+     * filter.
+     */
+    public void removeMessageListener(@NonNull MASTopic topic, MASMessageListener listener) {
+        topicListeners.remove(topic.toString(), listener);
+    }
+
+    /**
+     * Enables the broadcast of the arriving messages to the {@link android.support.v4.content.LocalBroadcastManager},
+     * as an Intent with the action {@link com.ca.mas.connecta.util.ConnectaConsts#MAS_CONNECTA_BROADCAST_MESSAGE_ARRIVED}
+     * holding the message as a JSON string, to be read with {@link MASMessage#newInstance(android.content.Intent)}.
+     * Each broadcast message is serialized and parsed again, prefer a {@link MASMessageListener}.  Disabled by default.
+     * <p/>
+     * Earlier versions always broadcast the messages.  Apps receiving the messages with a
+     * {@link android.content.BroadcastReceiver} registered for that action no longer receive them unless they call
+     * <code>setBroadcastMessages(true)</code> before connecting, or move to {@link #addMessageListener(MASMessageListener)}.
+     *
+     * @param broadcastMessages true to broadcast the messages, in addition to handing them to the listeners.
+     */
+    public void setBroadcastMessages(boolean broadcastMessages) {
+        this.broadcastMessages = broadcastMessages;
+        if (mMASTransportService != null) {
+            mMASTransportService.setBroadcastMessages(broadcastMessages);
+        }
+    }
+
     public void start(@NonNull Context context) {
         mContext = context.getApplicationContext();
     }
@@ -134,7 +240,7 @@ public class MASConnectaManager implements MASConnectaClient {
 
     @Override
     public void disconnect(MASCallback<Void> callback) {
-        if (isConnected()) {
+        if (isConnected() || isReconnecting()) {
             mMASTransportService.disconnect(callback);
         }
     }
@@ -144,24 +250,15 @@ public class MASConnectaManager implements MASConnectaClient {
         connectAndExecute(new Functions.NullaryVoid() {
             @Override
             public void call() {
-                subscribeTopic(masTopic, callback);
+                mMASTransportService.subscribe(masTopic, callback);
             }
         }, callback);
 
     }
 
-    private void subscribeTopic(@NonNull final MASTopic topic, final MASCallback<Void> callback) {
-        Handler h = new Handler(mContext.getMainLooper());
-        h.post(new Runnable() {
-            @Override
-            public void run() {
-                mMASTransportService.subscribe(topic, callback);
-            }
-        });
-    }
-
     private void connectAndExecute(@NonNull final Functions.NullaryVoid function, final MASCallback<Void> callback) {
-        if (!isConnected()) {
+        // While reconnecting, the service queues the operation
+        if (!isConnected() && !isReconnecting()) {
             connect(new MASCallback<Void>() {
                 @Override
                 public Handler getHandler() {
@@ -189,21 +286,11 @@ public class MASConnectaManager implements MASConnectaClient {
         connectAndExecute(new Functions.NullaryVoid() {
             @Override
             public void call() {
-                unsubscribeTopic(masTopic, callback);
+                mMASTransportService.unsubscribe(masTopic, callback);
             }
         }, callback);
     }
 
-    private void unsubscribeTopic(@NonNull final MASTopic topic, final MASCallback<Void> callback) {
-        Handler h = new Handler();
-        h.post(new Runnable() {
-            @Override
-            public void run() {
-                mMASTransportService.unsubscribe(topic, callback);
-            }
-        });
-    }
-
     public void publish(@NonNull final MASTopic masTopic, @NonNull final String message, final MASCallback<Void> callback) {
         publish(masTopic, message.getBytes(), callback);
     }
@@ -214,7 +301,7 @@ public class MASConnectaManager implements MASConnectaClient {
         connectAndExecute(new Functions.NullaryVoid() {
             @Override
             public void call() {
-                publishTopic(masTopic, message, callback);
+                mMASTransportService.publish(masTopic, message, callback);
             }
         }, callback);
     }
@@ -231,22 +318,19 @@ public class MASConnectaManager implements MASConnectaClient {
 
     }
 
-    private void publishTopic(@NonNull final MASTopic masTopic, @NonNull final byte[] message, final MASCallback<Void> callback) {
-
-        Handler h = new Handler(mContext.getMainLooper());
-        h.post(new Runnable() {
-            @Override
-            public void run() {
-                mMASTransportService.publish(masTopic, message, callback);
-            }
-        });
-    }
-
     @Override
     public boolean isConnected() {
         return mMASTransportService != null && mMASTransportService.isConnected();
     }
 
+    /**
+     * @return true if the connection was lost and is being established again, see
+     * {@link MASConnectOptions#setAutoReconnect(boolean)}.
+     */
+    public boolean isReconnecting() {
+        return mMASTransportService != null && mMASTransportService.isReconnecting();
+    }
+
     @Override
     public void setConnectOptions(MASConnectOptions connectOptions) {
         mConnectOptions = connectOptions;
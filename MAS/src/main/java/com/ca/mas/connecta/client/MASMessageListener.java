@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import com.ca.mas.messaging.MASMessage;
+
+/**
+ * Interface to listen for the messages arriving on the subscribed topics, registered for all topics with
+ * {@link MASConnectaManager#addMessageListener(MASMessageListener)}, or for the topics matching a topic filter with
+ * {@link MASConnectaManager#addMessageListener(com.ca.mas.messaging.topic.MASTopic, MASMessageListener)}.
+ */
+public interface MASMessageListener {
+
+    /**
+     * Called on the Mqtt client's thread when a message arrives.  The message is shared by all listeners and
+     * the acknowledgement of the next messages waits for the listeners to return, so hand any lengthy work over to
+     * another thread.
+     *
+     * @param message the message, with its topic and payload as received.
+     */
+    void onMessageArrived(MASMessage message);
+}
@@ -13,6 +13,7 @@ import android.content.Intent;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
@@ -21,25 +22,42 @@ import com.ca.mas.connecta.client.MASConnectOptions;
 import com.ca.mas.connecta.client.ConnectaException;
 import com.ca.mas.connecta.client.MASConnectaClient;
 import com.ca.mas.connecta.client.MASConnectaListener;
+import com.ca.mas.connecta.client.MASMessageListener;
 import com.ca.mas.connecta.util.ConnectaUtil;
 import com.ca.mas.core.conf.ConfigurationManager;
 import com.ca.mas.core.request.internal.StateRequest;
 import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASConstants;
 import com.ca.mas.foundation.MASException;
 import com.ca.mas.foundation.notify.Callback;
 import com.ca.mas.foundation.util.FoundationUtil;
 import com.ca.mas.messaging.MASMessage;
 import com.ca.mas.messaging.topic.MASTopic;
 
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -58,19 +76,57 @@ import java.util.Map;
  * <p>Every call in this class is asynchronous and the calling of the next stage of the service is dependant on the success
  * of the previous methods successful completion. If there is a failure anywhere in the calling process, such as SSLSocketCreation,
  * connecting, etc. then the error callback is invoked ending the service's life.</p>
+ * <p>The operations never block the calling thread: they are queued, in order, to an I/O thread of the service,
+ * which hands them to an asynchronous Mqtt client. Publishes are pipelined, up to the
+ * {@link MqttConnectOptions#setMaxInflight(int) max inflight} window of the connect options; once the window is
+ * full, the next publishes wait on the I/O thread for an acknowledgement. The callbacks are invoked on the handler
+ * of the {@link MASCallback}, or on the Mqtt client's thread if it has none.</p>
+ * <p>When the connection is lost, the service connects again with the same client, unless
+ * {@link MASConnectOptions#setAutoReconnect(boolean) auto reconnect} is disabled: the session is resumed, the
+ * subscriptions made since {@link #connect(MASCallback)} are replayed in one request, and the operations queued
+ * meanwhile, up to {@link MASConnectOptions#setMaxQueuedOperations(int)}, are performed. The publishes in flight
+ * when the connection was lost may be reported failed; their QoS 1 and 2 messages are kept in the persistence and
+ * sent again with the resumed session.</p>
  */
 public class ConnectaService extends Service implements MASConnectaClient {
 
     private static String TAG = ConnectaService.class.getSimpleName();
+    private static final String PERSISTENCE_DIRECTORY = "mqtt";
+    private static final long INFLIGHT_POLL_MILLIS = 1000;
+    private static final int MAX_BACKOFF_DOUBLINGS = 16;
+
+    private enum State {DISCONNECTED, CONNECTING, CONNECTED, RECONNECTING}
 
     /**
      * <p><b>mMqttClient</b> is the only instance variable the references the Mqtt implementation library.</p>
      */
-    private MqttClient mMqttClient;
+    private volatile MqttAsyncClient mMqttClient;
+    /**
+     * Permits for the publishes in flight on the current connection.
+     */
+    private volatile Semaphore mInflight;
+    private ScheduledExecutorService mExecutor;
+    /*
+    The connection state, the queue and the reconnection are only changed on the I/O thread.
+     */
+    private volatile State mState = State.DISCONNECTED;
+    private MqttConnectOptions mSessionOptions;
+    private MASConnectOptions mReconnectOptions;
+    private final Deque<Operation> mQueue = new ArrayDeque<>();
+    private ScheduledFuture<?> mReconnect;
+    private int mReconnectAttempts;
+    private final Random mJitter = new Random();
+    /**
+     * The subscribed topics and their QoS, replayed when reconnecting.
+     */
+    private final Map<String, Integer> mSubscriptions = Collections.synchronizedMap(new LinkedHashMap<String, Integer>());
+    private MqttClientPersistence mDefaultPersistence;
     private long mTimeOutInMillis;
     private MASConnectOptions mConnectOptions;
     private MessageBroadcaster mMessageBroadcaster;
     private MASConnectaListener connectaListener;
+    private volatile MASMessageListener messageListener;
+    private volatile boolean broadcastMessages;
 
     private final IBinder mBinder = new ServiceBinder();
     private String clientId;
@@ -79,6 +135,20 @@ public class ConnectaService extends Service implements MASConnectaClient {
         this.connectaListener = connectaListener;
     }
 
+    /**
+     * Sets the listener the arriving messages are handed to.
+     */
+    public void setMessageListener(MASMessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * Sets whether the arriving messages are also broadcast with the {@link MessageBroadcaster}.
+     */
+    public void setBroadcastMessages(boolean broadcastMessages) {
+        this.broadcastMessages = broadcastMessages;
+    }
+
     /**
      * <p>This class is the handle that users of this service manage the service life-cycle with. The method</p>
      * <pre>
@@ -94,6 +164,12 @@ public class ConnectaService extends Service implements MASConnectaClient {
         }
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new IOThreadFactory());
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return mBinder;
@@ -112,19 +188,9 @@ public class ConnectaService extends Service implements MASConnectaClient {
 
                 @Override
                 public void onSuccess(Map<String, Object> result) {
-                    try {
-                        Log.d(TAG, "CONNECTA: onSuccess()");
-                        initMqttClient((String) result.get(StateRequest.DEVICE_ID));
-                        mMqttClient.connect((MqttConnectOptions) result.get(MASConnectOptions.class.getName()));
-                        if (!mMqttClient.isConnected()) {
-                            Callback.onError(callback, new ConnectaException("Not connected to message broker!"));
-                            return;
-                        }
-                        Callback.onSuccess(callback, null);
-                    } catch (Exception e) {
-                        Log.e(TAG, "" + e.getMessage());
-                        Callback.onError(callback, e);
-                    }
+                    Log.d(TAG, "CONNECTA: onSuccess()");
+                    connect((String) result.get(StateRequest.DEVICE_ID),
+                            (MqttConnectOptions) result.get(MASConnectOptions.class.getName()), callback);
                 }
 
                 @Override
@@ -141,13 +207,7 @@ public class ConnectaService extends Service implements MASConnectaClient {
                 // MASConnectOptions has been set
                 mConnectOptions.setConnectionTimeout(ConnectaUtil.createConnectionOptions(ConnectaUtil.getBrokerUrl(this), mTimeOutInMillis).getConnectionTimeout());
                 Log.d(TAG, "CONNECTA: onSuccess()");
-                initMqttClient();
-                mMqttClient.connect(mConnectOptions);
-                if (!mMqttClient.isConnected()) {
-                    Callback.onError(callback, new ConnectaException("Not connected to message broker!"));
-                    return;
-                }
-                Callback.onSuccess(callback, null);
+                connect(null, mConnectOptions, callback);
             }
         } catch (Exception e) {
             Log.e(TAG, "" + e.getMessage());
@@ -155,12 +215,272 @@ public class ConnectaService extends Service implements MASConnectaClient {
         }
     }
 
-    private void initMqttClient() throws MASException, MqttException {
-        initMqttClient(null);
+    private void connect(final String deviceId, final MqttConnectOptions connectOptions, final MASCallback<Void> callback) {
+        final MASConnectOptions reconnectOptions = mConnectOptions;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // An earlier connect request may have connected meanwhile
+                if (isConnected()) {
+                    Callback.onSuccess(callback, null);
+                    return;
+                }
+                if (mState == State.CONNECTING || mState == State.RECONNECTING) {
+                    // Wait for the connection in progress
+                    enqueue(new Operation(callback, getString(R.string.could_not_connect)) {
+                        @Override
+                        void perform(MqttAsyncClient client) {
+                            Callback.onSuccess(callback, null);
+                        }
+                    });
+                    return;
+                }
+                try {
+                    initMqttClient(deviceId);
+                    mState = State.CONNECTING;
+                    mSessionOptions = connectOptions;
+                    mReconnectOptions = reconnectOptions;
+                    mInflight = new Semaphore(connectOptions.getMaxInflight());
+                    mMqttClient.connect(connectOptions, null, new IMqttActionListener() {
+                        @Override
+                        public void onSuccess(IMqttToken asyncActionToken) {
+                            post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    onConnected();
+                                }
+                            });
+                            Callback.onSuccess(callback, null);
+                        }
+
+                        @Override
+                        public void onFailure(IMqttToken asyncActionToken, final Throwable exception) {
+                            Log.e(TAG, "" + exception.getMessage());
+                            post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    mState = State.DISCONNECTED;
+                                    failQueue(exception);
+                                }
+                            });
+                            Callback.onError(callback, new ConnectaException("Not connected to message broker!", exception));
+                        }
+                    });
+                } catch (Exception e) {
+                    Log.e(TAG, "" + e.getMessage());
+                    mState = State.DISCONNECTED;
+                    Callback.onError(callback, e);
+                }
+            }
+        });
+    }
+
+    /*
+    On the I/O thread, once connected or reconnected: replays the subscriptions and performs the queued operations.
+     */
+    private void onConnected() {
+        if (mState != State.CONNECTING && mState != State.RECONNECTING) {
+            // Disconnected meanwhile
+            return;
+        }
+        mState = State.CONNECTED;
+        mReconnectAttempts = 0;
+        replaySubscriptions();
+        int queued = mQueue.size();
+        for (int i = 0; i < queued && isConnected(); i++) {
+            execute(mQueue.poll());
+        }
+    }
+
+    private void replaySubscriptions() {
+        String[] topics;
+        int[] qos;
+        synchronized (mSubscriptions) {
+            if (mSubscriptions.isEmpty()) {
+                return;
+            }
+            topics = new String[mSubscriptions.size()];
+            qos = new int[topics.length];
+            int i = 0;
+            for (Map.Entry<String, Integer> subscription : mSubscriptions.entrySet()) {
+                topics[i] = subscription.getKey();
+                qos[i++] = subscription.getValue();
+            }
+        }
+        try {
+            mMqttClient.subscribe(topics, qos, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    Log.d(TAG, "Subscriptions replayed.");
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    Log.w(TAG, "Unable to replay the subscriptions: " + exception.getMessage());
+                }
+            });
+        } catch (MqttException e) {
+            Log.w(TAG, "Unable to replay the subscriptions: " + e.getMessage());
+        }
+    }
+
+    /*
+    On the I/O thread, when the connection is lost.
+     */
+    private void onConnectionLost() {
+        if (mState != State.CONNECTED) {
+            return;
+        }
+        MASConnectOptions options = mReconnectOptions;
+        if (options == null || options.isAutoReconnect()) {
+            mState = State.RECONNECTING;
+            scheduleReconnect();
+        } else {
+            mState = State.DISCONNECTED;
+            failQueue(null);
+        }
+    }
+
+    /*
+    Schedules the next attempt after a delay drawn between half the backoff bound and the bound, which doubles with
+    each failed attempt.
+     */
+    private void scheduleReconnect() {
+        MASConnectOptions options = mReconnectOptions;
+        long min = options != null ? options.getMinReconnectDelayMillis() : MASConnectOptions.DEFAULT_MIN_RECONNECT_DELAY_MILLIS;
+        long max = options != null ? options.getMaxReconnectDelayMillis() : MASConnectOptions.DEFAULT_MAX_RECONNECT_DELAY_MILLIS;
+        long bound = Math.min(max, min << Math.min(mReconnectAttempts, MAX_BACKOFF_DOUBLINGS));
+        long delay = bound / 2 + (long) (mJitter.nextDouble() * (bound - bound / 2));
+        mReconnectAttempts++;
+        Log.d(TAG, "Reconnecting in " + delay + " ms, attempt " + mReconnectAttempts);
+        mReconnect = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reconnect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        if (mState != State.RECONNECTING) {
+            return;
+        }
+        try {
+            mMqttClient.connect(mSessionOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    Log.d(TAG, "Reconnected.");
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onConnected();
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, final Throwable exception) {
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onReconnectFailed(exception);
+                        }
+                    });
+                }
+            });
+        } catch (MqttException e) {
+            onReconnectFailed(e);
+        }
+    }
+
+    private void onReconnectFailed(Throwable exception) {
+        if (mState != State.RECONNECTING) {
+            return;
+        }
+        Log.d(TAG, "Unable to reconnect: " + exception.getMessage());
+        if (exception instanceof MqttException
+                && (((MqttException) exception).getReasonCode() == MqttException.REASON_CODE_FAILED_AUTHENTICATION
+                || ((MqttException) exception).getReasonCode() == MqttException.REASON_CODE_NOT_AUTHORIZED)) {
+            // The credentials of the session expired, the next connect request starts a new session
+            mState = State.DISCONNECTED;
+            failQueue(exception);
+        } else {
+            scheduleReconnect();
+        }
+    }
+
+    private void cancelReconnect() {
+        if (mReconnect != null) {
+            mReconnect.cancel(false);
+            mReconnect = null;
+        }
+    }
+
+    /*
+    On the I/O thread: performs the operation if connected, or queues it while connecting.
+     */
+    private void execute(Operation operation) {
+        if (mState == State.CONNECTED && isConnected()) {
+            try {
+                operation.perform(mMqttClient);
+            } catch (Exception e) {
+                Callback.onError(operation.callback, e);
+            }
+            return;
+        }
+        MASConnectOptions options = mReconnectOptions;
+        if (mState == State.CONNECTING || mState == State.RECONNECTING
+                || (mState == State.CONNECTED && (options == null || options.isAutoReconnect()))) {
+            // The connection is lost but not handled yet, when connected
+            enqueue(operation);
+        } else {
+            operation.fail(null);
+        }
+    }
+
+    private void enqueue(Operation operation) {
+        MASConnectOptions options = mReconnectOptions;
+        int max = options != null ? options.getMaxQueuedOperations() : MASConnectOptions.DEFAULT_MAX_QUEUED_OPERATIONS;
+        if (mQueue.size() >= max) {
+            operation.fail(new ConnectaException("Too many operations queued while reconnecting."));
+        } else {
+            mQueue.add(operation);
+        }
+    }
+
+    private void failQueue(Throwable cause) {
+        Operation operation;
+        while ((operation = mQueue.poll()) != null) {
+            operation.fail(cause);
+        }
+    }
+
+    private void submit(final Operation operation) {
+        if (mState == State.DISCONNECTED) {
+            operation.fail(null);
+            return;
+        }
+        post(new Runnable() {
+            @Override
+            public void run() {
+                execute(operation);
+            }
+        });
+    }
+
+    /*
+    Queues a task to the I/O thread, unless the service is destroyed.
+     */
+    private void post(Runnable task) {
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Service destroyed, task dropped.");
+        }
     }
 
     /*
-    Called once the secure socket factory has been created to perform the Mqtt initialization.
+    Called once the secure socket factory has been created to perform the Mqtt initialization, on the I/O thread.
      */
     private void initMqttClient(String deviceId) throws MASException, MqttException {
         String brokerUrl = ConnectaUtil.getBrokerUrl(getApplicationContext(), mConnectOptions);
@@ -181,17 +501,21 @@ public class ConnectaService extends Service implements MASConnectaClient {
         Log.d(TAG, "CONNECTA: clientId: " + clientId);
         Log.d(TAG, "CONNECTA: brokerClientId: " + brokerClientId);
 
-        final MemoryPersistence memoryPersistence = new MemoryPersistence();
-
-
-
-        mMqttClient = new MqttClient(brokerUrl, brokerClientId, memoryPersistence);
+        // Release the persistence of the previous client before it is opened for the new one
+        closeMqttClient();
+        mMqttClient = new MqttAsyncClient(brokerUrl, brokerClientId, getPersistence());
         mMqttClient.setCallback(
                 new MqttCallback() {
 
                     @Override
                     public void connectionLost(Throwable throwable) {
                         Log.d(TAG, "Connections was lost: " + throwable.getMessage() + ", " + throwable.getCause());
+                        post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onConnectionLost();
+                            }
+                        });
                         if (connectaListener != null) {
                             connectaListener.onConnectionLost();
                         }
@@ -203,7 +527,13 @@ public class ConnectaService extends Service implements MASConnectaClient {
                         try {
                             MASMessage masMessage = ConnectaUtil.createMASMessageFromMqtt(mqttMessage);
                             masMessage.setTopic(topic);
-                            mMessageBroadcaster.broadcastMessage(masMessage);
+                            MASMessageListener listener = messageListener;
+                            if (listener != null) {
+                                listener.onMessageArrived(masMessage);
+                            }
+                            if (broadcastMessages) {
+                                mMessageBroadcaster.broadcastMessage(masMessage);
+                            }
                         } catch (Exception je) {
                             if (connectaListener != null) {
                                 connectaListener.onInvalidMessageFormat();
@@ -228,60 +558,124 @@ public class ConnectaService extends Service implements MASConnectaClient {
         );
     }
 
+    private MqttClientPersistence getPersistence() {
+        if (mConnectOptions != null && mConnectOptions.getPersistence() != null) {
+            return mConnectOptions.getPersistence();
+        }
+        if (mDefaultPersistence == null) {
+            mDefaultPersistence = new SegmentLogPersistence(new File(getFilesDir(), PERSISTENCE_DIRECTORY));
+        }
+        return mDefaultPersistence;
+    }
+
+    private void closeMqttClient() {
+        MqttAsyncClient client = mMqttClient;
+        if (client == null) {
+            return;
+        }
+        mMqttClient = null;
+        try {
+            if (client.isConnected()) {
+                client.disconnectForcibly();
+            }
+            client.close();
+        } catch (MqttException e) {
+            Log.w(TAG, "Unable to close the previous client: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                cancelReconnect();
+                mState = State.DISCONNECTED;
+                failQueue(null);
+                closeMqttClient();
+            }
+        });
+        mExecutor.shutdown();
+        super.onDestroy();
+    }
+
     @Override
     public void setConnectOptions(MASConnectOptions connectOptions) {
         mConnectOptions = connectOptions;
     }
 
     @Override
-    public void disconnect(MASCallback<Void> callback) {
-
-        if (isConnected()) {
-            Log.d(TAG, "Client Disconnected.");
-            try {
-                mMqttClient.disconnect();
-                Callback.onSuccess(callback, null);
-            } catch (Exception e) {
-                Callback.onError(callback, e);
+    public void disconnect(final MASCallback<Void> callback) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                State state = mState;
+                cancelReconnect();
+                mState = State.DISCONNECTED;
+                mSubscriptions.clear();
+                failQueue(null);
+                if (isConnected()) {
+                    try {
+                        mMqttClient.disconnect(null, listenerFor(callback));
+                        Log.d(TAG, "Client Disconnected.");
+                    } catch (Exception e) {
+                        Callback.onError(callback, e);
+                    }
+                } else if (state == State.RECONNECTING) {
+                    Callback.onSuccess(callback, null);
+                } else {
+                    Callback.onError(callback, new ConnectaException(getString(R.string.could_not_disconnect)));
+                }
             }
-        } else {
-            Callback.onError(callback, new ConnectaException(getResources().getString(R.string.could_not_disconnect)));
-        }
+        });
     }
 
     @Override
-    public void subscribe(@NonNull MASTopic masTopic, MASCallback<Void> callback) {
-        if (isConnected()) {
-            try {
-                mMqttClient.subscribe(masTopic.toString(), masTopic.getQos());
-                Callback.onSuccess(callback, null);
-            } catch (Exception e) {
-                Callback.onError(callback, e);
+    public void subscribe(@NonNull final MASTopic masTopic, final MASCallback<Void> callback) {
+        final String topic = masTopic.toString();
+        final int qos = masTopic.getQos();
+        submit(new Operation(callback, getString(R.string.could_not_subscribe, topic)) {
+            @Override
+            void perform(MqttAsyncClient client) throws MqttException {
+                client.subscribe(topic, qos, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken asyncActionToken) {
+                        mSubscriptions.put(topic, qos);
+                        Callback.onSuccess(callback, null);
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                        Callback.onError(callback, exception);
+                    }
+                });
             }
-        } else {
-            Callback.onError(callback, new ConnectaException(getResources().getString(R.string.could_not_subscribe)));
-        }
+        });
     }
 
     @Override
-    public void unsubscribe(@NonNull MASTopic topic, MASCallback<Void> callback) {
-        if (isConnected()) {
-            try {
-                mMqttClient.unsubscribe(topic.toString());
-                Callback.onSuccess(callback, null);
-            } catch (Exception e) {
-                Callback.onError(callback, e);
+    public void unsubscribe(@NonNull MASTopic masTopic, final MASCallback<Void> callback) {
+        final String topic = masTopic.toString();
+        submit(new Operation(callback, getString(R.string.could_not_unsubscribe, topic)) {
+            @Override
+            void perform(MqttAsyncClient client) throws MqttException {
+                mSubscriptions.remove(topic);
+                client.unsubscribe(topic, null, listenerFor(callback));
             }
-        } else {
-            Callback.onError(callback, new ConnectaException(getResources().getString(R.string.could_not_unsubscribe)));
-        }
+        });
     }
 
     @Override
     public void publish(@NonNull MASTopic masTopic, @NonNull MASMessage message, MASCallback<Void> callback) {
         try {
             MqttMessage mqttMessage = new MqttMessage();
-            byte[] bytes = message.createJSONStringFromMASMessage(getApplicationContext()).getBytes();
+            byte[] bytes;
+            if (mConnectOptions != null
+                    && mConnectOptions.getMessageFormat(masTopic.toString()) == MASConstants.MAS_MESSAGE_FORMAT_BINARY) {
+                bytes = message.createBinaryFromMASMessage(masTopic.toString());
+            } else {
+                bytes = message.createJSONStringFromMASMessage(getApplicationContext()).getBytes();
+            }
             mqttMessage.setPayload(bytes);
             mqttMessage.setQos(message.getQos());
             mqttMessage.setRetained(message.isRetained());
@@ -298,25 +692,80 @@ public class ConnectaService extends Service implements MASConnectaClient {
         publish(topic, mqttMessage, callback);
     }
 
-    private void publish(@NonNull MASTopic topic, @NonNull MqttMessage mqttMessage, MASCallback<Void> callback) {
-        if (isConnected()) {
-            try {
-                mMqttClient.publish(topic.toString(), mqttMessage);
+    private void publish(@NonNull MASTopic masTopic, @NonNull final MqttMessage mqttMessage, final MASCallback<Void> callback) {
+        final String topic = masTopic.toString();
+        submit(new Operation(callback, getString(R.string.could_not_publish)) {
+            @Override
+            void perform(MqttAsyncClient client) throws MqttException {
+                final Semaphore inflight = mInflight;
+                try {
+                    // Wait for room in the window, unless the connection is lost meanwhile
+                    while (!inflight.tryAcquire(INFLIGHT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (!client.isConnected()) {
+                            // Queued again, or failed, depending on the reconnection
+                            execute(this);
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Callback.onError(callback, e);
+                    return;
+                }
+                try {
+                    client.publish(topic, mqttMessage, null, new IMqttActionListener() {
+                        @Override
+                        public void onSuccess(IMqttToken asyncActionToken) {
+                            inflight.release();
+                            Callback.onSuccess(callback, null);
+                        }
+
+                        @Override
+                        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                            inflight.release();
+                            Callback.onError(callback, exception);
+                        }
+                    });
+                } catch (MqttException e) {
+                    inflight.release();
+                    if (e.getReasonCode() != MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+                        throw e;
+                    }
+                    // The connection was lost since the window had room
+                    execute(this);
+                } catch (RuntimeException e) {
+                    inflight.release();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private static IMqttActionListener listenerFor(final MASCallback<Void> callback) {
+        return new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
                 Callback.onSuccess(callback, null);
-            } catch (Exception e) {
-                Callback.onError(callback, e);
             }
-        } else {
-            Callback.onError(callback, new ConnectaException(getResources().getString(R.string.could_not_publish)));
-        }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                Callback.onError(callback, exception);
+            }
+        };
     }
 
     @Override
     public boolean isConnected() {
-        if (mMqttClient != null) {
-            return mMqttClient.isConnected();
-        }
-        return false;
+        MqttAsyncClient client = mMqttClient;
+        return client != null && client.isConnected();
+    }
+
+    /**
+     * @return true if the connection was lost and is being established again, the operations are queued meanwhile.
+     */
+    public boolean isReconnecting() {
+        return mState == State.RECONNECTING;
     }
 
     @Override
@@ -333,4 +782,38 @@ public class ConnectaService extends Service implements MASConnectaClient {
     public void setClientId(String clientId) {
         this.clientId = clientId;
     }
+
+    /*
+    An operation performed on the I/O thread once connected.
+     */
+    private abstract static class Operation {
+
+        final MASCallback<Void> callback;
+        private final String failure;
+
+        Operation(MASCallback<Void> callback, String failure) {
+            this.callback = callback;
+            this.failure = failure;
+        }
+
+        abstract void perform(MqttAsyncClient client) throws Exception;
+
+        void fail(Throwable cause) {
+            Callback.onError(callback, cause == null ? new ConnectaException(failure) : new ConnectaException(failure, cause));
+        }
+    }
+
+    private static class IOThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "ConnectaService-io");
+        }
+    }
 }
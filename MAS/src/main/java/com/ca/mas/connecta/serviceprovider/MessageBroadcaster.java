@@ -21,6 +21,8 @@ import com.ca.mas.messaging.MASMessage;
  * <p>The <b>MessageBroadcaster</b> class is used to turn a MASMessage received from Mqtt into an Intent object that can
  * be broadcast to registered listeners. The payload portion of the message is represented as a String format of the
  * JSONDocument that adheres to the message format as specified in the MAS architecture.</p>
+ * <p>Only used once enabled with {@link com.ca.mas.connecta.client.MASConnectaManager#setBroadcastMessages(boolean)},
+ * the messages are otherwise handed as they are to the {@link com.ca.mas.connecta.client.MASMessageListener}s.</p>
  */
 public class MessageBroadcaster {
 
@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.serviceprovider;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * <p><b>SegmentLogPersistence</b> is a durable {@link MqttClientPersistence} which keeps the in-flight QoS 1 and 2
+ * messages of a client in an append-only log of segment files, so they survive a restart of the process or of the
+ * {@link ConnectaService}.</p>
+ * <p>Every update is appended to the current segment as a checksummed record and handed to the operating system
+ * before returning, so it survives the death of the process.  Syncing to the storage device, which is what makes
+ * an update survive a power loss, is batched: the log is synced at most once per sync interval, and a pending
+ * update is synced within one interval.</p>
+ * <p>The live entries are also held in memory, so reads never touch the disk.  When a segment is full and most of
+ * the log is made of superseded records, the live entries are rewritten into a new segment and the older segments
+ * are deleted.  The size of the live entries is bounded, so the disk usage of the log is bounded too; a put
+ * exceeding the bound fails.</p>
+ * <p>On {@link #open(String, String)} the segments are replayed in order, a torn record at the end of a segment
+ * ending its replay.</p>
+ */
+public class SegmentLogPersistence implements MqttClientPersistence {
+
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_SEGMENT_BYTES = 256 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private final File baseDirectory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final long syncIntervalMillis;
+
+    // All fields below are guarded by this
+    private File directory;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long liveBytes;
+    private long logBytes;
+    private long segmentId;
+    private long segmentLength;
+    private FileOutputStream segmentFile;
+    private DataOutputStream out;
+    private boolean unsynced;
+    private long lastSync;
+    private ScheduledExecutorService syncer;
+
+    /**
+     * Creates a persistence with the default bounds, storing the log of each client in a sub-directory of the
+     * given directory.
+     *
+     * @param baseDirectory the directory in which the logs are stored, e.g. under {@link android.content.Context#getFilesDir()}.
+     */
+    public SegmentLogPersistence(File baseDirectory) {
+        this(baseDirectory, DEFAULT_MAX_BYTES, DEFAULT_SEGMENT_BYTES, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param baseDirectory      the directory in which the logs are stored.
+     * @param maxBytes           the maximum size of the live entries.
+     * @param segmentBytes       the size at which a segment is closed and a new one started.
+     * @param syncIntervalMillis the maximum time an update stays unsynced, 0 to sync every update.
+     */
+    public SegmentLogPersistence(File baseDirectory, long maxBytes, int segmentBytes, long syncIntervalMillis) {
+        if (maxBytes <= 0 || segmentBytes <= 0 || syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid persistence bounds");
+        }
+        this.baseDirectory = baseDirectory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        if (directory != null) {
+            throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+        }
+        File dir = new File(baseDirectory, sanitize(clientId) + "-" + sanitize(serverURI));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new MqttPersistenceException(new IOException("Unable to create " + dir));
+        }
+        directory = dir;
+        entries.clear();
+        liveBytes = 0;
+        try {
+            long[] segments = listSegments();
+            for (long id : segments) {
+                replay(segmentFile(id));
+            }
+            segmentId = segments.length == 0 ? 0 : segments[segments.length - 1];
+            compact();
+        } catch (IOException e) {
+            closeQuietly();
+            directory = null;
+            throw new MqttPersistenceException(e);
+        }
+        if (syncIntervalMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "MQTT persistence sync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            syncer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    syncPending();
+                }
+            }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws MqttPersistenceException {
+        checkOpen();
+        if (syncer != null) {
+            syncer.shutdown();
+            syncer = null;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        } finally {
+            closeQuietly();
+            entries.clear();
+            directory = null;
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkOpen();
+        byte[] header = copy(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength());
+        byte[] payload = copy(persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength());
+        byte[] record;
+        long live;
+        try {
+            record = encode(PUT, key, header, payload);
+            Entry previous = entries.get(key);
+            live = liveBytes - (previous == null ? 0 : previous.size) + record.length;
+            if (live > maxBytes) {
+                throw new IOException("MQTT persistence is full");
+            }
+            append(record);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        entries.put(key, new Entry(header, payload, record.length));
+        liveBytes = live;
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkOpen();
+        Entry entry = entries.get(key);
+        return entry == null ? null : new Persistable(entry);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkOpen();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        try {
+            append(encode(REMOVE, key, null, null));
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        entries.remove(key);
+        liveBytes -= entry.size;
+    }
+
+    @Override
+    public synchronized Enumeration keys() throws MqttPersistenceException {
+        checkOpen();
+        return Collections.enumeration(new ArrayList<>(entries.keySet()));
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkOpen();
+        entries.clear();
+        liveBytes = 0;
+        try {
+            compact();
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkOpen();
+        return entries.containsKey(key);
+    }
+
+    private void checkOpen() throws MqttPersistenceException {
+        if (directory == null) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    private void append(byte[] record) throws IOException {
+        if (segmentLength > 0 && segmentLength + record.length > segmentBytes) {
+            if (logBytes > 2 * liveBytes) {
+                compact();
+            } else {
+                startSegment(segmentId + 1);
+            }
+        }
+        out.write(record);
+        out.flush();
+        segmentLength += record.length;
+        logBytes += record.length;
+        unsynced = true;
+        if (syncIntervalMillis == 0 || System.currentTimeMillis() - lastSync >= syncIntervalMillis) {
+            sync();
+        }
+    }
+
+    /**
+     * Rewrites the live entries into a new segment, then deletes all previous segments.  Until the older segments
+     * are deleted, replaying the log in order gives the same entries.
+     */
+    private void compact() throws IOException {
+        long[] previous = listSegments();
+        startSegment(segmentId + 1);
+        logBytes = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            byte[] record = encode(PUT, e.getKey(), e.getValue().header, e.getValue().payload);
+            out.write(record);
+            segmentLength += record.length;
+            logBytes += record.length;
+        }
+        out.flush();
+        unsynced = true;
+        sync();
+        for (long id : previous) {
+            if (id < segmentId) {
+                //noinspection ResultOfMethodCallIgnored
+                segmentFile(id).delete();
+            }
+        }
+    }
+
+    private void startSegment(long id) throws IOException {
+        if (out != null) {
+            sync();
+            out.close();
+        }
+        segmentId = id;
+        segmentFile = new FileOutputStream(segmentFile(id), true);
+        out = new DataOutputStream(new BufferedOutputStream(segmentFile));
+        segmentLength = 0;
+    }
+
+    private void sync() throws IOException {
+        if (unsynced && segmentFile != null) {
+            out.flush();
+            segmentFile.getFD().sync();
+            unsynced = false;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    private synchronized void syncPending() {
+        if (directory != null && unsynced) {
+            try {
+                sync();
+            } catch (IOException e) {
+                // Retried on the next update or interval
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        out = null;
+        segmentFile = null;
+    }
+
+    private void replay(File file) throws IOException {
+        logBytes += file.length();
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), crc));
+        try {
+            long limit = file.length();
+            for (; ; ) {
+                crc.reset();
+                int type = in.read();
+                if (type == -1) {
+                    return;
+                }
+                String key = in.readUTF();
+                byte[] header = null;
+                byte[] payload = null;
+                if (type == PUT) {
+                    header = readBytes(in, limit);
+                    payload = readBytes(in, limit);
+                } else if (type != REMOVE) {
+                    return;
+                }
+                long expected = crc.getValue();
+                if (in.readInt() != (int) expected) {
+                    return;
+                }
+                Entry previous = entries.remove(key);
+                if (previous != null) {
+                    liveBytes -= previous.size;
+                }
+                if (type == PUT) {
+                    Entry entry = new Entry(header, payload, encode(PUT, key, header, payload).length);
+                    entries.put(key, entry);
+                    liveBytes += entry.size;
+                }
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // A torn record at the end of the segment, written when the process died
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in, long limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > limit) {
+            throw new EOFException("Invalid record length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static byte[] encode(byte type, String key, byte[] header, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + key.length()
+                + (header == null ? 0 : header.length) + (payload == null ? 0 : payload.length));
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(type);
+        record.writeUTF(key);
+        if (type == PUT) {
+            record.writeInt(header.length);
+            record.write(header);
+            record.writeInt(payload.length);
+            record.write(payload);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        record.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private long[] listSegments() {
+        String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        List<Long> ids = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment
+                }
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%016d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] copy(byte[] bytes, int offset, int length) {
+        if (bytes == null) {
+            return new byte[0];
+        }
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        return copy;
+    }
+
+    private static class Entry {
+        private final byte[] header;
+        private final byte[] payload;
+        private final int size;
+
+        Entry(byte[] header, byte[] payload, int size) {
+            this.header = header;
+            this.payload = payload;
+            this.size = size;
+        }
+    }
+
+    private static class Persistable implements MqttPersistable {
+        private final Entry entry;
+
+        Persistable(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return entry.header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return entry.header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return entry.payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return entry.payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+}
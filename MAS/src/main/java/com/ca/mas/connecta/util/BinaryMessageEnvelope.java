@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.util;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import com.ca.mas.foundation.MASException;
+import com.ca.mas.foundation.MASUser;
+import com.ca.mas.messaging.MASMessage;
+import com.ca.mas.messaging.util.MessagingConsts;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>The <b>BinaryMessageEnvelope</b> is the compact alternative to the JSON document of a {@link MASMessage}:
+ * the headers are length prefixed and the payload follows them as it is, instead of being encoded in base64.</p>
+ * The envelope is laid out, in network byte order, as:
+ * <ol>
+ * <li>the magic bytes <code>00 4D 41 53</code> ("\0MAS"), which neither a JSON document nor a text starts with,
+ * and the version of the envelope, one byte;</li>
+ * <li>the version, sender id, sender type, display name, content type, content encoding and topic, each as an
+ * unsigned 16 bit length followed by as many bytes of UTF-8;</li>
+ * <li>the sent time, a 64 bit number of milliseconds since the epoch;</li>
+ * <li>the payload, up to the end of the envelope.</li>
+ * </ol>
+ * The headers default as in the JSON document.
+ */
+public class BinaryMessageEnvelope {
+
+    private static final byte[] MAGIC = {0x00, 0x4D, 0x41, 0x53};
+    private static final byte ENVELOPE_VERSION = 1;
+    private static final int MAX_HEADER_LENGTH = 0xFFFF;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String version;
+    private final String senderId;
+    private final String senderType;
+    private final String displayName;
+    private final String contentType;
+    private final String contentEncoding;
+    private final String topic;
+    private final long sentTime;
+    private final byte[] payload;
+
+    private BinaryMessageEnvelope(ByteBuffer buffer) {
+        version = readString(buffer);
+        senderId = readString(buffer);
+        senderType = readString(buffer).toUpperCase();
+        displayName = readString(buffer);
+        contentType = readString(buffer);
+        contentEncoding = readString(buffer);
+        topic = readString(buffer);
+        sentTime = buffer.getLong();
+        payload = Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+    }
+
+    /**
+     * @return true if the bytes start as a binary envelope.
+     */
+    public static boolean isEnvelope(byte[] bytes) {
+        if (bytes == null || bytes.length < MAGIC.length + 1) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <b>Description:</b> Encodes the message in a binary envelope.
+     *
+     * @param message the message to encode.
+     * @param topic   the topic the message is published on.
+     * @return the envelope.
+     * @throws MASException if the payload is empty, or a header too long.
+     */
+    public static byte[] encode(@NonNull MASMessage message, String topic) throws MASException {
+        byte[] payload = message.getPayload();
+        if (payload == null || payload.length == 0) {
+            throw new MASException("Parameter cannot be empty or null.");
+        }
+        MASUser masUser = MASUser.getCurrentUser();
+        String id = masUser == null ? "" : masUser.getId();
+        String senderType = message.getSenderType();
+        if (TextUtils.isEmpty(senderType)) {
+            senderType = MessagingConsts.DEFAULT_SENDER_TYPE;
+        }
+
+        byte[][] headers = {
+                utf8(message.getVersion(), MessagingConsts.DEFAULT_VERSION),
+                utf8(id, ""),
+                utf8(senderType.toUpperCase(), ""),
+                utf8(message.getDisplayName(), id),
+                utf8(message.getContentType(), MessagingConsts.DEFAULT_TEXT_PLAIN_CONTENT_TYPE),
+                utf8(message.getContentEncoding(), MessagingConsts.DEFAULT_BASE64_ENCODING),
+                utf8(topic, "")
+        };
+        int length = MAGIC.length + 1 + 8 + payload.length;
+        for (byte[] header : headers) {
+            if (header.length > MAX_HEADER_LENGTH) {
+                throw new MASException("Header too long: " + header.length + " bytes.");
+            }
+            length += 2 + header.length;
+        }
+        long sentTime = message.getSentTime();
+        if (sentTime == 0) {
+            sentTime = System.currentTimeMillis();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(MAGIC).put(ENVELOPE_VERSION);
+        for (byte[] header : headers) {
+            buffer.putShort((short) header.length).put(header);
+        }
+        buffer.putLong(sentTime);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    /**
+     * <b>Description:</b> Parses a binary envelope.
+     *
+     * @param envelope the envelope, as checked with {@link #isEnvelope(byte[])}.
+     * @return the headers and payload of the envelope.
+     * @throws MASException if the envelope is truncated, or of a later version.
+     */
+    public static BinaryMessageEnvelope parse(@NonNull byte[] envelope) throws MASException {
+        ByteBuffer buffer = ByteBuffer.wrap(envelope);
+        buffer.position(MAGIC.length);
+        byte envelopeVersion = buffer.get();
+        if (envelopeVersion != ENVELOPE_VERSION) {
+            throw new MASException("Unsupported message envelope version " + envelopeVersion + ".");
+        }
+        try {
+            return new BinaryMessageEnvelope(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new MASException("Truncated message envelope.", e);
+        }
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public String getSenderType() {
+        return senderType;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return the topic the message was published on, empty if unknown.
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getSentTime() {
+        return sentTime;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    private static byte[] utf8(String value, String defaultValue) {
+        return (TextUtils.isEmpty(value) ? defaultValue : value).getBytes(UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
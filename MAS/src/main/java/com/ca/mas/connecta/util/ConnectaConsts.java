@@ -22,7 +22,9 @@ public class ConnectaConsts extends FoundationConsts {
     public static String TCP_MESSAGING_SCHEME = "tcp";
 
     /**
-     *
+     * The action of the Intent broadcast for an arriving message.  Messages are only broadcast once enabled with
+     * {@link com.ca.mas.connecta.client.MASConnectaManager#setBroadcastMessages(boolean)}, they used to be
+     * broadcast by default.
      */
     public static final String MAS_CONNECTA_BROADCAST_MESSAGE_ARRIVED = "com.ca.mas.connecta.MESSAGE_ARRIVED";
 
@@ -92,23 +92,26 @@ public class ConnectaUtil extends FoundationUtil {
 
         String[] servers = {brokerUrl};
         mqttConnectOptions.setServerURIs(servers);
+        // Resume the session, subscriptions and in-flight messages, when reconnecting
+        mqttConnectOptions.setCleanSession(false);
         return mqttConnectOptions;
     }
 
     /**
      * <b>Pre-Conditions: </b> Same as {@link com.ca.mas.connecta.util.ConnectaUtil#createMASMessageFromMqtt}.<br>
      * <b>Description:</b> {@link com.ca.mas.connecta.util.ConnectaUtil#createMASMessageFromMqtt} - This internal
-     * utility method populates a MASMessage with the payload bytes received from an MQTT message.
+     * utility method populates a MASMessage with the payload bytes received from an MQTT message. The format is
+     * detected from the first bytes: a binary envelope, a JSON document, or else a bare payload.
      *
      * @param payload
      * @throws MASException
      */
     private static MASMessage initMessageFromPayload(byte[] payload) throws MASException {
-        String totalPayload = new String(payload);
-
         MASMessage m = MASMessage.newInstance();
-        if (totalPayload.startsWith("{")) {
-            m.createMASMessageFromJSONString(totalPayload);
+        if (BinaryMessageEnvelope.isEnvelope(payload)) {
+            m.createMASMessageFromBinary(payload);
+        } else if (payload.length > 0 && payload[0] == '{') {
+            m.createMASMessageFromJSONString(new String(payload));
         } else {
             m.setPayload(payload);
         }
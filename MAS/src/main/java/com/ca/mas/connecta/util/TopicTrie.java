@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>The <b>TopicTrie</b> maps Mqtt topic filters to values, and finds the values of the filters matching a topic.</p>
+ * The filters are stored level by level, so matching a topic walks its levels once, and the wildcard branches
+ * met on the way, whatever the number of filters:
+ * <ul>
+ * <li><code>+</code> matches exactly one level;</li>
+ * <li><code>#</code>, as the last level, matches its parent level and any number of levels below;</li>
+ * <li>a wildcard as the first level does not match a topic starting with <code>$</code>.</li>
+ * </ul>
+ *
+ * @param <V> the type of the values.
+ */
+public class TopicTrie<V> {
+
+    private static final char SEPARATOR = '/';
+    private static final String SINGLE_LEVEL = "+";
+    private static final String MULTI_LEVEL = "#";
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * <b>Description:</b> Adds a value to a topic filter.
+     *
+     * @param filter the topic filter, which may contain wildcards.
+     * @param value  the value.
+     * @return true if the value was not mapped to the filter yet.
+     * @throws IllegalArgumentException if a wildcard does not make a whole level, or <code>#</code> is not last.
+     */
+    public synchronized boolean add(@NonNull String filter, @NonNull V value) {
+        String[] levels = split(filter);
+        validate(levels);
+        Node<V> node = root;
+        for (String level : levels) {
+            Node<V> child = node.children.get(level);
+            if (child == null) {
+                child = new Node<>();
+                node.children.put(level, child);
+            }
+            node = child;
+        }
+        return node.values.add(value);
+    }
+
+    /**
+     * <b>Description:</b> Removes a value from a topic filter, and the levels left without values.
+     *
+     * @return true if the value was mapped to the filter.
+     */
+    public synchronized boolean remove(@NonNull String filter, @NonNull V value) {
+        return remove(root, split(filter), 0, value);
+    }
+
+    private static <V> boolean remove(Node<V> node, String[] levels, int index, V value) {
+        if (index == levels.length) {
+            return node.values.remove(value);
+        }
+        Node<V> child = node.children.get(levels[index]);
+        if (child == null || !remove(child, levels, index + 1, value)) {
+            return false;
+        }
+        if (child.isEmpty()) {
+            node.children.remove(levels[index]);
+        }
+        return true;
+    }
+
+    /**
+     * <b>Description:</b> Collects the values of the filters matching a topic, each value once.
+     *
+     * @param topic the topic of a message, without wildcards.
+     * @return the matching values, empty if none.
+     */
+    public synchronized Set<V> match(@NonNull String topic) {
+        Set<V> result = new LinkedHashSet<>();
+        match(root, split(topic), 0, result);
+        return result;
+    }
+
+    private static <V> void match(Node<V> node, String[] levels, int index, Collection<V> result) {
+        if (index == levels.length) {
+            result.addAll(node.values);
+            // "a/#" matches "a" too
+            Node<V> multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                result.addAll(multi.values);
+            }
+            return;
+        }
+        String level = levels[index];
+        boolean wildcards = index > 0 || level.isEmpty() || level.charAt(0) != '$';
+        if (wildcards) {
+            Node<V> multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                result.addAll(multi.values);
+            }
+            Node<V> single = node.children.get(SINGLE_LEVEL);
+            if (single != null) {
+                match(single, levels, index + 1, result);
+            }
+        }
+        Node<V> exact = node.children.get(level);
+        if (exact != null) {
+            match(exact, levels, index + 1, result);
+        }
+    }
+
+    /**
+     * @return true if no value is mapped to any filter.
+     */
+    public synchronized boolean isEmpty() {
+        return root.isEmpty();
+    }
+
+    private static String[] split(String topic) {
+        int count = 1;
+        for (int i = 0; i < topic.length(); i++) {
+            if (topic.charAt(i) == SEPARATOR) {
+                count++;
+            }
+        }
+        String[] levels = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = topic.indexOf(SEPARATOR, start);
+            levels[i] = topic.substring(start, end);
+            start = end + 1;
+        }
+        levels[count - 1] = topic.substring(start);
+        return levels;
+    }
+
+    private static void validate(String[] levels) {
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (MULTI_LEVEL.equals(level)) {
+                if (i != levels.length - 1) {
+                    throw new IllegalArgumentException("# must be the last level of a topic filter");
+                }
+            } else if (!SINGLE_LEVEL.equals(level)
+                    && (level.indexOf('#') >= 0 || level.indexOf('+') >= 0)) {
+                throw new IllegalArgumentException("A wildcard must make a whole level of a topic filter: " + level);
+            }
+        }
+    }
+
+    private static class Node<V> {
+        final Map<String, Node<V>> children = new HashMap<>();
+        final Set<V> values = new LinkedHashSet<>();
+
+        boolean isEmpty() {
+            return values.isEmpty() && children.isEmpty();
+        }
+    }
+}
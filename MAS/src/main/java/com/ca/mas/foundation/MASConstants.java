@@ -16,5 +16,8 @@ public class MASConstants {
     public static final int MAS_USER = 1;
     public static final int MAS_APPLICATION = 2;
 
+    public static final int MAS_MESSAGE_FORMAT_JSON = 0;
+    public static final int MAS_MESSAGE_FORMAT_BINARY = 1;
+
 }
 
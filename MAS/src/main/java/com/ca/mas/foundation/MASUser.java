@@ -158,6 +158,7 @@ public abstract class MASUser implements MASTransformable, MASMessenger, MASUser
             private TokenManager tokenManager = new StorageProvider(MAS.getContext()).createTokenManager();
             private ScimUser scimUser = getLocalUserProfile();
             private LockableKeyStorageProvider mKeyStoreProvider = new LockableKeyStorageProvider();
+            private EncryptionProvider mSessionLockEncryptionProvider;
 
             @Override
             public boolean isAuthenticated() {
@@ -657,13 +658,17 @@ public abstract class MASUser implements MASTransformable, MASMessenger, MASUser
                 }
             }
 
-            private EncryptionProvider getSessionLockEncryptionProvider() {
-                return new DefaultEncryptionProvider(MAS.getContext(), mKeyStoreProvider) {
-                    @Override
-                    protected String getKeyAlias() {
-                        return SESSION_LOCK_ALIAS;
-                    }
-                };
+            private synchronized EncryptionProvider getSessionLockEncryptionProvider() {
+                // A single instance, so the session lock key is loaded once and dropped when it is removed
+                if (mSessionLockEncryptionProvider == null) {
+                    mSessionLockEncryptionProvider = new DefaultEncryptionProvider(MAS.getContext(), mKeyStoreProvider) {
+                        @Override
+                        protected String getKeyAlias() {
+                            return SESSION_LOCK_ALIAS;
+                        }
+                    };
+                }
+                return mSessionLockEncryptionProvider;
             }
         };
     }
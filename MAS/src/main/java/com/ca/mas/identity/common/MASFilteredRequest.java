@@ -30,8 +30,15 @@ public class MASFilteredRequest implements MASFilteredRequestBuilder, MASPaginat
 
     private static String TAG = MASFilteredRequest.class.getSimpleName();
 
+    /**
+     * The default number of pages fetched concurrently once the total number of results is known.
+     */
+    public static final int DEFAULT_FAN_OUT = 4;
+
     private int mStartIndex;
+    private int mFirstIndex;
     private int mCount;
+    private int mFanOut = DEFAULT_FAN_OUT;
     private int mTotalResults = PAGE_START_INDEX;
     boolean mIsPaging;
     String mSortUri;
@@ -52,6 +59,7 @@ public class MASFilteredRequest implements MASFilteredRequestBuilder, MASPaginat
         mEntityAttributes = entityAttributes;
         mFilterType = filterType;
         mStartIndex = MASPagination.PAGE_START_INDEX;
+        mFirstIndex = MASPagination.PAGE_START_INDEX;
         mCount = MASPagination.PAGE_NO_PAGINATION;
         mIsPaging = false;
     }
@@ -77,6 +85,7 @@ public class MASFilteredRequest implements MASFilteredRequestBuilder, MASPaginat
     @Override
     public MASFilteredRequestBuilder setPagination(int start, int count) {
         mStartIndex = start;
+        mFirstIndex = start;
         mCount = count;
         if (mCount > 0) {
             mIsPaging = true;
@@ -84,6 +93,50 @@ public class MASFilteredRequest implements MASFilteredRequestBuilder, MASPaginat
         return this;
     }
 
+    /**
+     * Set the maximum number of pages requested concurrently once the first page has reported the
+     * total number of results.  The default is {@link #DEFAULT_FAN_OUT}.
+     *
+     * @param fanOut the number of concurrent page requests, at least 1.
+     * @return this request.
+     */
+    public MASFilteredRequest setFanOut(int fanOut) {
+        if (fanOut < 1) {
+            throw new IllegalArgumentException("fanOut < 1");
+        }
+        mFanOut = fanOut;
+        return this;
+    }
+
+    public int getFanOut() {
+        return mFanOut;
+    }
+
+    /**
+     * @return the start index of the first page, as set by {@link #setPagination(int, int)}.
+     */
+    public int getFirstIndex() {
+        return mFirstIndex;
+    }
+
+    /**
+     * @return the number of results per page, or {@link #PAGE_NO_PAGINATION} if paging is not used.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the total number of results, as reported by the first response or limited by the caller.
+     */
+    public int getTotalResults() {
+        return mTotalResults;
+    }
+
+    public boolean isPaging() {
+        return mIsPaging;
+    }
+
     @Override
     public MASFilteredRequestBuilder setSortOrder(SortOrder sortOrder, @NonNull String attribute) {
         if (sortOrder == null) {
@@ -264,19 +317,38 @@ public class MASFilteredRequest implements MASFilteredRequestBuilder, MASPaginat
             return false;
         }
 
+        if (uri.toString().indexOf(IdentityConsts.QM) == -1) {
+            return true;
+        }
+        uri = replacePagination(getPaginationFilter());
+        return true;
+    }
+
+    /**
+     * Create the URI of the page starting at the given index, without advancing the page of this request.
+     * The pages of a request can therefore be requested in any order, or concurrently.
+     *
+     * @param context   the Android context.
+     * @param startIndex the start index of the page.
+     * @return the page URI.
+     */
+    public Uri createPageUri(@NonNull Context context, int startIndex) {
+        Uri first = createUri(context);
+        if (!mIsPaging || first.toString().indexOf(IdentityConsts.QM) == -1) {
+            return first;
+        }
+        String start = String.format(MASPagination.PAGE_START, startIndex);
+        String incBy = String.format(MASPagination.PAGE_INC_BY, mCount);
+        return replacePagination(start + incBy);
+    }
+
+    private Uri replacePagination(String pagFilter) {
         StringBuilder fullUrl = new StringBuilder();
         String url = uri.toString();
         int index = url.indexOf(IdentityConsts.QM);
-        if (index > -1) {
-            String sub = url.substring(0, index);
-            fullUrl.append(sub);
-        } else {
-            return true;
-        }
+        fullUrl.append(url.substring(0, index));
         fullUrl.append(IdentityConsts.QM);
 
-        String pagFilter = getPaginationFilter();
-
         for (int i = 0; i < mQueryComponents.size(); i++) {
             String comp = mQueryComponents.get(i);
             if (comp.startsWith(MASPagination.PAGE_START_EXP)) {
@@ -291,8 +363,7 @@ public class MASFilteredRequest implements MASFilteredRequestBuilder, MASPaginat
 
         String encUrl = fullUrl.toString().replaceAll(" ", IdentityConsts.ENC_SPACE);
         encUrl = encUrl.replaceAll("\"", IdentityConsts.ENC_DOUBLE_QUOTE);
-        uri = Uri.parse(encUrl);
-        return true;
+        return Uri.parse(encUrl);
     }
 
     /*
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.identity.common;
+
+import java.util.List;
+
+/**
+ * <p><b>MASPartialResultListener</b> can be implemented by a {@link com.ca.mas.foundation.MASCallback} passed to a
+ * filtered identity query to receive results while the response is still being read.  Partial results are
+ * delivered on the callback's handler, in order, before {@link com.ca.mas.foundation.MASCallback#onSuccess(Object)}
+ * delivers the complete list.</p>
+ *
+ * @param <T> the type of the results.
+ */
+public interface MASPartialResultListener<T> {
+
+    /**
+     * Called with the next results parsed from the response.
+     *
+     * @param results the results parsed since the previous call.
+     */
+    void onPartialResult(List<T> results);
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.identity.common;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.ca.mas.core.error.MAGErrorCode;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+import com.ca.mas.foundation.MASRuntimeException;
+import com.ca.mas.foundation.notify.Callback;
+import com.ca.mas.identity.util.IdentityConsts;
+import com.ca.mas.identity.util.IdentityUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <p><b>ScimPager</b> retrieves all pages of a {@link MASFilteredRequest}.  The first page is requested alone; once it
+ * has reported <i>totalResults</i>, the remaining <i>startIndex</i> windows are requested concurrently, at most
+ * {@link MASFilteredRequest#getFanOut()} at a time.</p>
+ * <p>Results are delivered in page order, either as one merged list with {@link #fetchAll(MASCallback)} or lazily with
+ * {@link #iterator()}.  No page is requested further ahead than the fan-out from the next page still to be delivered,
+ * so a slow consumer of the iterator bounds the number of pages held in memory.</p>
+ * <p>A pager retrieves the results once; create a new pager to repeat the query.</p>
+ *
+ * @param <T> the type of the resources.
+ */
+public class ScimPager<T> {
+
+    private final Context context;
+    private final MASFilteredRequest filteredRequest;
+    private final ScimResourcesResponseBody.ResourceConverter<T> converter;
+    private final int fanOut;
+
+    private final Object lock = new Object();
+    // All fields below are guarded by lock
+    private boolean started;
+    private int totalPages = -1;
+    private int nextToIssue;
+    private int nextToDeliver;
+    private int inFlight;
+    private final Map<Integer, List<T>> loaded = new HashMap<>();
+    private Throwable failure;
+    private boolean merging;
+    private MASCallback<List<T>> mergedCallback;
+    private ScimResourcesResponseBody.BatchListener<T> partialListener;
+    private final List<T> merged = new ArrayList<>();
+
+    /**
+     * @param context         the Android context.  Required.
+     * @param filteredRequest the query to page through.  Required.
+     * @param converter       converts each SCIM resource.  Required.
+     */
+    public ScimPager(Context context, MASFilteredRequest filteredRequest, ScimResourcesResponseBody.ResourceConverter<T> converter) {
+        this.context = context;
+        this.filteredRequest = filteredRequest;
+        this.converter = converter;
+        this.fanOut = filteredRequest.getFanOut();
+    }
+
+    /**
+     * Retrieve all pages and deliver the results to the callback as one list, in page order.  If the callback
+     * implements {@link MASPartialResultListener}, each page is also delivered to it as soon as all previous
+     * pages have been delivered.
+     *
+     * @param callback receives the merged results.
+     */
+    public void fetchAll(MASCallback<List<T>> callback) {
+        synchronized (lock) {
+            checkNotStarted();
+            merging = true;
+            mergedCallback = callback;
+            partialListener = IdentityUtil.createBatchListener(callback);
+        }
+        issue(Collections.singletonList(0));
+    }
+
+    /**
+     * Retrieve the pages lazily.  The iterator blocks until the next page has been received, so it must not be
+     * used on the main thread.  A failed page request is thrown from {@link Iterator#hasNext()} as a
+     * {@link MASRuntimeException}.
+     *
+     * @return an iterator over the results, in page order.
+     */
+    public Iterator<T> iterator() {
+        synchronized (lock) {
+            checkNotStarted();
+        }
+        issue(Collections.singletonList(0));
+        return new PageIterator();
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("The pager has already been started");
+        }
+        started = true;
+        nextToIssue = 1;
+        inFlight = 1;
+    }
+
+    private void issue(List<Integer> pages) {
+        for (final Integer page : pages) {
+            Uri uri;
+            ScimResourcesResponseBody.BatchListener<T> streamListener = null;
+            synchronized (lock) {
+                uri = page == 0 ? filteredRequest.createUri(context)
+                        : filteredRequest.createPageUri(context, filteredRequest.getFirstIndex() + page * filteredRequest.getCount());
+                // Only an unpaged query is streamed to the partial result listener while it is read,
+                // as concurrent pages would otherwise interleave.
+                if (merging && !filteredRequest.isPaging()) {
+                    streamListener = partialListener;
+                }
+            }
+            MASRequest request = new MASRequest.MASRequestBuilder(uri)
+                    .header(IdentityConsts.HEADER_KEY_ACCEPT, IdentityConsts.HEADER_VALUE_ACCEPT)
+                    .header(IdentityConsts.HEADER_KEY_CONTENT_TYPE, IdentityConsts.HEADER_VALUE_CONTENT_TYPE)
+                    .responseBody(new ScimResourcesResponseBody<>(converter, streamListener))
+                    .get()
+                    .build();
+            final boolean streamed = streamListener != null;
+
+            invoke(request, new MASCallback<MASResponse<ScimResourcesResponseBody.Resources<T>>>() {
+                @Override
+                public void onSuccess(MASResponse<ScimResourcesResponseBody.Resources<T>> result) {
+                    onPageLoaded(page, result.getBody().getContent(), streamed);
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    onPageFailed(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Send the request of a page.  The callback may be invoked on any thread.
+     *
+     * @param request  the page request, with a {@link ScimResourcesResponseBody}.
+     * @param callback receives the parsed page.
+     */
+    protected void invoke(MASRequest request, MASCallback<MASResponse<ScimResourcesResponseBody.Resources<T>>> callback) {
+        MAS.invoke(request, callback);
+    }
+
+    private void onPageLoaded(int page, ScimResourcesResponseBody.Resources<T> resources, boolean streamed) {
+        List<List<T>> deliverable = new ArrayList<>();
+        List<Integer> toIssue;
+        boolean complete;
+        synchronized (lock) {
+            inFlight--;
+            if (failure != null) {
+                return;
+            }
+            if (page == 0) {
+                totalPages = countPages(resources);
+            }
+            if (resources.getResources().isEmpty()) {
+                // The directory shrank, or the server reports fewer results than advertised
+                totalPages = Math.min(totalPages, page + 1);
+            }
+            loaded.put(page, resources.getResources());
+            if (merging) {
+                List<T> next;
+                while (nextToDeliver < totalPages && (next = loaded.remove(nextToDeliver)) != null) {
+                    merged.addAll(next);
+                    if (!streamed && !next.isEmpty()) {
+                        deliverable.add(next);
+                    }
+                    nextToDeliver++;
+                }
+            }
+            toIssue = nextPages();
+            complete = merging && nextToDeliver >= totalPages && inFlight == 0;
+            lock.notifyAll();
+        }
+
+        if (partialListener != null) {
+            for (List<T> results : deliverable) {
+                partialListener.onBatch(results);
+            }
+        }
+        issue(toIssue);
+        if (complete) {
+            Callback.onSuccess(mergedCallback, new ArrayList<>(merged));
+        }
+    }
+
+    private void onPageFailed(Throwable e) {
+        boolean first;
+        synchronized (lock) {
+            inFlight--;
+            first = failure == null;
+            if (first) {
+                failure = e;
+            }
+            loaded.clear();
+            lock.notifyAll();
+        }
+        if (first && merging) {
+            Callback.onError(mergedCallback, e);
+        }
+    }
+
+    /**
+     * Compute the number of pages from the first response, which also limits the results of the query.
+     */
+    private int countPages(ScimResourcesResponseBody.Resources<T> resources) {
+        if (!resources.isPresent() || resources.getResources().isEmpty()) {
+            return 1;
+        }
+        filteredRequest.setTotalResults(resources.getTotalResults());
+        int count = filteredRequest.getCount();
+        if (!filteredRequest.isPaging() || count <= 0) {
+            return 1;
+        }
+        int remaining = filteredRequest.getTotalResults() - filteredRequest.getFirstIndex() + 1;
+        if (remaining <= count) {
+            return 1;
+        }
+        return (remaining + count - 1) / count;
+    }
+
+    /**
+     * Select the pages which may be requested now: at most fan-out requests in flight, and no page
+     * further than fan-out pages ahead of the next page to deliver.
+     */
+    private List<Integer> nextPages() {
+        List<Integer> pages = new ArrayList<>();
+        while (totalPages >= 0 && failure == null
+                && nextToIssue < totalPages
+                && inFlight < fanOut
+                && nextToIssue < nextToDeliver + fanOut) {
+            pages.add(nextToIssue++);
+            inFlight++;
+        }
+        return pages;
+    }
+
+    private List<T> takePage() {
+        List<Integer> toIssue;
+        List<T> page;
+        synchronized (lock) {
+            for (; ; ) {
+                if (failure != null) {
+                    throw new MASRuntimeException(MAGErrorCode.UNKNOWN, failure);
+                }
+                if (totalPages >= 0 && nextToDeliver >= totalPages) {
+                    return null;
+                }
+                page = loaded.remove(nextToDeliver);
+                if (page != null) {
+                    nextToDeliver++;
+                    toIssue = nextPages();
+                    break;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MASRuntimeException(MAGErrorCode.UNKNOWN, e);
+                }
+            }
+        }
+        issue(toIssue);
+        return page;
+    }
+
+    private class PageIterator implements Iterator<T> {
+
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                List<T> page = takePage();
+                if (page == null) {
+                    return false;
+                }
+                current = page.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.identity.common;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.ca.mas.core.http.MAGResponseBody;
+import com.ca.mas.identity.util.IdentityConsts;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A response body for SCIM list responses which converts the entries of the <code>Resources</code> array as they
+ * are read from the connection, rather than building the whole response as a {@link JSONObject} first.
+ * <p/>
+ * Only one <code>Resources</code> entry is held as a {@link JSONObject} at a time, so the memory needed to parse a
+ * page does not grow with the size of the page beyond the converted resources themselves.  Converted resources can
+ * also be delivered in batches to a {@link BatchListener} while the rest of the response is still being read.
+ *
+ * @param <T> The type of the converted resources.
+ */
+public class ScimResourcesResponseBody<T> extends MAGResponseBody<ScimResourcesResponseBody.Resources<T>> {
+
+    private static final int DEFAULT_BATCH_SIZE = 20;
+
+    /**
+     * Converts a single SCIM resource.
+     *
+     * @param <T> The type of the converted resource.
+     */
+    public interface ResourceConverter<T> {
+        T convert(JSONObject resource) throws JSONException;
+    }
+
+    /**
+     * Receives converted resources while the response is being read.  Called on the thread executing the request.
+     *
+     * @param <T> The type of the converted resources.
+     */
+    public interface BatchListener<T> {
+        void onBatch(List<T> batch);
+    }
+
+    /**
+     * The parsed content of a SCIM list response.
+     *
+     * @param <T> The type of the converted resources.
+     */
+    public static class Resources<T> {
+        private final List<T> resources;
+        private final boolean present;
+        private final int totalResults;
+
+        Resources(List<T> resources, boolean present, int totalResults) {
+            this.resources = resources;
+            this.present = present;
+            this.totalResults = totalResults;
+        }
+
+        /**
+         * @return the converted resources in response order.  Never null.
+         */
+        public List<T> getResources() {
+            return resources;
+        }
+
+        /**
+         * @return true if the response contained a <code>Resources</code> attribute.
+         */
+        public boolean isPresent() {
+            return present;
+        }
+
+        /**
+         * @return the value of the <code>totalResults</code> attribute, or 0 if absent.
+         */
+        public int getTotalResults() {
+            return totalResults;
+        }
+    }
+
+    private final ResourceConverter<T> converter;
+    private final BatchListener<T> listener;
+    private final int batchSize;
+    private Resources<T> content = new Resources<T>(Collections.<T>emptyList(), false, 0);
+
+    /**
+     * @param converter converts each resource.  Required.
+     * @param listener  receives batches of converted resources while the response is read, may be null.
+     */
+    public ScimResourcesResponseBody(ResourceConverter<T> converter, BatchListener<T> listener) {
+        this(converter, listener, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param converter converts each resource.  Required.
+     * @param listener  receives batches of converted resources while the response is read, may be null.
+     * @param batchSize the number of resources to deliver to the listener at a time.
+     */
+    public ScimResourcesResponseBody(ResourceConverter<T> converter, BatchListener<T> listener, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize <= 0");
+        }
+        this.converter = converter;
+        this.listener = listener;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    protected void read(HttpURLConnection httpURLConnection) throws IOException {
+        if (httpURLConnection.getErrorStream() != null) {
+            // Error responses are buffered for the policies and error handling
+            super.read(httpURLConnection);
+            return;
+        }
+        this.httpURLConnection = httpURLConnection;
+        this.contentType = httpURLConnection.getContentType();
+        this.contentLength = httpURLConnection.getContentLength();
+
+        InputStream inputStream = httpURLConnection.getInputStream();
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        try {
+            content = parse(reader);
+        } catch (JSONException | IllegalStateException | NumberFormatException e) {
+            // NumberFormatException: a totalResults which is not an int
+            throw new IOException("Unable to parse SCIM response: " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public Resources<T> getContent() {
+        return content;
+    }
+
+    private Resources<T> parse(JsonReader reader) throws IOException, JSONException {
+        List<T> resources = new ArrayList<T>();
+        boolean present = false;
+        int totalResults = 0;
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return new Resources<T>(resources, false, 0);
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (IdentityConsts.KEY_RESOURCES.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                present = true;
+                readResources(reader, resources);
+            } else if (IdentityConsts.KEY_TOTAL_RESULTS.equals(name) && reader.peek() == JsonToken.NUMBER) {
+                totalResults = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Resources<T>(resources, present, totalResults);
+    }
+
+    private void readResources(JsonReader reader, List<T> resources) throws IOException, JSONException {
+        int delivered = resources.size();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            resources.add(converter.convert(readObject(reader)));
+            if (listener != null && resources.size() - delivered >= batchSize) {
+                listener.onBatch(new ArrayList<T>(resources.subList(delivered, resources.size())));
+                delivered = resources.size();
+            }
+        }
+        reader.endArray();
+        if (listener != null && resources.size() > delivered) {
+            listener.onBatch(new ArrayList<T>(resources.subList(delivered, resources.size())));
+        }
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            object.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return readNumber(reader.nextString());
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Convert a number the same way {@link org.json.JSONTokener} does, so converted resources behave exactly
+     * as if they had been parsed by {@link JSONObject}.
+     */
+    private static Object readNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Fall through to double
+            }
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return literal;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import com.ca.mas.foundation.notify.Callback;
 import com.ca.mas.foundation.util.FoundationConsts;
 import com.ca.mas.identity.common.MASFilteredRequest;
 import com.ca.mas.identity.common.MASFilteredRequestBuilder;
+import com.ca.mas.identity.common.ScimPager;
+import com.ca.mas.identity.common.ScimResourcesResponseBody;
 import com.ca.mas.identity.util.IdentityConsts;
 import com.ca.mas.identity.util.IdentityUtil;
 
@@ -33,7 +35,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -49,6 +50,15 @@ public class GroupIdentityManager implements MASGroupIdentity {
 
     private static GroupIdentityManager instance = new GroupIdentityManager();
 
+    private static final ScimResourcesResponseBody.ResourceConverter<MASGroup> GROUP_CONVERTER = new ScimResourcesResponseBody.ResourceConverter<MASGroup>() {
+        @Override
+        public MASGroup convert(JSONObject resource) throws JSONException {
+            MASGroup group = MASGroup.newInstance();
+            group.populate(resource);
+            return group;
+        }
+    };
+
     private GroupIdentityManager() {
     }
 
@@ -136,31 +146,17 @@ public class GroupIdentityManager implements MASGroupIdentity {
 
     @Override
     public void getGroupsByFilter(final MASFilteredRequest filteredRequest, final MASCallback<List<MASGroup>> callback) {
-        Uri uri = filteredRequest.createUri(MAS.getContext());
-        MASRequest masRequest = new MASRequest.MASRequestBuilder(uri)
-                .header(IdentityConsts.HEADER_KEY_ACCEPT, IdentityConsts.HEADER_VALUE_ACCEPT)
-                .header(IdentityConsts.HEADER_KEY_CONTENT_TYPE, IdentityConsts.HEADER_VALUE_CONTENT_TYPE)
-                .responseBody(MAGResponseBody.jsonBody())
-                .get()
-                .build();
-
-        MAS.invoke(masRequest, new MASCallback<MASResponse<JSONObject>>() {
-            @Override
-            public void onSuccess(MASResponse<JSONObject> result) {
-                try {
-                    List<MASGroup> container = new ArrayList<>();
-                    JSONObject jsonObject = result.getBody().getContent();
-                    processGroupsByFilter(filteredRequest, jsonObject, container, callback);
-                } catch (Exception e) {
-                    onError(new MAGError(e));
-                }
-            }
+        getGroupPager(filteredRequest).fetchAll(callback);
+    }
 
-            @Override
-            public void onError(Throwable e) {
-                Callback.onError(callback, e);
-            }
-        });
+    /**
+     * Create a pager which retrieves the pages of the filtered request concurrently, see {@link ScimPager}.
+     *
+     * @param filteredRequest the groups query.
+     * @return a new pager for the query.
+     */
+    public ScimPager<MASGroup> getGroupPager(MASFilteredRequest filteredRequest) {
+        return new ScimPager<>(MAS.getContext(), filteredRequest, GROUP_CONVERTER);
     }
 
     private void createAdHocGroup(MASGroup group, final MASCallback<MASGroup> callback) {
@@ -333,57 +329,4 @@ public class GroupIdentityManager implements MASGroupIdentity {
         return group;
     }
 
-    private void getGroups(final MASFilteredRequest filteredRequest, final List<MASGroup> container, final MASCallback<List<MASGroup>> callback) throws MASException {
-        Uri uri = filteredRequest.createUri(MAS.getContext());
-        MASRequest masRequest = new MASRequest.MASRequestBuilder(uri)
-                .header(IdentityConsts.HEADER_KEY_ACCEPT, IdentityConsts.HEADER_VALUE_ACCEPT)
-                .header(IdentityConsts.HEADER_KEY_CONTENT_TYPE, IdentityConsts.HEADER_VALUE_CONTENT_TYPE)
-                .responseBody(MAGResponseBody.jsonBody())
-                .get()
-                .build();
-
-        MAS.invoke(masRequest, new MASCallback<MASResponse<JSONObject>>() {
-            @Override
-            public void onSuccess(MASResponse<JSONObject> result) {
-                try {
-                    processGroupsByFilter(filteredRequest, result.getBody().getContent(), container, callback);
-                } catch (Exception e) {
-                    Callback.onError(callback, e);
-                }
-            }
-
-            @Override
-            public void onError(Throwable e) {
-                Callback.onError(callback, e);
-            }
-        });
-
-    }
-
-    private void processGroupsByFilter(MASFilteredRequest filteredRequest, JSONObject jsonObject, List<MASGroup> container, MASCallback<List<MASGroup>> callback) throws JSONException, MASException {
-
-        // get the array 'Resources'
-        if (jsonObject.has(IdentityConsts.KEY_RESOURCES)) {
-            JSONArray jsonArray = jsonObject.getJSONArray(IdentityConsts.KEY_RESOURCES);
-            // <i>setTotalResults</i> can be called repeatedly. Calling it with
-            // the same value that it is currently set does not alter the functionality.
-            int totalResults = jsonObject.optInt(IdentityConsts.KEY_TOTAL_RESULTS);
-            if (jsonArray.length() > 0) {
-                filteredRequest.setTotalResults(totalResults);
-
-                // iterate through the array, creating a user for each entry
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    MASGroup ident = MASGroup.newInstance();
-                    JSONObject arrElem = jsonArray.getJSONObject(i);
-                    ident.populate(arrElem);
-                    container.add(ident);
-                }// && totalResults == mGroupFilteredRequestBuilder.getCount()
-                if (filteredRequest.hasNext()) {
-                    getGroups(filteredRequest, container, callback);
-                }
-            }
-        }
-        Callback.onSuccess(callback, container);
-    }
-
 }
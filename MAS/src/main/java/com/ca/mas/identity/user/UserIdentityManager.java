@@ -26,6 +26,8 @@ import com.ca.mas.foundation.MASUser;
 import com.ca.mas.foundation.notify.Callback;
 import com.ca.mas.foundation.util.FoundationConsts;
 import com.ca.mas.identity.common.MASFilteredRequest;
+import com.ca.mas.identity.common.ScimPager;
+import com.ca.mas.identity.common.ScimResourcesResponseBody;
 import com.ca.mas.identity.util.IdentityConsts;
 import com.ca.mas.identity.util.IdentityUtil;
 import com.ca.mas.messaging.MASMessage;
@@ -37,7 +39,6 @@ import org.json.JSONObject;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -61,6 +62,15 @@ public class UserIdentityManager {
 
     private static UserIdentityManager instance = new UserIdentityManager();
 
+    private static final ScimResourcesResponseBody.ResourceConverter<MASUser> USER_CONVERTER = new ScimResourcesResponseBody.ResourceConverter<MASUser>() {
+        @Override
+        public MASUser convert(JSONObject resource) throws JSONException {
+            User user = new User();
+            user.populate(resource);
+            return createMASUser(user);
+        }
+    };
+
     public static UserIdentityManager getInstance() {
         return instance;
     }
@@ -72,30 +82,17 @@ public class UserIdentityManager {
 
     // -------------------- USERS ---------------------------------------------
     public void getUsersByFilter(final MASFilteredRequest filteredRequest, final MASCallback<List<MASUser>> callback) {
-        Uri uri = filteredRequest.createUri(MAS.getContext());
-        MASRequest masRequest = new MASRequest.MASRequestBuilder(uri)
-                .header(IdentityConsts.HEADER_KEY_ACCEPT, IdentityConsts.HEADER_VALUE_ACCEPT)
-                .header(IdentityConsts.HEADER_KEY_CONTENT_TYPE, IdentityConsts.HEADER_VALUE_CONTENT_TYPE)
-                .responseBody(MAGResponseBody.jsonBody())
-                .get()
-                .build();
-
-        MAS.invoke(masRequest, new MASCallback<MASResponse<JSONObject>>() {
-            @Override
-            public void onSuccess(MASResponse<JSONObject> result) {
-                try {
-                    List<MASUser> container = new ArrayList<>();
-                    processUsersByFilter(filteredRequest, result.getBody().getContent(), container, callback);
-                } catch (Exception je) {
-                    onError(new MAGError(je));
-                }
-            }
+        getUserPager(filteredRequest).fetchAll(callback);
+    }
 
-            @Override
-            public void onError(Throwable e) {
-                Callback.onError(callback, e);
-            }
-        });
+    /**
+     * Create a pager which retrieves the pages of the filtered request concurrently, see {@link ScimPager}.
+     *
+     * @param filteredRequest the users query.
+     * @return a new pager for the query.
+     */
+    public ScimPager<MASUser> getUserPager(MASFilteredRequest filteredRequest) {
+        return new ScimPager<>(MAS.getContext(), filteredRequest, USER_CONVERTER);
     }
 
     public void getUserById(String id, final MASCallback<MASUser> callback) {
@@ -184,35 +181,6 @@ public class UserIdentityManager {
         return createMASUser(user);
     }
 
-    /*
-    Helper method for retrieving users when paging is involved.
-     */
-    private void getUsers(final MASFilteredRequest filteredRequest, final List<MASUser> masUsers, final MASCallback<List<MASUser>> callback) throws MASException {
-        Uri uri = filteredRequest.createUri(MAS.getContext());
-        MASRequest masRequest = new MASRequest.MASRequestBuilder(uri)
-                .header(IdentityConsts.HEADER_KEY_ACCEPT, IdentityConsts.HEADER_VALUE_ACCEPT)
-                .header(IdentityConsts.HEADER_KEY_CONTENT_TYPE, IdentityConsts.HEADER_VALUE_CONTENT_TYPE)
-                .responseBody(MAGResponseBody.jsonBody())
-                .get()
-                .build();
-
-        MAS.invoke(masRequest, new MASCallback<MASResponse<JSONObject>>() {
-            @Override
-            public void onSuccess(MASResponse<JSONObject> result) {
-                try {
-                    processUsersByFilter(filteredRequest, result.getBody().getContent(), masUsers, callback);
-                } catch (Exception e) {
-                    Callback.onError(callback, e);
-                }
-            }
-
-            @Override
-            public void onError(Throwable e) {
-                Callback.onError(callback, e);
-            }
-        });
-    }
-
     /*
     Helper method for populating attributes.
      */
@@ -235,44 +203,6 @@ public class UserIdentityManager {
         }
     }
 
-    /*
-    Helper method for processing users.
-     */
-    private void processUsersByFilter(MASFilteredRequest filteredRequest, JSONObject jsonObject, List<MASUser> container, MASCallback<List<MASUser>> callback) throws JSONException, MASException {
-
-        // get the array 'Resources'
-        if (jsonObject.has(IdentityConsts.KEY_RESOURCES)) {
-            JSONArray jsonArray = jsonObject.getJSONArray(IdentityConsts.KEY_RESOURCES);
-            if (jsonArray.length() > 0) {
-                // <i>setTotalResults</i> can be called repeatedly. Calling it with
-                // the same value that it is currently set does not alter the functionality.
-                int totalResults = jsonObject.optInt(IdentityConsts.KEY_TOTAL_RESULTS);
-                filteredRequest.setTotalResults(totalResults);
-
-                // iterate through the array, creating a user for each entry
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    User ident = new User();
-                    JSONObject arrElem = jsonArray.getJSONObject(i);
-                    ident.populate(arrElem);
-                    container.add(createMASUser(ident));
-                }
-
-                if (filteredRequest.hasNext()) {
-                    getUsers(filteredRequest, container, callback);
-                } else {
-                    Callback.onSuccess(callback, container);
-                }
-            } else {
-                Callback.onSuccess(callback, container);
-            }
-        } else {
-            int totalResults = jsonObject.optInt(IdentityConsts.KEY_TOTAL_RESULTS);
-            if (totalResults == 0) {
-                Callback.onSuccess(callback, container);
-            }
-        }
-    }
-
     private static MASUser createMASUser(final ScimUser scimUser) {
 
         return new MASUser() {
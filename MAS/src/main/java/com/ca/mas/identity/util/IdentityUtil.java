@@ -11,6 +11,7 @@ package com.ca.mas.identity.util;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Base64;
@@ -22,6 +23,8 @@ import com.ca.mas.foundation.MASUser;
 import com.ca.mas.foundation.util.FoundationConsts;
 import com.ca.mas.foundation.util.FoundationUtil;
 import com.ca.mas.identity.common.MASFilteredRequest;
+import com.ca.mas.identity.common.MASPartialResultListener;
+import com.ca.mas.identity.common.ScimResourcesResponseBody;
 import com.ca.mas.identity.user.MASPhoto;
 
 import org.json.JSONObject;
@@ -259,6 +262,37 @@ public class IdentityUtil extends FoundationUtil {
         return null;
     }
 
+    /**
+     * Create a listener which forwards the resources parsed from a SCIM list response to the callback, if the
+     * callback implements {@link MASPartialResultListener}.
+     *
+     * @param callback the callback of the filtered query, may be null.
+     * @return the listener, or null if the callback does not accept partial results.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ScimResourcesResponseBody.BatchListener<T> createBatchListener(final MASCallback<List<T>> callback) {
+        if (!(callback instanceof MASPartialResultListener)) {
+            return null;
+        }
+        final MASPartialResultListener<T> listener = (MASPartialResultListener<T>) callback;
+        return new ScimResourcesResponseBody.BatchListener<T>() {
+            @Override
+            public void onBatch(final List<T> batch) {
+                Handler handler = callback.getHandler();
+                if (handler == null) {
+                    listener.onPartialResult(batch);
+                } else {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onPartialResult(batch);
+                        }
+                    });
+                }
+            }
+        };
+    }
+
     /**
      * <b>Description:</b> Given a filter, an operator, and an attribute, initiate the existing
      * {@link MASFilteredRequest}. For example, to create a
@@ -13,6 +13,7 @@ import android.content.Intent;
 import android.text.TextUtils;
 import android.util.Base64;
 
+import com.ca.mas.connecta.util.BinaryMessageEnvelope;
 import com.ca.mas.connecta.util.ConnectaConsts;
 import com.ca.mas.foundation.MASException;
 import com.ca.mas.identity.ScimIdentifiable;
@@ -245,6 +246,27 @@ public abstract class MASMessage implements MASPayload {
                 }
                 return jobj.toString();
             }
+
+            @Override
+            public byte[] createBinaryFromMASMessage(String topic) throws MASException {
+                return BinaryMessageEnvelope.encode(this, topic);
+            }
+
+            @Override
+            public void createMASMessageFromBinary(byte[] envelope) throws MASException {
+                BinaryMessageEnvelope e = BinaryMessageEnvelope.parse(envelope);
+                mVersion = e.getVersion();
+                mSenderId = e.getSenderId();
+                mSenderType = e.getSenderType();
+                mDisplayName = e.getDisplayName();
+                mSentTime = e.getSentTime();
+                mContentType = e.getContentType();
+                mContentEncoding = e.getContentEncoding();
+                if (!e.getTopic().isEmpty()) {
+                    mTopic = e.getTopic();
+                }
+                mPayload = e.getPayload();
+            }
         };
     }
 
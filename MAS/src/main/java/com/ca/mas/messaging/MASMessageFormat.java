@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.messaging;
+
+import android.support.annotation.IntDef;
+
+import com.ca.mas.foundation.MASConstants;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * <table>
+ * <caption>Summary</caption>
+ * <thead>
+ * <tr><th>Value</th><th>Description</th></tr>
+ * </thead>
+ * <tbody>
+ * <tr><td>MASConstants.MAS_MESSAGE_FORMAT_JSON</td><td>Publish the message as a JSON document, with the payload
+ * encoded in base64.</td></tr>
+ * <tr><td>MASConstants.MAS_MESSAGE_FORMAT_BINARY</td><td>Publish the message as a compact binary envelope, with
+ * the payload as it is.</td></tr>
+ * </tbody>
+ * </table>
+ * The format of a received message is detected, whatever the format used to publish.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({MASConstants.MAS_MESSAGE_FORMAT_JSON, MASConstants.MAS_MESSAGE_FORMAT_BINARY})
+public @interface MASMessageFormat {
+}
@@ -186,4 +186,23 @@ public interface MASPayload {
      * @throws MASException if the String cannot be converted or is not valid JSON.
      */
     /* public */ void createMASMessageFromJSONString(String jsonStr) throws MASException;
+
+    /**
+     * <b>Description:</b> This method takes the entire MASPayload attributes and creates the compact binary
+     * envelope representing the payload, see {@link com.ca.mas.connecta.util.BinaryMessageEnvelope}. Unlike the
+     * JSON document, the inner payload is not encoded.
+     *
+     * @param topic the topic the payload is published on.
+     * @return byte[] the binary envelope.
+     * @throws MASException if the payload is empty.
+     */
+    /* public */ byte[] createBinaryFromMASMessage(String topic) throws MASException;
+
+    /**
+     * <b>Description:</b> This method takes a binary envelope and attempts to turn it into a MASPayload object.
+     *
+     * @param envelope the binary envelope representing the MASPayload.
+     * @throws MASException if the envelope is truncated or of an unsupported version.
+     */
+    /* public */ void createMASMessageFromBinary(byte[] envelope) throws MASException;
 }
@@ -8,35 +8,30 @@
 package com.ca.mas.masmessagingsample.activity;
 
 import android.app.NotificationManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.support.v4.content.LocalBroadcastManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.app.NotificationCompat;
-import android.text.TextUtils;
 
-import com.ca.mas.connecta.util.ConnectaConsts;
+import com.ca.mas.connecta.client.MASConnectaManager;
+import com.ca.mas.connecta.client.MASMessageListener;
 import com.ca.mas.foundation.MASCallback;
-import com.ca.mas.foundation.MASException;
 import com.ca.mas.foundation.MASUser;
 import com.ca.mas.masmessagingsample.R;
 import com.ca.mas.masmessagingsample.mas.DataManager;
 import com.ca.mas.messaging.MASMessage;
 
 public class BaseActivity extends AppCompatActivity {
-    private BroadcastReceiver mMessagingBroadcastReceiver;
-    private IntentFilter mMessagingIntentFilter;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private MASMessageListener mMessageListener;
 
     @Override
     protected void onResume() {
         super.onResume();
 
-        mMessagingBroadcastReceiver = getMessagingBroadcastReceiver();
-        mMessagingIntentFilter = getMessagingIntentFilter();
-        LocalBroadcastManager.getInstance(this)
-                .registerReceiver(mMessagingBroadcastReceiver, mMessagingIntentFilter);
+        // Messages are handed to the listeners, they are no longer broadcast unless enabled
+        MASConnectaManager.getInstance().addMessageListener(getMessageListener());
 
         MASUser currentUser = MASUser.getCurrentUser();
         if (currentUser != null && currentUser.isAuthenticated()) {
@@ -53,9 +48,7 @@ public class BaseActivity extends AppCompatActivity {
     }
     @Override
     public void onPause() {
-        LocalBroadcastManager
-                .getInstance(this)
-                .unregisterReceiver(mMessagingBroadcastReceiver);
+        MASConnectaManager.getInstance().removeMessageListener(getMessageListener());
 
         MASUser currentUser = MASUser.getCurrentUser();
         if (currentUser != null && currentUser.isAuthenticated()) {
@@ -72,45 +65,38 @@ public class BaseActivity extends AppCompatActivity {
         super.onPause();
     }
 
-    private BroadcastReceiver getMessagingBroadcastReceiver() {
-        if (mMessagingBroadcastReceiver == null) {
-            mMessagingBroadcastReceiver = new BroadcastReceiver() {
+    private MASMessageListener getMessageListener() {
+        if (mMessageListener == null) {
+            mMessageListener = new MASMessageListener() {
                 @Override
-                public void onReceive(Context context, Intent intent) {
-                    String action = intent.getAction();
-                    if (TextUtils.equals(action, ConnectaConsts.MAS_CONNECTA_BROADCAST_MESSAGE_ARRIVED)) {
-                        NotificationCompat.Builder builder = getNotificationBuilder(context);
-                        try {
-                            MASMessage message = MASMessage.newInstance(intent);
-                            final String senderName = message.getDisplayName();
-                            byte[] messageData = message.getPayload();
-
-                            DataManager.INSTANCE.saveMessage(message);
-                            String messageText = new String(messageData);
-
-                            builder.setContentTitle(senderName).setContentText(messageText);
-                        } catch (MASException me) {
-                            builder.setContentTitle(MASException.class.getSimpleName())
-                                    .setContentText("Could not extract the message.");
+                public void onMessageArrived(final MASMessage message) {
+                    // Called on the messaging thread, show the message on the main thread
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onMessage(message);
                         }
-
-                        // Displays the notification
-                        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-                        notificationManager.notify(0, builder.build());
-                    }
+                    });
                 }
             };
         }
 
-        return mMessagingBroadcastReceiver;
+        return mMessageListener;
     }
 
-    protected IntentFilter getMessagingIntentFilter() {
-        if (mMessagingIntentFilter == null) {
-            mMessagingIntentFilter = new IntentFilter(ConnectaConsts.MAS_CONNECTA_BROADCAST_MESSAGE_ARRIVED);
-        }
+    private void onMessage(MASMessage message) {
+        NotificationCompat.Builder builder = getNotificationBuilder(this);
+        final String senderName = message.getDisplayName();
+        byte[] messageData = message.getPayload();
+
+        DataManager.INSTANCE.saveMessage(message);
+        String messageText = new String(messageData);
+
+        builder.setContentTitle(senderName).setContentText(messageText);
 
-        return mMessagingIntentFilter;
+        // Displays the notification
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(0, builder.build());
     }
 
     protected NotificationCompat.Builder getNotificationBuilder(Context context) {